@@ -248,15 +248,12 @@ public class DirectedGraph
   }
 
   /**
-        Clears all vertex markers
+        Returns the first element of the list of all vertices, for
+        StronglyConnectedComponents.
    */
 
-  private void clearAllMarkers() {
-    Vertex vertex;
-    for (ListElement i = mainVertexList; i != null; i = i.next) {
-      vertex = (Vertex) i.hangingVertexOrEdge;
-      vertex.graphMarker = 0;
-    }
+  ListElement getVertexList() {
+    return mainVertexList;
   }
 
   /**
@@ -764,101 +761,47 @@ public class DirectedGraph
    */
 
   public Object[] topologicalSort() {
-    if (hasCycle() == true) {
+    StronglyConnectedComponents components = new StronglyConnectedComponents(this);
+    if (components.hasCycle()) {
       //cycle found, no topological sort possible
       return null;
     }
-    //we don't creat the array until we have checked
-    //no cycles exist.
-    Object[] topologicalArray = new Object[totalVerticesGraph];
-    topoIndex = 0;
-    Vertex vertex;
-    //Start going through vertices, setting all markers to indegree,
-    //when =0, put into array and sub-seek adjacents, decrementing
-    //simultaneously and recursively putting all who == 0 after decr.
-    for (ListElement n = mainVertexList; n != null; n = n.next) {
-      vertex = (Vertex) n.hangingVertexOrEdge;
-      if (vertex.graphMarker == 0) vertex.graphMarker = vertex.whatIsInDegree();
-      if (vertex.graphMarker == 0) {
-        //after the inDegree is assigned, if this vertex
-        //STILL has 0 (no "dependents") we can call put()
-        putAndDecrement(topologicalArray, vertex);
-      }
-    }
-    clearAllMarkers();
-    return topologicalArray;
+    return components.topologicalSort();
   }
 
   /**
-    Helper variable to keep track of topoligical sort
-    array indexing. A global var, passing it around in
-    recursive calls would be very messy.
+     Groups the vertices of this directed graph in levels. A vertex having
+     no edge going out is on level 0, any other vertex is one level above the
+     highest level of the vertices its edges lead to. So the vertices of one
+     level only depend on the vertices of lower levels and not on each other.
+     @return an array of levels, each level being an array of the vertex
+     objects on it. Returns null if the graph has a cycle.
    */
 
-  private int topoIndex;
-
-  /**
-    A recursive helper method to put found vertex into array,
-    and decrement adjacents. It is necessary to pass the array
-    we are constructing around from method call to method call
-    in order to maximize effectiveness, this way it's not a
-    global variable, in case we don't ever need to create it.
-    @param theArray the array of vertices that we are constructing
-    @param start the vertex where we are starting this sub-call
-   */
-
-  private void putAndDecrement(Object[] theArray, Vertex start) {
-    //putting the vertex object into the next free spot in array
-    theArray[topoIndex++] = start.vertexObject;
-    //when the vertex has been put into array we mark it with -1
-    start.graphMarker = -1;
-    Edge edge;
-    //now we are going to go through the edge-list and decrement
-    //all the vertex-inDegrees (markers) by one,
-    //and if we decrement any of them to 0, we'll call this
-    //method recursively again to put that vertex into the array
-    //next.
-    for (ListElement i = start.firstEdge; i != null; i = i.next) {
-      edge = (Edge) i.hangingVertexOrEdge;
-      if (edge.targetVertex.graphMarker == 0) {
-        //this is a case where the topologicalSort()
-        //method has not got this far yet, so we need
-        //to do som of its work for it, and mark the inDegree.
-        edge.targetVertex.graphMarker = edge.targetVertex.whatIsInDegree();
-      }
-      //decrementing the adjacent vertex
-      edge.targetVertex.graphMarker--;
-      if (edge.targetVertex.graphMarker == 0) {
-        //if 0, we can now move on through this edge to
-        //put its vertex recursively as well
-        putAndDecrement(theArray, edge.targetVertex);
-      }
+  public Object[][] topologicalLevels() {
+    StronglyConnectedComponents components = new StronglyConnectedComponents(this);
+    if (components.hasCycle()) {
+      return null;
     }
+    return components.topologicalLevels();
   }
 
   /**
-     Returns <tt>true</tt> if there is a cycle in the directed graph.
+     Returns <tt>true</tt> if there is a cycle in the directed graph. The
+     vertices of one cycle are kept for <CODE>TablesInCycle</CODE>.
      @return <tt>true</tt> if there is a cycle in the directed graph.
    */
 
  public boolean hasCycle() {
-    cycleStatus = false;
-    Vertex eachVertexInTurn;
-    for (ListElement i = mainVertexList; (i != null) && (cycleStatus != true);i = i.next) {
-      eachVertexInTurn = (Vertex) i.hangingVertexOrEdge;
-      findCycle(eachVertexInTurn);
-      if (cycleStatus) {
-         //newList to add first vertex from which traversing of graph was started
-         ArrayList newList = new ArrayList();
-         newList.add(eachVertexInTurn);
-         newList.addAll(tablesInCycle);
-         tablesInCycle.clear();
-         tablesInCycle.addAll(newList);
-       }
-      clearAllMarkers();
-    }
-    if (cycleStatus == false)return false;
-    return true;
+    StronglyConnectedComponents components = new StronglyConnectedComponents(this);
+    tablesInCycle.clear();
+    for (int c = 0; c < components.componentCount(); c++) {
+      if (components.isCyclic(c)) {
+        tablesInCycle.addAll(Arrays.asList(components.cycleOf(c)));
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -0,0 +1,381 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.graph;
+
+import java.util.*;
+import com.daffodilwoods.replication.RepException;
+
+/**
+  Finds the strongly connected components of a <CODE>DirectedGraph</CODE>
+  with Tarjan's algorithm in time linear in the number of vertices and edges.
+  The search keeps its own stack instead of recursing, so long chains of
+  foreign keys do not overflow the thread stack.
+  <p>
+  Components are numbered in the order Tarjan's algorithm completes them,
+  a component only has edges to components with a lower number. Component 0
+  therefore has no edge leaving it, which for a graph of foreign keys from
+  child to parent table means it has no parent outside itself.
+  <p>
+  The result is taken when the object is constructed, later changes to the
+  graph are not seen.
+ */
+
+public class StronglyConnectedComponents {
+
+  // all vertices of the graph, numbered by their position
+  private Vertex[] vertices;
+
+  // component number of every vertex
+  private int[] componentOfVertex;
+
+  // vertex numbers of every component
+  private int[][] components;
+
+  // true for components of more than one vertex or with a self loop
+  private boolean[] cyclic;
+
+  // vertex object -> Integer vertex number
+  private HashMap vertexNumbers;
+
+  /**
+     Finds the strongly connected components of the graph.
+     @param graph the directed graph
+   */
+
+  public StronglyConnectedComponents(DirectedGraph graph) {
+    vertices = new Vertex[graph.vertexCount()];
+    vertexNumbers = new HashMap();
+    HashMap numbers = new HashMap();
+    int count = 0;
+    for (ListElement i = graph.getVertexList(); i != null; i = i.next) {
+      Vertex vertex = (Vertex) i.hangingVertexOrEdge;
+      numbers.put(vertex, new Integer(count));
+      vertexNumbers.put(vertex.vertexObject, new Integer(count));
+      vertices[count++] = vertex;
+    }
+    int[][] targets = new int[vertices.length][];
+    for (int v = 0; v < vertices.length; v++) {
+      targets[v] = new int[vertices[v].whatIsOutDegree()];
+      int j = 0;
+      for (ListElement i = vertices[v].firstEdge; i != null; i = i.next) {
+        Vertex target = ( (Edge) i.hangingVertexOrEdge).targetVertex;
+        targets[v][j++] = ( (Integer) numbers.get(target)).intValue();
+      }
+    }
+    search(targets);
+  }
+
+  /**
+    Tarjan's algorithm. index[v] is the order in which v was reached,
+    starting at 1, 0 for vertices not reached yet. lowLink[v] is the lowest
+    index reachable from v through the vertices on the component stack.
+   */
+
+  private void search(int[][] targets) {
+    int n = vertices.length;
+    int[] index = new int[n];
+    int[] lowLink = new int[n];
+    boolean[] onStack = new boolean[n];
+    int[] componentStack = new int[n];
+    int componentTop = 0;
+    int[] callStack = new int[n];
+    int[] nextTarget = new int[n];
+    int callTop = -1;
+    int counter = 0;
+    componentOfVertex = new int[n];
+    ArrayList found = new ArrayList();
+
+    for (int root = 0; root < n; root++) {
+      if (index[root] != 0) {
+        continue;
+      }
+      index[root] = lowLink[root] = ++counter;
+      componentStack[componentTop++] = root;
+      onStack[root] = true;
+      callStack[++callTop] = root;
+      nextTarget[callTop] = 0;
+      while (callTop >= 0) {
+        int v = callStack[callTop];
+        if (nextTarget[callTop] < targets[v].length) {
+          int w = targets[v][nextTarget[callTop]++];
+          if (index[w] == 0) {
+            index[w] = lowLink[w] = ++counter;
+            componentStack[componentTop++] = w;
+            onStack[w] = true;
+            callStack[++callTop] = w;
+            nextTarget[callTop] = 0;
+          }
+          else if (onStack[w]) {
+            lowLink[v] = Math.min(lowLink[v], index[w]);
+          }
+          continue;
+        }
+        if (lowLink[v] == index[v]) {
+          int start = componentTop;
+          do {
+            start--;
+            onStack[componentStack[start]] = false;
+            componentOfVertex[componentStack[start]] = found.size();
+          }
+          while (componentStack[start] != v);
+          int[] members = new int[componentTop - start];
+          System.arraycopy(componentStack, start, members, 0, members.length);
+          componentTop = start;
+          found.add(members);
+        }
+        callTop--;
+        if (callTop >= 0) {
+          int u = callStack[callTop];
+          lowLink[u] = Math.min(lowLink[u], lowLink[v]);
+        }
+      }
+    }
+
+    components = (int[][]) found.toArray(new int[found.size()][]);
+    cyclic = new boolean[components.length];
+    for (int c = 0; c < components.length; c++) {
+      if (components[c].length > 1) {
+        cyclic[c] = true;
+        continue;
+      }
+      int v = components[c][0];
+      for (int j = 0; j < targets[v].length; j++) {
+        if (targets[v][j] == v) {
+          cyclic[c] = true;
+        }
+      }
+    }
+  }
+
+  /**
+     Returns the number of strongly connected components.
+     @return the number of components.
+   */
+
+  public int componentCount() {
+    return components.length;
+  }
+
+  /**
+     Returns the component of the vertex.
+     @param obj the vertex object.
+     @return the component number, -1 if the vertex is not in the graph.
+   */
+
+  public int componentOf(Object obj) {
+    Integer number = (Integer) vertexNumbers.get(obj);
+    return number == null ? -1 : componentOfVertex[number.intValue()];
+  }
+
+  /**
+     Returns the vertex objects of a component.
+     @param component the component number.
+     @return a new array of the vertex objects of the component.
+   */
+
+  public Object[] componentToArray(int component) {
+    int[] members = components[component];
+    Object[] objects = new Object[members.length];
+    for (int i = 0; i < members.length; i++) {
+      objects[i] = vertices[members[i]].vertexObject;
+    }
+    return objects;
+  }
+
+  /**
+     Returns <tt>true</tt> if the component has more than one vertex or a
+     vertex with a self loop.
+     @param component the component number.
+     @return <tt>true</tt> if the vertices of the component are in a cycle.
+   */
+
+  public boolean isCyclic(int component) {
+    return cyclic[component];
+  }
+
+  /**
+     Returns <tt>true</tt> if there is a cycle in the directed graph.
+     @return <tt>true</tt> if any component is cyclic.
+   */
+
+  public boolean hasCycle() {
+    for (int c = 0; c < cyclic.length; c++) {
+      if (cyclic[c]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+     Returns the vertex objects of every cyclic component.
+     @return an array of components, each an array of vertex objects.
+   */
+
+  public Object[][] cyclicComponents() {
+    ArrayList list = new ArrayList();
+    for (int c = 0; c < components.length; c++) {
+      if (cyclic[c]) {
+        list.add(componentToArray(c));
+      }
+    }
+    return (Object[][]) list.toArray(new Object[list.size()][]);
+  }
+
+  /**
+     Returns one cycle through the vertices of a cyclic component. The cycle
+     is a shortest one through the first vertex of the component, found by
+     a breadth first search inside the component.
+     @param component the component number.
+     @return the vertex objects of the cycle, the first one repeated at the
+     end, so every two neighbours are joined by an edge. Null if the
+     component is not cyclic.
+   */
+
+  public Object[] cycleOf(int component) {
+    if (!cyclic[component]) {
+      return null;
+    }
+    int start = components[component][0];
+    HashMap previous = new HashMap();
+    LinkedList queue = new LinkedList();
+    queue.add(vertices[start]);
+    while (!queue.isEmpty()) {
+      Vertex vertex = (Vertex) queue.removeFirst();
+      for (ListElement i = vertex.firstEdge; i != null; i = i.next) {
+        Vertex target = ( (Edge) i.hangingVertexOrEdge).targetVertex;
+        if (target == vertices[start]) {
+          LinkedList cycle = new LinkedList();
+          cycle.addFirst(target.vertexObject);
+          for (Vertex v = vertex; v != null; v = (Vertex) previous.get(v)) {
+            cycle.addFirst(v.vertexObject);
+          }
+          return cycle.toArray();
+        }
+        if (!previous.containsKey(target) &&
+            componentOfVertex[( (Integer) vertexNumbers.get(target.vertexObject)).intValue()] == component) {
+          previous.put(target, vertex);
+          queue.add(target);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+     Returns the graph of the components. Its vertices are the component
+     numbers as <CODE>Integer</CODE>, it has an edge from one component to
+     another if an edge of the graph joins a vertex of the first to a vertex
+     of the second. The graph of the components has no cycle.
+     @return a new directed graph of the components.
+     @throws RepException
+   */
+
+  public DirectedGraph condensedGraph() throws RepException {
+    DirectedGraph condensed = new DirectedGraph(components.length);
+    for (int c = 0; c < components.length; c++) {
+      condensed.addVertex(new Integer(c));
+    }
+    for (int v = 0; v < vertices.length; v++) {
+      for (ListElement i = vertices[v].firstEdge; i != null; i = i.next) {
+        Vertex target = ( (Edge) i.hangingVertexOrEdge).targetVertex;
+        int from = componentOfVertex[v];
+        int to = componentOf(target.vertexObject);
+        if (from != to) {
+          condensed.addEdge(new Integer(from), new Integer(to), 1);
+        }
+      }
+    }
+    return condensed;
+  }
+
+  /**
+     Returns the level of every component. A component having no edge to
+     another component is on level 0, any other component is one level above
+     the highest level of the components its edges lead to.
+     @return the level of every component by component number.
+   */
+
+  public int[] componentLevels() {
+    int[] levels = new int[components.length];
+    for (int c = 0; c < components.length; c++) {
+      int[] members = components[c];
+      for (int m = 0; m < members.length; m++) {
+        for (ListElement i = vertices[members[m]].firstEdge; i != null; i = i.next) {
+          Vertex target = ( (Edge) i.hangingVertexOrEdge).targetVertex;
+          int to = componentOf(target.vertexObject);
+          // components reached from c are numbered before c
+          if (to != c) {
+            levels[c] = Math.max(levels[c], levels[to] + 1);
+          }
+        }
+      }
+    }
+    return levels;
+  }
+
+  /**
+     Groups the vertices in levels in the same way as
+     <CODE>DirectedGraph.topologicalLevels</CODE>, the vertices of a
+     component being on the level of their component. The vertices of one
+     level only depend on the vertices of lower levels and on the vertices
+     of their own component.
+     @return an array of levels, each level being an array of vertex objects.
+   */
+
+  public Object[][] topologicalLevels() {
+    int[] levels = componentLevels();
+    int maxLevel = -1;
+    for (int c = 0; c < levels.length; c++) {
+      maxLevel = Math.max(maxLevel, levels[c]);
+    }
+    ArrayList[] levelLists = new ArrayList[maxLevel + 1];
+    for (int i = 0; i < levelLists.length; i++) {
+      levelLists[i] = new ArrayList();
+    }
+    for (int c = 0; c < components.length; c++) {
+      levelLists[levels[c]].addAll(Arrays.asList(componentToArray(c)));
+    }
+    Object[][] result = new Object[levelLists.length][];
+    for (int i = 0; i < levelLists.length; i++) {
+      result[i] = levelLists[i].toArray();
+    }
+    return result;
+  }
+
+  /**
+     Returns the vertices in the order of <CODE>DirectedGraph.topologicalSort</CODE>,
+     a vertex comes before the vertices its edges lead to. The vertices of a
+     cyclic component are next to each other in no special order.
+     @return a new array of all vertex objects.
+   */
+
+  public Object[] topologicalSort() {
+    Object[] sorted = new Object[vertices.length];
+    int j = 0;
+    for (int c = components.length - 1; c >= 0; c--) {
+      int[] members = components[c];
+      for (int m = 0; m < members.length; m++) {
+        sorted[j++] = vertices[members[m]].vertexObject;
+      }
+    }
+    return sorted;
+  }
+
+}
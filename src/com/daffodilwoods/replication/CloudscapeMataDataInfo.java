@@ -744,7 +744,7 @@ public class CloudscapeMataDataInfo
 
   }
 
-  public ArrayList getChildTables(String parentTable) throws RepException {
+  protected ArrayList loadChildTables(String parentTable) throws RepException {
     String foreignTable = null;
     ArrayList childTableList = new ArrayList();
     try {
@@ -773,7 +773,7 @@ public class CloudscapeMataDataInfo
     return childTableList;
   }
 
-  public Object[] getImportedColsOfChildTable(String parentTable,
+  protected Object[] loadImportedColsOfChildTable(String parentTable,
                                               String childTable) throws
       RepException {
     ArrayList fkColsList = new ArrayList();
@@ -1108,7 +1108,7 @@ public class CloudscapeMataDataInfo
     return exportedColumns;
   }
 
-  public void setAllColumns(RepTable repTable, String schemaName,
+  protected void loadAllColumns(RepTable repTable, String schemaName,
                                  String tableName) throws RepException, SQLException {
 
          ResultSet rs = dbmd.getColumns(null, schemaName, tableName, "%");
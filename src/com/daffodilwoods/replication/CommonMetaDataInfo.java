@@ -801,7 +801,7 @@ log.debug(cols.toString());
     }
 
 
-  public ArrayList getChildTables(String parentTable)throws RepException {
+  protected ArrayList loadChildTables(String parentTable)throws RepException {
     String foreignTable =null;
     ArrayList childTableList =new ArrayList();
     try {
@@ -832,7 +832,7 @@ log.debug(cols.toString());
 
 
 
-  public Object[] getImportedColsOfChildTable(String parentTable,String childTable)throws RepException {
+  protected Object[] loadImportedColsOfChildTable(String parentTable,String childTable)throws RepException {
     ArrayList fkColsList=new ArrayList();
     ArrayList referColsList=new ArrayList();
     try {
@@ -1136,7 +1136,7 @@ return exportedColumns;
        }
 
 
-    public void setAllColumns(RepTable repTable, String schemaName,
+    protected void loadAllColumns(RepTable repTable, String schemaName,
                                  String tableName) throws RepException, SQLException {
 
          ResultSet rs = dbmd.getColumns(null, schemaName, tableName, "%");
@@ -32,6 +32,13 @@ import org.apache.log4j.Logger;
  * that helps replication server to get different connections for different
  * publications or subscriptions or default connection.
  * This class stores this connection information in to a Map (connectionMap).
+ *
+ * Replication operations lease their connections instead. Between beginLease
+ * and endLease every pub/sub name asked for in the thread gets its own
+ * connection out of a bounded pool, which is validated before it is handed
+ * out and returned to the pool by endLease. So operations of different
+ * subscriptions run on different connections, and a connection broken by a
+ * restart of the database is replaced by the next operation.
  */
 
 public class ConnectionPool implements java.io.Serializable{
@@ -46,6 +53,15 @@ public class ConnectionPool implements java.io.Serializable{
   // for debugging
   private HashSet openConnectionNames = new HashSet();
 
+  // leased connections of the current thread
+  private transient ThreadLocal leases = new ThreadLocal();
+  // pooled connections not leased at present
+  private transient LinkedList idleConnections = new LinkedList();
+  private transient Object poolLock = new Object();
+  private int activeCount;
+  // statistics
+  private long leasedCount, waitCount, totalWaitTime, maxWaitTime, evictedCount;
+
   public ConnectionPool() {
   }
 
@@ -86,13 +102,62 @@ public class ConnectionPool implements java.io.Serializable{
     }
   }
 
-  public synchronized Connection getConnection(String pubsubName) throws RepException {
+  public Connection getConnection(String pubsubName) throws RepException {
+    Lease lease = (Lease) leases.get();
+    if (lease != null) {
+      return lease.getConnection(pubsubName);
+    }
+    return getSharedConnection(pubsubName);
+  }
+
+  /**
+   * Returns the connection of the lease of the current thread for pubsubName
+   * like getConnection, but waits at most maxWait milliseconds for a pooled
+   * connection and returns null if none has become free by then.
+   * @param pubsubName
+   * @param maxWait milliseconds
+   * @return Connection, null if all the connections of the pool are leased
+   * @throws RepException
+   */
+  public Connection getConnection(String pubsubName, long maxWait) throws RepException {
+    Lease lease = (Lease) leases.get();
+    if (lease == null) {
+      return getSharedConnection(pubsubName);
+    }
+    Connection connection = (Connection) lease.connections.get(pubsubName);
+    if (connection == null) {
+      connection = leaseConnection(maxWait, false);
+      if (connection != null) {
+        lease.connections.put(pubsubName, connection);
+      }
+    }
+    return connection;
+  }
+
+  private synchronized Connection getSharedConnection(String pubsubName) throws RepException {
     if (dataSource != null) {
       return getConnectionFromDataSource();
     }
     Connection connection = (Connection) connectionMap.get(pubsubName);
     if (connection != null) {
-      return connection;
+      try {
+        if (!connection.isClosed()) {
+          return connection;
+        }
+      }
+      catch (SQLException ex) {
+        log.error(ex.getMessage(), ex);
+      }
+      connectionMap.remove(pubsubName);
+    }
+    connection = openConnection();
+    connectionMap.put(pubsubName, connection);
+    return connection;
+  }
+
+  private Connection openConnection() throws RepException {
+    if (dataSource != null) {
+      return getConnectionFromDataSource();
     }
     try {
       Class.forName(driver);
@@ -102,16 +167,286 @@ public class ConnectionPool implements java.io.Serializable{
       throw new RepException("REP005", new Object[] {driver});
     }
     try {
-      connection = DriverManager.getConnection(url, user, password);
+      return DriverManager.getConnection(url, user, password);
     }
     catch (SQLException ex1) {
             log.error(ex1.getMessage(),ex1);
       throw new RepException("REP007", null);
     }
-    connectionMap.put(pubsubName, connection);
-    return connection;
   }
 
+  /**
+   * Starts a lease of the current thread. Till the matching endLease,
+   * getConnection returns a pooled connection per pub/sub name which is not
+   * shared with other threads, and removeSubPubFromMap does nothing. Leases
+   * may be nested, the connections are returned by the outermost endLease.
+   */
+  public void beginLease() {
+    Lease lease = (Lease) leases.get();
+    if (lease == null) {
+      lease = new Lease();
+      leases.set(lease);
+    }
+    lease.depth++;
+  }
+
+  /**
+   * Ends the lease started by beginLease, the outermost call returns the
+   * connections of the lease to the pool. Open transactions on them are
+   * rolled back.
+   */
+  public void endLease() {
+    Lease lease = (Lease) leases.get();
+    if (lease == null || --lease.depth > 0) {
+      return;
+    }
+    leases.set(null);
+    for (Iterator iter = lease.connections.values().iterator(); iter.hasNext(); ) {
+      returnToPool( (Connection) iter.next());
+    }
+  }
+
+  /**
+   * Takes a connection out of the pool, waits at most the pool wait time of
+   * RepConstants if all of them are leased.
+   */
+  private Connection leaseConnection() throws RepException {
+    return leaseConnection(RepConstants.getPoolMaxWait(), true);
+  }
+
+  /**
+   * Takes a connection out of the pool, waits at most maxWait milliseconds
+   * if all of them are leased.
+   * @param maxWait
+   * @param required throw REP062 if no connection has become free in time,
+   * else return null
+   */
+  private Connection leaseConnection(long maxWait, boolean required) throws RepException {
+    long start = System.currentTimeMillis();
+    Connection connection = null;
+    synchronized (poolLock) {
+      boolean waited = false;
+      while (idleConnections.isEmpty() &&
+             activeCount >= RepConstants.getPoolMaxActive()) {
+        long remaining = start + maxWait - System.currentTimeMillis();
+        if (remaining <= 0) {
+          if (!required) {
+            return null;
+          }
+          throw new RepException("REP062", new Object[] {new Long(maxWait / 1000), new Integer(activeCount)});
+        }
+        waited = true;
+        try {
+          poolLock.wait(remaining);
+        }
+        catch (InterruptedException ex) {
+          RepException rex = new RepException("REP062", new Object[] {new Long(maxWait / 1000), new Integer(activeCount)});
+          rex.setStackTrace(ex.getStackTrace());
+          throw rex;
+        }
+      }
+      if (!idleConnections.isEmpty()) {
+        connection = (Connection) idleConnections.removeFirst();
+      }
+      activeCount++;
+      leasedCount++;
+      if (waited) {
+        long waitTime = System.currentTimeMillis() - start;
+        waitCount++;
+        totalWaitTime += waitTime;
+        maxWaitTime = Math.max(maxWaitTime, waitTime);
+        log.debug("waited " + waitTime + " ms for a connection, " + activeCount + " connections leased");
+      }
+    }
+    try {
+      if (connection != null && !isValid(connection)) {
+        closeConnection(connection);
+        synchronized (poolLock) {
+          evictedCount++;
+        }
+        connection = null;
+      }
+      if (connection == null) {
+        connection = openConnection();
+      }
+      return connection;
+    }
+    catch (RepException ex) {
+      synchronized (poolLock) {
+        activeCount--;
+        poolLock.notifyAll();
+      }
+      throw ex;
+    }
+  }
+
+  private void returnToPool(Connection connection) {
+    boolean reusable = false;
+    try {
+      if (!connection.isClosed()) {
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+          connection.setAutoCommit(true);
+        }
+        // the data source pools its connections itself
+        reusable = dataSource == null;
+      }
+    }
+    catch (SQLException ex) {
+      log.error(ex.getMessage(), ex);
+      synchronized (poolLock) {
+        evictedCount++;
+      }
+    }
+    synchronized (poolLock) {
+      activeCount--;
+      if (reusable && idleConnections.size() < RepConstants.getPoolMaxIdle()) {
+        idleConnections.addLast(connection);
+        connection = null;
+      }
+      poolLock.notifyAll();
+    }
+    if (connection != null) {
+      closeConnection(connection);
+    }
+  }
+
+  private boolean isValid(Connection connection) {
+    Statement stmt = null;
+    try {
+      if (connection.isClosed()) {
+        return false;
+      }
+      String query = getValidationQuery();
+      if (query == null || query.length() == 0) {
+        return true;
+      }
+      stmt = connection.createStatement();
+      stmt.execute(query);
+      return true;
+    }
+    catch (SQLException ex) {
+      log.debug("evicting broken connection " + ex.getMessage());
+      return false;
+    }
+    finally {
+      closeStatementAndResultSet(stmt, null);
+    }
+  }
+
+  private String getValidationQuery() {
+    String query = RepConstants.getPoolValidationQuery();
+    if (query != null || url == null) {
+      return query;
+    }
+    String lowerUrl = url.toLowerCase();
+    if (lowerUrl.startsWith("jdbc:oracle")) {
+      return "select 1 from dual";
+    }
+    if (lowerUrl.startsWith("jdbc:db2") || lowerUrl.startsWith("jdbc:derby") ||
+        lowerUrl.startsWith("jdbc:cloudscape")) {
+      return "values 1";
+    }
+    if (lowerUrl.startsWith("jdbc:firebirdsql") || lowerUrl.startsWith("jdbc:interbase")) {
+      return "select 1 from rdb$database";
+    }
+    if (lowerUrl.startsWith("jdbc:postgresql") || lowerUrl.startsWith("jdbc:mysql") ||
+        lowerUrl.startsWith("jdbc:microsoft:sqlserver") || lowerUrl.startsWith("jdbc:sqlserver") ||
+        lowerUrl.startsWith("jdbc:jtds") || lowerUrl.startsWith("jdbc:sybase")) {
+      return "select 1";
+    }
+    return null;
+  }
+
+  private static void closeConnection(Connection connection) {
+    try {
+      connection.close();
+    }
+    catch (SQLException ex) {
+      // connection is given up anyway
+    }
+  }
+
+  /**
+   * Returns the number of connections leased at present.
+   * @return int
+   */
+  public int getActiveCount() {
+    synchronized (poolLock) {
+      return activeCount;
+    }
+  }
+
+  /**
+   * Returns the number of returned connections kept open in the pool.
+   * @return int
+   */
+  public int getIdleCount() {
+    synchronized (poolLock) {
+      return idleConnections.size();
+    }
+  }
+
+  /**
+   * Returns the number of connections leased since the server was started.
+   * @return long
+   */
+  public long getLeasedCount() {
+    synchronized (poolLock) {
+      return leasedCount;
+    }
+  }
+
+  /**
+   * Returns the number of leases which had to wait for a connection.
+   * @return long
+   */
+  public long getWaitCount() {
+    synchronized (poolLock) {
+      return waitCount;
+    }
+  }
+
+  /**
+   * Returns the milliseconds all leases have waited for connections.
+   * @return long
+   */
+  public long getTotalWaitTime() {
+    synchronized (poolLock) {
+      return totalWaitTime;
+    }
+  }
+
+  /**
+   * Returns the longest wait of a lease for a connection in milliseconds.
+   * @return long
+   */
+  public long getMaxWaitTime() {
+    synchronized (poolLock) {
+      return maxWaitTime;
+    }
+  }
+
+  /**
+   * Returns the number of broken connections thrown out of the pool.
+   * @return long
+   */
+  public long getEvictedCount() {
+    synchronized (poolLock) {
+      return evictedCount;
+    }
+  }
+
+  /**
+   * Opens a connection outside the pool, with the schema removed from the
+   * url. It is used by unsubscribe only, which sets the default schema of
+   * the session with AbstractDataBaseHandler.setDefaultSchema before it
+   * drops the subscription. A pooled connection would keep that schema for
+   * its later leases. The caller has to close the connection.
+   * @param pubsubName
+   * @return Connection
+   * @throws RepException
+   */
   public synchronized Connection getFreshConnection(String pubsubName) throws RepException {
     if (dataSource != null) {
       return getConnectionFromDataSource();
@@ -238,6 +573,10 @@ public class ConnectionPool implements java.io.Serializable{
   public void removeSubPubFromMap(String subPubName){
 //System.out.println(" Removed called with "+ subPubName);
 //Thread.dumpStack();
+    // leased connections are returned by endLease
+    if (leases.get() != null) {
+      return;
+    }
     if(connectionMap.containsKey(subPubName)){
      Object object = connectionMap.remove(subPubName);
 //     System.out.println("  Object remvoded for "+subPubName+" -- "+ object);
@@ -262,4 +601,21 @@ public static void closeStatementAndResultSet(Statement stmt,ResultSet rs) {
 
 }
 
+  /**
+   * Connections leased by one thread, pub/sub name -> connection.
+   */
+  private class Lease {
+    int depth;
+    HashMap connections = new HashMap();
+
+    Connection getConnection(String pubsubName) throws RepException {
+      Connection connection = (Connection) connections.get(pubsubName);
+      if (connection == null) {
+        connection = leaseConnection();
+        connections.put(pubsubName, connection);
+      }
+      return connection;
+    }
+  }
+
 }
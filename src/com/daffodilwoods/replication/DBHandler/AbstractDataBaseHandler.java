@@ -43,6 +43,7 @@ public abstract class AbstractDataBaseHandler   {
   protected final static String rep_TableName = "Rep_RepTable";
   protected final static String log_Table = "Rep_LogTable";
   protected final static String Schedule_TableName = "Rep_ScheduleTable";
+  protected final static String applyCheckpoint_TableName = "Rep_ApplyCheckpoint";
   public final static String ignoredColumns_Table = "Rep_IgnoredColumnsTable";
   public final static String trackReplicationTablesUpdation_Table = "Rep_TrackRepTabUpdation";
   public final static String trackPrimaryKeyUpdation_Table = "Rep_trackPrimaryKey";
@@ -187,6 +188,15 @@ public abstract class AbstractDataBaseHandler   {
     catch (SQLException ex2) {
       // Ignore the Exception, System Table alredy exists.
     }
+    try {
+      createApplyCheckpointTable(pubName);
+    }
+    catch (RepException ex2) {
+      throw ex2;
+    }
+    catch (SQLException ex2) {
+      // Ignore the Exception, System Table alredy exists.
+    }
 
     try {
       CreateSequenceOnLogTable(pubName);
@@ -279,6 +289,15 @@ public abstract class AbstractDataBaseHandler   {
     catch (SQLException ex2) {
       // Ignore the Exception, System Table alredy exists.
     }
+    try {
+      createApplyCheckpointTable(subName);
+    }
+    catch (RepException ex2) {
+      throw ex2;
+    }
+    catch (SQLException ex2) {
+      // Ignore the Exception, System Table alredy exists.
+    }
 
     try {
       CreateSequenceOnLogTable(subName);
@@ -384,6 +403,65 @@ public abstract class AbstractDataBaseHandler   {
     runDDL(pubName, bookmarkTableQuery.toString());
   }
 
+  /**
+   * Creates the table keeping the apply checkpoint of the change set being
+   * applied from every remote publication or subscription.
+   * @param pubsubName
+   * @throws SQLException
+   * @throws RepException
+   */
+  protected void createApplyCheckpointTable(String pubsubName) throws SQLException,
+      RepException {
+    StringBuffer checkpointTableQuery = new StringBuffer();
+    checkpointTableQuery.append(" Create Table ")
+        .append(getApplyCheckpointTableName())
+        .append(" ( " + RepConstants.checkpoint_LocalName1 + " varchar(255) not null , " +
+                RepConstants.checkpoint_RemoteName2 + " varchar(255) not null , ")
+        .append(" " + RepConstants.checkpoint_ChangeSet3 + " varchar(64) , " +
+                RepConstants.checkpoint_OperationNo4 + " " + getLongDataType() + " , ")
+        .append(" " + RepConstants.checkpoint_lastSyncId5 + " " + getLongDataType() +
+                " , Primary Key (" + RepConstants.checkpoint_LocalName1 + ", " +
+                RepConstants.checkpoint_RemoteName2 + ") ) ");
+    runDDL(pubsubName, checkpointTableQuery.toString());
+  }
+
+  /**
+   * Creates the apply checkpoint table for publications and subscriptions
+   * made before the table was added to the system tables.
+   * @param pubsubName
+   * @throws RepException
+   */
+  public void checkApplyCheckpointTable(String pubsubName) throws RepException {
+    try {
+      Statement st = connectionPool.getConnection(pubsubName).createStatement();
+      try {
+        st.executeQuery("SELECT " + RepConstants.checkpoint_OperationNo4 + " FROM " +
+                        getApplyCheckpointTableName() + " WHERE 1 = 0").close();
+        return;
+      }
+      finally {
+        st.close();
+      }
+    }
+    catch (SQLException ex) {
+      // table does not exist
+    }
+    try {
+      createApplyCheckpointTable(pubsubName);
+    }
+    catch (SQLException ex) {
+      RepConstants.writeERROR_FILE(ex);
+    }
+  }
+
+  /**
+   * Returns the data type used for sync ids and counters in system tables.
+   * @return String
+   */
+  protected String getLongDataType() {
+    return "bigint";
+  }
+
   protected void createScheduleTable(String subName) throws SQLException,
       RepException {
     StringBuffer ScheduleTableQuery = new StringBuffer();
@@ -501,6 +579,8 @@ public abstract class AbstractDataBaseHandler   {
      } finally {
        if(stt!=null)
      stt.close();
+       // tables and foreign keys created change the metadata of the tables
+       MetaDataCache.invalidateAll();
      }
      // Just Get the Column Sequenes from Create Table Queries
      // and create Shadow Table and Triggers on Shadow Table
@@ -851,6 +931,10 @@ public abstract class AbstractDataBaseHandler   {
     return Schedule_TableName;
   }
 
+  public String getApplyCheckpointTableName() {
+    return applyCheckpoint_TableName;
+  }
+
   public void setColumnPrecisionInTypeInfo(TypeInfo typeInfo, ResultSetMetaData rsmt, int columnIndex) throws SQLException {
     // not implmented . child class sql server, daffodildb,and oracle implement it
   }
@@ -894,6 +978,18 @@ public abstract class AbstractDataBaseHandler   {
     return RepConstants.shadow_Table(tableName);
   }
 
+  /**
+   * Returns the query which reserves the next sync id of the given shadow
+   * table from its sequence or generator, or null if the sync id is an
+   * identity column which can not be drawn from outside the trigger.
+   * Every shadow record written after the reservation gets a higher sync id.
+   * @param shadowTableName
+   * @return String
+   */
+  public String getReserveSyncIdQuery(String shadowTableName) {
+    return null;
+  }
+
   /**
    * Create index on syn_id column of shadowTable to
    * improve the performance of Replicator Operation
@@ -958,6 +1054,7 @@ abstract public int getAppropriateScale(int columnScale) throws RepException;
       try {
         fireDropQuery(con, " drop table " + getPublicationTableName());
         fireDropQuery(con, " drop table " + getBookMarkTableName());
+        fireDropQuery(con, " drop table " + getApplyCheckpointTableName());
         fireDropQuery(con, " drop table " + getRepTableName());
         fireDropQuery(con, " drop table " + getLogTableName());
         fireDropQuery(con, " drop table " + getIgnoredColumns_Table());
@@ -971,6 +1068,7 @@ abstract public int getAppropriateScale(int columnScale) throws RepException;
         try {
           fireDropQuery(con, " drop table " + getSubscriptionTableName());
           fireDropQuery(con, " drop table " + getBookMarkTableName());
+          fireDropQuery(con, " drop table " + getApplyCheckpointTableName());
           fireDropQuery(con, " drop table " + getRepTableName());
           fireDropQuery(con, " drop table " + getLogTableName());
           fireDropQuery(con, " drop table " + getScheduleTableName());
@@ -1090,4 +1188,77 @@ abstract public int getAppropriateScale(int columnScale) throws RepException;
       return columnNames;
     }
 
+  /**
+   * Returns the highest sync id of the shadow table of every table in
+   * repTables, 0 for an empty shadow table or a table without shadow table.
+   * Every change captured by the triggers raises one of the values, so two
+   * equal results mean nothing has been changed in between.
+   * @param connection connection the shadow tables are read on
+   * @param repTables tables of the publication or subscription
+   * @return long[] one value per table in the order of repTables
+   * @throws SQLException
+   */
+  public long[] getShadowWatermark(Connection connection, List repTables) throws SQLException {
+    long[] watermark = new long[repTables.size()];
+    Statement stmt = connection.createStatement();
+    try {
+      for (int i = 0, size = repTables.size(); i < size; i++) {
+        RepTable repTable = (RepTable) repTables.get(i);
+        if (repTable.getCreateShadowTable().equalsIgnoreCase(RepConstants.NO)) {
+          continue;
+        }
+        String shadowTable = getShadowTableName(repTable.getSchemaQualifiedName().toString());
+        ResultSet rs = stmt.executeQuery("select max(" + RepConstants.shadow_sync_id1 + ") from " + shadowTable);
+        try {
+          if (rs.next()) {
+            watermark[i] = rs.getLong(1);
+          }
+        }
+        finally {
+          rs.close();
+        }
+      }
+    }
+    finally {
+      stmt.close();
+    }
+    return watermark;
+  }
+
+  /**
+   * Returns the loader inserting the records of a table while a snapshot is
+   * applied. Handlers return the fastest loader of their database, JDBC
+   * batches are used by default.
+   * @param connection connection the records are inserted on
+   * @param repTable table, its column tree map must have been made
+   * @param columnCount number of columns set by the binder
+   * @param hasLobColumns true if the table has BLOB or CLOB columns
+   * @param binder sets the values of a record on a statement
+   * @return BulkLoader
+   */
+  public BulkLoader getBulkLoader(Connection connection, RepTable repTable, int columnCount,
+                                  boolean hasLobColumns, BulkLoader.RowBinder binder) {
+    return new BatchBulkLoader(this, connection, repTable, columnCount, binder);
+  }
+
+  /**
+   * Adds the statements dropping or disabling the secondary indexes of the
+   * table before a bulk load to deferQueries and the statements restoring
+   * them to restoreQueries. Indexes are not deferred by default.
+   */
+  protected void getDeferIndexQueries(Connection connection, SchemaQualifiedName sname,
+                                      ArrayList deferQueries, ArrayList restoreQueries) throws SQLException {
+  }
+
+  /**
+   * Returns the statement disabling the triggers of the table before a bulk
+   * load, null if the database can not disable them.
+   */
+  protected String getDisableTriggersQuery(SchemaQualifiedName sname) {
+    return null;
+  }
+
+  protected String getEnableTriggersQuery(SchemaQualifiedName sname) {
+    return null;
+  }
 }
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.DBHandler;
+
+import java.sql.*;
+import java.util.*;
+
+import com.daffodilwoods.replication.*;
+
+/**
+ * Loads a chunk of records with one JDBC batch of the single record insert
+ * statement.
+ */
+
+public class BatchBulkLoader extends BulkLoader {
+
+  public BatchBulkLoader(AbstractDataBaseHandler dbHandler0, Connection connection0,
+                         RepTable repTable0, int columnCount0, RowBinder binder0) {
+    super(dbHandler0, connection0, repTable0, columnCount0, binder0);
+  }
+
+  protected void load(List chunk) throws SQLException {
+    PreparedStatement pst = getRowStatement();
+    try {
+      for (int i = 0; i < chunk.size(); i++) {
+        binder.bind(pst, chunk.get(i), 1);
+        pst.addBatch();
+      }
+      pst.executeBatch();
+    }
+    catch (SQLException ex) {
+      pst.clearBatch();
+      throw ex;
+    }
+  }
+
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.DBHandler;
+
+import java.sql.*;
+import java.util.*;
+
+import com.daffodilwoods.replication.*;
+import org.apache.log4j.Logger;
+
+/**
+ * Inserts the records of one table while a snapshot is applied. Records are
+ * collected by addRow and sent to the database in chunks of
+ * BULKLOADCHUNKSIZE records, each chunk in the fastest way the database
+ * offers, and a transaction is committed every BULKLOADCOMMITINTERVAL
+ * records. If a chunk fails it is rolled back and its records are inserted
+ * again one by one, a record which fails then is skipped as the row by row
+ * snapshot does.
+ *
+ * Secondary indexes and triggers of the table can be deferred while the
+ * table is loaded, close restores them.
+ */
+
+public abstract class BulkLoader {
+
+  /**
+   * Sets the values of one record on a statement.
+   */
+  public interface RowBinder {
+
+    /**
+     * @param pst statement
+     * @param row record given to addRow
+     * @param firstIndex index of the parameter of the first column
+     */
+    public void bind(PreparedStatement pst, Object row, int firstIndex) throws SQLException;
+  }
+
+  protected static Logger log = Logger.getLogger(BulkLoader.class.getName());
+
+  protected AbstractDataBaseHandler dbHandler;
+  protected Connection connection;
+  protected RepTable repTable;
+  protected String tableName;
+  protected String columnNames;
+  protected int columnCount;
+  protected RowBinder binder;
+
+  private ArrayList rows = new ArrayList();
+  private int chunkSize, commitInterval, uncommitted, loaded, skipped;
+  private PreparedStatement rowStatement;
+  private ArrayList restoreQueries = new ArrayList();
+  private boolean autoCommit, savepointsSupported, opened;
+
+  /**
+   * @param dbHandler0 handler of the database
+   * @param connection0 connection the records are inserted on
+   * @param repTable0 table, its column tree map must have been made
+   * @param columnCount0 number of columns set by the binder
+   * @param binder0 binder of the records
+   */
+  protected BulkLoader(AbstractDataBaseHandler dbHandler0, Connection connection0,
+                       RepTable repTable0, int columnCount0, RowBinder binder0) {
+    dbHandler = dbHandler0;
+    connection = connection0;
+    repTable = repTable0;
+    tableName = repTable.getSchemaQualifiedName().toString();
+    columnNames = repTable.getInsertColumnNames();
+    columnCount = columnCount0;
+    binder = binder0;
+    chunkSize = RepConstants.getBulkLoadChunkSize();
+    commitInterval = Math.max(RepConstants.getBulkLoadCommitInterval(), chunkSize);
+  }
+
+  /**
+   * Defers indexes and triggers of the table if configured and starts the
+   * transaction of the load.
+   */
+  public void open() throws SQLException {
+    autoCommit = connection.getAutoCommit();
+    ArrayList deferQueries = new ArrayList();
+    SchemaQualifiedName sname = repTable.getSchemaQualifiedName();
+    if (RepConstants.isBulkLoadDeferIndexes()) {
+      dbHandler.getDeferIndexQueries(connection, sname, deferQueries, restoreQueries);
+    }
+    if (RepConstants.isBulkLoadDisableTriggers()) {
+      String disable = dbHandler.getDisableTriggersQuery(sname);
+      if (disable != null) {
+        deferQueries.add(disable);
+        restoreQueries.add(dbHandler.getEnableTriggersQuery(sname));
+      }
+    }
+    opened = true;
+    connection.setAutoCommit(true);
+    executeQueries(deferQueries, true);
+    connection.setAutoCommit(false);
+    try {
+      savepointsSupported = connection.getMetaData().supportsSavepoints();
+    }
+    catch (SQLException ex) {
+      savepointsSupported = false;
+    }
+    catch (AbstractMethodError ex) {
+      savepointsSupported = false;
+    }
+  }
+
+  public void addRow(Object row) throws SQLException {
+    rows.add(row);
+    if (rows.size() >= chunkSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Sends the collected records to the database.
+   */
+  public void flush() throws SQLException {
+    if (rows.isEmpty()) {
+      return;
+    }
+    Savepoint savepoint = uncommitted > 0 ? setSavepoint() : null;
+    try {
+      load(rows);
+      uncommitted += rows.size();
+      loaded += rows.size();
+    }
+    catch (SQLException ex) {
+      log.debug("bulk load of " + rows.size() + " records failed for " + tableName + " : " + ex.getMessage());
+      if (savepoint != null) {
+        connection.rollback(savepoint);
+      }
+      else {
+        connection.rollback();
+      }
+      commit();
+      loadRowByRow();
+    }
+    rows.clear();
+    if (uncommitted >= commitInterval) {
+      commit();
+    }
+  }
+
+  /**
+   * Loads the remaining records, commits and restores the deferred indexes
+   * and triggers of the table.
+   */
+  public void close() throws SQLException {
+    try {
+      flush();
+      commit();
+    }
+    catch (SQLException ex) {
+      connection.rollback();
+      throw ex;
+    }
+    finally {
+      release();
+    }
+    log.info("bulk loaded " + loaded + " records in " + tableName + ", skipped " + skipped);
+  }
+
+  /**
+   * Rolls back the records not committed yet and restores the deferred
+   * indexes and triggers of the table, used if the snapshot has failed.
+   */
+  public void abort() {
+    try {
+      if (opened) {
+        connection.rollback();
+      }
+    }
+    catch (SQLException ex) {
+      RepConstants.writeERROR_FILE(ex);
+    }
+    finally {
+      release();
+    }
+  }
+
+  /**
+   * Inserts the records of one chunk.
+   * @param chunk records given to addRow
+   */
+  protected abstract void load(List chunk) throws SQLException;
+
+  /**
+   * Returns the statement inserting one record.
+   */
+  protected PreparedStatement getRowStatement() throws SQLException {
+    if (rowStatement == null) {
+      rowStatement = connection.prepareStatement(getInsertQuery(1));
+    }
+    return rowStatement;
+  }
+
+  /**
+   * Returns an insert statement for the given number of records.
+   */
+  protected String getInsertQuery(int rowCount) {
+    StringBuffer row = new StringBuffer("( ");
+    for (int i = 0; i < columnCount; i++) {
+      row.append(i == 0 ? "?" : ", ?");
+    }
+    row.append(" )");
+    StringBuffer query = new StringBuffer();
+    query.append("INSERT INTO ").append(tableName).append(" ( ")
+        .append(columnNames).append(" ) VALUES ");
+    for (int i = 0; i < rowCount; i++) {
+      if (i != 0) {
+        query.append(", ");
+      }
+      query.append(row);
+    }
+    return query.toString();
+  }
+
+  protected void closeStatements() {
+  }
+
+  private void loadRowByRow() throws SQLException {
+    PreparedStatement pst = getRowStatement();
+    for (int i = 0; i < rows.size(); i++) {
+      try {
+        binder.bind(pst, rows.get(i), 1);
+        pst.execute();
+        connection.commit();
+        loaded++;
+      }
+      catch (SQLException ex) {
+        //exception is dumped in case when  parent table is not included in the publisher
+        log.debug("record skipped in " + tableName + " : " + ex.getMessage());
+        connection.rollback();
+        skipped++;
+      }
+    }
+    uncommitted = 0;
+  }
+
+  private Savepoint setSavepoint() throws SQLException {
+    if (savepointsSupported) {
+      try {
+        return connection.setSavepoint();
+      }
+      catch (SQLException ex) {
+        savepointsSupported = false;
+      }
+    }
+    // without a savepoint a failed chunk may only roll back itself
+    commit();
+    return null;
+  }
+
+  private void commit() throws SQLException {
+    connection.commit();
+    uncommitted = 0;
+  }
+
+  private void release() {
+    if (!opened) {
+      return;
+    }
+    opened = false;
+    try {
+      if (rowStatement != null) {
+        rowStatement.close();
+      }
+    }
+    catch (SQLException ex) {
+    }
+    closeStatements();
+    try {
+      connection.setAutoCommit(true);
+      executeQueries(restoreQueries, false);
+      connection.setAutoCommit(autoCommit);
+    }
+    catch (SQLException ex) {
+      RepConstants.writeERROR_FILE(ex);
+    }
+  }
+
+  private void executeQueries(ArrayList queries, boolean throwException) throws SQLException {
+    if (queries.isEmpty()) {
+      return;
+    }
+    Statement stmt = connection.createStatement();
+    try {
+      for (int i = 0; i < queries.size(); i++) {
+        String query = (String) queries.get(i);
+        log.debug(query);
+        try {
+          stmt.execute(query);
+        }
+        catch (SQLException ex) {
+          if (throwException) {
+            throw ex;
+          }
+          RepConstants.writeERROR_FILE(ex);
+        }
+      }
+    }
+    finally {
+      stmt.close();
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.DBHandler;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+
+import com.daffodilwoods.replication.*;
+
+/**
+ * Loads a chunk of records with COPY table ( columns ) FROM STDIN through
+ * the CopyManager of the PostgreSQL JDBC driver. The driver is called by
+ * reflection so that the replicator does not depend on it, isSupported
+ * tells if the connection offers the copy API.
+ *
+ * The binder sets the values of a record on a statement which only records
+ * them, the recorded values are written as a line of the COPY text format.
+ * Tables with BLOB or CLOB columns are not loaded with COPY.
+ */
+
+public class CopyBulkLoader extends BulkLoader {
+
+  private Object copyManager;
+  private Method copyIn;
+  private Object[] values;
+  private PreparedStatement valueRecorder;
+
+  private CopyBulkLoader(AbstractDataBaseHandler dbHandler0, Connection connection0,
+                         RepTable repTable0, int columnCount0, RowBinder binder0,
+                         Object copyManager0, Method copyIn0) {
+    super(dbHandler0, connection0, repTable0, columnCount0, binder0);
+    copyManager = copyManager0;
+    copyIn = copyIn0;
+    values = new Object[columnCount];
+    valueRecorder = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+        new Class[] {PreparedStatement.class}, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        return recordValue(method, args);
+      }
+    });
+  }
+
+  /**
+   * Returns a COPY loader for the table, null if the connection does not
+   * offer the copy API.
+   */
+  public static CopyBulkLoader getInstance(AbstractDataBaseHandler dbHandler0, Connection connection0,
+                                           RepTable repTable0, int columnCount0, RowBinder binder0) {
+    try {
+      Class pgConnection = Class.forName("org.postgresql.PGConnection");
+      if (!pgConnection.isInstance(connection0)) {
+        return null;
+      }
+      Object copyManager = pgConnection.getMethod("getCopyAPI", new Class[0]).invoke(connection0, new Object[0]);
+      Method copyIn = copyManager.getClass().getMethod("copyIn", new Class[] {String.class, Reader.class});
+      return new CopyBulkLoader(dbHandler0, connection0, repTable0, columnCount0, binder0, copyManager, copyIn);
+    }
+    catch (Exception ex) {
+      log.debug("COPY is not available : " + ex);
+      return null;
+    }
+  }
+
+  protected void load(List chunk) throws SQLException {
+    StringBuffer data = new StringBuffer();
+    for (int i = 0; i < chunk.size(); i++) {
+      Arrays.fill(values, null);
+      binder.bind(valueRecorder, chunk.get(i), 1);
+      for (int j = 0; j < values.length; j++) {
+        if (j != 0) {
+          data.append('\t');
+        }
+        appendValue(data, values[j]);
+      }
+      data.append('\n');
+    }
+    String query = "COPY " + tableName + " ( " + columnNames + " ) FROM STDIN";
+    try {
+      copyIn.invoke(copyManager, new Object[] {query, new StringReader(data.toString())});
+    }
+    catch (InvocationTargetException ex) {
+      Throwable cause = ex.getTargetException();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      throw new SQLException(cause.toString());
+    }
+    catch (IllegalAccessException ex) {
+      throw new SQLException(ex.toString());
+    }
+  }
+
+  /**
+   * Keeps the value given to a set method of the statement.
+   */
+  private Object recordValue(Method method, Object[] args) throws SQLException {
+    String name = method.getName();
+    if (method.getDeclaringClass() == Object.class) {
+      if (name.equals("equals")) {
+        return Boolean.valueOf(args[0] == valueRecorder);
+      }
+      return name.equals("hashCode") ? (Object) new Integer(System.identityHashCode(this)) : "COPY " + tableName;
+    }
+    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+      int index = ( (Integer) args[0]).intValue();
+      if (index < 1 || index > values.length) {
+        throw new SQLException("Parameter index out of range " + index);
+      }
+      values[index - 1] = name.equals("setNull") ? null : args[1];
+      return null;
+    }
+    throw new SQLException(name + " is not supported while loading with COPY");
+  }
+
+  private void appendValue(StringBuffer data, Object value) throws SQLException {
+    if (value == null) {
+      data.append("\\N");
+    }
+    else if (value instanceof Boolean) {
+      data.append( ( (Boolean) value).booleanValue() ? 't' : 'f');
+    }
+    else if (value instanceof byte[]) {
+      appendBytes(data, (byte[]) value);
+    }
+    else if (value instanceof InputStream) {
+      appendBytes(data, readBytes( (InputStream) value));
+    }
+    else if (value instanceof Reader) {
+      appendText(data, readText( (Reader) value));
+    }
+    else {
+      appendText(data, value.toString());
+    }
+  }
+
+  private void appendText(StringBuffer data, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '\\':
+          data.append("\\\\");
+          break;
+        case '\t':
+          data.append("\\t");
+          break;
+        case '\n':
+          data.append("\\n");
+          break;
+        case '\r':
+          data.append("\\r");
+          break;
+        default:
+          data.append(c);
+      }
+    }
+  }
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private void appendBytes(StringBuffer data, byte[] bytes) {
+    data.append("\\\\x");
+    for (int i = 0; i < bytes.length; i++) {
+      data.append(HEX[ (bytes[i] >> 4) & 0x0f]).append(HEX[bytes[i] & 0x0f]);
+    }
+  }
+
+  private byte[] readBytes(InputStream is) throws SQLException {
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buf = new byte[1024];
+      for (int len = is.read(buf); len > 0; len = is.read(buf)) {
+        bos.write(buf, 0, len);
+      }
+      return bos.toByteArray();
+    }
+    catch (IOException ex) {
+      throw new SQLException(ex.getMessage());
+    }
+  }
+
+  private String readText(Reader reader) throws SQLException {
+    try {
+      StringBuffer text = new StringBuffer();
+      char[] buf = new char[1024];
+      for (int len = reader.read(buf); len > 0; len = reader.read(buf)) {
+        text.append(buf, 0, len);
+      }
+      return text.toString();
+    }
+    catch (IOException ex) {
+      throw new SQLException(ex.getMessage());
+    }
+  }
+
+}
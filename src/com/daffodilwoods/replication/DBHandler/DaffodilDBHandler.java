@@ -34,6 +34,7 @@ public class DaffodilDBHandler
   private String daff_rep_TableName;
   private String daff_log_Table;
   private String daff_schedule_Table;
+  private String daff_applyCheckpoint_Table;
   private String daff_ignoredColumns_Table;
   private String daff_trackReplicationTablesUpdation_Table;
   private String daff_trackPrimaryKeyUpdation_Table = "Rep_trackPrimaryKey";
@@ -51,6 +52,7 @@ public class DaffodilDBHandler
     daff_rep_TableName = "users." + rep_TableName;
     daff_log_Table = "users." + log_Table;
     daff_schedule_Table = "users." + Schedule_TableName;
+    daff_applyCheckpoint_Table = "users." + applyCheckpoint_TableName;
     daff_ignoredColumns_Table = "users." + ignoredColumns_Table;
     daff_trackReplicationTablesUpdation_Table = "users." +trackReplicationTablesUpdation_Table;
     daff_trackPrimaryKeyUpdation_Table ="users."+trackPrimaryKeyUpdation_Table;
@@ -622,6 +624,14 @@ public class DaffodilDBHandler
     return daff_bookmark_TableName;
   }
 
+  public String getApplyCheckpointTableName() {
+    return daff_applyCheckpoint_Table;
+  }
+
+  protected String getLongDataType() {
+    return "Long";
+  }
+
   public boolean isColumnSizeExceedMaximumSize(TypeInfo typeInfo) throws
       SQLException, RepException {
     boolean flag = false;
@@ -70,6 +70,10 @@ public class FireBirdDatabaseHandler
     runDDL(pubName, subsTableQuery);
   }
 
+  protected String getLongDataType() {
+    return "integer";
+  }
+
   protected void createBookMarkTable(String pubName) throws SQLException,
       RepException {
     StringBuffer bookmarkTableQuery = new StringBuffer();
@@ -535,6 +539,11 @@ public class FireBirdDatabaseHandler
     return columnScale;
   }
 
+  public String getReserveSyncIdQuery(String shadowTableName) {
+    return "select GEN_ID(" + RepConstants.gen_ShadowTableName(shadowTableName)
+        + ", 1) from RDB$DATABASE";
+  }
+
   protected void createIndex(String pubsubName, String tableName) throws
       RepException {
     StringBuffer createIndexQuery = new StringBuffer();
@@ -681,6 +690,7 @@ public class FireBirdDatabaseHandler
     try {
       fireDropQuery(con, " drop table " + publication_TableName);
       fireDropQuery(con, " drop table " + bookmark_TableName);
+      fireDropQuery(con, " drop table " + applyCheckpoint_TableName);
       fireDropQuery(con, " drop table " + rep_TableName);
       fireDropQuery(con, " drop table " + log_Table);
       fireDropQuery(con, " drop table " + getIgnoredColumns_Table());
@@ -699,6 +709,7 @@ public class FireBirdDatabaseHandler
     try {
       fireDropQuery(con, " drop table " + subscription_TableName);
       fireDropQuery(con, " drop table " + bookmark_TableName);
+      fireDropQuery(con, " drop table " + applyCheckpoint_TableName);
       fireDropQuery(con, " drop table " + rep_TableName);
       fireDropQuery(con, " drop table " + log_Table);
       fireDropQuery(con, " drop table " + Schedule_TableName);
@@ -185,6 +185,12 @@ public class MYSQLHandler
         .append(" ( ").append(RepConstants.logTable_tableName2)
         .append(" ) values ( '")
         .append(tableName).append("'); ");
+    // in lean capture only the update trigger writes the log table, the
+    // common id is read with last_insert_id instead of max over the table
+    String insertLogTableForRow = RepConstants.isLeanCapture() ? "" : insertLogTable.toString();
+    String selectCommonId = RepConstants.isLeanCapture()
+        ? " Set maxlogid = last_insert_id(); "
+        : " Select max(" + RepConstants.logTable_commonId1 + ") into maxlogid from " + log_Table + "; ";
 
     StringBuffer insTriggerQuery = new StringBuffer();
     insTriggerQuery.append(" Create trigger ")
@@ -192,7 +198,7 @@ public class MYSQLHandler
         .append(" after insert on ").append(tableName)
 //      .append(" Referencing new as newRow For each Row begin ")
         .append("  For each Row begin ")
-        .append(insertLogTable).append(" Insert Into ")
+        .append(insertLogTableForRow).append(" Insert Into ")
         .append(shadowTableName).append(" ( ")
         .append(RepConstants.shadow_common_id2).append(", ")
         .append(RepConstants.shadow_operation3).append(", ")
@@ -209,7 +215,7 @@ public class MYSQLHandler
         .append(" after delete on ").append(tableName)
 //        .append(" Referencing old as oldRow For each Row begin ")
         .append("  For each Row begin ")
-        .append(insertLogTable).append(" Insert Into ")
+        .append(insertLogTableForRow).append(" Insert Into ")
         .append(shadowTableName).append(" ( ")
         .append(RepConstants.shadow_common_id2).append(", ")
         .append(RepConstants.shadow_operation3).append(", ")
@@ -227,9 +233,7 @@ public class MYSQLHandler
 //        .append(" Referencing new as newRow old as oldRow For each Row ")
         .append("  For each Row ")
         .append(" begin declare maxlogid bigint; declare pkchanged char(1); ").append(insertLogTable)
-        .append(" Select max(" + RepConstants.logTable_commonId1 +
-                ") into maxlogid from ")
-        .append(log_Table).append("; ")
+        .append(selectCommonId)
         //-------------
         .append(" if( ");
          for (int i = 0; i < primColsOld.length; i++) {
@@ -819,4 +823,21 @@ public class MYSQLHandler
     return false;
   }
 
+  /**
+   * Records of tables without LOB columns are loaded with multi row insert
+   * statements.
+   */
+  public BulkLoader getBulkLoader(Connection connection, RepTable repTable, int columnCount,
+                                  boolean hasLobColumns, BulkLoader.RowBinder binder) {
+    if (hasLobColumns) {
+      return super.getBulkLoader(connection, repTable, columnCount, hasLobColumns, binder);
+    }
+    return new MultiRowBulkLoader(this, connection, repTable, columnCount, binder, 65535);
+  }
+
+  protected void getDeferIndexQueries(Connection connection, SchemaQualifiedName sname,
+                                      ArrayList deferQueries, ArrayList restoreQueries) throws SQLException {
+    deferQueries.add("ALTER TABLE " + sname + " DISABLE KEYS");
+    restoreQueries.add("ALTER TABLE " + sname + " ENABLE KEYS");
+  }
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.DBHandler;
+
+import java.sql.*;
+import java.util.*;
+
+import com.daffodilwoods.replication.*;
+
+/**
+ * Loads a chunk of records with insert statements carrying many records
+ * each, INSERT INTO table ( columns ) VALUES ( ... ), ( ... ). The number of
+ * records of one statement is limited by the number of parameters the
+ * database accepts in a statement.
+ */
+
+public class MultiRowBulkLoader extends BulkLoader {
+
+  private int rowsPerStatement;
+  private PreparedStatement chunkStatement;
+
+  public MultiRowBulkLoader(AbstractDataBaseHandler dbHandler0, Connection connection0,
+                            RepTable repTable0, int columnCount0, RowBinder binder0,
+                            int maxParameters) {
+    super(dbHandler0, connection0, repTable0, columnCount0, binder0);
+    rowsPerStatement = Math.max(1, Math.min(RepConstants.getBulkLoadChunkSize(),
+                                            maxParameters / Math.max(columnCount, 1)));
+  }
+
+  protected void load(List chunk) throws SQLException {
+    for (int start = 0; start < chunk.size(); start += rowsPerStatement) {
+      int count = Math.min(rowsPerStatement, chunk.size() - start);
+      PreparedStatement pst = count == rowsPerStatement ? getChunkStatement()
+          : connection.prepareStatement(getInsertQuery(count));
+      try {
+        for (int i = 0; i < count; i++) {
+          binder.bind(pst, chunk.get(start + i), i * columnCount + 1);
+        }
+        pst.executeUpdate();
+      }
+      finally {
+        if (pst != chunkStatement) {
+          pst.close();
+        }
+      }
+    }
+  }
+
+  private PreparedStatement getChunkStatement() throws SQLException {
+    if (chunkStatement == null) {
+      chunkStatement = connection.prepareStatement(getInsertQuery(rowsPerStatement));
+    }
+    return chunkStatement;
+  }
+
+  protected void closeStatements() {
+    try {
+      if (chunkStatement != null) {
+        chunkStatement.close();
+      }
+    }
+    catch (SQLException ex) {
+    }
+    chunkStatement = null;
+  }
+
+}
@@ -170,6 +170,10 @@ public class OracleHandler
 
   }
 
+  protected String getLongDataType() {
+    return "NUMBER";
+  }
+
   protected void createBookMarkTable(String pubName) throws SQLException,
       RepException {
     StringBuffer bookmarkTableQuery = new StringBuffer();
@@ -683,6 +687,11 @@ public class OracleHandler
     }
   }
 
+  public String getReserveSyncIdQuery(String shadowTableName) {
+    return "select " + RepConstants.seq_ShadowTableName(shadowTableName)
+        + ".nextVal from dual";
+  }
+
   protected void createIndex(String pubsubName, String tableName) throws
       RepException {
     StringBuffer createIndexQuery = new StringBuffer();
@@ -844,6 +853,7 @@ public class OracleHandler
     try {
       fireDropQuery(con, " drop table " + getPublicationTableName());
       fireDropQuery(con, " drop table " + getBookMarkTableName());
+      fireDropQuery(con, " drop table " + getApplyCheckpointTableName());
       fireDropQuery(con, " drop table " + getRepTableName());
       fireDropQuery(con, " drop table " + getLogTableName());
       fireDropQuery(con, " drop table " + getIgnoredColumns_Table());
@@ -862,6 +872,7 @@ public class OracleHandler
     try {
       fireDropQuery(con, " drop table " + getSubscriptionTableName());
       fireDropQuery(con, " drop table " + getBookMarkTableName());
+      fireDropQuery(con, " drop table " + getApplyCheckpointTableName());
       fireDropQuery(con, " drop table " + getRepTableName());
       fireDropQuery(con, " drop table " + getLogTableName());
       fireDropQuery(con, " drop table " + getScheduleTableName());
@@ -1030,4 +1041,11 @@ void runDDL(String pubsubName, String query) throws SQLException, RepException {
     return true;
   }
 
+  protected String getDisableTriggersQuery(SchemaQualifiedName sname) {
+    return "ALTER TABLE " + sname + " DISABLE ALL TRIGGERS";
+  }
+
+  protected String getEnableTriggersQuery(SchemaQualifiedName sname) {
+    return "ALTER TABLE " + sname + " ENABLE ALL TRIGGERS";
+  }
 }
@@ -207,6 +207,7 @@ public class PostgreSQLHandler
 
     String[] primColsOld = getColumnNameWithOldOrNewPrefix(primCols, "old.");
     String[] primColsNew = getColumnNameWithOldOrNewPrefix(primCols, "new.");
+    String unchangedRow = getUnchangedRowCondition(colInfoList, "old.", "new.");
 
 //create trigger abc after delete on t2 for each row  execute procedure delete_insert();
     String table = tableName.substring(tableName.indexOf('.') + 1);
@@ -245,6 +246,21 @@ public class PostgreSQLHandler
 
     }
 
+    // triggers and functions left by the other capture mode are dropped,
+    // a row trigger can not run the function of a statement trigger
+    try {
+      dropCaptureTriggers(connectionPool.getConnection(pubsubName), tableName);
+    }
+    catch (SQLException ex) {
+      // Ignore Exception
+    }
+    if (RepConstants.isStatementCapture()) {
+      createStatementCaptureTriggers(pubsubName, tableName, shadowTableName,
+                                     colNames, primCols, colInfoList,
+                                     serverName);
+      return;
+    }
+
     try {
       runDDL(pubsubName,
              functionForInsertTrigger(tableName, shadowTableName,
@@ -279,7 +295,8 @@ public class PostgreSQLHandler
                                          primColNameSeqPrefixOldRow,
                                          shadowTableName, colNameSeq,
                                          primColumnNamesSeq, serverName,
-                                         colNameSeqPrefixNewRow,primColsOld,primColsNew));
+                                         colNameSeqPrefixNewRow,primColsOld,primColsNew,
+                                         unchangedRow));
 
          }
        catch (RepException ex) {
@@ -349,7 +366,7 @@ public class PostgreSQLHandler
     sb.append("CREATE FUNCTION " + "\"" + "insert_" + table + "\"" +
               "() RETURNS Trigger AS '")
         .append(" BEGIN ")
-        .append(insertRecordIntoLogTable(tableName)).append(" Insert Into ")
+        .append(insertRecordIntoLogTable(tableName, false)).append(" Insert Into ")
         .append(shadowTableName).append(" ( ")
         .append(RepConstants.shadow_common_id2).append(", ")
         .append(RepConstants.shadow_operation3).append(", ")
@@ -372,19 +389,32 @@ public class PostgreSQLHandler
                                          String colNameSeq,
                                          String primColumnNamesSeq,
                                          String serverName,
-                                         String colNameSeqPrefixNewRow,String[] primColsOld,String[] primColsNew) {
+                                         String colNameSeqPrefixNewRow,String[] primColsOld,String[] primColsNew,
+                                         String unchangedRow) {
     String table = tableName.substring(tableName.indexOf('.') + 1);
     StringBuffer sb = new StringBuffer();
     sb.append("CREATE FUNCTION " + "\"" + "update_" + table + "\"" +
               "() RETURNS Trigger AS '")
         .append(" Declare ")
         .append(" maxlogid bigint; pkchanged char(1); ")
-        .append(" BEGIN ")
-        .append(insertRecordIntoLogTable(tableName))
-        .append(" Select max( " + RepConstants.logTable_commonId1 +
-                " ) into maxlogid from ")
-        .append(pg_log_Table).append(" ; ")
-        .append(" if( ");
+        .append(" BEGIN ");
+    if (RepConstants.isLeanCapture()) {
+      // an update which changes no column has nothing to replicate, the
+      // common id is taken from the sequence of the log table, no row is
+      // written to the log table and no max is read from it
+      if (unchangedRow != null) {
+        sb.append(" if( ").append(unchangedRow).append(" ) then RETURN NULL; end if; ");
+      }
+      sb.append(" maxlogid := nextval(''").append(getLogTableSequenceName())
+          .append("''); ");
+    }
+    else {
+      sb.append(insertRecordIntoLogTable(tableName, true))
+          .append(" Select max( " + RepConstants.logTable_commonId1 +
+                  " ) into maxlogid from ")
+          .append(pg_log_Table).append(" ; ");
+    }
+    sb.append(" if( ");
         for (int i = 0; i < primColsOld.length; i++) {
           if (i != 0)
             sb.append(" and ");
@@ -433,7 +463,7 @@ public class PostgreSQLHandler
     sb.append("CREATE FUNCTION  " + "\"" + "delete_" + table + "\"" +
               "() RETURNS Trigger AS '")
         .append(" BEGIN ")
-        .append(insertRecordIntoLogTable(tableName)).append("  Insert Into ")
+        .append(insertRecordIntoLogTable(tableName, false)).append("  Insert Into ")
         .append(shadowTableName).append(" ( ")
         .append(RepConstants.shadow_common_id2).append(", ")
         .append(RepConstants.shadow_operation3).append(", ")
@@ -449,7 +479,18 @@ public class PostgreSQLHandler
     return sb.toString();
   }
 
-  public String insertRecordIntoLogTable(String tableName) {
+  /**
+   * Returns the insert statement of the log table for the trigger functions
+   * of tableName. The log table row is used only to get the common id of an
+   * update, insert and delete triggers do not write it in lean capture.
+   * @param tableName
+   * @param commonIdRequired
+   * @return String
+   */
+  public String insertRecordIntoLogTable(String tableName, boolean commonIdRequired) {
+    if (!commonIdRequired && RepConstants.isLeanCapture()) {
+      return "";
+    }
     StringBuffer insertLogTable = new StringBuffer();
     insertLogTable.append(" Insert into ")
         .append(pg_log_Table)
@@ -460,6 +501,54 @@ public class PostgreSQLHandler
 
   }
 
+  /**
+   * Returns the sequence of the bigserial common id column of the log table.
+   * @return String
+   */
+  private String getLogTableSequenceName() {
+    return "public." + (log_Table + "_" + RepConstants.logTable_commonId1 + "_seq").toLowerCase();
+  }
+
+  /**
+   * Returns the condition which is true in the update trigger if the update
+   * has not changed any column of the table, or null if a column has a type
+   * which can not be compared.
+   * @param colInfoList
+   * @param oldPrefix
+   * @param newPrefix
+   * @return String
+   */
+  private String getUnchangedRowCondition(ArrayList colInfoList,
+                                          String oldPrefix, String newPrefix) {
+    StringBuffer condition = new StringBuffer();
+    for (int i = 0, size = colInfoList.size(); i < size; i++) {
+      ColumnsInfo columnsInfo = (ColumnsInfo) colInfoList.get(i);
+      String type = columnsInfo.getDataTypeDeclaration();
+      if (type != null && isUncomparableType(type.trim().toLowerCase())) {
+        return null;
+      }
+      if (i != 0) {
+        condition.append(" and ");
+      }
+      condition.append("not (").append(oldPrefix).append(columnsInfo.getColumnName())
+          .append(" is distinct from ").append(newPrefix).append(columnsInfo.getColumnName())
+          .append(")");
+    }
+    return condition.length() == 0 ? null : condition.toString();
+  }
+
+  private static final String[] UNCOMPARABLE_TYPES = {
+      "json", "xml", "point", "line", "lseg", "path", "polygon"};
+
+  private boolean isUncomparableType(String type) {
+    for (int i = 0; i < UNCOMPARABLE_TYPES.length; i++) {
+      if (type.startsWith(UNCOMPARABLE_TYPES[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private String getInsertTriggerName(String schematable) {
     String tableInsert;
     int index = schematable.indexOf('.');
@@ -493,30 +582,159 @@ public class PostgreSQLHandler
   public void dropTriggersAndShadowTable(Connection connection, String table,
                                          String pubsubName) throws SQLException,
       RepException {
-    String tableName = table.substring(table.indexOf('.') + 1);
-    String insertTriggerName = getInsertTriggerName(tableName);
-    String updateTriggerName = getDeleteTriggerName(tableName);
-    String DeleteTriggerName = getUpdateTriggerName(tableName);
+    dropCaptureTriggers(connection, table);
 
-    fireDropQuery(connection,
-                  " drop trigger " + insertTriggerName + " on " + table);
+    fireDropQuery(connection, " drop table  " + RepConstants.shadow_Table(table));
 
-    fireDropQuery(connection,
-                  " drop trigger " + updateTriggerName + " on " + table);
+    fireDropQuery(connection, " delete from " + getLogTableName() + " where " +
+                  RepConstants.logTable_tableName2 + " = '" + table + "'");
+  }
 
+  /**
+   * Drops the insert, delete and update triggers of table and their
+   * functions, row level or statement level.
+   * @param connection
+   * @param table
+   * @throws SQLException
+   */
+  private void dropCaptureTriggers(Connection connection, String table) throws
+      SQLException {
+    String tableName = table.substring(table.indexOf('.') + 1);
     fireDropQuery(connection,
-                  " drop trigger " + DeleteTriggerName + " on " + table);
-
-    fireDropQuery(connection, " drop table  " + RepConstants.shadow_Table(table));
+                  " drop trigger " + getInsertTriggerName(tableName) + " on " + table);
+    fireDropQuery(connection,
+                  " drop trigger " + getDeleteTriggerName(tableName) + " on " + table);
+    fireDropQuery(connection,
+                  " drop trigger " + getUpdateTriggerName(tableName) + " on " + table);
+    fireDropQuery(connection, " drop function \"insert_" + tableName + "\"()");
+    fireDropQuery(connection, " drop function \"delete_" + tableName + "\"()");
+    fireDropQuery(connection, " drop function \"update_" + tableName + "\"()");
+  }
 
-    fireDropQuery(connection, " drop function " + "insert_" + tableName + "()");
+  /**
+   * Creates statement level triggers on tableName which read the rows of a
+   * statement from its transition tables and write them to the shadow table
+   * with one insert per operation, so a bulk statement runs each trigger
+   * function once. The before image of an update is paired with its after
+   * image on the primary key, an update which changes the primary key of a
+   * row is recorded as the delete of the old key and the insert of the new
+   * one. Transition tables need PostgreSQL 10 or later.
+   * @param pubsubName
+   * @param tableName
+   * @param shadowTableName
+   * @param colNames
+   * @param primCols
+   * @param colInfoList
+   * @param serverName
+   * @throws RepException
+   */
+  private void createStatementCaptureTriggers(String pubsubName,
+                                              String tableName,
+                                              String shadowTableName,
+                                              String[] colNames,
+                                              String[] primCols,
+                                              ArrayList colInfoList,
+                                              String serverName) throws
+      RepException {
+    String table = tableName.substring(tableName.indexOf('.') + 1);
+    String shadowColumns = RepConstants.shadow_common_id2 + ", " +
+        RepConstants.shadow_operation3 + ", " + RepConstants.shadow_status4 +
+        ", " + getColumnNameSequence(colNames, "") +
+        getColumnNameSequence(primCols, "rep_old_") +
+        RepConstants.shadow_serverName_n;
+    StringBuffer keyMatch = new StringBuffer();
+    for (int i = 0; i < primCols.length; i++) {
+      if (i != 0) {
+        keyMatch.append(" and ");
+      }
+      keyMatch.append("o.").append(primCols[i]).append(" = n.").append(primCols[i]);
+    }
 
-    fireDropQuery(connection, " drop function " + "delete_" + tableName + "()");
+    String insertBody = insertTransitionRows(shadowTableName, shadowColumns,
+        "I", "rep_new", "n", colNames, primCols, serverName, null);
+    String deleteBody = insertTransitionRows(shadowTableName, shadowColumns,
+        "D", "rep_old", "o", colNames, primCols, serverName, null);
+
+    StringBuffer updateBody = new StringBuffer();
+    updateBody.append(insertTransitionRows(shadowTableName, shadowColumns,
+        "D", "rep_old", "o", colNames, primCols, serverName,
+        "not exists ( Select 1 From rep_new n Where " + keyMatch + " )"));
+    // both images of an update get one common id, the before image is
+    // written just before its after image as the row trigger does
+    updateBody.append(" With rep_changed as ( Select nextval(''")
+        .append(getLogTableSequenceName())
+        .append("'') as rep_cid , o as rep_o , n as rep_n From rep_old o")
+        .append(" Join rep_new n On ( ").append(keyMatch).append(" )");
+    String unchangedRow = RepConstants.isLeanCapture()
+        ? getUnchangedRowCondition(colInfoList, "o.", "n.") : null;
+    if (unchangedRow != null) {
+      updateBody.append(" Where not ( ").append(unchangedRow).append(" )");
+    }
+    updateBody.append(" ) Insert Into ").append(shadowTableName)
+        .append(" ( ").append(shadowColumns).append(" )")
+        .append(" Select rep_cid , ''U'' , ''B'' , ")
+        .append(getColumnNameSequence(colNames, "(rep_o)."))
+        .append(getColumnNameSequence(primCols, "(rep_o)."))
+        .append(" ''").append(serverName).append("'' From rep_changed")
+        .append(" Union All Select rep_cid , ''U'' , ''A'' , ")
+        .append(getColumnNameSequence(colNames, "(rep_n)."))
+        .append(getColumnNameSequence(primCols, "(rep_o)."))
+        .append(" ''").append(serverName).append("'' From rep_changed")
+        .append(" Order By 1 , 3 desc ; ");
+    updateBody.append(insertTransitionRows(shadowTableName, shadowColumns,
+        "I", "rep_new", "n", colNames, primCols, serverName,
+        "not exists ( Select 1 From rep_old o Where " + keyMatch + " )"));
+
+    String[] queries = {
+        triggerFunction("insert_" + table, insertBody),
+        triggerFunction("delete_" + table, deleteBody),
+        triggerFunction("update_" + table, updateBody.toString()),
+        " Create trigger " + getInsertTriggerName(table) + " after insert on " +
+        tableName + " Referencing new table as rep_new For each Statement" +
+        " execute procedure \"insert_" + table + "\"()",
+        " Create trigger " + getDeleteTriggerName(table) + " after delete on " +
+        tableName + " Referencing old table as rep_old For each Statement" +
+        " execute procedure \"delete_" + table + "\"()",
+        " Create trigger " + getUpdateTriggerName(table) + " after update on " +
+        tableName + " Referencing old table as rep_old new table as rep_new" +
+        " For each Statement execute procedure \"update_" + table + "\"()"};
+    for (int i = 0; i < queries.length; i++) {
+      try {
+        runDDL(pubsubName, queries[i]);
+      }
+      catch (SQLException ex) {
+        log.error(ex.getMessage(), ex);
+        throw new RepException("REP063", new Object[] {tableName, ex.getMessage()});
+      }
+    }
+  }
 
-    fireDropQuery(connection, " drop function " + "update_" + tableName + "()");
+  /**
+   * Returns the insert of the statement level trigger function which writes
+   * the rows of a transition table to the shadow table.
+   */
+  private String insertTransitionRows(String shadowTableName,
+                                      String shadowColumns, String operation,
+                                      String transitionTable, String alias,
+                                      String[] colNames, String[] primCols,
+                                      String serverName, String condition) {
+    StringBuffer sb = new StringBuffer();
+    sb.append(" Insert Into ").append(shadowTableName)
+        .append(" ( ").append(shadowColumns).append(" )")
+        .append(" Select null , ''").append(operation).append("'' , null , ")
+        .append(getColumnNameSequence(colNames, alias + "."))
+        .append(getColumnNameSequence(primCols, alias + "."))
+        .append(" ''").append(serverName).append("'' From ")
+        .append(transitionTable).append(" ").append(alias);
+    if (condition != null) {
+      sb.append(" Where ").append(condition);
+    }
+    return sb.append(" ; ").toString();
+  }
 
-    fireDropQuery(connection, " delete from " + getLogTableName() + " where " +
-                  RepConstants.logTable_tableName2 + " = '" + table + "'");
+  private String triggerFunction(String functionName, String body) {
+    return "CREATE FUNCTION \"" + functionName + "\"() RETURNS Trigger AS '" +
+        " BEGIN " + body + " RETURN NULL; END; ' LANGUAGE 'plpgsql' VOLATILE ";
   }
 
   private static String getObjectName(String schematable, String prefix) {
@@ -903,6 +1121,16 @@ public class PostgreSQLHandler
 
   }
 
+  /**
+   * Draws from the sequence of the bigserial sync id column.
+   * @param shadowTableName
+   * @return String
+   */
+  public String getReserveSyncIdQuery(String shadowTableName) {
+    return "select nextval(pg_get_serial_sequence('" + shadowTableName + "', '"
+        + RepConstants.shadow_sync_id1.toLowerCase() + "'))";
+  }
+
   protected void createIndex(String pubsubName, String tableName) throws
       RepException {
     StringBuffer createIndexQuery = new StringBuffer();
@@ -1088,4 +1316,53 @@ public class PostgreSQLHandler
        $$
    */
 
- }
+  /**
+   * Records of tables without LOB columns are loaded with COPY if the
+   * driver offers the copy API.
+   */
+  public BulkLoader getBulkLoader(Connection connection, RepTable repTable, int columnCount,
+                                  boolean hasLobColumns, BulkLoader.RowBinder binder) {
+    BulkLoader loader = hasLobColumns ? null
+        : CopyBulkLoader.getInstance(this, connection, repTable, columnCount, binder);
+    return loader != null ? loader : super.getBulkLoader(connection, repTable, columnCount, hasLobColumns, binder);
+  }
+
+  /**
+   * Indexes which do not belong to a constraint are dropped and created
+   * again from their definition. The definitions are logged, so an index
+   * can be created by hand if the load ends before restoring it.
+   */
+  protected void getDeferIndexQueries(Connection connection, SchemaQualifiedName sname,
+                                      ArrayList deferQueries, ArrayList restoreQueries) throws SQLException {
+    PreparedStatement pst = connection.prepareStatement(
+        "SELECT n.nspname, ci.relname, pg_get_indexdef(x.indexrelid) FROM pg_index x " +
+        " JOIN pg_class ci ON ci.oid = x.indexrelid " +
+        " JOIN pg_class ct ON ct.oid = x.indrelid " +
+        " JOIN pg_namespace n ON n.oid = ct.relnamespace " +
+        " WHERE lower(n.nspname) = lower(?) AND lower(ct.relname) = lower(?) " +
+        " AND NOT EXISTS ( SELECT 1 FROM pg_constraint c WHERE c.conindid = x.indexrelid )");
+    try {
+      pst.setString(1, sname.getSchemaName() == null ? "public" : sname.getSchemaName());
+      pst.setString(2, sname.getTableName());
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        String indexDef = rs.getString(3);
+        log.info("Index " + rs.getString(2) + " of " + sname + " is dropped for the bulk load : " + indexDef);
+        deferQueries.add("DROP INDEX \"" + rs.getString(1) + "\".\"" + rs.getString(2) + "\"");
+        restoreQueries.add(indexDef);
+      }
+      rs.close();
+    }
+    finally {
+      pst.close();
+    }
+  }
+
+  protected String getDisableTriggersQuery(SchemaQualifiedName sname) {
+    return "ALTER TABLE " + sname + " DISABLE TRIGGER USER";
+  }
+
+  protected String getEnableTriggersQuery(SchemaQualifiedName sname) {
+    return "ALTER TABLE " + sname + " ENABLE TRIGGER USER";
+  }
+}
@@ -321,9 +321,10 @@ public class SQLServerHandler
         .append(" while @@fetch_status = 0 ").append(" begin ")
 
         .append(insertLogTable.toString())
-        .append(" Select @maxlogid = max(").append(RepConstants.
-        logTable_commonId1)
-        .append(") from ").append(getLogTableName()).append(" ;  ")
+        .append(RepConstants.isLeanCapture()
+                ? " Select @maxlogid = scope_identity() ;  "
+                : " Select @maxlogid = max(" + RepConstants.logTable_commonId1 +
+                  ") from " + getLogTableName() + " ;  ")
 
 //       .append(trackPriamryKeyUpdation(oldPrimaryKeyValues,newPrimaryKeyValues,primCols,tableName))
 
@@ -893,4 +894,11 @@ public class SQLServerHandler
     return true;
   }
 
+  protected String getDisableTriggersQuery(SchemaQualifiedName sname) {
+    return "ALTER TABLE " + sname + " DISABLE TRIGGER ALL";
+  }
+
+  protected String getEnableTriggersQuery(SchemaQualifiedName sname) {
+    return "ALTER TABLE " + sname + " ENABLE TRIGGER ALL";
+  }
 }
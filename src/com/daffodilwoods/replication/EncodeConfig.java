@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class keeps the columns of Encodeconfig.ini whose values are written
+ * with UNICODE escapes. The file is read once and read again only after it
+ * has been changed, so the columns of a table are not loaded from disk for
+ * every table of every synchronization and snapshot.
+ */
+
+public class EncodeConfig {
+
+  private static final File file = new File("." + File.separator + "Encodeconfig.ini");
+  private static Properties properties;
+  private static long lastModified = -1, length = -1;
+  // upper case table name -> ArrayList of the encoded columns
+  private static HashMap encodedColumns = new HashMap();
+
+  private EncodeConfig() {
+  }
+
+  /**
+   * Returns the encoded columns given for the table in Encodeconfig.ini, a
+   * list with an empty column name if there are none. Encodeconfig.ini is
+   * created if it does not exist.
+   * @param tableName
+   * @return ArrayList
+   */
+  public static synchronized ArrayList getEncodedColumns(String tableName) {
+    try {
+      checkLoaded();
+    }
+    catch (IOException ex) {
+      RepConstants.writeERROR_FILE(ex);
+      return new ArrayList();
+    }
+    String key = tableName.toUpperCase();
+    ArrayList list = (ArrayList) encodedColumns.get(key);
+    if (list == null) {
+      list = new ArrayList();
+      String colslist = properties.getProperty(key, "");
+      if (colslist.indexOf(",") == -1) {
+        list.add(colslist);
+      }
+      else {
+        StringTokenizer st = new StringTokenizer(colslist, ",");
+        while (st.hasMoreTokens()) {
+          list.add(st.nextToken());
+        }
+      }
+      encodedColumns.put(key, list);
+    }
+    return new ArrayList(list);
+  }
+
+  /**
+   * Reads Encodeconfig.ini again on the next call of getEncodedColumns.
+   */
+  public static synchronized void reload() {
+    properties = null;
+  }
+
+  private static void checkLoaded() throws IOException {
+    if (!file.exists()) {
+      file.createNewFile();
+    }
+    long modified = file.lastModified();
+    long size = file.length();
+    if (properties != null && modified == lastModified && size == length) {
+      return;
+    }
+    Properties p = new Properties();
+    FileInputStream in = new FileInputStream(file);
+    try {
+      p.load(in);
+    }
+    finally {
+      in.close();
+    }
+    properties = p;
+    lastModified = modified;
+    length = size;
+    encodedColumns.clear();
+  }
+
+}
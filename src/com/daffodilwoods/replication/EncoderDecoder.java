@@ -18,10 +18,14 @@
 
 package com.daffodilwoods.replication;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Hashtable;
 
+import com.daffodilwoods.replication.xml.ChangeSetMarkup;
+
 /**
  * <p>Title: </p>
  * <p>Description: </p>
@@ -34,6 +38,17 @@ import java.util.Hashtable;
 public class EncoderDecoder {
   private static Map entities;
 
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+  // value of every hex digit char, -1 for the other chars below 128
+  private static final int[] HEX_VALUES = new int[128];
+  static {
+    for (int i = 0; i < HEX_VALUES.length; i++) {
+      HEX_VALUES[i] = Character.digit( (char) i, 16);
+    }
+  }
+  // chars escaped in one write to the Writer
+  private static final int ESCAPE_CHUNK = 1024;
+
   public EncoderDecoder() {
   }
 
@@ -74,30 +89,72 @@ public class EncoderDecoder {
 
  public   static String escapeUnicodeString1(String str, boolean escapeAscii)
 {
-  StringBuffer ostr = new StringBuffer();
-  for(int i=0; i<str.length(); i++) {
-     char ch = str.charAt(i);
-     if (!escapeAscii && ((ch >= 0x0020) && (ch <= 0x007e))){
-       ostr.append(ch)  ;
-     }
-     else {
-        ostr.append("\\u");
-        String hex = Integer.toHexString(str.charAt(i) & 0xFFFF);
-//        System.out.println(ch+" hex string  "+ hex);
-        if (hex.length() == 2)
-           ostr.append("00");
-         else if(hex.length() == 1)
-           ostr.append("000");
-         else if(hex.length() == 3)
-           ostr.append("0");
-
-        ostr.append( hex.toUpperCase(Locale.ENGLISH));
-     }
+  int length = str.length();
+  char[] buffer = new char[escapeAscii ? length * 6 : length + 16];
+  int pos = 0;
+  for (int i = 0; i < length; i++) {
+    if (pos + 6 > buffer.length) {
+      char[] larger = new char[Math.max(buffer.length * 2, pos + 6 * (length - i))];
+      System.arraycopy(buffer, 0, larger, 0, pos);
+      buffer = larger;
+    }
+    pos = escape(str.charAt(i), escapeAscii, buffer, pos);
   }
-//System.out.println(" ostr.toString() ="+ostr.toString());
-  return ostr.toString();
+  return new String(buffer, 0, pos);
 }
 
+  /**
+   * Writes str to out with its chars converted to UNICODE escapes in the
+   * same way as escapeUnicodeString1, without making the escaped String.
+   * @param out
+   * @param str
+   * @param escapeAscii
+   * @throws IOException
+   */
+  public static void escapeUnicode(Writer out, String str, boolean escapeAscii) throws IOException
+  {
+    int length = str.length();
+    char[] buffer = new char[Math.min(length, ESCAPE_CHUNK) * 6];
+    int pos = 0;
+    for (int i = 0; i < length; i++) {
+      if (pos + 6 > buffer.length) {
+        out.write(buffer, 0, pos);
+        pos = 0;
+      }
+      pos = escape(str.charAt(i), escapeAscii, buffer, pos);
+    }
+    out.write(buffer, 0, pos);
+  }
+
+  /**
+   * Writes str to out as a CDATA section with its chars converted to UNICODE
+   * escapes, used for the encoded columns of Encodeconfig.ini.
+   * @param out
+   * @param str
+   * @throws IOException
+   */
+  public static void writeEscapedCDATA(Writer out, String str) throws IOException
+  {
+    ChangeSetMarkup.startCDATA(out);
+    escapeUnicode(out, str, true);
+    ChangeSetMarkup.endCDATA(out);
+  }
+
+  private static int escape(char ch, boolean escapeAscii, char[] buffer, int pos)
+  {
+    if (!escapeAscii && ch >= 0x0020 && ch <= 0x007e) {
+      buffer[pos++] = ch;
+      return pos;
+    }
+    buffer[pos++] = '\\';
+    buffer[pos++] = 'u';
+    buffer[pos++] = HEX_DIGITS[(ch >> 12) & 0xF];
+    buffer[pos++] = HEX_DIGITS[(ch >> 8) & 0xF];
+    buffer[pos++] = HEX_DIGITS[(ch >> 4) & 0xF];
+    buffer[pos++] = HEX_DIGITS[ch & 0xF];
+    return pos;
+  }
+
 
  private synchronized static Map getEntities()
   {
@@ -363,19 +420,31 @@ public class EncoderDecoder {
        return ostr.toString();
   }
 
+  /**
+   * Converts the UNICODE escapes written by escapeUnicodeString1 with
+   * escapeAscii true back to the chars, '\u0061' to 'a'.
+   * @param str
+   * @return
+   */
   public static String decodeNew(String str){
-      StringBuffer sb = new StringBuffer();
-      int i =2,j=6;
-//System.out.println("EncoderDecoder.decodeNew(str) ="+str);
-      while(i<=str.length()){
-        String ss= str.substring(i,j);
-         char c2 =(char) Integer.parseInt(ss,16);
-         i+=6;
-         j+=6;
-         sb.append(c2);
+      int length = str.length() / 6;
+      char[] chars = new char[length];
+      for (int i = 0, pos = 2; i < length; i++, pos += 6) {
+        chars[i] = (char) (hexValue(str, pos) << 12 | hexValue(str, pos + 1) << 8 |
+                           hexValue(str, pos + 2) << 4 | hexValue(str, pos + 3));
       }
-      return sb.toString();
+      return new String(chars);
     }
 
+  private static int hexValue(String str, int pos)
+  {
+    char ch = str.charAt(pos);
+    int value = ch < HEX_VALUES.length ? HEX_VALUES[ch] : -1;
+    if (value == -1) {
+      throw new NumberFormatException("For input string: \"" + str + "\"");
+    }
+    return value;
+  }
+
 
 }
@@ -20,15 +20,34 @@ package com.daffodilwoods.replication;
 import java.rmi.server.*;
 import java.rmi.RemoteException;
 import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
 
 public class FileUpload extends  UnicastRemoteObject implements _FileUpload{
 
  private File file;
  private FileOutputStream output;
+ // spool session the files are written in, null for the common directory
+ private String sessionId;
+
+ // state of a chunked upload
+ private RandomAccessFile chunkFile;
+ private String chunkFileName, transferId;
+ private long fileLength, receivedOffset;
+ // offset -> end of the chunks received after receivedOffset
+ private TreeMap receivedChunks = new TreeMap();
 
   public FileUpload() throws RemoteException {
   }
 
+  public FileUpload(String sessionId0) throws RemoteException {
+    sessionId = sessionId0;
+  }
+
+  public void setSessionId(String sessionId0) {
+    sessionId = sessionId0;
+  }
+
 
   /**
    * fileStart
@@ -37,12 +56,7 @@ public class FileUpload extends  UnicastRemoteObject implements _FileUpload{
    */
   public void fileStart(String fileName,boolean isFileForSynchronization)  throws RepException {
   try {
-    if (isFileForSynchronization) {
-      file = new File(PathHandler.getDefaultZIPFilePathForClient(fileName));
-    }
-    else {
-      file = new File(PathHandler.getDefaultZIPFilePathForCreateStructure(fileName));
-    }
+    file = getUploadFile(fileName, isFileForSynchronization);
     output = new FileOutputStream(file);
   }
   catch (FileNotFoundException ex) {
@@ -75,6 +89,10 @@ public class FileUpload extends  UnicastRemoteObject implements _FileUpload{
    * @param FileName String
    */
   public void closeFile()  throws RepException {
+        if (chunkFile != null) {
+          closeChunkFile();
+          return;
+        }
         try {
           output.close();
         }
@@ -84,4 +102,118 @@ public class FileUpload extends  UnicastRemoteObject implements _FileUpload{
         }
   }
 
+  public int getChunkSize(int requestedChunkSize) {
+    return Math.min(requestedChunkSize, RepConstants.getTransferChunkSize());
+  }
+
+  /**
+   * fileStart for a chunked upload. The file is kept open till closeFile, if
+   * it is started again with the same transfer id the upload is resumed from
+   * the last chunk received without a gap. A file left over by another
+   * upload of the same name and length is written again.
+   *
+   * @param fileName String
+   * @param fileLength long
+   * @param transferId0 id the sender has chosen for the upload
+   * @return long offset to resume from
+   */
+  public synchronized long fileStart(String fileName, boolean isFileForSynchronization, long fileLength0, String transferId0) throws RepException {
+    if (chunkFile != null && transferId0.equals(transferId) && fileName.equals(chunkFileName) && fileLength == fileLength0) {
+      return receivedOffset;
+    }
+    try {
+      if (chunkFile != null) {
+        chunkFile.close();
+      }
+      file = getUploadFile(fileName, isFileForSynchronization);
+      chunkFile = new RandomAccessFile(file, "rw");
+      chunkFile.setLength(0);
+      chunkFileName = fileName;
+      transferId = transferId0;
+      fileLength = fileLength0;
+      receivedOffset = 0;
+      receivedChunks.clear();
+      return 0;
+    }
+    catch (IOException ex) {
+      RepConstants.writeERROR_FILE(ex);
+      chunkFile = null;
+      throw new RepException("REP085", null);
+    }
+  }
+
+  /**
+   * writeChunk
+   *
+   * @param offset long
+   * @param bytes byte[]
+   * @param checksum CRC32 of the bytes
+   */
+  public void writeChunk(long offset, byte[] bytes, int length, long checksum) throws RepException {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, length);
+    if (crc.getValue() != checksum) {
+      throw new RepException("REP088", new Object[] {new Long(offset), chunkFileName});
+    }
+    synchronized (this) {
+      if (chunkFile == null) {
+        throw new RepException("REP085", null);
+      }
+      try {
+        chunkFile.seek(offset);
+        chunkFile.write(bytes, 0, length);
+      }
+      catch (IOException ex) {
+        RepConstants.writeERROR_FILE(ex);
+        throw new RepException("REP086", new Object[] {ex.getMessage()});
+      }
+      receivedChunks.put(new Long(offset), new Long(offset + length));
+      while (!receivedChunks.isEmpty()) {
+        Long first = (Long) receivedChunks.firstKey();
+        if (first.longValue() > receivedOffset) {
+          break;
+        }
+        receivedOffset = Math.max(receivedOffset, ( (Long) receivedChunks.remove(first)).longValue());
+      }
+    }
+  }
+
+  /**
+   * Returns the zip file the upload is written to, inside the directory of
+   * the spool session if there is one.
+   */
+  private File getUploadFile(String fileName, boolean isFileForSynchronization) {
+    if (!isFileForSynchronization) {
+      return new File(PathHandler.getDefaultZIPFilePathForCreateStructure(fileName));
+    }
+    SpoolSession session = sessionId == null ? null : SpoolSession.open(sessionId);
+    try {
+      return new File(PathHandler.getDefaultZIPFilePathForClient(fileName));
+    }
+    finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
+  private synchronized void closeChunkFile() throws RepException {
+    try {
+      chunkFile.close();
+    }
+    catch (IOException ex) {
+      RepConstants.writeERROR_FILE(ex);
+      throw new RepException("REP085", null);
+    }
+    finally {
+      chunkFile = null;
+      chunkFileName = null;
+      transferId = null;
+      receivedChunks.clear();
+    }
+    if (receivedOffset != fileLength) {
+      throw new RepException("REP089", new Object[] {file.getName(), new Long(receivedOffset), "file is incomplete"});
+    }
+  }
+
 }
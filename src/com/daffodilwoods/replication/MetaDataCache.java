@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * This class keeps the metadata of the replicated tables read by MetaDataInfo
+ * through DatabaseMetaData, so that the primary keys, foreign keys and
+ * columns of a table are read from the catalog of the database once instead
+ * of for every publication load, every merge and every operation applied.
+ *
+ * The entries are kept per database, identified by the url and user of the
+ * connection, and per table. Creating a publication, subscribing and adding
+ * tables to a publication or dropping them may find a changed catalog,
+ * invalidate is called for those tables and their metadata is read again on
+ * the next lookup. The entries of foreign key relations are dropped for all
+ * the tables then, as they depend on the other tables of the relation too.
+ *
+ * Arrays, lists and maps are copied when they are put and when they are
+ * returned, so a caller changing its copy does not change the cache.
+ */
+
+public class MetaDataCache {
+
+  /**
+   * Returned by get for an entry which is not cached. A cached null is
+   * returned as null.
+   */
+  public static final Object MISSING = new Object();
+
+  public static final String PRIMARY_COLUMNS = "primaryColumns";
+  public static final String ALL_COLUMNS = "allColumns";
+  // entries of foreign key relations start with RELATION
+  public static final String RELATION = "fk.";
+  public static final String FOREIGN_KEY_COLUMNS = RELATION + "foreignKeyColumns";
+  public static final String CHILD_TABLES = RELATION + "childTables";
+  public static final String EXPORTED_COLUMNS = RELATION + "exportedColumns";
+  public static final String IMPORTED_COLUMNS = RELATION + "importedColumns.";
+
+  private static final Object NULL = new Object();
+
+  // database key -> HashMap of upper case table name -> HashMap of entries
+  private static HashMap databases = new HashMap();
+  // Connection -> database product name
+  private static WeakHashMap vendorNames = new WeakHashMap();
+
+  private MetaDataCache() {
+  }
+
+  /**
+   * Returns the key the metadata of the database of dbmd is kept under.
+   * @param dbmd
+   * @return String
+   */
+  public static String getDatabaseKey(DatabaseMetaData dbmd) {
+    try {
+      return dbmd.getURL() + "|" + dbmd.getUserName();
+    }
+    catch (SQLException ex) {
+      // not shared with the other connections of the database
+      return "connection|" + System.identityHashCode(dbmd);
+    }
+  }
+
+  public static synchronized Object get(String database, String tableName, String entry) {
+    HashMap tables = (HashMap) databases.get(database);
+    HashMap entries = tables == null ? null : (HashMap) tables.get(tableName.toUpperCase());
+    Object value = entries == null ? null : entries.get(entry);
+    if (value == null) {
+      return MISSING;
+    }
+    return value == NULL ? null : copy(value);
+  }
+
+  public static synchronized void put(String database, String tableName, String entry, Object value) {
+    HashMap tables = (HashMap) databases.get(database);
+    if (tables == null) {
+      tables = new HashMap();
+      databases.put(database, tables);
+    }
+    String key = tableName.toUpperCase();
+    HashMap entries = (HashMap) tables.get(key);
+    if (entries == null) {
+      entries = new HashMap();
+      tables.put(key, entries);
+    }
+    entries.put(entry, value == null ? NULL : copy(value));
+  }
+
+  private static Object copy(Object value) {
+    if (value instanceof String[]) {
+      return ( (String[]) value).clone();
+    }
+    if (value instanceof Object[]) {
+      Object[] values = (Object[]) ( (Object[]) value).clone();
+      for (int i = 0; i < values.length; i++) {
+        values[i] = copy(values[i]);
+      }
+      return values;
+    }
+    if (value instanceof ArrayList) {
+      return new ArrayList( (ArrayList) value);
+    }
+    if (value instanceof HashMap) {
+      return new HashMap( (HashMap) value);
+    }
+    return value;
+  }
+
+  /**
+   * Drops the entries of the tables, see invalidate(String).
+   * @param tableNames
+   */
+  public static void invalidate(String[] tableNames) {
+    for (int i = 0; i < tableNames.length; i++) {
+      invalidate(tableNames[i]);
+    }
+  }
+
+  /**
+   * Drops the entries of the table in all the databases and the foreign key
+   * relations of all the tables. tableName may be given with or without
+   * schema.
+   * @param tableName
+   */
+  public static synchronized void invalidate(String tableName) {
+    String name = tableName.toUpperCase();
+    for (Iterator iter = databases.values().iterator(); iter.hasNext(); ) {
+      HashMap tables = (HashMap) iter.next();
+      for (Iterator tableIter = tables.entrySet().iterator(); tableIter.hasNext(); ) {
+        Map.Entry table = (Map.Entry) tableIter.next();
+        String key = (String) table.getKey();
+        if (key.equals(name) || key.endsWith("." + name) || name.endsWith("." + key)) {
+          tableIter.remove();
+          continue;
+        }
+        for (Iterator entryIter = ( (HashMap) table.getValue()).keySet().iterator(); entryIter.hasNext(); ) {
+          if ( ( (String) entryIter.next()).startsWith(RELATION)) {
+            entryIter.remove();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops all the metadata kept.
+   */
+  public static synchronized void invalidateAll() {
+    databases.clear();
+    synchronized (vendorNames) {
+      vendorNames.clear();
+    }
+  }
+
+  /**
+   * Returns the database product name of the connection, read from its
+   * DatabaseMetaData once.
+   * @param connection
+   * @return String
+   * @throws SQLException
+   */
+  public static String getVendorName(Connection connection) throws SQLException {
+    synchronized (vendorNames) {
+      String vendorName = (String) vendorNames.get(connection);
+      if (vendorName != null) {
+        return vendorName;
+      }
+    }
+    String vendorName = connection.getMetaData().getDatabaseProductName();
+    synchronized (vendorNames) {
+      vendorNames.put(connection, vendorName);
+    }
+    return vendorName;
+  }
+
+}
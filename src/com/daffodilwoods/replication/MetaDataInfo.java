@@ -24,6 +24,7 @@ import java.util.*;
 import com.daffodilwoods.replication.DBHandler.*;
 import com.daffodilwoods.replication.zip.ImportedTablesInfo;
 import com.daffodilwoods.graph.DirectedGraph;
+import com.daffodilwoods.graph.StronglyConnectedComponents;
 import org.apache.log4j.Logger;
 
 /**
@@ -32,12 +33,17 @@ import org.apache.log4j.Logger;
  * This inforamtion is used for performing different operations on the tables of
  * the publication or subscription and on the columns and constraint.
  *
+ * The primary keys, foreign keys and columns of the tables are kept in
+ * MetaDataCache, so only the first lookup for a table of a database goes to
+ * the catalog.
  */
 
 public abstract class MetaDataInfo
 {
     protected DatabaseMetaData dbmd;
     protected ArrayList notNullColumns;
+    // key of the database in MetaDataCache
+    private String databaseKey;
     protected static Logger log =Logger.getLogger(MetaDataInfo.class.getName());
     public MetaDataInfo() throws RepException
     {}
@@ -624,7 +630,25 @@ public abstract class MetaDataInfo
         notNullColumns = null;
     }
 
+    protected String getDatabaseKey()
+    {
+        if (databaseKey == null)
+            databaseKey = MetaDataCache.getDatabaseKey(dbmd);
+        return databaseKey;
+    }
+
+    private static String getCacheName(String schemaName, String tableName)
+    {
+        return schemaName == null ? tableName : schemaName + "." + tableName;
+    }
+
   public void setPrimaryColumns(RepTable repTable, String schemaName, String tableName) throws RepException, SQLException {
+        Object cached = MetaDataCache.get(getDatabaseKey(), getCacheName(schemaName, tableName), MetaDataCache.PRIMARY_COLUMNS);
+        if (cached != MetaDataCache.MISSING)
+        {
+            repTable.setPrimaryColumns( (String[]) cached);
+            return;
+        }
         //ResultSet rs2 = dbmd.getPrimaryKeys(null,schemaName,tableName.toLowerCase());
         //Util.showResultSet(rs2);
         HashMap primcolmap = new HashMap();
@@ -656,10 +680,18 @@ public abstract class MetaDataInfo
             primColumns[i] = (String) primcolmap.get(indexes[i]);
         }
         repTable.setPrimaryColumns(primColumns);
+        MetaDataCache.put(getDatabaseKey(), getCacheName(schemaName, tableName), MetaDataCache.PRIMARY_COLUMNS, primColumns);
     }
 
   /** @todo On it When cyclic work is to be done */
   public void setForeignKeyColumns(RepTable repTable, String schemaName, String tableName) throws RepException, SQLException {
+    String cacheName = getCacheName(schemaName, tableName);
+    Object cached = MetaDataCache.get(getDatabaseKey(), cacheName, MetaDataCache.FOREIGN_KEY_COLUMNS);
+    if (cached != MetaDataCache.MISSING) {
+      if (cached != null)
+        repTable.setForeignKeyCols( (String[]) cached);
+      return;
+    }
 //System.out.println("tableName for foreignKey cols ::" + tableName);
     ArrayList foreignKeyColumnsList = new ArrayList();
      // Firebird database does not have schema. It give the null pointer exception for "schemaName.toUpperCase()"
@@ -667,6 +699,7 @@ public abstract class MetaDataInfo
       ResultSet rs = dbmd.getImportedKeys(null, schemaName, tableName);
     if (rs == null || !rs.next()) {
 //System.out.println(" NO FOREIGN KEYS FOUND FOR Table ::" + tableName);
+      MetaDataCache.put(getDatabaseKey(), cacheName, MetaDataCache.FOREIGN_KEY_COLUMNS, null);
       return;
     }
    try{ do {
@@ -680,8 +713,12 @@ public abstract class MetaDataInfo
      rs.close();
    }
 //System.out.println("FK Lists  " + foreignKeyColumnsList);
-    if(foreignKeyColumnsList.size() > 0)
-      repTable.setForeignKeyCols((String[])foreignKeyColumnsList.toArray(new String[0]));
+    String[] foreignKeyCols = null;
+    if(foreignKeyColumnsList.size() > 0) {
+      foreignKeyCols = (String[])foreignKeyColumnsList.toArray(new String[0]);
+      repTable.setForeignKeyCols(foreignKeyCols);
+    }
+    MetaDataCache.put(getDatabaseKey(), cacheName, MetaDataCache.FOREIGN_KEY_COLUMNS, foreignKeyCols);
   }
 
   public String getExistingTableQuery(AbstractDataBaseHandler dbh, SchemaQualifiedName sname, int pubVendorType) throws RepException, SQLException {
@@ -846,52 +883,60 @@ public abstract class MetaDataInfo
 //    System.out.println("sent list :"+ schemaQualifiedNamesList);
 
     Map importedTablesMap = getImportedTables(schemaQualifiedNamesList,graph,removeCycleTableNames);
-//    System.out.println("importedTablesMap.entryset()###"+importedTablesMap.entrySet().toString());
-    Set importedTablesSet = importedTablesMap.entrySet();
-//    System.out.println("importedTablesSet  :::"+importedTablesSet.toString());
+    // graph of all the foreign keys, including the ones left out of the
+    // publication graph, a table is cyclic if its component is
+    DirectedGraph foreignKeyGraph = new DirectedGraph(importedTablesMap.size());
+    for (Iterator iter = importedTablesMap.keySet().iterator(); iter.hasNext(); ) {
+      foreignKeyGraph.addVertex(iter.next());
+    }
+    for (Iterator iter = importedTablesMap.entrySet().iterator(); iter.hasNext(); ) {
+      Map.Entry entry = (Map.Entry)iter.next();
+      ArrayList superTablesList = (ArrayList)entry.getValue();
+      for (int i = 0; superTablesList != null && i < superTablesList.size(); i++) {
+        if (foreignKeyGraph.hasVertex(superTablesList.get(i)))
+          foreignKeyGraph.addEdge(entry.getKey(), superTablesList.get(i), 1);
+      }
+    }
+    StronglyConnectedComponents components = new StronglyConnectedComponents(foreignKeyGraph);
     Map importedTablesInfoMap = new HashMap();
-    int count = 0;
-    for (Iterator iter = importedTablesSet.iterator(); iter.hasNext(); count++) {
+    for (Iterator iter = importedTablesMap.entrySet().iterator(); iter.hasNext(); ) {
       Map.Entry entry = (Map.Entry)iter.next();
       SchemaQualifiedName keyTable=(SchemaQualifiedName)entry.getKey();
       ArrayList superTablesList = (ArrayList)entry.getValue();
-//      System.out.println("keyTable entry.getKey():::"+keyTable);
-//      System.out.println("superTablesList entry.getValue():::"+superTablesList);
-      boolean cyclic = false;
-      ArrayList superTablesHierarcyList = new ArrayList();
-      ArrayList currentTraversalList = new ArrayList();
       if(superTablesList!= null){
-        superTablesHierarcyList.add(keyTable);
-        currentTraversalList.add(keyTable);
-//        System.out.println( count +". TABLE ::: ["+keyTable+"]");
-//        System.out.println("superTablesList.size() "+superTablesList.size());
-        for (int i = 0, size = superTablesList.size(); i < size; i++) {
-          SchemaQualifiedName parentTable = (SchemaQualifiedName) superTablesList.get(i);
-//          System.out.println("parentTable :::"+parentTable);
-          superTablesHierarcyList.add(0,parentTable);
-          currentTraversalList.add(0,parentTable);
-          boolean cyclic1 = isCyclicRelationship(parentTable,superTablesHierarcyList,importedTablesMap,currentTraversalList);
-          if (!cyclic)
-            cyclic = cyclic1;
-          int indexInCurrentTraversalList = currentTraversalList.indexOf(parentTable)  ;
-//          System.out.println(" List before removing :: " + currentTraversalList);
-          for (int k = 0; k <= indexInCurrentTraversalList; k++) {
-            currentTraversalList.remove(0);
-          }
-//          System.out.println( indexInCurrentTraversalList+" List after removing :: " + currentTraversalList);
-        }
         ImportedTablesInfo importedTablesInfo = new ImportedTablesInfo();
-        superTablesHierarcyList.remove(keyTable);
-        importedTablesInfo.setListOfAllAscendents(superTablesHierarcyList);
+        importedTablesInfo.setListOfAllAscendents(getAllAscendents(keyTable,importedTablesMap));
         importedTablesInfo.setListOfDirectAscendents(superTablesList);
-        importedTablesInfo.setIsCyclic(cyclic);
+        importedTablesInfo.setIsCyclic(components.isCyclic(components.componentOf(keyTable)));
         importedTablesInfoMap.put(keyTable,importedTablesInfo);
       }
-//      System.out.println(keyTable + "ISCYCLIC ::" + cyclic);
-//      System.out.println(keyTable+" LIST ::" + superTablesHierarcyList + "ISCYCLIC ::" + cyclic);
     }
     return importedTablesInfoMap;
   }
+
+  /**
+   * Returns the tables reachable from keyTable through the foreign keys of
+   * importedTablesMap, without keyTable itself.
+   */
+  private ArrayList getAllAscendents(SchemaQualifiedName keyTable,Map importedTablesMap){
+    ArrayList ascendents = new ArrayList();
+    HashSet reached = new HashSet();
+    reached.add(keyTable);
+    LinkedList queue = new LinkedList();
+    queue.add(keyTable);
+    while (!queue.isEmpty()) {
+      ArrayList superTablesList = (ArrayList)importedTablesMap.get(queue.removeFirst());
+      for (int i = 0; superTablesList != null && i < superTablesList.size(); i++) {
+        Object parentTable = superTablesList.get(i);
+        if (reached.add(parentTable)) {
+          ascendents.add(parentTable);
+          queue.add(parentTable);
+        }
+      }
+    }
+    return ascendents;
+  }
+
   /**
    * THIS METHOD PUT ALL THE TABLES(schemaQualifiedName) AND THEIR PARENT TABLES(innerList) IN mapForImportedTables
    * USING  mapForImportedTables.put(schemaQualifiedName,innerList);
@@ -920,48 +965,42 @@ public abstract class MetaDataInfo
 //    }
 
 
-   private boolean isCyclicRelationship(SchemaQualifiedName parentTable,ArrayList superTablesHierarcyList,Map importedTablesMap,ArrayList currentTraversalList) throws RepException{
-       ArrayList importedTablesList = (ArrayList)importedTablesMap.get(parentTable);
-       if(importedTablesList != null){
-//         System.out.println("parentTable   ::" + parentTable + " imported TAbles :: " + importedTablesList);
-         boolean cyclic = false;
-         for (int i =0,size = importedTablesList.size(); i < size ;i++) {
-           SchemaQualifiedName nextLevelParent = (SchemaQualifiedName) importedTablesList.get(i);
-//           System.out.println("calling to match again: mainTable, innerTable[" + parentTable + "], tableName[ " + nextLevelParent);
-           Object initiator = currentTraversalList.get(currentTraversalList.size()-1);
-//System.out.println("initiator:::::::::"+initiator);
-           if (nextLevelParent.equals(initiator) ){
-//System.out.println("####################################  Graph is cyclic ");
-//             System.out.println("\t table in cycle "+ nextLevelParent +" CYCLIC FOR ::" + currentTraversalList);
-             return true;
-           }
-           if(currentTraversalList.contains(parentTable)){
-//             System.out.println("currentTraversalList.contains(parentTable)"+currentTraversalList.contains(parentTable));
-             continue;
-           }
-           if(!superTablesHierarcyList.contains(nextLevelParent))
-             superTablesHierarcyList.add(0,nextLevelParent);
-           currentTraversalList.add(0,nextLevelParent);
-           boolean cyclic1 = isCyclicRelationship(nextLevelParent, superTablesHierarcyList, importedTablesMap,currentTraversalList);
-//           System.out.println("cyclic1::: "+cyclic1);
-           int indexInCurrentTraversalList = currentTraversalList.indexOf(nextLevelParent);
-//           System.out.println(" List before removing :: " + currentTraversalList);
-           for (int k = 0; k <= indexInCurrentTraversalList; k++) {
-             currentTraversalList.remove(0);
-           }
-//           System.out.println(indexInCurrentTraversalList +" List after removng :: "+  currentTraversalList);
-//           System.out.println("nextLevelParent  :: " + nextLevelParent +" cyclic1::" + cyclic1 );
-           if(!cyclic)
-             cyclic = cyclic1;
-         }
-         return cyclic;
-       }
-       return false;
+ /**
+  * Returns the tables with a foreign key to parentTable.
+  * @param parentTable
+  * @return ArrayList
+  * @throws RepException
+  */
+ public ArrayList getChildTables(String parentTable)throws RepException {
+   Object cached = MetaDataCache.get(getDatabaseKey(), parentTable, MetaDataCache.CHILD_TABLES);
+   if (cached == MetaDataCache.MISSING) {
+     cached = loadChildTables(parentTable);
+     MetaDataCache.put(getDatabaseKey(), parentTable, MetaDataCache.CHILD_TABLES, cached);
    }
+   return (ArrayList) cached;
+ }
 
- abstract public ArrayList getChildTables(String parentTable)throws RepException ;
+ /**
+  * Returns the foreign key columns of childTable and the columns of
+  * parentTable they refer to, null if childTable has no foreign keys.
+  * @param parentTable
+  * @param childTable
+  * @return Object[]
+  * @throws RepException
+  */
+ public Object[] getImportedColsOfChildTable(String parentTable,String childTable)throws RepException {
+   String entry = MetaDataCache.IMPORTED_COLUMNS + childTable.toUpperCase();
+   Object cached = MetaDataCache.get(getDatabaseKey(), parentTable, entry);
+   if (cached == MetaDataCache.MISSING) {
+     cached = loadImportedColsOfChildTable(parentTable, childTable);
+     MetaDataCache.put(getDatabaseKey(), parentTable, entry, cached);
+   }
+   return (Object[]) cached;
+ }
 
- abstract public Object[] getImportedColsOfChildTable(String parentTable,String childTable)throws RepException ;
+ abstract protected ArrayList loadChildTables(String parentTable)throws RepException ;
+
+ abstract protected Object[] loadImportedColsOfChildTable(String parentTable,String childTable)throws RepException ;
 
 
 //add Edge to the graph
@@ -980,12 +1019,34 @@ public abstract class MetaDataInfo
  abstract public ArrayList getExportedTableCols(SchemaQualifiedName repTableQualifiedtableName) throws RepException;
 
  public ArrayList getExportedTableColsList(SchemaQualifiedName repTableQualifiedtableName) throws RepException{
-   return getExportedTableCols(repTableQualifiedtableName);
+   String cacheName = repTableQualifiedtableName.toString();
+   Object cached = MetaDataCache.get(getDatabaseKey(), cacheName, MetaDataCache.EXPORTED_COLUMNS);
+   if (cached == MetaDataCache.MISSING) {
+     cached = getExportedTableCols(repTableQualifiedtableName);
+     MetaDataCache.put(getDatabaseKey(), cacheName, MetaDataCache.EXPORTED_COLUMNS, cached);
+   }
+   return (ArrayList) cached;
  }
 
 abstract protected void checkChildTableIncludedInDropTableList(ArrayList pubRepTableList,String[] dropTableList) throws RepException ;
 
-abstract public void setAllColumns(RepTable repTable, String schemaName, String tableName)throws RepException, SQLException  ;
+public void setAllColumns(RepTable repTable, String schemaName, String tableName)throws RepException, SQLException {
+  String cacheName = getCacheName(schemaName, tableName);
+  Object cached = MetaDataCache.get(getDatabaseKey(), cacheName, MetaDataCache.ALL_COLUMNS);
+  if (cached != MetaDataCache.MISSING) {
+    repTable.setAllColumns( (String[]) cached);
+    return;
+  }
+  loadAllColumns(repTable, schemaName, tableName);
+  TreeMap allColumns = repTable.getAllColumns();
+  String[] columns = new String[allColumns.size()];
+  for (int i = 0; i < columns.length; i++) {
+    columns[i] = (String) allColumns.get("c" + (i + 1));
+  }
+  MetaDataCache.put(getDatabaseKey(), cacheName, MetaDataCache.ALL_COLUMNS, columns);
+}
+
+abstract protected void loadAllColumns(RepTable repTable, String schemaName, String tableName)throws RepException, SQLException  ;
 
 
 }
@@ -227,13 +227,22 @@ public class PathHandler {
 //    return strucPath + File.separator + name + "." + "zip";
 //  }
 
+  /**
+   * Returns the directory of the spool session opened for the current
+   * thread, the common synchronize directory if there is none.
+   */
+  private static String getSpoolPath() {
+    SpoolSession session = SpoolSession.getCurrent();
+    return session == null ? getStrucPathSynchronizeClient() : session.getDirectory();
+  }
+
   public static String getDefaultZIPFilePathForClient(String name) {
-    String strucPath = getStrucPathSynchronizeClient();
+    String strucPath = getSpoolPath();
     return strucPath + File.separator + name + "." + "zip";
   }
 
   public static String getDefaultFilePathForClient(String name) {
-    String strucPath = getStrucPathSynchronizeClient();
+    String strucPath = getSpoolPath();
     return strucPath + File.separator + name + "." + "xml";
   }
 
@@ -274,7 +283,7 @@ public class PathHandler {
 //  }
 
   public static String getCLobFilePathForClient() {
-    String strucPath = getStrucPathSynchronizeClient();
+    String strucPath = getSpoolPath();
     return strucPath + File.separator + "clob.lob";
   }
 
@@ -284,41 +293,18 @@ public class PathHandler {
 //  }
 
   public static String getBLobFilePathForClient() {
-    String strucPath = getStrucPathSynchronizeClient();
+    String strucPath = getSpoolPath();
     return strucPath + File.separator + "blob.lob";
   }
 
+  /**
+   * Returns the columns of the table given in Encodeconfig.ini, see
+   * EncodeConfig.
+   * @param tableName
+   * @return ArrayList
+   */
   public  static ArrayList getEncodedColumns(String tableName) {
-
-    ArrayList list =new ArrayList();
-    try {
-      File f = new File("." + File.separator + "Encodeconfig.ini");
-      if (!f.exists())
-        f.createNewFile();
-
-      Properties p = new Properties();
-      p.load(new FileInputStream(f)); // Try to load props
-      String colslist = p.getProperty(tableName.toUpperCase(), "");
-      if(colslist.indexOf(",")==-1) {
-        list.add(colslist);
-      return list;
-      }
-      else {
-        StringTokenizer st =new StringTokenizer(colslist,",");
-        String str =null;
-        while( st.hasMoreTokens()) {
-          str =st.nextToken();
-//          System.out.println("Columns  str  : "+str);
-          list.add(str);
-        }
-      }
-
-    }
-    catch (Exception ex) {
-      RepConstants.writeERROR_FILE(ex);
-    }
-//System.out.println("PathHandler.getEncodedColumns(tableName) list : "+list);
-    return list;
+    return EncodeConfig.getEncodedColumns(tableName);
   }
 
 }
@@ -36,6 +36,7 @@ import java.util.ArrayList;
 import java.io.FileOutputStream;
 import com.daffodilwoods.replication.synchronize.AbstractSynchronize;
 import org.apache.log4j.Logger;
+import com.daffodilwoods.graph.DirectedGraph;
 
 /**
  * Publication class holds all the methods which are required for the physical
@@ -97,21 +98,27 @@ public class Publication
    */
   SyncXMLCreator syncXMLCreator;
   /**
-   * Tables in which updations are required during synchronisation.
+   * Tables in which updations are required during synchronisation, kept
+   * per subscription as subscriptions are synchronized in parallel.
    */
-  ArrayList usedActualTables;
-  // for locking synchronization or snapshot operations
-  // for thread safety
-  private static boolean isLocked = false;
+  HashMap usedActualTablesMap = new HashMap();
+  /**
+   * Change set format negotiated by every subscription, subscriptions which
+   * have not negotiated get XML.
+   */
+  HashMap changeSetFormats = new HashMap();
+  /**
+   * Compression codec negotiated by every subscription.
+   */
+  HashMap compressionCodecs = new HashMap();
+  // locking of synchronization or snapshot operations is done per
+  // subscription by PublicationLockManager
   private ReplicationServer localServer;
-  private static final boolean LOCK = true;
-  private static final boolean UNLOCK = false;
-  //Kept for multiple subsriber case trying to get lock
-  ArrayList listOfWaitingSubcription = new ArrayList();
-  HashMap syncIdMap;
   protected static Logger log = Logger.getLogger(Publication.class.getName());
   private boolean isPublicationCyclic;
   String localAddress = null;
+  // deletes the shadow table records received by all the subscribers
+  private ShadowRetention shadowRetention;
 
   public Publication() throws RemoteException {
   }
@@ -127,6 +134,7 @@ public class Publication
     dbh.setLocalServerName(serverName0);
     //String databaseName = pubConnection.getMetaData().getDatabaseProductName();
     syncXMLCreator = new SyncXMLCreator(pubName, connectionPool, dbh);
+    shadowRetention = new ShadowRetention(connectionPool, pubName, dbh);
     localServer = localServer0;
     try{
        localAddress = InetAddress.getLocalHost().getHostAddress();
@@ -537,6 +545,7 @@ public class Publication
           WriteOnSocket writeOnSocket = new WriteOnSocket(zipFilePath, filePath,Publication.xmlAndShadow_entries,"struct_" + pubName + "_" + subName, fileUpload, false);
           writeOnSocket.start();
           writeOnSocket.join();
+          writeOnSocket.checkUpload();
         }
 //        writeXMLFileOnClientSocket(address, portNo, zipFilePath);
         log.debug("wrote XMLFile  ClientSocket ");
@@ -638,114 +647,47 @@ public class Publication
    */
   public void createSnapShot(String subName,boolean isSchemaSupported,_FileUpload fileUpload,String remoteMachineAddress) throws SQLException, RemoteException, RepException {
     Statement stmt = null;
-    ResultSet rows = null, shadowResult = null;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    connectionPool.beginLease();
     try {
-      FileOutputStream fos = new FileOutputStream(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
-      OutputStreamWriter os = new OutputStreamWriter(fos);
-      BufferedWriter bw = new BufferedWriter(os);
-      Connection pubConnection = connectionPool.getConnection(pubName);
-      stmt =pubConnection.createStatement();
+      String fileName = "snapshot_" + pubName + "_" + subName;
 //      long startTime=System.currentTimeMillis();
-      XMLWriter xmlWriter = new XMLWriter(bw, dbh, pubConnection);
-      bw.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
-      bw.write("<root_snapshot>");
-      String tableName;
-      SchemaQualifiedName sname;
-      String[] primaryKeyColumns;
-      stmt = pubConnection.createStatement();
-      for (int i = 0; i < noOfPubTables; i++) {
-        RepTable repTable = (RepTable) pubRepTables.get(i);
-        primaryKeyColumns =repTable.getPrimaryColumns();
-        if (repTable.getCreateShadowTable().equalsIgnoreCase(RepConstants.NO))
-          continue;
-        sname = (repTable).getSchemaQualifiedName();
-        tableName = isSchemaSupported ? sname.toString() : sname.getTableName();
-        ArrayList encodedCols = PathHandler.getEncodedColumns(tableName);
-        bw.write("<tableName>");
-        bw.write(tableName);
-        String query;
-        String[] parameters = null;
-        if (repTable.getFilterClause() == null || repTable.getFilterClause().equalsIgnoreCase("")) {
-          query = "Select * from " + repTable.getRepTableQualifiedIdentifier();
-        }
-        else {
-          query = "Select * from " + repTable.getRepTableQualifiedIdentifier() + " where " + repTable.getFilterClause();
-        }
-
-        /** @todo comment the method getResultSet and create the statement
-         *  outside the loop as anywhere as require.*/
-
-        rows = getResultSet(query, parameters); // Query
-        ResultSetMetaData rsmt = rows.getMetaData();
-        int noOfColumns = rsmt.getColumnCount();
-        ResultSet primayKeyResultSet =getPrimaryKeyResultSet(stmt,tableName,repTable.getPrimaryColumns());
-        while (rows.next()) {
-          bw.write("<operation>");
-          bw.write("I");
-          bw.write("<row>");
-          for (int c = 1; c <= noOfColumns; c++) {
-            String columnName = rsmt.getColumnName(c);
-            if (!encodedCols.contains(columnName.toUpperCase())) {
-              bw.write("<c" + c + ">");
-//              bw.write("<" + columnName + ">");
-            }
-            else {
-              bw.write("<\"" + columnName + "\"  Encode=\"y\">");
-            }
-            // Special Handelling for Blob Clob Case
-            xmlWriter.write(rows, c, encodedCols, columnName);
-            bw.write("</c" + c + ">\r\n");
-//            bw.write("</" + columnName + ">\r\n");
-          }
-          bw.write("</row>\r\n");
-          xmlWriter.writePrimaryKeyElement(primaryKeyColumns,primayKeyResultSet,encodedCols);
-          bw.write("</operation>\r\n");
-          primayKeyResultSet.next();
-          bw.flush();
-        }
-        // Close the resultset because new instance of resultset has been created for each table.
-        rows.close();
-        bw.write("</tableName>\r\n");
-        // updating values for bookmark table
-        String selectMaxSyncID= " select max(" + RepConstants.shadow_sync_id1 + ") from " +
-        RepConstants.shadow_Table(tableName);
-        log.debug(selectMaxSyncID);
-        shadowResult = stmt.executeQuery(selectMaxSyncID);
-        shadowResult.next();
-        Object maxvalue = shadowResult.getObject(1);
-        if (maxvalue == null) {
-        maxvalue = new Long(0);
-        }
-        log.debug("max(" + RepConstants.shadow_sync_id1 + ")=" + maxvalue);
-        StringBuffer updateBookmarkQuery = new StringBuffer("update " +dbh.getBookMarkTableName() + " set ");
-        updateBookmarkQuery.append(RepConstants.bookmark_lastSyncId4 + " = " +maxvalue + ", ");
-        updateBookmarkQuery.append(RepConstants.bookmark_ConisderedId5 + " = " +maxvalue + " ");
-        updateBookmarkQuery.append(" where " + RepConstants.bookmark_LocalName1 +" ='" + pubName + "' ");
-        updateBookmarkQuery.append(" and  " + RepConstants.bookmark_RemoteName2 +" ='" + subName + "' ");
-        updateBookmarkQuery.append(" and  " + RepConstants.bookmark_TableName3 +" ='" + tableName + "'");
-        stmt.executeUpdate(updateBookmarkQuery.toString());
-        log.debug(updateBookmarkQuery.toString());
+      SnapshotSegments.delete(session.getSegmentsDirectory());
+      SnapshotSegments segments = null;
+      if (RepConstants.getSnapshotThreads() > 1) {
+        segments = writeSnapShotSegments(subName, isSchemaSupported, session);
+      }
+      if (segments == null) {
+        writeSnapShotFile(subName, isSchemaSupported);
       }
-      bw.write("</root_snapshot>\r\n");
 //      System.out.println("TIME TAKEN IN CREATING XML FOR SNAPSHOT:::"+(System.currentTimeMillis()-startTime));
-      if(bw!=null)
-      bw.close();
-      fos.close();
 
       localAddress = InetAddress.getLocalHost().getHostAddress();
       if(!localAddress.equalsIgnoreCase(remoteMachineAddress)) {
-        // making zip file from xml file
-        ZipHandler.makeZip(PathHandler.getDefaultZIPFilePathForClient("snapshot_" +pubName + "_" + subName),
-                           PathHandler.getDefaultFilePathForClient("snapshot_" +pubName + "_" + subName),
-                           "snapshot_" + pubName + "_" + subName /*+ ".xml"*/);
+        String xmlFilePath;
+        if (segments == null) {
+          // making zip file from xml file
+          xmlFilePath = PathHandler.getDefaultFilePathForClient(fileName);
+          ZipHandler.makeZip(PathHandler.getDefaultZIPFilePathForClient(fileName), xmlFilePath, fileName /*+ ".xml"*/, getCompressionCodec(subName));
+        }
+        else {
+          // making one zip file of all the segments
+          fileName = fileName + "_segments";
+          xmlFilePath = segments.getDirectory() + File.separator + SnapshotSegments.MANIFEST;
+          ZipHandler.makeDirectoryZip(PathHandler.getDefaultZIPFilePathForClient(fileName), segments.getDirectory());
+        }
         // writing zip file on socket
-        WriteOnSocket writeOnSocket = new WriteOnSocket(PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName + "_" +subName),
-            PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" + subName),_Publication.xmlAndShadow_entries,
-               "snapshot_" + pubName + "_" + subName, fileUpload, true);
+        WriteOnSocket writeOnSocket = new WriteOnSocket(PathHandler.getDefaultZIPFilePathForClient(fileName),
+            xmlFilePath,_Publication.xmlAndShadow_entries, fileName, fileUpload, true);
         writeOnSocket.start();
         writeOnSocket.join();
+        writeOnSocket.checkUpload();
+        if (segments != null && _Publication.xmlAndShadow_entries) {
+          SnapshotSegments.delete(segments.getDirectory());
+        }
       }
-       dbh.deleteRecordsFromSuperLogTable(stmt);
+      stmt = connectionPool.getConnection(pubName).createStatement();
+      dbh.deleteRecordsFromSuperLogTable(stmt);
     }
 
     catch (FileNotFoundException ex) {
@@ -775,15 +717,263 @@ public class Publication
      throw rex;
       }
     finally {
-      connectionPool.removeSubPubFromMap(pubName);
-      /** @todo  Close the statement */
-      if (shadowResult != null)
-        shadowResult.close();
+      session.close();
+      ConnectionPool.closeStatementAndResultSet(stmt, null);
+      connectionPool.endLease();
+      }
+
+  }
+
+  /**
+   * Writes all the published tables one after the other in the snapshot
+   * XML file of the subscription.
+   */
+  private void writeSnapShotFile(String subName, boolean isSchemaSupported) throws SQLException, IOException, RepException {
+    FileOutputStream fos = new FileOutputStream(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
+    OutputStreamWriter os = new OutputStreamWriter(fos);
+    BufferedWriter bw = new BufferedWriter(os);
+    Statement stmt = null;
+    try {
+      Connection pubConnection = connectionPool.getConnection(pubName);
+      stmt = pubConnection.createStatement();
+      XMLWriter xmlWriter = new XMLWriter(bw, dbh, pubConnection);
+      bw.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
+      bw.write("<root_snapshot>");
+      for (int i = 0; i < noOfPubTables; i++) {
+        RepTable repTable = (RepTable) pubRepTables.get(i);
+        if (repTable.getCreateShadowTable().equalsIgnoreCase(RepConstants.NO))
+          continue;
+        writeSnapShotTable(pubConnection, stmt, bw, xmlWriter, repTable, subName, isSchemaSupported);
+      }
+      bw.write("</root_snapshot>\r\n");
+    }
+    finally {
+      bw.close();
+      fos.close();
       if (stmt != null)
         stmt.close();
-        isLocked = UNLOCK;
+    }
+  }
+
+  /**
+   * Writes every published table in its own segment of the spool session,
+   * SNAPSHOTTHREADS tables at the same time, each on its own connection.
+   * The level of every table in the order of the foreign keys is written
+   * in the manifest of the segments for the subscriber.
+   *
+   * @return segments written, null if the publication has less than two
+   * tables to write
+   */
+  private SnapshotSegments writeSnapShotSegments(final String subName, final boolean isSchemaSupported, final SpoolSession session) throws SQLException, IOException, RepException, InterruptedException {
+    ArrayList tables = new ArrayList();
+    for (int i = 0; i < noOfPubTables; i++) {
+      RepTable repTable = (RepTable) pubRepTables.get(i);
+      if (!repTable.getCreateShadowTable().equalsIgnoreCase(RepConstants.NO))
+        tables.add(repTable);
+    }
+    if (tables.size() < 2) {
+      return null;
+    }
+    int[] levels = getSnapShotLevels(tables);
+    SnapshotSegments segments = new SnapshotSegments(session.getSegmentsDirectory());
+    ArrayList tasks = new ArrayList();
+    for (int i = 0; i < tables.size(); i++) {
+      final RepTable repTable = (RepTable) tables.get(i);
+      final String segmentName = "t" + i;
+      segments.addSegment(levels[i], segmentName, repTable.getSchemaQualifiedName().toString());
+      tasks.add(new TaskRunner.Task() {
+        public boolean run(boolean mayDefer) throws Exception {
+          return writeSnapShotSegment(session, segmentName, repTable, subName, isSchemaSupported, mayDefer);
+        }
+      });
+    }
+    try {
+      TaskRunner.run(tasks, RepConstants.getSnapshotThreads());
+    }
+    catch (SQLException ex) {
+      throw ex;
+    }
+    catch (IOException ex) {
+      throw ex;
+    }
+    catch (RepException ex) {
+      throw ex;
+    }
+    catch (InterruptedException ex) {
+      throw ex;
+    }
+    catch (Exception ex) {
+      RepConstants.writeERROR_FILE(ex);
+      RepException rex = new RepException("REP055", new Object[] {pubName, ex.getMessage()});
+      rex.setStackTrace(ex.getStackTrace());
+      throw rex;
+    }
+    segments.writeManifest();
+    return segments;
+  }
+
+  /**
+   * Writes the segment of one table on a connection of its own lease. With
+   * mayDefer the connection is waited for only TaskRunner.LEASE_WAIT
+   * milliseconds, as the caller of TaskRunner keeps its connection leased
+   * meanwhile.
+   * @return false if no connection became free, the segment is then written
+   * by the caller
+   */
+  private boolean writeSnapShotSegment(SpoolSession session, String segmentName, RepTable repTable, String subName, boolean isSchemaSupported, boolean mayDefer) throws SQLException, IOException, RepException {
+    connectionPool.beginLease();
+    SpoolSession segment = null;
+    try {
+      Connection pubConnection = mayDefer ? connectionPool.getConnection(pubName, TaskRunner.LEASE_WAIT) : connectionPool.getConnection(pubName);
+      if (pubConnection == null) {
+        log.debug("no pooled connection for snapshot segment " + segmentName + ", writing it on the caller's connection");
+        return false;
       }
+      segment = session.openSegment(segmentName);
+      FileOutputStream fos = new FileOutputStream(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
+      BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos));
+      Statement stmt = pubConnection.createStatement();
+      try {
+        XMLWriter xmlWriter = new XMLWriter(bw, dbh, pubConnection);
+        bw.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
+        bw.write("<root_snapshot>");
+        writeSnapShotTable(pubConnection, stmt, bw, xmlWriter, repTable, subName, isSchemaSupported);
+        bw.write("</root_snapshot>\r\n");
+      }
+      finally {
+        bw.close();
+        fos.close();
+        stmt.close();
+      }
+      return true;
+    }
+    finally {
+      if (segment != null) {
+        segment.close();
+      }
+      connectionPool.endLease();
+    }
+  }
 
+  /**
+   * Returns the level of every table in the order of the foreign keys,
+   * a table only refers to tables of lower levels. Foreign keys of cyclic
+   * tables are not considered because their values are set in the second
+   * pass of the snapshot when all the tables have been loaded. If the
+   * levels can not be found every table gets its own level in the order of
+   * the publication.
+   */
+  private int[] getSnapShotLevels(ArrayList tables) {
+    int[] levels = new int[tables.size()];
+    try {
+      MetaDataInfo mdi = Utility.getDatabaseMataData(connectionPool, pubName);
+      ArrayList snames = new ArrayList();
+      DirectedGraph graph = new DirectedGraph(noOfPubTables);
+      for (int i = 0; i < noOfPubTables; i++) {
+        SchemaQualifiedName sname = ( (RepTable) pubRepTables.get(i)).getSchemaQualifiedName();
+        snames.add(sname);
+        graph.addVertex(sname);
+      }
+      for (int i = 0; i < noOfPubTables; i++) {
+        RepTable repTable = (RepTable) pubRepTables.get(i);
+        if (!RepConstants.YES.equalsIgnoreCase(repTable.getCyclicDependency())) {
+          mdi.getImportedTables(repTable.getSchemaQualifiedName(), snames, graph, null);
+        }
+      }
+      Object[][] graphLevels = graph.topologicalLevels();
+      if (graphLevels != null) {
+        for (int level = 0; level < graphLevels.length; level++) {
+          for (int j = 0; j < graphLevels[level].length; j++) {
+            for (int i = 0; i < tables.size(); i++) {
+              if ( ( (RepTable) tables.get(i)).getSchemaQualifiedName().equals(graphLevels[level][j]))
+                levels[i] = level;
+            }
+          }
+        }
+        return levels;
+      }
+    }
+    catch (RepException ex) {
+      RepConstants.writeERROR_FILE(ex);
+    }
+    for (int i = 0; i < levels.length; i++) {
+      levels[i] = i;
+    }
+    return levels;
+  }
+
+  /**
+   * Writes the records of the table in the snapshot XML and updates the
+   * bookmark of the table for the subscription.
+   */
+  private void writeSnapShotTable(Connection pubConnection, Statement stmt, BufferedWriter bw, XMLWriter xmlWriter, RepTable repTable, String subName, boolean isSchemaSupported) throws SQLException, IOException, RepException {
+    String[] primaryKeyColumns =repTable.getPrimaryColumns();
+    SchemaQualifiedName sname = (repTable).getSchemaQualifiedName();
+    String tableName = isSchemaSupported ? sname.toString() : sname.getTableName();
+    ArrayList encodedCols = PathHandler.getEncodedColumns(tableName);
+    bw.write("<tableName>");
+    bw.write(tableName);
+    String query;
+    if (repTable.getFilterClause() == null || repTable.getFilterClause().equalsIgnoreCase("")) {
+      query = "Select * from " + repTable.getRepTableQualifiedIdentifier();
+    }
+    else {
+      query = "Select * from " + repTable.getRepTableQualifiedIdentifier() + " where " + repTable.getFilterClause();
+    }
+    PreparedStatement pst = pubConnection.prepareStatement(query);
+    ResultSet rows = pst.executeQuery(); // Query
+    ResultSetMetaData rsmt = rows.getMetaData();
+    int noOfColumns = rsmt.getColumnCount();
+    ResultSet primayKeyResultSet =getPrimaryKeyResultSet(stmt,tableName,repTable.getPrimaryColumns());
+    while (rows.next()) {
+      bw.write("<operation>");
+      bw.write("I");
+      bw.write("<row>");
+      for (int c = 1; c <= noOfColumns; c++) {
+        String columnName = rsmt.getColumnName(c);
+        if (!encodedCols.contains(columnName.toUpperCase())) {
+          bw.write("<c" + c + ">");
+//          bw.write("<" + columnName + ">");
+        }
+        else {
+          bw.write("<\"" + columnName + "\"  Encode=\"y\">");
+        }
+        // Special Handelling for Blob Clob Case
+        xmlWriter.write(rows, c, encodedCols, columnName);
+        bw.write("</c" + c + ">\r\n");
+//        bw.write("</" + columnName + ">\r\n");
+      }
+      bw.write("</row>\r\n");
+      xmlWriter.writePrimaryKeyElement(primaryKeyColumns,primayKeyResultSet,encodedCols);
+      bw.write("</operation>\r\n");
+      primayKeyResultSet.next();
+      bw.flush();
+    }
+    // Close the resultset because new instance of resultset has been created for each table.
+    rows.close();
+    pst.close();
+    primayKeyResultSet.close();
+    bw.write("</tableName>\r\n");
+    // updating values for bookmark table
+    String selectMaxSyncID= " select max(" + RepConstants.shadow_sync_id1 + ") from " +
+    RepConstants.shadow_Table(tableName);
+    log.debug(selectMaxSyncID);
+    ResultSet shadowResult = stmt.executeQuery(selectMaxSyncID);
+    shadowResult.next();
+    Object maxvalue = shadowResult.getObject(1);
+    shadowResult.close();
+    if (maxvalue == null) {
+    maxvalue = new Long(0);
+    }
+    log.debug("max(" + RepConstants.shadow_sync_id1 + ")=" + maxvalue);
+    StringBuffer updateBookmarkQuery = new StringBuffer("update " +dbh.getBookMarkTableName() + " set ");
+    updateBookmarkQuery.append(RepConstants.bookmark_lastSyncId4 + " = " +maxvalue + ", ");
+    updateBookmarkQuery.append(RepConstants.bookmark_ConisderedId5 + " = " +maxvalue + " ");
+    updateBookmarkQuery.append(" where " + RepConstants.bookmark_LocalName1 +" ='" + pubName + "' ");
+    updateBookmarkQuery.append(" and  " + RepConstants.bookmark_RemoteName2 +" ='" + subName + "' ");
+    updateBookmarkQuery.append(" and  " + RepConstants.bookmark_TableName3 +" ='" + tableName + "'");
+    stmt.executeUpdate(updateBookmarkQuery.toString());
+    log.debug(updateBookmarkQuery.toString());
   }
 
   /**
@@ -808,17 +998,26 @@ public class Publication
       Object[] LastSyncId = null;
       String localAddress = null;
       Integer portNumber = null;
+      SpoolSession session = SpoolSession.open(pubName, subName);
+      connectionPool.beginLease();
       try {
         localAddress =InetAddress.getLocalHost().getHostAddress();
         if (noOfPubTables > 0) {
-          usedActualTablesLastSyncId = syncXMLCreator.createXMLFile(PathHandler.
+          // SyncXMLCreator keeps per table state, so every subscription
+          // being synchronized in parallel gets its own instance.
+          SyncXMLCreator xmlCreator = new SyncXMLCreator(pubName, connectionPool, dbh);
+          xmlCreator.setBinaryChangeSet(isBinaryChangeSet(subName));
+          xmlCreator.setCompressionCodec(getCompressionCodec(subName));
+          usedActualTablesLastSyncId = xmlCreator.createXMLFile(PathHandler.
               getDefaultFilePathForClient("server_" + pubName + "_" +subName) // xml file path
               , PathHandler.getDefaultZIPFilePathForClient("server_" + pubName + "_" +subName) // zip file path
               , "server_" + pubName + "_" +subName//+ ".xml" // xml file name
               , subName, pubRepTables, clientServerName,
               noOfPubTables,_Publication.xmlAndShadow_entries, pubName,isSchemaSupported,fileUpload,localAddress,remoteMachineAddress);
 
-          usedActualTables = (ArrayList) usedActualTablesLastSyncId[0];
+          synchronized (usedActualTablesMap) {
+            usedActualTablesMap.put(subName, usedActualTablesLastSyncId[0]);
+          }
           LastSyncId = (Object[]) usedActualTablesLastSyncId[1];
         }
 
@@ -855,11 +1054,62 @@ public class Publication
         log.error(ex1.getMessage(), ex1);
         throw new RepException("REP054", new Object[] {subName, ex1.getMessage()});
       }finally {
-      connectionPool.removeSubPubFromMap(pubName);
+        session.close();
+        connectionPool.endLease();
     }
       return new Object[] {localAddress, portNumber, LastSyncId};
   }
 
+  /**
+   * Streaming counterpart of createXMLForClient. Connects to the server
+   * socket the subscriber is listening on at clientAddress:clientPort and
+   * writes the synchronization XML on it through a ChangeOutputStream while
+   * it is being generated. No xml or zip file is written at the publisher.
+   * @return {address of publisher, null, last sync ids of the shadow tables}
+   */
+  public Object[] createXMLStreamForClient(String subName, String clientServerName,boolean isSchemaSupported, String clientAddress, int clientPort) throws
+      RemoteException, RepException {
+      Object[] usedActualTablesLastSyncId;
+      Object[] LastSyncId = null;
+      String localAddress = null;
+      Socket socket = null;
+      SpoolSession session = SpoolSession.open(pubName, subName);
+      connectionPool.beginLease();
+      try {
+        localAddress =InetAddress.getLocalHost().getHostAddress();
+        socket = new Socket(clientAddress, clientPort);
+        ChangeOutputStream out = new ChangeOutputStream(socket.getOutputStream(), PathHandler.getBLobFilePathForClient(), PathHandler.getCLobFilePathForClient(), getCompressionCodec(subName));
+        SyncXMLCreator xmlCreator = new SyncXMLCreator(pubName, connectionPool, dbh);
+        xmlCreator.setBinaryChangeSet(isBinaryChangeSet(subName));
+        usedActualTablesLastSyncId = xmlCreator.createXMLStream(out, subName, pubRepTables, clientServerName, noOfPubTables, isSchemaSupported);
+        synchronized (usedActualTablesMap) {
+          usedActualTablesMap.put(subName, usedActualTablesLastSyncId[0]);
+        }
+        LastSyncId = (Object[]) usedActualTablesLastSyncId[1];
+      }
+      catch (RepException ex1) {
+        RepConstants.writeERROR_FILE(ex1);
+        throw ex1;
+      }
+      catch (Exception ex1) {
+        RepConstants.writeERROR_FILE(ex1);
+        throw new RepException("REP054", new Object[] {subName, ex1.getMessage()});
+      }
+      finally {
+        session.close();
+        try {
+          if (socket != null) {
+            socket.close();
+          }
+        }
+        catch (IOException ex) {
+          //Ignore Exception
+        }
+        connectionPool.endLease();
+      }
+      return new Object[] {localAddress, null, LastSyncId};
+  }
+
 
 
 
@@ -887,13 +1137,14 @@ public class Publication
    * @throws RemoteException
    * @throws RepException
    */
-  public synchronized void synchronize(String subName, String remoteServerName,boolean isCreateTransactionLogFile,String remoteMachineAddress) throws
+  public void synchronize(String subName, String remoteServerName,boolean isCreateTransactionLogFile,String remoteMachineAddress) throws
       RemoteException, RepException {
-    BufferedWriter bw = null;
+    TransactionLog transactionLog = TransactionLog.getPublisherLog(pubName);
     Statement stmt = null;
     ResultSet rs = null;
-    boolean isCurrentTableCyclic =false;
     String localMachineAddress=null;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    connectionPool.beginLease();
     try {
       Utility.createTransactionLogFile = isCreateTransactionLogFile;
       localMachineAddress =InetAddress.getLocalHost().getHostAddress();
@@ -908,26 +1159,26 @@ public class Publication
         ZipHandler.unZip(PathHandler.getDefaultZIPFilePathForClient("client_" +subName + "_" + pubName),PathHandler.getDefaultFilePathForClient("client_" +subName + "_" + pubName));
       }
       SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-      XMLReader reader = saxParser.getXMLReader();
+      XMLReader reader = new ChangeSetReader(saxParser.getXMLReader());
       MergeHandler mg = new MergeHandler(true,connectionPool.getConnection(subName), this,
-                                         remoteServerName, dbh, bw,
+                                         remoteServerName, dbh, transactionLog,
                                          "MERGE REPLICATION",
                                          PathHandler.
                                          fullOrPartialTransactionLogFile(),Utility.getDatabaseMataData(connectionPool, pubName));
       mg.setLocalName(pubName);
       mg.setRemoteName(subName);
+      mg.enableParallelApply(connectionPool, pubName, pubRepTables);
       ContentHandler ch = mg;
       reader.setContentHandler(ch);
 //      AbstractSynchronize.writeDateInTransactionLogFile(bw);
 
       //initializing hashmap for maxSyncId for updating consideredId of bookMarkTable further
-      syncIdMap = new HashMap();
+      HashMap syncIdMap = new HashMap();
       Connection pubConnection = connectionPool.getConnection(pubName);
       RepTable repTable=null;
       for (int i = 0; i < pubRepTables.size(); i++) {
         repTable =(RepTable) pubRepTables.get(i);
         String tableName = repTable.getSchemaQualifiedName().toString();
-        isCurrentTableCyclic = repTable.getCyclicDependency().equalsIgnoreCase(RepConstants.YES);
         StringBuffer query = new StringBuffer();
         stmt = pubConnection.createStatement();
         query.append(" select max(").append(RepConstants.shadow_sync_id1).
@@ -939,28 +1190,13 @@ public class Publication
         syncIdMap.put(tableName, new Long(maxSynId));
       }
       reader.parse(PathHandler.getDefaultFilePathForClient("client_" + subName + "_" +pubName));
-//      AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "MERGE");
-      makePublicationTransactionLogFile(pubName,mg,bw);
-      mg.closeAllStatementAndResultset();
-
       /**
-       * Following code has been written to handle the case of cyclic  table and update the value of all the columns that are set to null in first pass.
+       * Following code has been written to handle the case of cyclic  table and update the value of all the columns that are set to null while parsing.
        */
-     if(isCurrentTableCyclic){
-
-     MergeHandler mg1 = new MergeHandler(false,connectionPool.getConnection(subName), this,
-                                        remoteServerName, dbh, bw,
-                                        "MERGE REPLICATION",
-                                        PathHandler.
-                                        fullOrPartialTransactionLogFile(),Utility.getDatabaseMataData(connectionPool, pubName));
-     mg1.setLocalName(pubName);
-     mg1.setRemoteName(subName);
-     ContentHandler ch1 = mg1;
-     reader.setContentHandler(ch1);
-     reader.parse(PathHandler.getDefaultFilePathForClient("client_" + subName + "_" +pubName));
-     makePublicationTransactionLogFile(pubName,mg,bw);
-     mg1.closeAllStatementAndResultset();
-   }
+      mg.applyDeferredOperations();
+//      AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "MERGE");
+      makePublicationTransactionLogFile(pubName,mg,transactionLog);
+      mg.closeAllStatementAndResultset();
 
       if (_Publication.xmlAndShadow_entries) {
         // deleting XML file
@@ -983,14 +1219,14 @@ public class Publication
 
       syncIdMap.clear();
       if (_Publication.xmlAndShadow_entries) {
-        deleteRecordsFromShadowTable(stmt);
+        deleteRecordsFromShadowTable(stmt, subName);
       }
 
     }
     catch (Exception ex) {
 //      isLocked = UNLOCK;
       if(Utility.createTransactionLogFile)  {
-        AbstractSynchronize.writeUnsuccessfullOperationInTransaction(bw);
+        AbstractSynchronize.writeUnsuccessfullOperationInTransaction(transactionLog);
       }
 //      RepPrinter.print(" EXCEPTION IN SAX-PARSER ");
       RepConstants.writeERROR_FILE(ex);
@@ -1013,7 +1249,7 @@ public class Publication
       throw rex;
     }
     finally {
-       connectionPool.removeSubPubFromMap(pubName);
+      session.close();
       try {
         if (rs != null) {
           rs.close();
@@ -1026,12 +1262,7 @@ public class Publication
       }
 //      System.out.println("in finally of publisher for realeasing lock");
 //      isLocked = UNLOCK;
-      try {
-        if(bw!=null)
-        bw.close();
-      }
-      catch (IOException ex2) {
-      }
+      connectionPool.endLease();
     }
   }
 
@@ -1043,15 +1274,16 @@ public class Publication
    * @throws RepException
    */
 
-  public synchronized void push(String subName, String remoteServerName,boolean isCreateTransactionLogFile,String remoteMachineAddress) throws
+  public void push(String subName, String remoteServerName,boolean isCreateTransactionLogFile,String remoteMachineAddress) throws
       RemoteException, RepException {
-    BufferedWriter bw = null;
+    TransactionLog transactionLog = TransactionLog.getPublisherLog(pubName);
     Statement stmt = null;
     ResultSet rs = null;
     Connection pubConnection =null;
-     boolean isCurrentTableCyclic =false;
      Utility.createTransactionLogFile = isCreateTransactionLogFile;
      String localMachineAddress =null;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    connectionPool.beginLease();
     try {
 
 //      String transactionLogURL = PathHandler.getDefaultTransactionLogFilePathForPublisher(pubName);
@@ -1065,27 +1297,24 @@ public class Publication
         ZipHandler.unZip(PathHandler.getDefaultZIPFilePathForClient("client_" +subName + "_" + pubName),PathHandler.getDefaultFilePathForClient("client_" +subName + "_" + pubName));
       }
       SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-      XMLReader reader = saxParser.getXMLReader();
+      XMLReader reader = new ChangeSetReader(saxParser.getXMLReader());
       MergeHandler mg = new MergeHandler(true,connectionPool.getConnection(subName), this,
-                                         remoteServerName, dbh, bw,
+                                         remoteServerName, dbh, transactionLog,
                                          "PUSH REPLICATION",PathHandler.fullOrPartialTransactionLogFile(),
                                          Utility.getDatabaseMataData(connectionPool, pubName));
       mg.setLocalName(pubName);
       mg.setRemoteName(subName);
+      mg.enableParallelApply(connectionPool, pubName, pubRepTables);
       ContentHandler ch = mg;
       reader.setContentHandler(ch);
 //     AbstractSynchronize.writeDateInTransactionLogFile(bw);
 //     initializing hashmap for maxSyncId for updating consideredId of bookMarkTable further
-      syncIdMap = new HashMap();
-
-
-      syncIdMap = new HashMap();
+      HashMap syncIdMap = new HashMap();
       pubConnection = connectionPool.getConnection(pubName);
       for (int i = 0; i < pubRepTables.size(); i++) {
         RepTable repTable  =( (RepTable) pubRepTables.get(i));
        String tableName = repTable.getSchemaQualifiedName().toString();
 
-         isCurrentTableCyclic = repTable.getCyclicDependency().equalsIgnoreCase(RepConstants.YES);
         StringBuffer query = new StringBuffer();
 
         stmt = pubConnection.createStatement();
@@ -1098,25 +1327,11 @@ public class Publication
         syncIdMap.put(tableName,new Long(maxSynId));
       }
       reader.parse(PathHandler.getDefaultFilePathForClient("client_" + subName + "_" +pubName));
+      mg.applyDeferredOperations();
       mg.closeAllStatementAndResultset();
 
 //     AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "MERGE");
-      makePublicationTransactionLogFile(pubName,mg,bw);
-       if(isCurrentTableCyclic){
-          MergeHandler mg1 = new MergeHandler(false,connectionPool.getConnection(subName), this,
-                                         remoteServerName, dbh, bw,
-                                         "PUSH REPLICATION",
-                                         PathHandler.fullOrPartialTransactionLogFile(),
-                                         Utility.getDatabaseMataData(connectionPool, pubName));
-          mg1.setLocalName(subName);
-          mg1.setRemoteName(pubName);
-          ContentHandler ch1 = mg1;
-          reader.setContentHandler(ch1);
-          AbstractSynchronize.writeDateInTransactionLogFile(bw);
-          reader.parse(PathHandler.getDefaultFilePathForClient("client_" +subName));
-          makePublicationTransactionLogFile(pubName,mg,bw);
-          mg1.closeAllStatementAndResultset();
-        }
+      makePublicationTransactionLogFile(pubName,mg,transactionLog);
       if (_Publication.xmlAndShadow_entries) {
         // deleting XML file
         deleteFile(PathHandler.getDefaultFilePathForClient("client_" + subName + "_" +pubName));
@@ -1135,14 +1350,14 @@ public class Publication
       }
       syncIdMap.clear();
       if (_Publication.xmlAndShadow_entries) {
-        deleteRecordsFromShadowTable(stmt);
+        deleteRecordsFromShadowTable(stmt, subName);
       }
 //      isLocked = UNLOCK;
     }
     catch (Exception ex) {
 //      isLocked = UNLOCK;
       if(Utility.createTransactionLogFile)
-      AbstractSynchronize.writeUnsuccessfullOperationInTransaction(bw);
+      AbstractSynchronize.writeUnsuccessfullOperationInTransaction(transactionLog);
       RepConstants.writeERROR_FILE(ex);
       RepException rex = null;
       if (ex instanceof SAXException) {
@@ -1163,11 +1378,9 @@ public class Publication
       throw rex;
     }
     finally {
+      session.close();
        //      isLocked = UNLOCK;
-       connectionPool.removeSubPubFromMap(pubName);
       try {
-        if(bw!=null)
-        bw.close();
         if (rs != null) {
           rs.close();
         }
@@ -1177,8 +1390,7 @@ public class Publication
       }
       catch (SQLException ex1) {
       }
-      catch (IOException ex2) {
-      }
+      connectionPool.endLease();
     }
   }
 
@@ -1304,13 +1516,30 @@ public class Publication
   }
 
   /**
-   * deletes the unwanted reocrds from  shadow table.
+   * Returns the purge state of the shadow tables of the publication.
+   * @return ShadowRetention.Backlog[]
+   */
+  public ShadowRetention.Backlog[] getShadowBacklogs() {
+    return shadowRetention.getBacklogs();
+  }
+
+  /**
+   * deletes the unwanted reocrds from  shadow table. The records are deleted
+   * by shadowRetention after the synchronization if it is enabled.
    * @throws SQLException
    */
-  private void deleteRecordsFromShadowTable(Statement stmt) throws SQLException, RepException {
+  private void deleteRecordsFromShadowTable(Statement stmt, String subName) throws SQLException, RepException {
+     ArrayList usedActualTables;
+     synchronized (usedActualTablesMap) {
+       usedActualTables = (ArrayList) usedActualTablesMap.get(subName);
+     }
      if (usedActualTables == null) {
        usedActualTables = getUsedActualtable();
      }
+     if (RepConstants.isShadowRetention()) {
+       shadowRetention.request(usedActualTables);
+       return;
+     }
      int noofTables = usedActualTables.size();
      if (noofTables > 0) {
        StringBuffer query;
@@ -1554,26 +1783,16 @@ public class Publication
   }
 
 
-  synchronized public void checkForLock(String pubSubName) throws RepException, RemoteException {
-   if(  listOfWaitingSubcription.size() > 0){
-    if(listOfWaitingSubcription.contains(pubSubName) ){
-       if(isLocked) {
-         throw new RepException("REP052", null);
-       }
-       log.debug("locking for subscription::"+pubSubName);
-      listOfWaitingSubcription.remove(pubSubName);
-      isLocked = LOCK;
-      return;
-    }
-      listOfWaitingSubcription.add(pubSubName);
-      throw new RepException("REP052", null);
-   }
-    if (isLocked) {
-      listOfWaitingSubcription.add(pubSubName);
-     throw new RepException("REP052", null);
-    }
-    log.debug("locking for subscription::"+pubSubName);
-     isLocked = LOCK;
+  /**
+   * Takes the lock for the subscription pubSubName on this publication.
+   * Operations of other subscriptions are not blocked, a second operation
+   * for the same subscription waits upto the configured LOCKWAITTIMEOUT.
+   * @param pubSubName subscription name
+   * @throws RepException if lock could not be taken in time
+   * @throws RemoteException
+   */
+  public void checkForLock(String pubSubName) throws RepException, RemoteException {
+    PublicationLockManager.lockSubscription(pubName, pubSubName, RepConstants.getLockWaitTimeout());
   }
 
   private void checkDependingSubscriptions(Statement stmt) throws RepException {
@@ -1609,9 +1828,8 @@ public class Publication
     }
   }
 
-  public  void releaseLOCK() throws RemoteException {
-    isLocked = UNLOCK;
-    log.debug("isLocked :" + isLocked);
+  public  void releaseLOCK(String pubSubName) throws RemoteException {
+    PublicationLockManager.releaseSubscription(pubName, pubSubName);
   }
 
   public int getPubVendorName() throws RepException {
@@ -1619,10 +1837,114 @@ public class Publication
       return pubVendor;
   }
 
+  /**
+   * Agrees on the format of the change sets exchanged with subscription
+   * subName. The first of the formats offered by the subscriber which is
+   * supported here is chosen, the publisher writes the change sets of the
+   * subscription in it until the next negotiation.
+   * @param subName
+   * @param formats formats supported by the subscriber in order of preference
+   * @return format chosen
+   */
+  public String negotiateChangeSetFormat(String subName, String[] formats) throws RemoteException {
+    String format = RepConstants.changeSetFormat_XML;
+    for (int i = 0; i < formats.length; i++) {
+      if (formats[i].equals(RepConstants.changeSetFormat_BINARY) &&
+          RepConstants.isBinaryChangeSet()) {
+        format = RepConstants.changeSetFormat_BINARY;
+        break;
+      }
+      if (formats[i].equals(RepConstants.changeSetFormat_XML)) {
+        break;
+      }
+    }
+    synchronized (changeSetFormats) {
+      changeSetFormats.put(subName.toLowerCase(), format);
+    }
+    log.debug("change set format of subscription " + subName + " :: " + format);
+    return format;
+  }
+
+  /**
+   * Agrees on the codec the change sets exchanged with subscription subName
+   * are compressed with. A codec set for the publication in config.ini is
+   * used for all its subscriptions, otherwise the codec proposed by the
+   * subscriber is taken if it is known here.
+   * @param subName
+   * @param codecName codec proposed by the subscriber
+   * @return name of the codec chosen
+   */
+  public String negotiateCompressionCodec(String subName, String codecName) throws RemoteException {
+    CompressionCodec codec = CompressionCodec.getCodec(RepConstants.getPublicationCompressionCodec(pubName));
+    if (codec == null) {
+      codec = CompressionCodec.getCodec(codecName);
+    }
+    if (codec == null) {
+      codec = getCompressionCodec(null);
+    }
+    synchronized (compressionCodecs) {
+      compressionCodecs.put(subName.toLowerCase(), codec);
+    }
+    log.debug("compression codec of subscription " + subName + " :: " + codec);
+    return codec.getName();
+  }
+
+  /**
+   * Returns the codec negotiated by subscription subName, the codec of the
+   * publication or of this end if it has not negotiated.
+   */
+  private CompressionCodec getCompressionCodec(String subName) {
+    CompressionCodec codec = null;
+    if (subName != null) {
+      synchronized (compressionCodecs) {
+        codec = (CompressionCodec) compressionCodecs.get(subName.toLowerCase());
+      }
+    }
+    if (codec == null) {
+      codec = CompressionCodec.getCodec(RepConstants.getPublicationCompressionCodec(pubName));
+    }
+    if (codec == null) {
+      codec = CompressionCodec.getCodec(RepConstants.getCompressionCodec());
+    }
+    return codec == null ? CompressionCodec.getDefaultCodec() : codec;
+  }
+
+  private boolean isBinaryChangeSet(String subName) {
+    synchronized (changeSetFormats) {
+      return RepConstants.changeSetFormat_BINARY.equals(changeSetFormats.get(subName.toLowerCase()));
+    }
+  }
+
+  /**
+   * Returns the highest sync id of the shadow table of every published table.
+   * Real time schedules compare it with the value of their last run and start
+   * a replication operation only when it has changed. The probes of all
+   * subscriptions run one after the other on a connection leased from the
+   * pool, a broken one is replaced when it is leased again.
+   * @return long[]
+   * @throws RepException
+   */
+  public synchronized long[] getShadowWatermark() throws RemoteException, RepException {
+    connectionPool.beginLease();
+    try {
+      return dbh.getShadowWatermark(connectionPool.getConnection(pubName), pubRepTables);
+    }
+    catch (SQLException ex) {
+      RepConstants.writeERROR_FILE(ex);
+      RepException rex = new RepException("REP061", new Object[] {pubName, ex.getMessage()});
+      rex.setStackTrace(ex.getStackTrace());
+      throw rex;
+    }
+    finally {
+      connectionPool.endLease();
+    }
+  }
+
 
   public void updateBookMarkLastSyncId(String remote_Pub_Sub_Name, Object[] lastId) throws RemoteException,
       SQLException, RepException  {
     Statement stmt = null;
+    connectionPool.beginLease();
     try {
       Connection pubConnection = connectionPool.getConnection(pubName);
       stmt = pubConnection.createStatement();
@@ -1638,9 +1960,8 @@ public class Publication
       }
     }
     finally {
-      connectionPool.removeSubPubFromMap(pubName);
-      if (stmt != null)
-        stmt.close();
+      ConnectionPool.closeStatementAndResultSet(stmt, null);
+      connectionPool.endLease();
     }
   }
 
@@ -1651,11 +1972,12 @@ public class Publication
     Statement stmt=null;
      boolean islockedTaken=false;
     try {
-      checkForLock(pubName);
+      PublicationLockManager.lockPublication(pubName, RepConstants.getLockWaitTimeout());
       islockedTaken=true;
        pubConnection = connectionPool.getConnection(pubName);
        stmt=pubConnection.createStatement();
       checkTableNameIfNull(newTableList);
+      MetaDataCache.invalidate(newTableList);
       //check if user is passing null instead of string array else check filter clause syntax
       if (filterClauses == null) {
         filterClauses = new String[newTableList.length];
@@ -1697,7 +2019,7 @@ public class Publication
     finally {
       connectionPool.removeSubPubFromMap(pubName);
         if (islockedTaken)
-         isLocked = UNLOCK;
+         PublicationLockManager.releasePublication(pubName);
        if(stmt!=null)
         try {
           stmt.close();
@@ -1859,9 +2181,10 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
     Statement stt = null;
      boolean islockedTaken=false;
     try {
-      checkForLock(pubName);
+      PublicationLockManager.lockPublication(pubName, RepConstants.getLockWaitTimeout());
       islockedTaken=true;
       checkTableNameIfNull(dropTableList);
+      MetaDataCache.invalidate(dropTableList);
       ArrayList dropRepTableList = new ArrayList();
       ArrayList repTableList = localServer.dropTableFromPublication(pubName,dropTableList, this, pubRepTables);
       for (int i = 0; i < repTableList.size(); i++) {
@@ -1923,7 +2246,7 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
     finally {
       connectionPool.removeSubPubFromMap(pubName);
       if (islockedTaken)
-         isLocked = UNLOCK;
+         PublicationLockManager.releasePublication(pubName);
       try {
         if (stt != null) {
           stt.close();
@@ -2009,6 +2332,8 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
           SQLException, RemoteException, RepException {
         Statement stmt = null;
         ResultSet rows = null, shadowResult = null;
+        SpoolSession session = SpoolSession.open(pubName, subName);
+        connectionPool.beginLease();
         try {
 //          checkForLock();
           FileOutputStream fos = new FileOutputStream(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName+ "_" +subName));
@@ -2087,12 +2412,13 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
 
           // making zip file from xml file
           if(!localAddress.equalsIgnoreCase(remoteMachineAddress)) {
-            ZipHandler.makeZip(PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName + "_" + subName),PathHandler.getDefaultFilePathForClient("snapshot_" + pubName +"_" + subName), "snapshot_" + pubName + "_" + subName + ".xml");
+            ZipHandler.makeZip(PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName + "_" + subName),PathHandler.getDefaultFilePathForClient("snapshot_" + pubName +"_" + subName), "snapshot_" + pubName + "_" + subName + ".xml", getCompressionCodec(subName));
             // writing zip file on socket
     //         writeXMLFileOnClientSocket(address, portNo,PathHandler.getDefaultZIPFilePathForServer("snapshot_" + pubName));
-            WriteOnSocket writeOnSocket = new WriteOnSocket(PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName),PathHandler.getDefaultFilePathForClient("snapshot_" + pubName),_Publication.xmlAndShadow_entries, "snapshot_" + pubName,fileUpload, true);
+            WriteOnSocket writeOnSocket = new WriteOnSocket(PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName + "_" + subName),PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" + subName),_Publication.xmlAndShadow_entries, "snapshot_" + pubName + "_" + subName,fileUpload, true);
             writeOnSocket.start();
             writeOnSocket.join();
+            writeOnSocket.checkUpload();
           }
           /*   if (_Publication.xmlAndShadow_entries) {
             // deleting zip file
@@ -2131,15 +2457,11 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
           throw ex;
         }
         finally {
-          connectionPool.removeSubPubFromMap(pubName);
-          /** @todo  Close the statement */
-          if (rows != null)
-            rows.close();
-          if (shadowResult != null)
-            shadowResult.close();
-          if (stmt != null)
-            stmt.close();
+          session.close();
+          ConnectionPool.closeStatementAndResultSet(null, rows);
+          ConnectionPool.closeStatementAndResultSet(stmt, shadowResult);
 //          isLocked = UNLOCK;
+          connectionPool.endLease();
         }
       }
       public ArrayList dropTableListForSub(String subName) throws RepException,
@@ -2180,6 +2502,7 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
       public void updatePublisherShadowAndBookmarkTableAfterPullOnSubscriber(String remote_Pub_Sub_Name,
           Object[] lastId) throws RemoteException, SQLException, RepException {
         Statement stmt = null;
+        connectionPool.beginLease();
         try {
           updateBookMarkLastSyncId(remote_Pub_Sub_Name, lastId);
           Connection pubConnection = connectionPool.getConnection(pubName);
@@ -2188,10 +2511,9 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
             String tableName = ( (RepTable) pubRepTables.get(i)).getSchemaQualifiedName().toString();
             UpdateConisdered_LastsyncIdForBookMarksTable(pubName,remote_Pub_Sub_Name,tableName, lastId[i], stmt);
           }
-          deleteRecordsFromShadowTable(stmt);
+          deleteRecordsFromShadowTable(stmt, remote_Pub_Sub_Name);
         }
         finally {
-          connectionPool.removeSubPubFromMap(pubName);
           try {
             if (stmt != null) {
               stmt.close();
@@ -2199,6 +2521,7 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
           }
           catch (SQLException ex) {
           }
+          connectionPool.endLease();
         }
       }
 
@@ -2235,15 +2558,10 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
            return resultSetPrimaryKey;
    }
 
-  private void makePublicationTransactionLogFile(String subName,MergeHandler mg ,BufferedWriter bw ) throws Exception {
+  private void makePublicationTransactionLogFile(String subName,MergeHandler mg ,TransactionLog transactionLog ) throws Exception {
       if(Utility.createTransactionLogFile) {
-        String transactionLogURL = PathHandler.getDefaultTransactionLogFilePathForPublisher(pubName);
-        FileOutputStream fos1 = new FileOutputStream(transactionLogURL, true);
-        OutputStreamWriter os = new OutputStreamWriter(fos1);
-        bw = new BufferedWriter(os);
-        AbstractSynchronize.writeDateInTransactionLogFile(bw);
-        AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "MERGE");
-        bw.flush();
+        AbstractSynchronize.writeDateInTransactionLogFile(transactionLog);
+        AbstractSynchronize.writeOperationInTransactionLogFile(transactionLog, mg.insert,mg.update, mg.delete, "MERGE");
       }
 }
 
@@ -2262,4 +2580,9 @@ log.debug("insertTableToBookMarkList ::"+insertQuery.toString());
     return new FileUpload();
   }
 
+  public _FileUpload getFileUploader(String subName)throws RepException,
+      SQLException,RemoteException {
+    return new FileUpload(SpoolSession.getSessionId(pubName, subName));
+  }
+
 }
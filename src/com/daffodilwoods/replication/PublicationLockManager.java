@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication;
+
+import java.util.*;
+import org.apache.log4j.Logger;
+
+/**
+ * This class keeps the locks taken on publications at the publisher's end.
+ *
+ * Snapshot, synchronize, pull and push take a lock for one subscription only,
+ * so that operations of different subscriptions run in parallel and only a
+ * second operation for the same subscription has to wait. Adding or dropping
+ * tables from a publication takes the lock for the whole publication, which
+ * waits for all running subscription operations and blocks new ones.
+ *
+ * A waiter is parked for at most the given timeout, after that REP060 is
+ * thrown and the caller can try again later.
+ */
+
+public class PublicationLockManager {
+
+  /**
+   * publication name -> names of the subscriptions currently locked
+   */
+  private static HashMap subscriptionLocks = new HashMap();
+
+  /**
+   * publications locked as a whole
+   */
+  private static HashSet publicationLocks = new HashSet();
+
+  /**
+   * publication name -> number of threads waiting for the whole publication,
+   * new subscription locks are not granted while somebody waits here.
+   */
+  private static HashMap pendingPublicationLocks = new HashMap();
+
+  private static final Object monitor = new Object();
+
+  protected static Logger log = Logger.getLogger(PublicationLockManager.class.getName());
+
+  private PublicationLockManager() {
+  }
+
+  /**
+   * Locks the subscription subName of publication pubName. Waits at most
+   * timeout milliseconds if the same subscription or the whole publication
+   * is already locked.
+   * @param pubName publication name
+   * @param subName subscription name
+   * @param timeout maximum wait in milliseconds
+   * @throws RepException if lock could not be taken in time
+   */
+  public static void lockSubscription(String pubName, String subName, long timeout) throws RepException {
+    String pubKey = pubName.toLowerCase();
+    String subKey = subName.toLowerCase();
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (monitor) {
+      while (publicationLocks.contains(pubKey) ||
+             getPendingCount(pubKey) > 0 ||
+             getLockedSubscriptions(pubKey, false).contains(subKey)) {
+        waitUntil(deadline, pubName, subName, timeout);
+      }
+      getLockedSubscriptions(pubKey, true).add(subKey);
+      log.debug("locking for subscription::" + subName + " of publication " + pubName);
+    }
+  }
+
+  /**
+   * Releases the lock taken by lockSubscription.
+   * @param pubName publication name
+   * @param subName subscription name
+   */
+  public static void releaseSubscription(String pubName, String subName) {
+    String pubKey = pubName.toLowerCase();
+    synchronized (monitor) {
+      HashSet subs = getLockedSubscriptions(pubKey, false);
+      subs.remove(subName.toLowerCase());
+      if (subs.isEmpty()) {
+        subscriptionLocks.remove(pubKey);
+      }
+      log.debug("released lock for subscription::" + subName + " of publication " + pubName);
+      monitor.notifyAll();
+    }
+  }
+
+  /**
+   * Locks the publication pubName as a whole. Waits at most timeout
+   * milliseconds for running subscription operations to finish.
+   * @param pubName publication name
+   * @param timeout maximum wait in milliseconds
+   * @throws RepException if lock could not be taken in time
+   */
+  public static void lockPublication(String pubName, long timeout) throws RepException {
+    String pubKey = pubName.toLowerCase();
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (monitor) {
+      pendingPublicationLocks.put(pubKey, new Integer(getPendingCount(pubKey) + 1));
+      try {
+        while (publicationLocks.contains(pubKey) ||
+               !getLockedSubscriptions(pubKey, false).isEmpty()) {
+          waitUntil(deadline, pubName, pubName, timeout);
+        }
+        publicationLocks.add(pubKey);
+        log.debug("locking publication::" + pubName);
+      }
+      finally {
+        int pending = getPendingCount(pubKey) - 1;
+        if (pending > 0) {
+          pendingPublicationLocks.put(pubKey, new Integer(pending));
+        }
+        else {
+          pendingPublicationLocks.remove(pubKey);
+        }
+        // subscription waiters have been held back by us
+        monitor.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Releases the lock taken by lockPublication.
+   * @param pubName publication name
+   */
+  public static void releasePublication(String pubName) {
+    synchronized (monitor) {
+      publicationLocks.remove(pubName.toLowerCase());
+      log.debug("released lock for publication::" + pubName);
+      monitor.notifyAll();
+    }
+  }
+
+  /**
+   * Returns the number of subscriptions of publication pubName which are
+   * running a locked operation at present.
+   * @param pubName publication name
+   * @return int
+   */
+  public static int getActiveSubscriptionCount(String pubName) {
+    synchronized (monitor) {
+      return getLockedSubscriptions(pubName.toLowerCase(), false).size();
+    }
+  }
+
+  private static HashSet getLockedSubscriptions(String pubKey, boolean create) {
+    HashSet subs = (HashSet) subscriptionLocks.get(pubKey);
+    if (subs == null) {
+      subs = new HashSet();
+      if (create) {
+        subscriptionLocks.put(pubKey, subs);
+      }
+    }
+    return subs;
+  }
+
+  private static int getPendingCount(String pubKey) {
+    Integer pending = (Integer) pendingPublicationLocks.get(pubKey);
+    return pending == null ? 0 : pending.intValue();
+  }
+
+  private static void waitUntil(long deadline, String pubName, String requester, long timeout) throws RepException {
+    long remaining = deadline - System.currentTimeMillis();
+    if (remaining <= 0) {
+      throw new RepException("REP060", new Object[] {requester, pubName, new Long(timeout / 1000)});
+    }
+    try {
+      monitor.wait(remaining);
+    }
+    catch (InterruptedException ex) {
+      // the caller still has to see it was interrupted
+      Thread.currentThread().interrupt();
+      RepException rex = new RepException("REP060", new Object[] {requester, pubName, new Long(timeout / 1000)});
+      rex.setStackTrace(ex.getStackTrace());
+      throw rex;
+    }
+  }
+
+}
@@ -22,6 +22,8 @@ import java.io.*;
 import java.sql.*;
 import org.apache.log4j.Logger;
 import java.util.Properties;
+import java.util.Enumeration;
+import java.util.HashMap;
 
 /**
  * This class holds all the constants used throughout the project.
@@ -33,14 +35,68 @@ import java.util.Properties;
 public class RepConstants
 {
 
-    static {
-       initialiseRepConstants();
-     }
-
      // Below given are used to get prefix from user
      private static String InsertTriggerPrefix, UpdateTriggerPrefix,
          DeleteTriggerPrefix, ShadowTablePrefix, SequencePrefix,indexPrefix;
 
+     // maximum wait in seconds for the lock on a subscription or publication
+     private static long lockWaitTimeout = 60;
+     // number of operations of a table applied in one JDBC batch
+     private static int applyBatchSize = 500;
+     // operations applied between two apply checkpoints, 0 for none
+     private static int applyCheckpointInterval = 0;
+     // tables of a change set applied at the same time
+     private static int applyThreads = 4;
+     // collapse the shadow table history per primary key in one pass
+     private static boolean collapseShadowHistory = true;
+     // purge shadow tables on a background thread in bounded batches
+     private static boolean shadowRetention = true;
+     private static int shadowRetentionBatchSize = 5000;
+     private static long shadowRetentionPause = 0;
+     // change-capture triggers without a log table row and max per change
+     private static boolean leanCapture = false;
+     // statement level capture triggers with transition tables on PostgreSQL
+     private static boolean statementCapture = false;
+     // asynchronous transaction log
+     private static int transactionLogBufferSize = 8192;
+     private static String transactionLogFormat = "TEXT";
+     private static long transactionLogSyncInterval = 0;
+     private static long transactionLogMaxSize = 10 * 1024 * 1024;
+     private static long transactionLogRotateInterval = 24 * 60 * 60 * 1000;
+     // stream the synchronization XML to the subscriber over a socket
+     private static boolean streamingTransport = true;
+     // offer the binary change set format to the other end
+     private static boolean binaryChangeSet = true;
+     // codec change sets are compressed with, overridden per publication
+     private static String compressionCodec = "DEFLATE";
+     private static HashMap publicationCompressionCodecs = new HashMap();
+     // chunk size in MB, chunks in flight and retries of a file upload
+     private static int transferChunkSize = 2;
+     private static int transferWindow = 4;
+     private static int transferRetries = 3;
+     // tables exported and loaded at the same time by a snapshot
+     private static int snapshotThreads = 4;
+     // bulk load of snapshot records
+     private static boolean bulkLoad = true;
+     private static int bulkLoadChunkSize = 1000;
+     private static int bulkLoadCommitInterval = 10000;
+     private static boolean bulkLoadDeferIndexes = false;
+     private static boolean bulkLoadDisableTriggers = false;
+     // milliseconds between the change probes of a real time schedule
+     private static long realTimeMinPoll = 250;
+     private static long realTimeMaxPoll = 5000;
+     // connections leased by replication operations
+     private static int poolMaxActive = 20;
+     private static int poolMaxIdle = 4;
+     private static long poolMaxWait = 60;
+     private static String poolValidationQuery = null;
+
+    // after the fields above, their initializers would overwrite the values
+    // read from config.ini
+    static {
+       initialiseRepConstants();
+     }
+
     public final static String publication_TableName = "Rep_Publications";
     public final static String subscription_TableName = "Rep_Subscriptions";
     public final static String bookmark_TableName = "Rep_BookMarkTable";
@@ -70,6 +126,12 @@ public class RepConstants
     public final static String bookmark_ConisderedId5 = "Rep_ConsideredId";
     public final static String bookmark_IsDeletedTable="Rep_IsDeletedTable";
 
+    public final static String checkpoint_LocalName1 = "Rep_LocalName";
+    public final static String checkpoint_RemoteName2 = "Rep_RemoteName";
+    public final static String checkpoint_ChangeSet3 = "Rep_ChangeSet";
+    public final static String checkpoint_OperationNo4 = "Rep_OperationNo";
+    public final static String checkpoint_lastSyncId5 = "Rep_Last_Sync_ID";
+
     public final static String repTable_pubsubName1 = "Rep_PubSub_Name";
     public final static String repTable_tableId2 = "Rep_Table_Id";
     public final static String repTable_tableName2 = "Rep_Table_Name";
@@ -130,6 +192,9 @@ public class RepConstants
     public final static String update_operation = "U";
     public final static String delete_operation = "D";
 
+    public final static String changeSetFormat_XML = "XML";
+    public final static String changeSetFormat_BINARY = "BINARY";
+
     public final static String afterUpdate = "A";
     public final static String beforeUpdate = "B";
 
@@ -196,40 +261,28 @@ public class RepConstants
      return schema + "." + prefix + table;
    }
 
+   /**
+    * Writes the exception to the error file. The text is written by the
+    * thread of the error log, the file is not opened for every error.
+    * @param ex
+    */
    public static void writeERROR_FILE(Exception ex) {
-     try {
-      FileOutputStream errorLogFile = new FileOutputStream(PathHandler.getErrorFilePath(), true);
-       Timestamp dt = new Timestamp(System.currentTimeMillis());
-       errorLogFile.write("\n\n".getBytes());
-       errorLogFile.write( (dt + "\n").getBytes());
-      errorLogFile.write(ex.getMessage() == null ? "null".getBytes() : ex.getMessage().getBytes());
-       errorLogFile.write("\n\n".getBytes());
-       StackTraceElement[] traceElement = ex.getStackTrace();
-       for (int i = 0; i < traceElement.length; i++) {
-         errorLogFile.write(traceElement[i].toString().getBytes());
-       }
-       errorLogFile.close();
-     }
-     catch (IOException ex2) {
-       // dump the error
+     StringBuffer error = new StringBuffer();
+     Timestamp dt = new Timestamp(System.currentTimeMillis());
+     error.append("\n\n").append(dt).append("\n")
+         .append(ex.getMessage() == null ? "null" : ex.getMessage())
+         .append("\n\n");
+     StackTraceElement[] traceElement = ex.getStackTrace();
+     for (int i = 0; i < traceElement.length; i++) {
+       error.append(traceElement[i].toString());
      }
+     TransactionLog.getErrorLog().write(error.toString());
    }
 
    public static void writeMessage_FILE(String ex) {
-       try {
-         FileOutputStream errorLogFile = new FileOutputStream(PathHandler.
-             getErrorFilePath(), true);
-         Timestamp dt = new Timestamp(System.currentTimeMillis());
-         errorLogFile.write("\n\n".getBytes());
-         errorLogFile.write( (dt + "\n").getBytes());
-         errorLogFile.write(ex.getBytes());
-         errorLogFile.write("\n\n".getBytes());
-         errorLogFile.close();
-       }
-       catch (IOException ex2) {
-         // dump the error
-       }
-     }
+     Timestamp dt = new Timestamp(System.currentTimeMillis());
+     TransactionLog.getErrorLog().write("\n\n" + dt + "\n" + ex + "\n\n");
+   }
 
 
    public static String getCursorName(String schematable, String prefix) {
@@ -270,6 +323,45 @@ public class RepConstants
 //        System.out.println(" SequencePrefix : "+SequencePrefix);
               indexPrefix = p.getProperty("Index_Prefix", "I_").trim();
 //        System.out.println(" SequencePrefix : "+SequencePrefix);
+              lockWaitTimeout = getLongProperty(p, "LOCKWAITTIMEOUT", lockWaitTimeout);
+              applyBatchSize = (int) getLongProperty(p, "APPLYBATCHSIZE", applyBatchSize);
+              applyCheckpointInterval = (int) getLongProperty(p, "APPLYCHECKPOINTINTERVAL", applyCheckpointInterval);
+              applyThreads = (int) getLongProperty(p, "APPLYTHREADS", applyThreads);
+              collapseShadowHistory = !p.getProperty("COLLAPSESHADOWHISTORY", "true").trim().equalsIgnoreCase("false");
+              shadowRetention = !p.getProperty("SHADOWRETENTION", "true").trim().equalsIgnoreCase("false");
+              shadowRetentionBatchSize = (int) getLongProperty(p, "SHADOWRETENTIONBATCHSIZE", shadowRetentionBatchSize);
+              shadowRetentionPause = getLongProperty(p, "SHADOWRETENTIONPAUSE", shadowRetentionPause);
+              leanCapture = p.getProperty("LEANCAPTURE", "false").trim().equalsIgnoreCase("true");
+              statementCapture = p.getProperty("STATEMENTCAPTURE", "false").trim().equalsIgnoreCase("true");
+              transactionLogBufferSize = (int) getLongProperty(p, "TRANSACTIONLOGBUFFER", transactionLogBufferSize);
+              transactionLogFormat = p.getProperty("TRANSACTIONLOGFORMAT", transactionLogFormat).trim().toUpperCase();
+              transactionLogSyncInterval = getLongProperty(p, "TRANSACTIONLOGSYNCINTERVAL", transactionLogSyncInterval);
+              transactionLogMaxSize = getLongProperty(p, "TRANSACTIONLOGMAXSIZE", transactionLogMaxSize);
+              transactionLogRotateInterval = getLongProperty(p, "TRANSACTIONLOGROTATEINTERVAL", transactionLogRotateInterval);
+              streamingTransport = !p.getProperty("STREAMINGTRANSPORT", "true").trim().equalsIgnoreCase("false");
+              binaryChangeSet = !p.getProperty("BINARYCHANGESET", "true").trim().equalsIgnoreCase("false");
+              compressionCodec = p.getProperty("COMPRESSIONCODEC", compressionCodec).trim().toUpperCase();
+              for (Enumeration e = p.propertyNames(); e.hasMoreElements(); ) {
+                String key = (String) e.nextElement();
+                if (key.toUpperCase().startsWith("COMPRESSIONCODEC.")) {
+                  publicationCompressionCodecs.put(key.substring(17).trim().toLowerCase(), p.getProperty(key).trim().toUpperCase());
+                }
+              }
+              transferChunkSize = (int) getLongProperty(p, "TRANSFERCHUNKSIZE", transferChunkSize);
+              transferWindow = (int) getLongProperty(p, "TRANSFERWINDOW", transferWindow);
+              transferRetries = (int) getLongProperty(p, "TRANSFERRETRIES", transferRetries);
+              snapshotThreads = (int) getLongProperty(p, "SNAPSHOTTHREADS", snapshotThreads);
+              bulkLoad = !p.getProperty("BULKLOAD", "true").trim().equalsIgnoreCase("false");
+              bulkLoadChunkSize = (int) getLongProperty(p, "BULKLOADCHUNKSIZE", bulkLoadChunkSize);
+              bulkLoadCommitInterval = (int) getLongProperty(p, "BULKLOADCOMMITINTERVAL", bulkLoadCommitInterval);
+              bulkLoadDeferIndexes = p.getProperty("BULKLOADDEFERINDEXES", "false").trim().equalsIgnoreCase("true");
+              bulkLoadDisableTriggers = p.getProperty("BULKLOADDISABLETRIGGERS", "false").trim().equalsIgnoreCase("true");
+              realTimeMinPoll = getLongProperty(p, "REALTIMEMINPOLL", realTimeMinPoll);
+              realTimeMaxPoll = getLongProperty(p, "REALTIMEMAXPOLL", realTimeMaxPoll);
+              poolMaxActive = (int) getLongProperty(p, "POOLMAXACTIVE", poolMaxActive);
+              poolMaxIdle = (int) getLongProperty(p, "POOLMAXIDLE", poolMaxIdle);
+              poolMaxWait = getLongProperty(p, "POOLMAXWAIT", poolMaxWait);
+              poolValidationQuery = p.getProperty("POOLVALIDATIONQUERY");
             }
             catch (Exception ex) {
               RepConstants.writeERROR_FILE(ex);
@@ -277,6 +369,337 @@ public class RepConstants
           }
 
 
+          private static long getLongProperty(Properties p, String key, long defaultValue) {
+            String value = p.getProperty(key);
+            if (value == null || value.trim().equals("")) {
+              return defaultValue;
+            }
+            try {
+              return Long.parseLong(value.trim());
+            }
+            catch (NumberFormatException ex) {
+              RepConstants.writeERROR_FILE(ex);
+              return defaultValue;
+            }
+          }
+
+   /**
+    * Returns the maximum time in milliseconds an operation waits for the lock
+    * on a subscription or publication.
+    * @return long
+    */
+   public static long getLockWaitTimeout() {
+     return lockWaitTimeout * 1000;
+   }
+
+   /**
+    * Returns the number of operations of a table which are sent to the
+    * database in one JDBC batch while applying a change set. A value less
+    * than 2 applies every operation on its own.
+    * @return int
+    */
+   public static int getApplyBatchSize() {
+     return applyBatchSize;
+   }
+
+   /**
+    * Returns the number of operations of a change set applied between two
+    * apply checkpoints, 0 if change sets are applied without checkpoints.
+    * @return int
+    */
+   public static int getApplyCheckpointInterval() {
+     return Math.max(applyCheckpointInterval, 0);
+   }
+
+   /**
+    * Returns the number of tables of a change set applied at the same time,
+    * each on its own connection. 1 means the tables are applied one after the
+    * other on the connection of the subscription or publication.
+    * @return int
+    */
+   public static int getApplyThreads() {
+     return Math.max(applyThreads, 1);
+   }
+
+   /**
+    * Returns true if the changes of a table are extracted by reading its
+    * shadow table once and collapsing the history of every primary key in
+    * memory, false for tracing the history of every record with queries.
+    * @return boolean
+    */
+   public static boolean isCollapseShadowHistory() {
+     return collapseShadowHistory;
+   }
+
+   /**
+    * Returns true if the records of shadow tables received by all the
+    * subscribers are deleted by ShadowRetention after a synchronization,
+    * false if they are deleted during the synchronization.
+    * @return boolean
+    */
+   public static boolean isShadowRetention() {
+     return shadowRetention;
+   }
+
+   /**
+    * Returns the number of sync ids of a shadow table deleted by one
+    * statement of ShadowRetention.
+    * @return int
+    */
+   public static int getShadowRetentionBatchSize() {
+     return Math.max(shadowRetentionBatchSize, 1);
+   }
+
+   /**
+    * Returns the time in milliseconds ShadowRetention waits between two
+    * delete statements.
+    * @return long
+    */
+   public static long getShadowRetentionPause() {
+     return Math.max(shadowRetentionPause, 0);
+   }
+
+   /**
+    * Returns true if the triggers created on published tables take the
+    * common id of an update without reading max from the log table, and the
+    * PostgreSQL triggers skip updates which change no column. False by
+    * default, as such updates are then no longer sent.
+    * @return boolean
+    */
+   public static boolean isLeanCapture() {
+     return leanCapture;
+   }
+
+   /**
+    * Returns true if the triggers created on published PostgreSQL tables are
+    * statement level triggers reading the changed rows from transition
+    * tables, false for row level triggers.
+    * @return boolean
+    */
+   public static boolean isStatementCapture() {
+     return statementCapture;
+   }
+
+   /**
+    * Returns the number of records a TransactionLog keeps waiting for its
+    * writer thread before callers have to wait.
+    * @return int
+    */
+   public static int getTransactionLogBufferSize() {
+     return Math.max(transactionLogBufferSize, 16);
+   }
+
+   /**
+    * Returns TransactionLog.TEXT or TransactionLog.BINARY, the format of the
+    * records of transaction log files.
+    * @return String
+    */
+   public static String getTransactionLogFormat() {
+     return transactionLogFormat.equals(TransactionLog.BINARY)
+         ? TransactionLog.BINARY : TransactionLog.TEXT;
+   }
+
+   /**
+    * Returns the minimum time in milliseconds between two syncs of a
+    * transaction log file to the disk, 0 to sync after every batch of
+    * records written and -1 to leave it to the operating system.
+    * @return long
+    */
+   public static long getTransactionLogSyncInterval() {
+     return transactionLogSyncInterval;
+   }
+
+   /**
+    * Returns the size in bytes after which a new transaction log file is
+    * started, 0 for no limit.
+    * @return long
+    */
+   public static long getTransactionLogMaxSize() {
+     return transactionLogMaxSize;
+   }
+
+   /**
+    * Returns the time in milliseconds after which a new transaction log file
+    * is started, 0 for no limit.
+    * @return long
+    */
+   public static long getTransactionLogRotateInterval() {
+     return transactionLogRotateInterval;
+   }
+
+   /**
+    * Returns true if the publisher writes the synchronization XML directly on
+    * a socket opened by the subscriber, false for the xml and zip files
+    * uploaded through _FileUpload. The files are used as well if the
+    * publisher can not connect to the subscriber.
+    * @return boolean
+    */
+   public static boolean isStreamingTransport() {
+     return streamingTransport;
+   }
+
+   /**
+    * Returns true if change sets are written in the binary format of
+    * BinaryChangeSetWriter when the other end supports it, false for XML.
+    * @return boolean
+    */
+   public static boolean isBinaryChangeSet() {
+     return binaryChangeSet;
+   }
+
+   /**
+    * Returns the name of the codec change sets are compressed with on the
+    * links of this end.
+    * @return String
+    */
+   public static String getCompressionCodec() {
+     return compressionCodec;
+   }
+
+   /**
+    * Returns the name of the codec set for publication pubName with
+    * COMPRESSIONCODEC.<publication name>, null if none is set.
+    * @param pubName
+    * @return String
+    */
+   public static String getPublicationCompressionCodec(String pubName) {
+     return (String) publicationCompressionCodecs.get(pubName.toLowerCase());
+   }
+
+   /**
+    * Returns the size in bytes of the chunks a file is uploaded in, between
+    * 1 MB and 8 MB.
+    * @return int
+    */
+   public static int getTransferChunkSize() {
+     return Math.min(Math.max(transferChunkSize, 1), 8) * 1024 * 1024;
+   }
+
+   /**
+    * Returns the number of chunks of a file upload which are sent at the
+    * same time.
+    * @return int
+    */
+   public static int getTransferWindow() {
+     return Math.max(transferWindow, 1);
+   }
+
+   /**
+    * Returns how many times a file upload is resumed after a broken
+    * connection, or a chunk is sent again after a checksum error.
+    * @return int
+    */
+   public static int getTransferRetries() {
+     return Math.max(transferRetries, 0);
+   }
+
+   /**
+    * Returns the number of tables a snapshot exports and loads at the same
+    * time, 1 means the tables are done one after the other in one file.
+    * @return int
+    */
+   public static int getSnapshotThreads() {
+     return Math.max(snapshotThreads, 1);
+   }
+
+   /**
+    * Returns true if the records of a snapshot are inserted in chunks by the
+    * BulkLoader of the database, false for inserting every record on its own.
+    * @return boolean
+    */
+   public static boolean isBulkLoad() {
+     return bulkLoad;
+   }
+
+   /**
+    * Returns the number of records a BulkLoader sends to the database at once.
+    * @return int
+    */
+   public static int getBulkLoadChunkSize() {
+     return Math.max(bulkLoadChunkSize, 1);
+   }
+
+   /**
+    * Returns the number of records after which a BulkLoader commits.
+    * @return int
+    */
+   public static int getBulkLoadCommitInterval() {
+     return Math.max(bulkLoadCommitInterval, 1);
+   }
+
+   /**
+    * Returns true if the secondary indexes of a table are dropped or disabled
+    * while its snapshot records are bulk loaded.
+    * @return boolean
+    */
+   public static boolean isBulkLoadDeferIndexes() {
+     return bulkLoadDeferIndexes;
+   }
+
+   /**
+    * Returns true if the triggers of a table are disabled while its snapshot
+    * records are bulk loaded.
+    * @return boolean
+    */
+   public static boolean isBulkLoadDisableTriggers() {
+     return bulkLoadDisableTriggers;
+   }
+
+   /**
+    * Returns the milliseconds a real time schedule waits before it looks for
+    * changes again after a replication operation.
+    * @return long
+    */
+   public static long getRealTimeMinPoll() {
+     return Math.max(realTimeMinPoll, 1);
+   }
+
+   /**
+    * Returns the longest time in milliseconds a real time schedule waits
+    * between two looks for changes while nothing is changed.
+    * @return long
+    */
+   public static long getRealTimeMaxPoll() {
+     return Math.max(realTimeMaxPoll, getRealTimeMinPoll());
+   }
+
+   /**
+    * Returns the maximum number of connections leased by replication
+    * operations at the same time, idle ones included.
+    * @return int
+    */
+   public static int getPoolMaxActive() {
+     return Math.max(poolMaxActive, 1);
+   }
+
+   /**
+    * Returns the number of returned connections kept open for the next
+    * operations.
+    * @return int
+    */
+   public static int getPoolMaxIdle() {
+     return Math.max(poolMaxIdle, 0);
+   }
+
+   /**
+    * Returns the milliseconds an operation waits for a connection when all
+    * of them are leased.
+    * @return long
+    */
+   public static long getPoolMaxWait() {
+     return poolMaxWait * 1000;
+   }
+
+   /**
+    * Returns the query checking an idle connection before it is leased
+    * again, null if the query is chosen by the JDBC url and an empty string
+    * if only closed connections are to be found.
+    * @return String
+    */
+   public static String getPoolValidationQuery() {
+     return poolValidationQuery == null ? null : poolValidationQuery.trim();
+   }
+
     public static String gen_Name(String tableName) {
          return "Gen_" + tableName;
        }
@@ -169,6 +169,15 @@ public class RepTable {
     return false;
   }
 
+  /**
+   * Returns the comma separated columns of the insert query for snapshot,
+   * getColumnTreeMap must have been called before.
+   * @return String
+   */
+  public String getInsertColumnNames() {
+    return columnNamesQuery.toString();
+  }
+
   public String createInsertQueryForSnapShot() {
     StringBuffer insertQuery = new StringBuffer();
     insertQuery.append("INSERT INTO ")
@@ -27,6 +27,7 @@ import java.sql.*;
 import java.util.*;
 import com.daffodilwoods.replication.zip.ImportedTablesInfo;
 import com.daffodilwoods.graph.DirectedGraph;
+import com.daffodilwoods.graph.StronglyConnectedComponents;
 import com.daffodilwoods.replication.DBHandler.AbstractDataBaseHandler;
 import com.daffodilwoods.replication.schedule.ScheduleHandler;
 import org.apache.log4j.Logger;
@@ -468,8 +469,9 @@ public class ReplicationServer
     //Here it comes if the replication server has been restarted.
     PreparedStatement prStt1 = null;
     ResultSet rs = null;
+    connectionPool.beginLease();
     try {
-      Connection con = connectionPool.getFreshConnection(subName);
+      Connection con = connectionPool.getConnection(subName);
       prStt1 = con.prepareStatement(RepConstants.loadSubscriptionQuery);
       prStt1.setString(1, subName);
        rs = prStt1.executeQuery();
@@ -535,6 +537,7 @@ public class ReplicationServer
           }
           catch (SQLException ex1) {
           }
+          connectionPool.endLease();
         }
   }
 
@@ -943,6 +946,8 @@ public class ReplicationServer
       //corresponding to which is included in publication.
       ArrayList repTableList = new ArrayList();
       try {
+        // the tables may have been changed since their metadata was read
+        MetaDataCache.invalidate(tableNames);
         // pubTableList contain all tables that are included in publication
         ArrayList pubTableList = new ArrayList();
         MetaDataInfo mdi = Utility.getDatabaseMataData(connectionPool, pubName);
@@ -973,19 +978,27 @@ public class ReplicationServer
           schemaQualifiedNames[i] = sname;
         }
         Map importedTableInfoMap = mdi.getImportedTablesInfo(schemaQualifiedNames,directedGraph,removeCycleTableNames);
-        if (directedGraph.hasCycle()) {
-          tablesInCycle = directedGraph.TablesInCycle();
+        StronglyConnectedComponents components = new StronglyConnectedComponents(directedGraph);
+        if (components.hasCycle()) {
+          int component = 0;
+          while (!components.isCyclic(component))
+            component++;
+          tablesInCycle = new ArrayList(Arrays.asList(components.cycleOf(component)));
           throw new RepException("REP0205",new Object[]{tablesInCycle});
         }
 
-        List repTablesNamesOrderdAccToHierarcy=Arrays.asList(directedGraph.topologicalSort());
+        Object[] repTablesNamesOrderdAccToHierarcy = components.topologicalSort();
 //System.out.println("Ordered Tables :: " +repTablesNamesOrderdAccToHierarcy);
-        int noOfRepTables = repTablesNamesOrderdAccToHierarcy.size();
+        int noOfRepTables = repTablesNamesOrderdAccToHierarcy.length;
+        HashMap orderedIndexes = new HashMap();
+        for (int i = 0; i < noOfRepTables; i++) {
+          orderedIndexes.put(repTablesNamesOrderdAccToHierarcy[i], new Integer(i));
+        }
         RepTable[] tempRep = new RepTable[noOfRepTables];
         for (int i = 0; i < noOfRepTables; i++) {
           RepTable repTable = (RepTable) repTableList.get(i);
           SchemaQualifiedName unOrderedschemaQualifiedName = repTable.getSchemaQualifiedName();
-          int orderedIndex = repTablesNamesOrderdAccToHierarcy.indexOf(unOrderedschemaQualifiedName);
+          int orderedIndex = ( (Integer) orderedIndexes.get(unOrderedschemaQualifiedName)).intValue();
           tempRep[orderedIndex] = repTable;
       }
 // System.out.println("repTablesOrderdAccToHierarcy::");
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication;
+
+import java.sql.*;
+import java.util.*;
+
+import com.daffodilwoods.replication.DBHandler.AbstractDataBaseHandler;
+import org.apache.log4j.Logger;
+
+/**
+ * This class deletes the records of shadow tables which all the subscribers
+ * have received. A synchronization only asks for the tables it has used to be
+ * purged, the records are deleted on a thread of this class after it.
+ *
+ * Records are deleted oldest first along the sync id index of the shadow
+ * table, every statement deletes a range of at most the batch size of
+ * RepConstants sync ids, so no statement holds locks on a large part of the
+ * table. The purge of a table stops at the minimum last sync id and considered
+ * id of its bookmarks, which is the position of the slowest subscriber.
+ */
+
+public class ShadowRetention {
+
+  protected static Logger log = Logger.getLogger(ShadowRetention.class.getName());
+
+  /**
+   * Purge state of the shadow table of one table.
+   */
+  public static class Backlog {
+    public String tableName;
+    // lowest sync id left in the shadow table, -1 if it is empty
+    public long lowestSyncId = -1;
+    // records below this sync id have been received by all the subscribers
+    public long retainFrom = -1;
+    public long purgedRecords;
+    public long statements;
+    public long lastPurgeTime;
+
+    Backlog(String tableName0) {
+      tableName = tableName0;
+    }
+
+    /**
+     * Returns the number of sync ids received by all the subscribers which
+     * are still in the shadow table. Sync ids may have gaps, so there may be
+     * fewer records.
+     * @return long
+     */
+    public long getPendingSyncIds() {
+      if (lowestSyncId < 0 || retainFrom <= lowestSyncId) {
+        return 0;
+      }
+      return retainFrom - lowestSyncId;
+    }
+
+    Backlog copy() {
+      Backlog backlog = new Backlog(tableName);
+      backlog.lowestSyncId = lowestSyncId;
+      backlog.retainFrom = retainFrom;
+      backlog.purgedRecords = purgedRecords;
+      backlog.statements = statements;
+      backlog.lastPurgeTime = lastPurgeTime;
+      return backlog;
+    }
+  }
+
+  private ConnectionPool connectionPool;
+  private String pubsubName;
+  private AbstractDataBaseHandler dbHandler;
+  // tables waiting for a purge in the order they were asked for
+  private LinkedList pendingTables = new LinkedList();
+  // table name -> Backlog
+  private HashMap backlogs = new HashMap();
+  private Thread worker;
+
+  public ShadowRetention(ConnectionPool connectionPool0, String pubsubName0, AbstractDataBaseHandler dbHandler0) {
+    connectionPool = connectionPool0;
+    pubsubName = pubsubName0;
+    dbHandler = dbHandler0;
+  }
+
+  /**
+   * Asks for the shadow tables of the given tables to be purged and returns
+   * at once. A thread is started if none is running, it ends when no table
+   * is waiting.
+   * @param tableNames list of table names
+   */
+  public synchronized void request(List tableNames) {
+    for (int i = 0; i < tableNames.size(); i++) {
+      Object tableName = tableNames.get(i);
+      if (!pendingTables.contains(tableName)) {
+        pendingTables.add(tableName);
+      }
+    }
+    if (worker != null || pendingTables.isEmpty()) {
+      return;
+    }
+    worker = new Thread(new Runnable() {
+      public void run() {
+        work();
+      }
+    }, "ShadowRetention-" + pubsubName);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Returns the purge state of every shadow table purged so far.
+   * @return Backlog[]
+   */
+  public synchronized Backlog[] getBacklogs() {
+    Backlog[] result = new Backlog[backlogs.size()];
+    int i = 0;
+    for (Iterator iter = backlogs.values().iterator(); iter.hasNext(); ) {
+      result[i++] = ( (Backlog) iter.next()).copy();
+    }
+    return result;
+  }
+
+  private void work() {
+    connectionPool.beginLease();
+    try {
+      String tableName;
+      while ( (tableName = nextTable()) != null) {
+        try {
+          purge(tableName);
+        }
+        catch (Exception ex) {
+          log.error(ex.getMessage(), ex);
+          RepConstants.writeERROR_FILE(ex);
+        }
+      }
+    }
+    finally {
+      connectionPool.endLease();
+    }
+  }
+
+  private synchronized String nextTable() {
+    if (pendingTables.isEmpty()) {
+      worker = null;
+      return null;
+    }
+    return (String) pendingTables.removeFirst();
+  }
+
+  private void purge(String tableName) throws SQLException, RepException, InterruptedException {
+    Connection connection = connectionPool.getConnection(pubsubName);
+    Statement stmt = connection.createStatement();
+    try {
+      Object minValue = dbHandler.getMinValOfSyncIdTodeleteRecordsFromShadowTable(tableName, stmt);
+      if (minValue == null) {
+        return;
+      }
+      long retainFrom = minValue instanceof Number ? ( (Number) minValue).longValue()
+          : Long.parseLong(minValue.toString().trim());
+      String shadowTable = RepConstants.shadow_Table(tableName);
+      long lowest = getLowestSyncId(stmt, shadowTable);
+      update(tableName, lowest, retainFrom, 0, false);
+      int batchSize = RepConstants.getShadowRetentionBatchSize();
+      long pause = RepConstants.getShadowRetentionPause();
+      while (lowest >= 0 && lowest < retainFrom) {
+        StringBuffer query = new StringBuffer();
+        query.append("delete from ").append(shadowTable).append(" where ")
+            .append(RepConstants.shadow_sync_id1).append(" < ")
+            .append(Math.min(lowest + batchSize, retainFrom));
+        int deleted = stmt.executeUpdate(query.toString());
+        if (!connection.getAutoCommit()) {
+          connection.commit();
+        }
+        log.debug(query.toString());
+        lowest = getLowestSyncId(stmt, shadowTable);
+        update(tableName, lowest, retainFrom, deleted, true);
+        if (pause > 0 && lowest >= 0 && lowest < retainFrom) {
+          Thread.sleep(pause);
+        }
+      }
+    }
+    finally {
+      stmt.close();
+    }
+  }
+
+  /**
+   * Returns the lowest sync id of the shadow table, -1 if it is empty. The
+   * sync id index makes this a lookup of the first index entry.
+   */
+  private long getLowestSyncId(Statement stmt, String shadowTable) throws SQLException {
+    ResultSet rs = stmt.executeQuery("select min(" + RepConstants.shadow_sync_id1 + ") from " + shadowTable);
+    try {
+      if (!rs.next()) {
+        return -1;
+      }
+      long lowest = rs.getLong(1);
+      return rs.wasNull() ? -1 : lowest;
+    }
+    finally {
+      rs.close();
+    }
+  }
+
+  private synchronized void update(String tableName, long lowest, long retainFrom, int deleted, boolean purged) {
+    Backlog backlog = (Backlog) backlogs.get(tableName);
+    if (backlog == null) {
+      backlog = new Backlog(tableName);
+      backlogs.put(tableName, backlog);
+    }
+    backlog.lowestSyncId = lowest;
+    backlog.retainFrom = retainFrom;
+    if (purged) {
+      backlog.purgedRecords += deleted;
+      backlog.statements++;
+      backlog.lastPurgeTime = System.currentTimeMillis();
+    }
+  }
+
+}
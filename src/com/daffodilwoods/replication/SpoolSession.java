@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication;
+
+import java.io.*;
+import java.util.*;
+
+import com.daffodilwoods.replication.column.LobSpool;
+
+/**
+ * This class keeps the spool directory of the xml, zip, blob.lob and clob.lob
+ * files of one publication and subscription pair. A session is opened for
+ * the thread doing a snapshot, synchronize, push or pull and PathHandler
+ * returns the paths of these files inside the directory of the session, so
+ * operations of different subscriptions running at the same time, and two
+ * publications being snapshotted at the same time, do not overwrite each
+ * other's files.
+ *
+ * Publisher and subscriber on the same machine use the same session id and
+ * so share the directory, as they shared the files before.
+ */
+
+public class SpoolSession {
+
+  private static ThreadLocal current = new ThreadLocal();
+
+  private String sessionId;
+  private String directory;
+  private SpoolSession previous;
+  // lob spools opened in this session, path -> LobSpool
+  private HashMap lobSpools;
+
+  private SpoolSession(String sessionId0, SpoolSession previous0) {
+    this(sessionId0, getDirectory(sessionId0), previous0);
+  }
+
+  private SpoolSession(String sessionId0, String directory0, SpoolSession previous0) {
+    sessionId = sessionId0;
+    directory = directory0;
+    previous = previous0;
+  }
+
+  /**
+   * Returns the session id of the publication and subscription pair. The
+   * length of the publication name leads the id, so that names containing
+   * the separator, as a_b with c and a with b_c, give different ids.
+   * @param pubName publication name
+   * @param subName subscription name
+   * @return String
+   */
+  public static String getSessionId(String pubName, String subName) {
+    return (pubName.length() + "_" + pubName + "_" + subName).toLowerCase();
+  }
+
+  /**
+   * Opens the session of the publication and subscription pair for the
+   * current thread, close has to be called in a finally block.
+   * @param pubName publication name
+   * @param subName subscription name
+   * @return SpoolSession
+   */
+  public static SpoolSession open(String pubName, String subName) {
+    return open(getSessionId(pubName, subName));
+  }
+
+  public static SpoolSession open(String sessionId) {
+    SpoolSession session = new SpoolSession(sessionId, (SpoolSession) current.get());
+    current.set(session);
+    return session;
+  }
+
+  /**
+   * Returns the session opened for the current thread, null if none.
+   * @return SpoolSession
+   */
+  public static SpoolSession getCurrent() {
+    return (SpoolSession) current.get();
+  }
+
+  /**
+   * Opens a segment of this session for the current thread. A segment is a
+   * sub directory of the segments directory of the session, used by a
+   * parallel snapshot to write and read the files of one table without
+   * touching the files of the other tables. close has to be called in a
+   * finally block.
+   * @param segmentName name of the segment
+   * @return SpoolSession
+   */
+  public SpoolSession openSegment(String segmentName) {
+    String path = getSegmentsDirectory() + File.separator + segmentName;
+    File dir = new File(path);
+    if (!dir.isDirectory()) {
+      dir.mkdirs();
+    }
+    SpoolSession segment = new SpoolSession(sessionId, path, (SpoolSession) current.get());
+    current.set(segment);
+    return segment;
+  }
+
+  /**
+   * Returns the directory holding the segments of this session.
+   * @return String
+   */
+  public String getSegmentsDirectory() {
+    return directory + File.separator + "segments";
+  }
+
+  /**
+   * Closes the lob spools opened in this session and restores the session
+   * which was open before this one.
+   */
+  public void close() {
+    if (lobSpools != null) {
+      for (Iterator iter = lobSpools.values().iterator(); iter.hasNext(); ) {
+        ( (LobSpool) iter.next()).close();
+      }
+      lobSpools = null;
+    }
+    current.set(previous);
+  }
+
+  /**
+   * Returns the lob spool of file path opened in this session, null if none.
+   * @param path path of the lob file
+   * @return LobSpool
+   */
+  public LobSpool getLobSpool(String path) {
+    return lobSpools == null ? null : (LobSpool) lobSpools.get(path);
+  }
+
+  /**
+   * Keeps the lob spool of file path open till the session is closed.
+   * @param path path of the lob file
+   * @param spool LobSpool
+   */
+  public void putLobSpool(String path, LobSpool spool) {
+    if (lobSpools == null) {
+      lobSpools = new HashMap();
+    }
+    lobSpools.put(path, spool);
+  }
+
+  public String getSessionId() {
+    return sessionId;
+  }
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  private static String getDirectory(String sessionId) {
+    String path = PathHandler.getStrucPathSynchronizeClient() + File.separator + sessionId;
+    File dir = new File(path);
+    if (!dir.exists() || (dir.exists() && !dir.isDirectory())) {
+      dir.mkdir();
+    }
+    return path;
+  }
+
+}
@@ -32,6 +32,7 @@ import org.xml.sax.ContentHandler;
 import com.daffodilwoods.replication.DBHandler.*;
 import com.daffodilwoods.replication.xml.*;
 import com.daffodilwoods.replication.zip.ZipHandler;
+import com.daffodilwoods.replication.zip.CompressionCodec;
 import com.daffodilwoods.replication.xml.SnapshotHandler;
 import com.daffodilwoods.replication.xml.DDLHandler;
 import org.apache.log4j.Logger;
@@ -72,7 +73,9 @@ public class Subscription
   private ArrayList alterTableAddFKQueries;
 
   // To write the file on client socket.
-  private _FileUpload fileUpload;
+  private FileUpload fileUpload;
+  // deletes the shadow table records received by the publication
+  private ShadowRetention shadowRetention;
 
   public AbstractDataBaseHandler dbHandler;
 
@@ -97,6 +100,7 @@ public class Subscription
     //String databaseName = connectionPool.getConnection(subName).getMetaData().getDatabaseProductName();
     dbHandler.setLocalServerName(serverName0);
     syncXMLCreator = new SyncXMLCreator(subName, connectionPool, dbHandler);
+    shadowRetention = new ShadowRetention(connectionPool, subName, dbHandler);
     localServer = localServer0;
     fileUpload = new FileUpload();
 
@@ -184,6 +188,8 @@ public class Subscription
     // Create an Instance of DBHandler With Respect to Client Connection
     Statement stmt = null;
     try {
+      // tables of an earlier subscription may have been changed or dropped
+      MetaDataCache.invalidateAll();
       //Creates Subscription Table
       //Creates BookMark Table
       //Creates Super Log Table
@@ -280,8 +286,16 @@ public class Subscription
     Statement subStatment = null;
     boolean islockedTaken = false,isCurrentTableCyclic = false;
     _PubImpl publication = null;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    fileUpload.setSessionId(session.getSessionId());
+    connectionPool.beginLease();
     try {
       String localAddress = null,remoteServerName=null,remoteAddress=null;
+      String segmentsZipPath = PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName + "_" + subName + "_segments");
+      SnapshotSegments segments = null;
+      // segments of an earlier snapshot must not be taken for this one
+      SnapshotSegments.delete(session.getSegmentsDirectory());
+      deleteFile(segmentsZipPath);
       try {
         _ReplicationServerImpl remoteServer = getRemoteReplicationServer();
         remoteServerName = remoteServer.getServerName();
@@ -305,9 +319,15 @@ public class Subscription
       try {
         //unzipping the zip file
         if(!localAddress.equalsIgnoreCase(remoteAddress)) {
-          ZipHandler.unZip(PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName + "_" + subName),
-                           PathHandler.getDefaultFilePathForClient("snapshot_" + pubName +"_" + subName));
+          if (new File(segmentsZipPath).exists()) {
+            ZipHandler.unZipDirectory(segmentsZipPath, session.getSegmentsDirectory());
+          }
+          else {
+            ZipHandler.unZip(PathHandler.getDefaultZIPFilePathForClient("snapshot_" + pubName + "_" + subName),
+                             PathHandler.getDefaultFilePathForClient("snapshot_" + pubName +"_" + subName));
+          }
         }
+        segments = SnapshotSegments.readManifest(session.getSegmentsDirectory());
       }
       catch (IOException ex) {
         RepConstants.writeERROR_FILE(ex);
@@ -325,31 +345,45 @@ public class Subscription
           if(isCurrentTableCyclic)
           break;
         }
-        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-        XMLReader reader = saxParser.getXMLReader();
         // Delete records from all tables
         deleteAllRecordsFromMainTables(subStatment);
-        //Instance for content handler
-        SnapshotHandler ch = new SnapshotHandler(true, subConnection, this,dbHandler, remoteServerName); //  instance for content hanedler
-        //  instance for content hanedler
-        ch.setPubName(pubName);
-        ch.setSubName(subName);
-        reader.setContentHandler(ch);
-        reader.parse(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
-        ch.closeAllStatementAndResultset();
-        /**
-         * To handle the cyclic table case referenced
-         * columns value is updated in second pass.
-         */
-        if(isCurrentTableCyclic){
-        SnapshotHandler ch1 = new SnapshotHandler(false, subConnection, this,dbHandler, remoteServerName); //  instance for content hanedler
-        ch1.setPubName(pubName);
-        ch1.setSubName(subName);
-        reader.setContentHandler(ch1);
-        reader.parse(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
-        ch1.closeAllStatementAndResultset();
+        if (segments != null) {
+          loadSnapShotSegments(segments, session, remoteServerName, isCurrentTableCyclic);
+        }
+        else {
+          SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+          XMLReader reader = saxParser.getXMLReader();
+          //Instance for content handler
+          SnapshotHandler ch = new SnapshotHandler(true, subConnection, this,dbHandler, remoteServerName); //  instance for content hanedler
+          //  instance for content hanedler
+          ch.setPubName(pubName);
+          ch.setSubName(subName);
+          reader.setContentHandler(ch);
+          try {
+            reader.parse(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
+          }
+          finally {
+            // also restores a table left in a bulk load by a failure
+            ch.closeAllStatementAndResultset();
+          }
+          /**
+           * To handle the cyclic table case referenced
+           * columns value is updated in second pass.
+           */
+          if(isCurrentTableCyclic){
+          SnapshotHandler ch1 = new SnapshotHandler(false, subConnection, this,dbHandler, remoteServerName); //  instance for content hanedler
+          ch1.setPubName(pubName);
+          ch1.setSubName(subName);
+          reader.setContentHandler(ch1);
+          reader.parse(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
+          ch1.closeAllStatementAndResultset();
+          }
         }
         if (_Subscription.xmlAndShadow_entries) {
+          if (segments != null) {
+            SnapshotSegments.delete(segments.getDirectory());
+            deleteFile(segmentsZipPath);
+          }
           // deleting xml file
           deleteFile(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" +subName));
           // deleting zip file
@@ -369,10 +403,10 @@ public class Subscription
       throw rex;
     }
     finally {
-      connectionPool.removeSubPubFromMap(subName);
+      session.close();
       try {
         if (islockedTaken)
-          publication.releaseLOCK();
+          publication.releaseLOCK(subName);
       }
       catch (RemoteException ex2) {
         RepConstants.writeERROR_FILE(ex2);
@@ -386,6 +420,77 @@ public class Subscription
       }
       catch (SQLException ex1) {
       }
+      connectionPool.endLease();
+    }
+  }
+
+  /**
+   * Loads the segments of a snapshot taken in segments level by level, the
+   * segments of one level at the same time each on its own connection. The
+   * foreign key columns of cyclic tables are set in a second pass after all
+   * the levels have been loaded.
+   */
+  private void loadSnapShotSegments(SnapshotSegments segments, SpoolSession session, String remoteServerName, boolean isCyclic) throws Exception {
+    ArrayList allSegments = new ArrayList();
+    for (int level = 0; level < segments.getLevelCount(); level++) {
+      List levelSegments = segments.getSegments(level);
+      TaskRunner.run(getSegmentTasks(levelSegments, session, remoteServerName, true), RepConstants.getSnapshotThreads());
+      allSegments.addAll(levelSegments);
+    }
+    if (isCyclic) {
+      TaskRunner.run(getSegmentTasks(allSegments, session, remoteServerName, false), RepConstants.getSnapshotThreads());
+    }
+  }
+
+  private ArrayList getSegmentTasks(List segments, final SpoolSession session, final String remoteServerName, final boolean isFirstPass) {
+    ArrayList tasks = new ArrayList();
+    for (int i = 0; i < segments.size(); i++) {
+      final SnapshotSegments.Segment segment = (SnapshotSegments.Segment) segments.get(i);
+      tasks.add(new TaskRunner.Task() {
+        public boolean run(boolean mayDefer) throws Exception {
+          return loadSnapShotSegment(session, segment, remoteServerName, isFirstPass, mayDefer);
+        }
+      });
+    }
+    return tasks;
+  }
+
+  /**
+   * Loads one segment on a connection of its own lease. With mayDefer the
+   * connection is waited for only TaskRunner.LEASE_WAIT milliseconds, as the
+   * caller of TaskRunner keeps its connection leased meanwhile.
+   * @return false if no connection became free, the segment is then loaded
+   * by the caller
+   */
+  private boolean loadSnapShotSegment(SpoolSession session, SnapshotSegments.Segment segment, String remoteServerName, boolean isFirstPass, boolean mayDefer) throws Exception {
+    connectionPool.beginLease();
+    SpoolSession segmentSession = null;
+    try {
+      Connection connection = mayDefer ? connectionPool.getConnection(subName, TaskRunner.LEASE_WAIT) : connectionPool.getConnection(subName);
+      if (connection == null) {
+        log.debug("no pooled connection for snapshot segment " + segment.name + ", loading it on the caller's connection");
+        return false;
+      }
+      log.debug("loading snapshot segment " + segment.name + " of table " + segment.tableName + " isFirstPass " + isFirstPass);
+      segmentSession = session.openSegment(segment.name);
+      XMLReader reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+      SnapshotHandler ch = new SnapshotHandler(isFirstPass, connection, this, dbHandler, remoteServerName);
+      ch.setPubName(pubName);
+      ch.setSubName(subName);
+      reader.setContentHandler(ch);
+      try {
+        reader.parse(PathHandler.getDefaultFilePathForClient("snapshot_" + pubName + "_" + subName));
+      }
+      finally {
+        ch.closeAllStatementAndResultset();
+      }
+      return true;
+    }
+    finally {
+      if (segmentSession != null) {
+        segmentSession.close();
+      }
+      connectionPool.endLease();
     }
   }
 
@@ -536,23 +641,34 @@ public class Subscription
     _PubImpl publication = null;
     Object[] serverInfo = null;
     Object[] pubLastSyncId = null;
-    BufferedWriter bw = null;
+    TransactionLog transactionLog = TransactionLog.getSubscriberLog(subName);
     Statement stmt = null;
     ResultSet rs = null;
-    boolean isCurrentTableCyclic = false, islockedTaken = false;
+    boolean islockedTaken = false;
+    boolean checkpointed = false;
     String localMachineAddress=null,remoteMachineAddress=null;
+    XMLStreamRequest xmlStream = null;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    fileUpload.setSessionId(session.getSessionId());
+    connectionPool.beginLease();
     try {
       try {
         _ReplicationServerImpl remoteRepServer =  getRemoteReplicationServer();
         publication = remoteRepServer.getRemotePublication(pubName);
+        negotiateChangeSetFormat(publication);
        remoteMachineAddress = remoteRepServer.getRemoteAddress();
         publication.checkForLock(subName);
         islockedTaken = true;
         //Creates synchronization related files over server and transfers it over client socket. Besides it creates server socket over server
         //and returns serversocket related information.
         localMachineAddress =InetAddress.getLocalHost().getHostAddress();
-        serverInfo = publication.createXMLForClient(subName, getServerName(),isSchemaSupported(),fileUpload,localMachineAddress);
-        pubLastSyncId = ( (Object[]) serverInfo[2]);
+        if (isStreamingTransport(localMachineAddress, remoteMachineAddress)) {
+          xmlStream = connectXMLStream(publication);
+        }
+        if (xmlStream == null) {
+          serverInfo = publication.createXMLForClient(subName, getServerName(),isSchemaSupported(),fileUpload,localMachineAddress);
+          pubLastSyncId = ( (Object[]) serverInfo[2]);
+        }
       }
       catch (RemoteException ex1) {
         RepConstants.writeERROR_FILE(ex1);
@@ -569,7 +685,7 @@ public class Subscription
 
       try {
         // unzipping zip file
-       if(!localMachineAddress.equalsIgnoreCase(remoteMachineAddress)) {
+       if(xmlStream == null && !localMachineAddress.equalsIgnoreCase(remoteMachineAddress)) {
          ZipHandler.unZip(PathHandler.getDefaultZIPFilePathForClient("server_" +pubName + "_" + subName),PathHandler.getDefaultFilePathForClient("server_" +pubName + "_" + subName));
        }
       }
@@ -587,17 +703,22 @@ public class Subscription
 //        bw = new BufferedWriter(os);
         SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
         //saxParser.setProperty("validation",new Boolean(false));
-        XMLReader reader = saxParser.getXMLReader();
+        XMLReader reader = new ChangeSetReader(saxParser.getXMLReader());
 
         MergeHandler mg = new MergeHandler(true,
                                            connectionPool.getConnection(subName), this,
                                            publication.getServerName(),
-                                           dbHandler, bw, "MERGE REPLICATION",
+                                           dbHandler, transactionLog, "MERGE REPLICATION",
                                            PathHandler.
                                            fullOrPartialTransactionLogFile(),
                                            Utility.getDatabaseMataData(connectionPool, subName));
         mg.setLocalName(subName);
         mg.setRemoteName(pubName);
+        if (xmlStream != null) {
+          pubLastSyncId = xmlStream.getLastSyncIds();
+        }
+        checkpointed = mg.enableCheckpoint(pubLastSyncId);
+        mg.enableParallelApply(connectionPool, subName, subRepTables);
         ContentHandler ch = mg;
         reader.setContentHandler(ch);
 //        AbstractSynchronize.writeDateInTransactionLogFile(bw);
@@ -608,38 +729,23 @@ public class Subscription
         RepTable repTable  =( (RepTable) subRepTables.get(i));
         String tableName = repTable.getSchemaQualifiedName().toString();
         StringBuffer query = new StringBuffer();
-        isCurrentTableCyclic = repTable.getCyclicDependency().equalsIgnoreCase(RepConstants.YES);
         query.append(" select max(").append(RepConstants.shadow_sync_id1).append(") from ").append(RepConstants.shadow_Table(tableName));
         rs = stmt.executeQuery(query.toString());
         rs.next();
         syncIdMap.put(tableName, new Long(rs.getLong(1)));
         log.debug("tableName:" + tableName + " syncid: " + rs.getLong(1));
         }
-        reader.parse(PathHandler.getDefaultFilePathForClient("server_" + pubName + "_" + subName));
+        if (xmlStream != null) {
+          pubLastSyncId = parseXMLStream(reader, xmlStream);
+        }
+        else {
+          reader.parse(PathHandler.getDefaultFilePathForClient("server_" + pubName + "_" + subName));
+        }
+        // assign the foreign key columns of cyclic tables set to null while parsing
+        mg.applyDeferredOperations();
         mg.closeAllStatementAndResultset();
 //        AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "MERGE");
-         makeSubscriberTransactionLgFile(subName,mg,bw,"MERGE");
-
-        // Second pass
-        if (isCurrentTableCyclic) {
-          MergeHandler mg1 = new MergeHandler(false,
-                                              connectionPool.getConnection(subName), this,
-                                              publication.getServerName(),
-                                              dbHandler, bw,
-                                              "MERGE REPLICATION",
-                                              PathHandler.
-                                              fullOrPartialTransactionLogFile(),
-                                              Utility.getDatabaseMataData(connectionPool, subName));
-          mg1.setLocalName(subName);
-          mg1.setRemoteName(pubName);
-          ContentHandler ch1 = mg1;
-          reader.setContentHandler(ch1);
-//          AbstractSynchronize.writeDateInTransactionLogFile(bw);
-          reader.parse(PathHandler.getDefaultFilePathForClient("server_" +pubName+ "_" + subName));
-//        AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "MERGE");
-          makeSubscriberTransactionLgFile(subName,mg,bw,"MERGE");
-          mg1.closeAllStatementAndResultset();
-        }
+         makeSubscriberTransactionLgFile(subName,mg,transactionLog,"MERGE");
 
         //updating consideredId on subscriber side
         for (int i = 0; i < subRepTables.size(); i++) {
@@ -652,7 +758,7 @@ public class Subscription
       }
       catch (Exception ex) {
         if(Utility.createTransactionLogFile) {
-          AbstractSynchronize.writeUnsuccessfullOperationInTransaction(bw);
+          AbstractSynchronize.writeUnsuccessfullOperationInTransaction(transactionLog);
         }
         RepConstants.writeERROR_FILE(ex);
         RepException rep = null;
@@ -689,6 +795,9 @@ public class Subscription
         RepConstants.writeERROR_FILE(ex);
         throw new RepException("REP057", new Object[] {subName, ex.getMessage()});
       }
+      if (checkpointed) {
+        clearApplyCheckpoint();
+      }
 
 // CREATE n Write XML File from Client Side to Socket for server Side.
       try {
@@ -698,7 +807,7 @@ public class Subscription
          syncXMLCreator.createXMLFile(PathHandler.getDefaultFilePathForClient("client_" + subName + "_" + pubName),
                                     PathHandler.getDefaultZIPFilePathForClient("client_" + subName +"_" + pubName),
                                     "client_" + subName + "_" + pubName /*+ ".xml"*/, pubName,subRepTables,publication.getServerName(),subRepTables.size(),
-         _Subscription.xmlAndShadow_entries,subName,isSchemaSupported(),publication.getFileUploader(),localMachineAddress,remoteMachineAddress);
+         _Subscription.xmlAndShadow_entries,subName,isSchemaSupported(),publication.getFileUploader(subName),localMachineAddress,remoteMachineAddress);
           ArrayList usedActualTables = (ArrayList) clientTablesAndLastId[0];
           Object[] subLastSyncId = (Object[]) clientTablesAndLastId[1];
           dbHandler.deleteRecordsFromSuperLogTable(stmt);
@@ -732,30 +841,115 @@ public class Subscription
       throw rex;
     }
     finally {
-      connectionPool.removeSubPubFromMap(subName);
+      session.close();
+      if (xmlStream != null) {
+        xmlStream.close();
+      }
       try {
         if (islockedTaken)
-          publication.releaseLOCK();
+          publication.releaseLOCK(subName);
       }
       catch (RemoteException ex2) {
         RepConstants.writeERROR_FILE(ex2);
       }
       try {
-        if (bw != null)
-          bw.close();
         if (rs != null) {
           rs.close();
         }
         if (stmt != null)
           stmt.close();
       }
-      catch (IOException ex4) {
-      }
       catch (SQLException ex4) {
       }
+      connectionPool.endLease();
     }
   }
 
+  /**
+   * Returns true if the XML of the publisher is to be streamed over a socket.
+   * Publisher and subscriber on the same machine share the xml and lob files,
+   * so the files are used for them.
+   */
+  private boolean isStreamingTransport(String localMachineAddress, String remoteMachineAddress) {
+    return RepConstants.isStreamingTransport() &&
+        !localMachineAddress.equalsIgnoreCase(remoteMachineAddress);
+  }
+
+  /**
+   * Starts the streaming transport and waits till the publisher has connected
+   * back to the subscriber. Returns null if the publisher could not connect,
+   * for example because a firewall blocks the port, the XML is then
+   * transferred as a zip file. The publisher connects before it writes
+   * anything, so nothing has to be undone.
+   * @throws RepException if no server socket could be opened
+   */
+  private XMLStreamRequest connectXMLStream(_PubImpl publication) throws RepException, RemoteException {
+    XMLStreamRequest xmlStream = new XMLStreamRequest(publication, subName, getServerName(), isSchemaSupported(), connectionPool.startServerSocket());
+    try {
+      xmlStream.connect();
+      return xmlStream;
+    }
+    catch (Exception ex) {
+      log.warn("streaming transport failed, transferring the XML as zip file : " + ex.getMessage());
+      xmlStream.close();
+      return null;
+    }
+  }
+
+  /**
+   * Agrees on the change set format and the compression codec with the
+   * publisher, the change sets of both ends are written and compressed with
+   * them. A publisher which does not know the negotiation gets XML zipped as
+   * in older versions.
+   */
+  private void negotiateChangeSetFormat(_PubImpl publication) {
+    String[] formats = RepConstants.isBinaryChangeSet()
+        ? new String[] {RepConstants.changeSetFormat_BINARY, RepConstants.changeSetFormat_XML}
+        : new String[] {RepConstants.changeSetFormat_XML};
+    String format = RepConstants.changeSetFormat_XML;
+    try {
+      format = publication.negotiateChangeSetFormat(subName, formats);
+    }
+    catch (RemoteException ex) {
+      log.debug("change set format not negotiated :: " + ex.getMessage());
+    }
+    syncXMLCreator.setBinaryChangeSet(RepConstants.changeSetFormat_BINARY.equals(format));
+    CompressionCodec codec = CompressionCodec.getCodec(RepConstants.getCompressionCodec());
+    if (codec == null) {
+      codec = CompressionCodec.getDefaultCodec();
+    }
+    try {
+      codec = CompressionCodec.getCodec(publication.negotiateCompressionCodec(subName, codec.getName()));
+    }
+    catch (RemoteException ex) {
+      codec = CompressionCodec.getDefaultCodec();
+    }
+    syncXMLCreator.setCompressionCodec(codec == null ? CompressionCodec.getDefaultCodec() : codec);
+  }
+
+  /**
+   * Removes the apply checkpoint of the change set once the publisher has
+   * taken note of it. A checkpoint left behind is harmless, it only matches
+   * the same change set again.
+   */
+  private void clearApplyCheckpoint() {
+    try {
+      ApplyCheckpoint.clear(connectionPool.getConnection(subName), dbHandler, subName, pubName);
+    }
+    catch (Exception ex) {
+      RepConstants.writeERROR_FILE(ex);
+    }
+  }
+
+  /**
+   * Parses the XML streamed by the publisher and returns the last sync ids of
+   * the publisher.
+   */
+  private Object[] parseXMLStream(XMLReader reader, XMLStreamRequest xmlStream) throws Exception {
+    reader.parse(new InputSource(xmlStream.getInputStream(null)));
+    return (Object[]) xmlStream.getResult()[2];
+  }
+
   /**
    * In Push Replication records are uploaded in publisher database.
    * Subscriber create a XML file of records which  considered for
@@ -771,12 +965,16 @@ public class Subscription
     Connection subConnection = null;
     boolean islockedTaken = false;
     String localMachineAddress=null,remoteMachineAddress=null;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    fileUpload.setSessionId(session.getSessionId());
+    connectionPool.beginLease();
     try {
       subConnection = connectionPool.getConnection(subName);
 
       try {
         _ReplicationServerImpl remoteRepServer =getRemoteReplicationServer();
         publication = remoteRepServer.getRemotePublication(pubName);
+        negotiateChangeSetFormat(publication);
         remoteMachineAddress =remoteRepServer.getRemoteAddress();
          localMachineAddress =InetAddress.getLocalHost().getHostAddress();
       }
@@ -803,7 +1001,7 @@ public class Subscription
               PathHandler.getDefaultFilePathForClient("client_" + subName + "_" +pubName),
               PathHandler.getDefaultZIPFilePathForClient("client_" + subName +"_" + pubName), "client_" + subName + "_" + pubName /*+ ".xml"*/,
               pubName,subRepTables,publication.getServerName(),subRepTables.size(),
-              _Subscription.xmlAndShadow_entries, subName,isSchemaSupported(),publication.getFileUploader(),localMachineAddress,remoteMachineAddress);
+              _Subscription.xmlAndShadow_entries, subName,isSchemaSupported(),publication.getFileUploader(subName),localMachineAddress,remoteMachineAddress);
           ArrayList usedActualTables = (ArrayList) clientTablesAndLastId[0];
           Object[] subLastSyncId = (Object[]) clientTablesAndLastId[1];
           dbHandler.deleteRecordsFromSuperLogTable(stmt);
@@ -850,15 +1048,16 @@ public class Subscription
       throw rex;
     }
     finally {
-      connectionPool.removeSubPubFromMap(subName);
+      session.close();
 
       try {
         if (islockedTaken)
-          publication.releaseLOCK();
+          publication.releaseLOCK(subName);
       }
       catch (RemoteException ex2) {
         RepConstants.writeERROR_FILE(ex2);
       }
+      connectionPool.endLease();
     }
   }
 
@@ -874,18 +1073,24 @@ public class Subscription
   public synchronized void pull() throws RepException {
     _PubImpl publication = null;
     String localAddress = null,remoteMachineAddress=null;
-    Object[] pubLastSyncId;
-    BufferedWriter bw = null;
+    Object[] pubLastSyncId = null;
+    TransactionLog transactionLog = TransactionLog.getSubscriberLog(subName);
     Statement stmt = null;
     ResultSet resultSet = null;
     Connection subConnection = null;
-    boolean islockedTaken = false, isCurrentTableCyclic = false;
+    boolean islockedTaken = false;
+    boolean checkpointed = false;
+    XMLStreamRequest xmlStream = null;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    fileUpload.setSessionId(session.getSessionId());
+    connectionPool.beginLease();
     try {
       try {
         subConnection = connectionPool.getConnection(subName);
         stmt = subConnection.createStatement();
         _ReplicationServerImpl remoteRepServer = getRemoteReplicationServer();
         publication = remoteRepServer.getRemotePublication(pubName);
+        negotiateChangeSetFormat(publication);
         remoteMachineAddress = remoteRepServer.getRemoteAddress();
         publication.checkForLock(subName);
         islockedTaken = true;
@@ -897,8 +1102,13 @@ public class Subscription
          and returns serversocket related information.
          */
         long startTime = System.currentTimeMillis();
-        Object[] serverInfo = publication.createXMLForClient(subName, getServerName(),isSchemaSupported(),fileUpload,localAddress);
-        pubLastSyncId = (Object[]) serverInfo[2];
+        if (isStreamingTransport(localAddress, remoteMachineAddress)) {
+          xmlStream = connectXMLStream(publication);
+        }
+        if (xmlStream == null) {
+          Object[] serverInfo = publication.createXMLForClient(subName, getServerName(),isSchemaSupported(),fileUpload,localAddress);
+          pubLastSyncId = (Object[]) serverInfo[2];
+        }
       }
       catch (RemoteException ex1) {
         RepConstants.writeERROR_FILE(ex1);
@@ -915,7 +1125,7 @@ public class Subscription
 
       try {
         // unzipping zip file
-        if(!localAddress.equalsIgnoreCase(remoteMachineAddress)) {
+        if(xmlStream == null && !localAddress.equalsIgnoreCase(remoteMachineAddress)) {
           ZipHandler.unZip(PathHandler.getDefaultZIPFilePathForClient("server_" +pubName + "_" + subName),PathHandler.getDefaultFilePathForClient("server_" +pubName + "_" + subName));
         }
       }
@@ -932,11 +1142,16 @@ public class Subscription
 
         SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
         // saxParser.setProperty("validation",new Boolean(false));
-        XMLReader reader = saxParser.getXMLReader();
+        XMLReader reader = new ChangeSetReader(saxParser.getXMLReader());
 //        long startTime = System.currentTimeMillis();
-        MergeHandler mg = new MergeHandler(true,connectionPool.getConnection(subName), this,publication.getServerName(),dbHandler, bw, "PULL REPLICATION",PathHandler.fullOrPartialTransactionLogFile(),Utility.getDatabaseMataData(connectionPool, subName));
+        MergeHandler mg = new MergeHandler(true,connectionPool.getConnection(subName), this,publication.getServerName(),dbHandler, transactionLog, "PULL REPLICATION",PathHandler.fullOrPartialTransactionLogFile(),Utility.getDatabaseMataData(connectionPool, subName));
         mg.setLocalName(subName);
         mg.setRemoteName(pubName);
+        if (xmlStream != null) {
+          pubLastSyncId = xmlStream.getLastSyncIds();
+        }
+        checkpointed = mg.enableCheckpoint(pubLastSyncId);
+        mg.enableParallelApply(connectionPool, subName, subRepTables);
         ContentHandler ch = mg;
         reader.setContentHandler(ch);
 //        AbstractSynchronize.writeDateInTransactionLogFile(bw);
@@ -948,44 +1163,31 @@ public class Subscription
           RepTable repTable = ( (RepTable) subRepTables.get(i));
           String tableName = repTable.getSchemaQualifiedName().toString();
           StringBuffer query = new StringBuffer();
-          isCurrentTableCyclic = repTable.getCyclicDependency().
-              equalsIgnoreCase(RepConstants.YES);
           query.append(" select max(").append(RepConstants.shadow_sync_id1).
               append(") from ").append(RepConstants.shadow_Table(tableName));
           resultSet = stmt.executeQuery(query.toString());
           resultSet.next();
           syncIdMap.put(tableName, new Long(resultSet.getLong(1)));
         }
-        reader.parse(PathHandler.getDefaultFilePathForClient("server_" +pubName + "_" + subName));
+        if (xmlStream != null) {
+          pubLastSyncId = parseXMLStream(reader, xmlStream);
+        }
+        else {
+          reader.parse(PathHandler.getDefaultFilePathForClient("server_" +pubName + "_" + subName));
+        }
+        /**
+         * Following code has been written to handler the case
+         * of cyclic table. Value of all the foreign key colums set to null
+         * while parsing is assigned by the actual values.
+         */
+        mg.applyDeferredOperations();
         mg.closeAllStatementAndResultset();
 //System.out.println(" TIME TAKEN IN PERFORMING OPERATION ON DATABASE :: "+(System.currentTimeMillis()-startTime));
 
 //      AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "PULL");
 
-        makeSubscriberTransactionLgFile(subName,mg,bw,"PULL");
+        makeSubscriberTransactionLgFile(subName,mg,transactionLog,"PULL");
 
-
-        /**
-         * Following code has been written to handler the case
-         * of cyclic table and complete the cyclic work in two
-         * pass.In second pass value of all the colums is updated
-         * by actual values that are set to null in first pass.
-         */
-        if (isCurrentTableCyclic) {
-          MergeHandler mg1 = new MergeHandler(false,connectionPool.getConnection(subName), this,
-                                              publication.getServerName(),
-                                              dbHandler, bw,
-                                              "PULL REPLICATION",
-                                              PathHandler.fullOrPartialTransactionLogFile(),
-                                              Utility.getDatabaseMataData(connectionPool, subName));
-          mg1.setLocalName(subName);
-          mg1.setRemoteName(pubName);
-          ContentHandler ch1 = mg1;
-          reader.setContentHandler(ch1);
-          AbstractSynchronize.writeDateInTransactionLogFile(bw);
-          reader.parse(PathHandler.getDefaultFilePathForClient("server_" +pubName+ "_" + subName));
-          mg1.closeAllStatementAndResultset();
-        }
         try {
           for (int i = 0; i < subRepTables.size(); i++) {
             String tableName = ( (RepTable) subRepTables.get(i)).getSchemaQualifiedName().toString();
@@ -997,12 +1199,11 @@ public class Subscription
           RepConstants.writeERROR_FILE(ex);
           throw new RepException("REP0152", new Object[] {subName,ex.getMessage()});
         }
-        makeSubscriberTransactionLgFile(subName,mg,bw,"PULL");
 //        AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, "PULL");
       }
       catch (Exception ex) {
         if(Utility.createTransactionLogFile) {
-          AbstractSynchronize.writeUnsuccessfullOperationInTransaction(bw);
+          AbstractSynchronize.writeUnsuccessfullOperationInTransaction(transactionLog);
         }
         RepConstants.writeERROR_FILE(ex);
         RepException rep = null;
@@ -1037,15 +1238,20 @@ public class Subscription
         RepConstants.writeERROR_FILE(ex);
         throw new RepException("REP0152", new Object[] {subName,ex.getMessage()});
       }
+      if (checkpointed) {
+        clearApplyCheckpoint();
+      }
     }
     catch (RepException rex) {
       RepConstants.writeERROR_FILE(rex);
       throw rex;
     }
     finally {
+      session.close();
+      if (xmlStream != null) {
+        xmlStream.close();
+      }
       try {
-        if (bw != null)
-          bw.close();
         connectionPool.removeSubPubFromMap(subName);
       }
       catch (Exception ex) {
@@ -1053,11 +1259,12 @@ public class Subscription
       }
       try {
         if (islockedTaken)
-          publication.releaseLOCK();
+          publication.releaseLOCK(subName);
       }
       catch (RemoteException ex2) {
         RepConstants.writeERROR_FILE(ex2);
       }
+      connectionPool.endLease();
 
     }
   }
@@ -1136,7 +1343,19 @@ public class Subscription
     log.debug(query.toString());
   }
 
+  /**
+   * Returns the purge state of the shadow tables of the subscription.
+   * @return ShadowRetention.Backlog[]
+   */
+  public ShadowRetention.Backlog[] getShadowBacklogs() {
+    return shadowRetention.getBacklogs();
+  }
+
   private void deletingRecordsFromShadowTable(ArrayList usedActualTables,Statement stmt) throws SQLException, RepException {
+      if (RepConstants.isShadowRetention()) {
+        shadowRetention.request(usedActualTables);
+        return;
+      }
 
       int noOFTables = usedActualTables.size();
       StringBuffer query;
@@ -1420,6 +1639,25 @@ public class Subscription
     return subRepTables;
   }
 
+  /**
+   * Returns the highest sync id of the shadow table of every table of the
+   * publication, a real time schedule runs the replication operation only
+   * when it differs from the value read before the last run.
+   * @return long[]
+   * @throws RepException
+   */
+  public long[] getPublisherShadowWatermark() throws RepException {
+    try {
+      return getRemoteReplicationServer().getRemotePublication(pubName).getShadowWatermark();
+    }
+    catch (RemoteException ex) {
+      RepConstants.writeERROR_FILE(ex);
+      RepException rex = new RepException("REP001", new Object[] {ex.getMessage()});
+      rex.setStackTrace(ex.getStackTrace());
+      throw rex;
+    }
+  }
+
   /* It saves the schedule information in the schedule table*/
 
   private void saveScheduleData(String schName, String subName,
@@ -1676,6 +1914,8 @@ public class Subscription
     Statement stt = null;
     ResultSet rs = null;
     try {
+      // tables may have been added to or dropped from the publication
+      MetaDataCache.invalidateAll();
       MetaDataInfo mdi = Utility.getDatabaseMataData(connectionPool, subName);
       HashMap primCols = new HashMap();
       _PubImpl pub = getPublication();
@@ -1842,6 +2082,9 @@ public class Subscription
     Statement stmt = null;
     _PubImpl publication = null;
     boolean islockedTaken = false,isCurrentTableCyclic = false;
+    SpoolSession session = SpoolSession.open(pubName, subName);
+    fileUpload.setSessionId(session.getSessionId());
+    connectionPool.beginLease();
     try {
       ServerSocket serverSocket = null;
       Socket socket = null;
@@ -1915,8 +2158,12 @@ public class Subscription
         ch.setPubName(pubName);
         ch.setSubName(subName);
         reader.setContentHandler(ch);
-        reader.parse(PathHandler.getDefaultFilePathForClient("snapshot_" +pubName+ "_" +subName));
-        ch.closeAllStatementAndResultset();
+        try {
+          reader.parse(PathHandler.getDefaultFilePathForClient("snapshot_" +pubName+ "_" +subName));
+        }
+        finally {
+          ch.closeAllStatementAndResultset();
+        }
 
         if(isCurrentTableCyclic){
         SnapshotHandler ch1 = new SnapshotHandler(false, subConnection, this,dbHandler, remoteServerName); //  instance for content hanedler
@@ -1948,14 +2195,15 @@ public class Subscription
       throw rex;
     }
     finally {
-      connectionPool.removeSubPubFromMap(subName);
+      session.close();
       try {
         if (islockedTaken)
-          publication.releaseLOCK();
+          publication.releaseLOCK(subName);
       }
       catch (RemoteException ex2) {
         RepConstants.writeERROR_FILE(ex2);
       }
+      connectionPool.endLease();
 
     }
   }
@@ -2063,15 +2311,10 @@ public class Subscription
     }
   }
 
-  private void makeSubscriberTransactionLgFile(String subName,MergeHandler mg,BufferedWriter bw,String replicationType) throws  Exception {
+  private void makeSubscriberTransactionLgFile(String subName,MergeHandler mg,TransactionLog transactionLog,String replicationType) throws  Exception {
     if(Utility.createTransactionLogFile) {
-      String transactionLogURL = PathHandler.getDefaultTransactionLogFilePathForSubscriber(subName);
-      FileOutputStream fos = new FileOutputStream(transactionLogURL, true);
-      OutputStreamWriter os = new OutputStreamWriter(fos);
-      bw = new BufferedWriter(os);
-      AbstractSynchronize.writeDateInTransactionLogFile(bw);
-      AbstractSynchronize.writeOperationInTransactionLogFile(bw, mg.insert,mg.update, mg.delete, replicationType);
-      bw.flush();
+      AbstractSynchronize.writeDateInTransactionLogFile(transactionLog);
+      AbstractSynchronize.writeOperationInTransactionLogFile(transactionLog, mg.insert,mg.update, mg.delete, replicationType);
     }
  }
 
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication;
+
+import java.util.*;
+
+/**
+ * This class runs a list of tasks on a given number of threads. Every thread
+ * takes the next task of the list until the list is done or a task has
+ * failed, run returns after all the threads have finished and throws the
+ * exception of the first task which failed. A task which can not get a
+ * pooled connection in time on a thread of its own is given back and run
+ * again on the calling thread after the others, where the connection of the
+ * caller's lease is used.
+ */
+
+public class TaskRunner {
+
+  /**
+   * One unit of work given to TaskRunner.
+   */
+  public static abstract class Task {
+    /**
+     * @param mayDefer true on a thread of its own, the task may then return
+     * false instead of waiting for a pooled connection
+     * @return false if the task has to be run again by the calling thread
+     */
+    public abstract boolean run(boolean mayDefer) throws Exception;
+  }
+
+  private List tasks;
+  private int nextTask;
+  private Exception error;
+  // tasks given back by the worker threads
+  private ArrayList deferredTasks = new ArrayList();
+
+  /**
+   * Milliseconds a task on a thread of its own should wait for a pooled
+   * connection before it gives up and returns false.
+   */
+  public static final long LEASE_WAIT = 1000;
+
+  private TaskRunner(List tasks0) {
+    tasks = tasks0;
+  }
+
+  /**
+   * Runs the tasks on at most threads threads, tasks are run in the
+   * current thread if one thread is enough.
+   * @param tasks list of Task
+   * @param threads maximum number of threads
+   * @throws Exception exception of the first task which failed
+   */
+  public static void run(List tasks, int threads) throws Exception {
+    int count = Math.min(threads, tasks.size());
+    if (count <= 1) {
+      for (int i = 0; i < tasks.size(); i++) {
+        ( (Task) tasks.get(i)).run(false);
+      }
+      return;
+    }
+    final TaskRunner runner = new TaskRunner(tasks);
+    Thread[] workers = new Thread[count];
+    for (int i = 0; i < count; i++) {
+      workers[i] = new Thread(new Runnable() {
+        public void run() {
+          runner.work();
+        }
+      }, Thread.currentThread().getName() + "-task-" + i);
+      workers[i].start();
+    }
+    for (int i = 0; i < count; i++) {
+      workers[i].join();
+    }
+    if (runner.error != null) {
+      throw runner.error;
+    }
+    for (int i = 0; i < runner.deferredTasks.size(); i++) {
+      ( (Task) runner.deferredTasks.get(i)).run(false);
+    }
+  }
+
+  private void work() {
+    Task task;
+    while ( (task = getNextTask()) != null) {
+      try {
+        if (!task.run(true)) {
+          deferTask(task);
+        }
+      }
+      catch (Exception ex) {
+        setError(ex);
+      }
+    }
+  }
+
+  private synchronized Task getNextTask() {
+    if (error != null || nextTask >= tasks.size()) {
+      return null;
+    }
+    return (Task) tasks.get(nextTask++);
+  }
+
+  private synchronized void deferTask(Task task) {
+    deferredTasks.add(task);
+  }
+
+  private synchronized void setError(Exception ex) {
+    if (error == null) {
+      error = ex;
+    }
+  }
+
+}
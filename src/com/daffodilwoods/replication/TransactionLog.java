@@ -0,0 +1,505 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class writes the transaction log of a publication or subscription,
+ * or the error file, on a thread of its own. Callers put their records in a
+ * bounded ring buffer and return at once, they wait only if the buffer is
+ * full. The writer thread takes all the records waiting in the buffer,
+ * writes them with one flush and syncs the file to the disk as set in
+ * RepConstants, so the apply threads of a synchronization never wait for the
+ * disk.
+ *
+ * A transaction log file is closed and a new one is started when it reaches
+ * the maximum size or is older than the rotation interval. Records are
+ * written as the text lines of older versions or in a compact binary form,
+ * a binary file starts with MAGIC and VERSION and every record is written by
+ * writeEntry.
+ */
+
+public class TransactionLog {
+
+  protected static Logger log = Logger.getLogger(TransactionLog.class.getName());
+
+  public static final String TEXT = "TEXT";
+  public static final String BINARY = "BINARY";
+  public static final int MAGIC = 0x5245504c;
+  public static final int VERSION = 1;
+  public static final int ENTRY_TEXT = 0;
+  public static final int ENTRY_OPERATION = 1;
+
+  private static final int ERROR_FILE = 0;
+  private static final int PUBLISHER = 1;
+  private static final int SUBSCRIBER = 2;
+
+  // "P" or "S" + name -> TransactionLog
+  private static HashMap logs = new HashMap();
+  private static TransactionLog errorLog;
+  private static boolean shutdownHookAdded;
+
+  /**
+   * One record waiting in the ring buffer.
+   */
+  private static class Entry {
+    int type;
+    long time;
+    String text;
+    String replicationType;
+    String tableName;
+    String operation;
+    String[] keyNames;
+    Object[] keyValues;
+    String[] changedNames;
+    Object[] changedValues;
+  }
+
+  private int kind;
+  private String name;
+  private boolean binary;
+  private Entry[] ring;
+  private int head, count;
+  private boolean writing, closed;
+  private Thread writer;
+
+  private File file;
+  private FileOutputStream fileOut;
+  private DataOutputStream out;
+  private long openedAt, lastSync;
+  private long droppedRecords;
+
+  private TransactionLog(int kind0, String name0) {
+    kind = kind0;
+    name = name0;
+    binary = kind != ERROR_FILE &&
+        RepConstants.getTransactionLogFormat().equals(BINARY);
+    ring = new Entry[RepConstants.getTransactionLogBufferSize()];
+  }
+
+  /**
+   * Returns the transaction log of the publication pubName.
+   * @param pubName
+   * @return TransactionLog
+   */
+  public static TransactionLog getPublisherLog(String pubName) {
+    return getLog(PUBLISHER, pubName);
+  }
+
+  /**
+   * Returns the transaction log of the subscription subName.
+   * @param subName
+   * @return TransactionLog
+   */
+  public static TransactionLog getSubscriberLog(String subName) {
+    return getLog(SUBSCRIBER, subName);
+  }
+
+  /**
+   * Returns the log writing the error file of PathHandler.
+   * @return TransactionLog
+   */
+  public static synchronized TransactionLog getErrorLog() {
+    if (errorLog == null) {
+      errorLog = new TransactionLog(ERROR_FILE, "error");
+      addShutdownHook();
+    }
+    return errorLog;
+  }
+
+  private static synchronized TransactionLog getLog(int kind, String name) {
+    String key = (kind == PUBLISHER ? "P" : "S") + name;
+    TransactionLog transactionLog = (TransactionLog) logs.get(key);
+    if (transactionLog == null) {
+      transactionLog = new TransactionLog(kind, name);
+      logs.put(key, transactionLog);
+      addShutdownHook();
+    }
+    return transactionLog;
+  }
+
+  private static void addShutdownHook() {
+    if (shutdownHookAdded) {
+      return;
+    }
+    shutdownHookAdded = true;
+    Runtime.getRuntime().addShutdownHook(new Thread("TransactionLog-shutdown") {
+      public void run() {
+        closeAll();
+      }
+    });
+  }
+
+  /**
+   * Writes the records waiting in all the logs and closes their files.
+   */
+  public static void closeAll() {
+    ArrayList all;
+    synchronized (TransactionLog.class) {
+      all = new ArrayList(logs.values());
+      if (errorLog != null) {
+        all.add(errorLog);
+      }
+    }
+    for (int i = 0; i < all.size(); i++) {
+      ( (TransactionLog) all.get(i)).close();
+    }
+  }
+
+  /**
+   * Puts a text record in the log, it is written as it is.
+   * @param text
+   */
+  public void write(String text) {
+    Entry entry = new Entry();
+    entry.type = ENTRY_TEXT;
+    entry.time = System.currentTimeMillis();
+    entry.text = text;
+    put(entry);
+  }
+
+  /**
+   * Puts the record of an operation applied on a table in the log. The
+   * arrays are copied, the values are converted to strings by the writer
+   * thread.
+   * @param replicationType
+   * @param tableName
+   * @param operation RepConstants insert, update or delete operation
+   * @param keyNames primary key columns, null to write the values only
+   * @param keyValues
+   * @param changedNames changed columns of an update, null for none
+   * @param changedValues
+   */
+  public void writeOperation(String replicationType, String tableName,
+                             String operation, String[] keyNames,
+                             Object[] keyValues, String[] changedNames,
+                             Object[] changedValues) {
+    Entry entry = new Entry();
+    entry.type = ENTRY_OPERATION;
+    entry.time = System.currentTimeMillis();
+    entry.replicationType = replicationType;
+    entry.tableName = tableName;
+    entry.operation = operation;
+    entry.keyNames = keyNames == null ? null : (String[]) keyNames.clone();
+    entry.keyValues = keyValues == null ? null : (Object[]) keyValues.clone();
+    entry.changedNames = changedNames == null ? null : (String[]) changedNames.clone();
+    entry.changedValues = changedValues == null ? null : (Object[]) changedValues.clone();
+    put(entry);
+  }
+
+  /**
+   * Waits till the records put so far are written. Returns at once if the
+   * caller is interrupted, its interrupt status is kept.
+   */
+  public synchronized void flush() {
+    while ( (count != 0 || writing) && writer != null) {
+      try {
+        wait();
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes the records waiting in the buffer and closes the file. Records
+   * put after it are dropped. The log is removed from the logs, so the next
+   * getPublisherLog, getSubscriberLog or getErrorLog starts a new one.
+   */
+  public void close() {
+    Thread thread;
+    synchronized (TransactionLog.class) {
+      if (kind == ERROR_FILE) {
+        if (errorLog == this) {
+          errorLog = null;
+        }
+      }
+      else {
+        String key = (kind == PUBLISHER ? "P" : "S") + name;
+        if (logs.get(key) == this) {
+          logs.remove(key);
+        }
+      }
+    }
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+      thread = writer;
+    }
+    if (thread != null) {
+      try {
+        thread.join(10000);
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of records dropped because the log was closed or the
+   * caller was interrupted while the buffer was full.
+   * @return long
+   */
+  public synchronized long getDroppedRecords() {
+    return droppedRecords;
+  }
+
+  private synchronized void put(Entry entry) {
+    while (count == ring.length && !closed) {
+      try {
+        wait();
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        drop(entry, "the caller was interrupted");
+        return;
+      }
+    }
+    if (closed) {
+      drop(entry, "the log is closed");
+      return;
+    }
+    ring[ (head + count) % ring.length] = entry;
+    count++;
+    if (writer == null) {
+      writer = new Thread(new Runnable() {
+        public void run() {
+          work();
+        }
+      }, "TransactionLog-" + name);
+      writer.setDaemon(true);
+      writer.start();
+    }
+    notifyAll();
+  }
+
+  private void drop(Entry entry, String reason) {
+    droppedRecords++;
+    log.warn("Record of " + name + " dropped as " + reason + " : " +
+             (entry.type == ENTRY_TEXT ? entry.text
+              : entry.operation + " on " + entry.tableName) +
+             ", " + droppedRecords + " records dropped");
+  }
+
+  private void work() {
+    Entry[] batch = new Entry[ring.length];
+    try {
+      while (true) {
+        int size;
+        synchronized (this) {
+          writing = false;
+          notifyAll();
+          while (count == 0 && !closed) {
+            wait();
+          }
+          if (count == 0) {
+            break;
+          }
+          size = count;
+          for (int i = 0; i < size; i++) {
+            int index = (head + i) % ring.length;
+            batch[i] = ring[index];
+            ring[index] = null;
+          }
+          head = (head + size) % ring.length;
+          count = 0;
+          writing = true;
+          // callers waiting for a free slot
+          notifyAll();
+        }
+        writeBatch(batch, size);
+      }
+    }
+    catch (InterruptedException ex) {
+    }
+    finally {
+      closeFile();
+      synchronized (this) {
+        writing = false;
+        writer = null;
+        notifyAll();
+      }
+    }
+  }
+
+  private void writeBatch(Entry[] batch, int size) {
+    try {
+      for (int i = 0; i < size; i++) {
+        if (out == null || isRotationDue()) {
+          openFile();
+        }
+        writeEntry(batch[i]);
+        batch[i] = null;
+      }
+      out.flush();
+      long syncInterval = RepConstants.getTransactionLogSyncInterval();
+      long now = System.currentTimeMillis();
+      if (kind != ERROR_FILE && syncInterval >= 0 && now - lastSync >= syncInterval) {
+        fileOut.getFD().sync();
+        lastSync = now;
+      }
+    }
+    catch (IOException ex) {
+      log.error("Could not write " + file + " : " + ex.getMessage(), ex);
+      for (int i = 0; i < size; i++) {
+        batch[i] = null;
+      }
+      closeFile();
+    }
+  }
+
+  private boolean isRotationDue() {
+    if (kind == ERROR_FILE) {
+      return false;
+    }
+    long maxSize = RepConstants.getTransactionLogMaxSize();
+    long rotateInterval = RepConstants.getTransactionLogRotateInterval();
+    return (maxSize > 0 && out.size() >= maxSize) ||
+        (rotateInterval > 0 && System.currentTimeMillis() - openedAt >= rotateInterval);
+  }
+
+  private void openFile() throws IOException {
+    closeFile();
+    if (kind == ERROR_FILE) {
+      file = new File(PathHandler.getErrorFilePath());
+    }
+    else {
+      String path = kind == PUBLISHER
+          ? PathHandler.getDefaultTransactionLogFilePathForPublisher(name)
+          : PathHandler.getDefaultTransactionLogFilePathForSubscriber(name);
+      String extension = binary ? ".lgb" : ".lg";
+      String base = path.substring(0, path.lastIndexOf('.'));
+      // the file name has the time in seconds, a file rotated within the
+      // same second gets a counter
+      file = new File(base + extension);
+      for (int i = 1; file.exists(); i++) {
+        file = new File(base + "_" + i + extension);
+      }
+    }
+    fileOut = new FileOutputStream(file.getPath(), true);
+    out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+    openedAt = System.currentTimeMillis();
+    if (binary) {
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+    }
+  }
+
+  private void closeFile() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    }
+    catch (IOException ex) {
+      log.error(ex.getMessage(), ex);
+    }
+    out = null;
+    fileOut = null;
+  }
+
+  private void writeEntry(Entry entry) throws IOException {
+    if (binary) {
+      out.writeByte(entry.type);
+      out.writeLong(entry.time);
+      if (entry.type == ENTRY_TEXT) {
+        writeString(entry.text);
+        return;
+      }
+      writeString(entry.replicationType);
+      writeString(entry.tableName);
+      writeString(entry.operation);
+      writeStrings(entry.keyNames);
+      writeStrings(entry.keyValues);
+      writeStrings(entry.changedNames);
+      writeStrings(entry.changedValues);
+      return;
+    }
+    if (entry.type == ENTRY_TEXT) {
+      out.write(entry.text.getBytes());
+      return;
+    }
+    StringBuffer sb = new StringBuffer();
+    sb.append("\n[").append(entry.replicationType).append("]")
+        .append("[").append(entry.tableName).append("]")
+        .append("[").append(entry.operation).append("]");
+    if (entry.keyNames == null) {
+      sb.append("[");
+      appendValues(sb, null, entry.keyValues);
+      sb.append("]");
+    }
+    else {
+      sb.append("[PRIMARY KEY VALUES  ");
+      appendValues(sb, entry.keyNames, entry.keyValues);
+      sb.append("]");
+    }
+    if (entry.changedNames != null) {
+      sb.append("[ CHANGED COLUMNS ");
+      appendValues(sb, entry.changedNames, entry.changedValues);
+      sb.append("]");
+    }
+    out.write(sb.toString().getBytes());
+  }
+
+  private static void appendValues(StringBuffer sb, String[] names, Object[] values) {
+    for (int i = 0; i < values.length; i++) {
+      if (i != 0) {
+        sb.append(",");
+      }
+      if (names != null) {
+        sb.append(names[i]).append(" = ");
+      }
+      sb.append(values[i]);
+    }
+  }
+
+  private void writeStrings(Object[] values) throws IOException {
+    if (values == null) {
+      out.writeInt( -1);
+      return;
+    }
+    out.writeInt(values.length);
+    for (int i = 0; i < values.length; i++) {
+      writeString(values[i] == null ? null : values[i].toString());
+    }
+  }
+
+  /**
+   * Strings may be longer than the 64K limit of writeUTF, they are written as
+   * length and UTF-8 bytes, -1 for null.
+   */
+  private void writeString(String value) throws IOException {
+    if (value == null) {
+      out.writeInt( -1);
+      return;
+    }
+    byte[] bytes = value.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+}
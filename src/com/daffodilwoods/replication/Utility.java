@@ -304,7 +304,7 @@ public class Utility {
   private static String getVendorName(Connection connection) throws
       RepException {
     try {
-      return connection.getMetaData().getDatabaseProductName();
+      return MetaDataCache.getVendorName(connection);
     }
     catch (SQLException ex) {
       throw new RepException("REP006", new Object[] {ex.getMessage()});
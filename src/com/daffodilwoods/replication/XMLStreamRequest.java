@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication;
+
+import java.io.*;
+import java.net.*;
+
+import com.daffodilwoods.replication.zip.*;
+
+/**
+ * This class requests the synchronization XML from the publisher with the
+ * streaming transport. The subscriber listens on a server socket, the remote
+ * call createXMLStreamForClient runs in this thread and the publisher
+ * connects back and writes the XML on the socket while generating it. The
+ * subscriber parses the XML from getInputStream meanwhile, and gets the
+ * result of the remote call from getResult when the XML has been parsed.
+ */
+
+public class XMLStreamRequest extends Thread {
+
+  private _PubImpl publication;
+  private String subName, clientServerName;
+  private boolean isSchemaSupported;
+  private ServerSocket serverSocket;
+  private Socket socket;
+  private ChangeInputStream input;
+  private Object[] result;
+  private Exception error;
+
+  public XMLStreamRequest(_PubImpl publication0, String subName0,
+                          String clientServerName0, boolean isSchemaSupported0,
+                          ServerSocket serverSocket0) {
+    publication = publication0;
+    subName = subName0;
+    clientServerName = clientServerName0;
+    isSchemaSupported = isSchemaSupported0;
+    serverSocket = serverSocket0;
+  }
+
+  public void run() {
+    try {
+      result = publication.createXMLStreamForClient(subName, clientServerName,
+          isSchemaSupported, InetAddress.getLocalHost().getHostAddress(),
+          serverSocket.getLocalPort());
+    }
+    catch (Exception ex) {
+      error = ex;
+    }
+  }
+
+  /**
+   * Starts the remote call and waits till the publisher has connected. If
+   * the remote call fails before connecting, its exception is thrown.
+   * @throws Exception
+   */
+  public void connect() throws Exception {
+    start();
+    serverSocket.setSoTimeout(1000);
+    while (socket == null) {
+      try {
+        socket = serverSocket.accept();
+      }
+      catch (SocketTimeoutException ex) {
+        if (!isAlive()) {
+          getResult();
+          throw new IOException("Publisher did not connect to port " + serverSocket.getLocalPort());
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the XML sent by the publisher, the lob data is written to the
+   * lob files of the subscriber while it is read. The stream is opened by
+   * the first call, xmlCopy of later calls is not used.
+   * @param xmlCopy stream getting a copy of the XML, may be null
+   * @return InputStream
+   * @throws IOException
+   */
+  public InputStream getInputStream(OutputStream xmlCopy) throws IOException {
+    if (input == null) {
+      input = new ChangeInputStream(socket.getInputStream(),
+                                    PathHandler.getBLobFilePathForClient(),
+                                    PathHandler.getCLobFilePathForClient(), xmlCopy);
+    }
+    return input;
+  }
+
+  /**
+   * Returns the last sync ids of the publisher's shadow tables the XML is
+   * made of. They are sent before the XML, so they are known before the
+   * operations are applied.
+   * @return last sync ids, null if the publisher did not send them
+   * @throws IOException
+   */
+  public Object[] getLastSyncIds() throws IOException {
+    getInputStream(null);
+    return input.getLastSyncIds();
+  }
+
+  /**
+   * Reads the rest of the XML, waits for the remote call to return and
+   * returns its result.
+   * @return {address of publisher, null, last sync ids}
+   * @throws Exception thrown by the remote call
+   */
+  public Object[] getResult() throws Exception {
+    if (input != null) {
+      input.close();
+    }
+    close();
+    join();
+    if (error != null) {
+      throw error;
+    }
+    return result;
+  }
+
+  /**
+   * Closes the sockets, a publisher still writing gets an exception instead
+   * of being blocked for ever after the subscriber has failed.
+   */
+  public void close() {
+    try {
+      if (socket != null) {
+        socket.close();
+      }
+      if (input != null) {
+        input.close();
+      }
+    }
+    catch (IOException ex) {
+      //Ignore Exception
+    }
+    try {
+      serverSocket.close();
+    }
+    catch (IOException ex) {
+      //Ignore Exception
+    }
+  }
+
+}
@@ -29,4 +29,25 @@ public interface _FileUpload  extends Remote {
 
   void closeFile()throws RepException,RemoteException;
 
+  /**
+   * Returns the chunk size to be used for writeChunk, requestedChunkSize
+   * limited to the chunk size configured at this end.
+   */
+  int getChunkSize(int requestedChunkSize) throws RemoteException;
+
+  /**
+   * Starts a chunked upload of a file of fileLength bytes. transferId is
+   * chosen by the sender for every file it uploads and kept while it retries.
+   * If the upload with the same transferId was broken off, returns the offset
+   * till which it has been received, else 0.
+   */
+  long fileStart(String fileName, boolean isFileForSynchronization, long fileLength, String transferId) throws RepException, RemoteException;
+
+  /**
+   * Writes length bytes at offset of the file started with fileStart. Chunks
+   * can be written in any order and at the same time. Throws REP088 if
+   * checksum is not the CRC32 of the bytes.
+   */
+  void writeChunk(long offset, byte[] bytes, int length, long checksum) throws RepException, RemoteException;
+
 }
@@ -46,6 +46,9 @@ public interface _PubImpl extends Remote {
     public Object[] createXMLForClient(String subName,String clientServerName,boolean isSchemaSupported,_FileUpload fileUpload,String remoteMachineAddress) throws
         RemoteException, RepException;
 
+    public Object[] createXMLStreamForClient(String subName,String clientServerName,boolean isSchemaSupported,String clientAddress,int clientPort) throws
+        RemoteException, RepException;
+
     public Object[] getPublisherAddressAndPort() throws
       RemoteException, RepException;
 
@@ -58,7 +61,7 @@ public interface _PubImpl extends Remote {
     public void dropSubscription(String subName) throws RemoteException,
         SQLException, RepException;
 
-    public void releaseLOCK() throws RemoteException;
+    public void releaseLOCK(String pubSubName) throws RemoteException;
 
 
   public void checkForLock(String pubSubName) throws RepException,RemoteException;
@@ -69,6 +72,24 @@ public interface _PubImpl extends Remote {
 
     public int getPubVendorName() throws RemoteException, RepException;
 
+    /**
+     * Agrees on the change set format used with subscription subName and
+     * returns the format chosen out of formats.
+     */
+    public String negotiateChangeSetFormat(String subName, String[] formats) throws RemoteException;
+
+    /**
+     * Agrees on the compression codec used with subscription subName, codec
+     * is the one proposed by the subscriber. Returns the codec chosen.
+     */
+    public String negotiateCompressionCodec(String subName, String codec) throws RemoteException;
+
+    /**
+     * Returns the highest sync id of the shadow table of every published
+     * table, used to find out whether anything has changed since last time.
+     */
+    public long[] getShadowWatermark() throws RemoteException, RepException;
+
   public void updateBookMarkLastSyncId(String remote_Pub_Sub_Name,
                                        Object[] lastId) throws RemoteException,
       SQLException, RepException;
@@ -86,4 +107,11 @@ public interface _PubImpl extends Remote {
  public _FileUpload getFileUploader() throws RepException,
       SQLException,RemoteException ;
 
+ /**
+  * Returns the file uploader writing in the spool session of subscription
+  * subName.
+  */
+ public _FileUpload getFileUploader(String subName) throws RepException,
+     SQLException,RemoteException;
+
 }
@@ -76,5 +76,7 @@ public interface _Subscription {
 
   ArrayList getRepTables();
 
+  long[] getPublisherShadowWatermark() throws RepException;
+
 
 }
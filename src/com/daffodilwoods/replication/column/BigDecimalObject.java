@@ -86,8 +86,7 @@ public class BigDecimalObject extends AbstractColumnObject
               bw.write(getObject(rs, index).toString() );
 //            bw.write("<![CDATA[" + getObject(rs, index).toString() + "]]>");
           } else {
-            bw.write(EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
-                            toString(), true));
+            EncoderDecoder.escapeUnicode(bw, getObject(rs, index).toString(), true);
 
 //            bw.write("<![CDATA[" +
 //                     EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
@@ -106,11 +105,9 @@ public class BigDecimalObject extends AbstractColumnObject
         try
         {
             if(!encodedCols.contains(col.toUpperCase())) {
-            bw.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(bw, rowValue.toString());
             } else {
-              bw.write("<![CDATA[" +
-                       EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
-                       "]]>");
+              EncoderDecoder.writeEscapedCDATA(bw, rowValue.toString());
             }
 
         }
@@ -193,11 +193,11 @@ public class BlobObject extends AbstractColumnObject
              */
 //         new ByteArrayInputStream((objrowValue.toString()).getBytes());
         }
-        bw.write("<start>");
+        ChangeSetMarkup.startElement(bw, "start");
         bw.write("" + blobst.getStreamStart());
-        bw.write("</start>");
+        ChangeSetMarkup.endElement(bw, "start");
 //RepPrinter.print(" Bfter Writing the Blob to file " + blobst);
-        bw.write("<length>");
+        ChangeSetMarkup.startElement(bw, "length");
         if (rowValue != null)
         {
             bw.write("" + blobst.write(rowValue));
@@ -207,7 +207,7 @@ public class BlobObject extends AbstractColumnObject
             bw.write("-1");
         }
 //RepPrinter.print(" After Writing the Blob to file " + blobst);
-        bw.write("</length>");
+        ChangeSetMarkup.endElement(bw, "length");
     }
 
     /**
@@ -420,19 +420,18 @@ public class BlobObject extends AbstractColumnObject
         try
         {
             if(!encodedCols.contains(col.toUpperCase())) {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
             } else {
-              os.write("<![CDATA[" +
-                       EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
-                       "]]>");
+              EncoderDecoder.writeEscapedCDATA(os, rowValue.toString());
             }
 
         }
         catch (NullPointerException ex)
         {
-            os.write("<start>");
+            ChangeSetMarkup.startElement(os, "start");
             os.write("" + blobst.getStreamStart());
-            os.write("</start><length>-1</length>");
+            ChangeSetMarkup.endElement(os, "start");
+            ChangeSetMarkup.writeElement(os, "length", "-1");
         }
     }
 
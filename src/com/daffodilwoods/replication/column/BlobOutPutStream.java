@@ -33,40 +33,25 @@ protected static Logger log =Logger.getLogger(BlobOutPutStream.class.getName());
     path = path0;
   }
 
+  /**
+   * Appends input at the end of the lob file through the LobSpool of the
+   * file and returns the number of bytes written, -1 on an error.
+   */
   public int write(InputStream input) {
-    int bytesToWrite = 0;
-    /*      try
-          {
-              bytesToWrite = input.available();
-          }
-          catch (IOException ex2)
-          {
-//      ex2.printStackTrace();
-          }
-          if (bytesToWrite == 0 || bytesToWrite == -1)
-          {
-              return 0;
-          } */
-    int len = 0;
-    int length = 0;
-    byte[] buf = new byte[1024];
+    LobSpool spool = null;
     try {
-      FileOutputStream output = new FileOutputStream(path, true);
-      while ( (len = input.read(buf)) > 0) {
-        output.write(buf, 0, len);
-        //lastIndex += len;
-        length += len;
-        bytesToWrite += len;
-      }
-      output.flush();
-      output.close();
-//      streamEnd = length;
-      return bytesToWrite;
+      spool = LobSpool.getInstance(path);
+      return spool.append(input);
     }
     catch (IOException ex) {
       RepConstants.writeERROR_FILE(ex);
       return -1;
     }
+    finally {
+      if (spool != null) {
+        spool.release();
+      }
+    }
   }
 
   public InputStream getInputStream() {
@@ -89,29 +74,24 @@ protected static Logger log =Logger.getLogger(BlobOutPutStream.class.getName());
     }
   }
 
+  /**
+   * Returns the size of the lob file, the start of the next value written.
+   */
   public int getStreamStart() {
-    InputStream is = null;
-    int streamStart = 0;
+    LobSpool spool = null;
     try {
-      is = getInputStream();
-      streamStart = is.available();
+      spool = LobSpool.getInstance(path);
+      return (int) spool.size();
     }
-    catch (IOException ex1) {
-      log.error(ex1.getMessage(),ex1);
-      // Problem with Input
+    catch (IOException ex) {
+      log.error(ex.getMessage(),ex);
+      return 0;
     }
     finally {
-      try {
-        if (is != null) {
-          is.close();
-        }
-      }
-      catch (IOException ex) {
-        log.error(ex.getMessage(),ex);
-//        ex.printStackTrace();
+      if (spool != null) {
+        spool.release();
       }
     }
-    return streamStart;
   }
 
   public String toString() {
@@ -80,7 +80,7 @@ public class BooleanObject extends AbstractColumnObject
     {
         try
         {
-            os.write("<![CDATA[" + getObject(rs, index).toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, getObject(rs, index).toString());
         }
         catch (NullPointerException ex)
         {
@@ -93,7 +93,7 @@ public class BooleanObject extends AbstractColumnObject
     {
         try
         {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
 
         }
         catch (NullPointerException ex)
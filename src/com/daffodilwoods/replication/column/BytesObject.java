@@ -89,21 +89,17 @@ public class BytesObject extends AbstractColumnObject
             if (object instanceof byte[])
             {
               if (!encodedCols.contains(col.toUpperCase())) {
-                os.write("<![CDATA[" + (new String( (byte[]) object)) + "]]>");
+                ChangeSetMarkup.writeCDATA(os, (new String( (byte[]) object)));
               } else {
-                os.write("<![CDATA[" +
-                         EncoderDecoder.escapeUnicodeString1(new String( (byte[])
-                    object), true) + "]]>");
+                EncoderDecoder.writeEscapedCDATA(os, new String( (byte[]) object));
               }
 
             }
             else
             {
               if (!encodedCols.contains(col.toUpperCase()))
-                os.write("<![CDATA[" + object.toString() + "]]>");
-              os.write("<![CDATA[" +
-                       EncoderDecoder.escapeUnicodeString1(object.toString(), true) +
-                       "]]>");
+                ChangeSetMarkup.writeCDATA(os, object.toString());
+              EncoderDecoder.writeEscapedCDATA(os, object.toString());
 
             }
         }
@@ -118,7 +114,7 @@ public class BytesObject extends AbstractColumnObject
     {
         try
         {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
         }
         catch (NullPointerException ex)
         {
@@ -134,21 +130,17 @@ public class BytesObject extends AbstractColumnObject
             if (rowValue instanceof byte[])
             {
                 if(!encodedCols.contains(col.toUpperCase())) {
-                os.write("<![CDATA[" + (new String( (byte[]) rowValue)) + "]]>");
+                ChangeSetMarkup.writeCDATA(os, (new String( (byte[]) rowValue)));
                 } else {
-                  os.write("<![CDATA[" +
-                           EncoderDecoder.escapeUnicodeString1(new String( (byte[]) rowValue), true) +
-                           "]]>");
+                  EncoderDecoder.writeEscapedCDATA(os, new String( (byte[]) rowValue));
                 }
             }
             else
             {
                 if(!encodedCols.contains(col.toUpperCase())) {
-                os.write("<![CDATA[" + rowValue.toString() + "]]>");
+                ChangeSetMarkup.writeCDATA(os, rowValue.toString());
                 } else {
-                  os.write("<![CDATA[" +
-                           EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
-                           "]]>");
+                  EncoderDecoder.writeEscapedCDATA(os, rowValue.toString());
                 }
             }
         }
@@ -148,11 +148,11 @@ public class ClobObject extends AbstractColumnObject
 //      System.out.println("noOfByteRead1 "+noOfByteRead1+" clobObject  = "+new String(bClient));
 //      System.out.println("<--------------------PRINT------------------------------->");
         }
-        os.write("<start>");
+        ChangeSetMarkup.startElement(os, "start");
         os.write("" + clobst.getStreamStart());
-        os.write("</start>");
+        ChangeSetMarkup.endElement(os, "start");
 //RepPrinter.print(" Bfter Writing the Clob to file " + clobst);
-        os.write("<length>");
+        ChangeSetMarkup.startElement(os, "length");
         if (rowValue != null)
         {
             os.write("" + clobst.write(rowValue));
@@ -162,7 +162,7 @@ public class ClobObject extends AbstractColumnObject
             os.write("-1");
         }
 //RepPrinter.print(" After Writing the Clob to file " +clobst);
-        os.write("</length>");
+        ChangeSetMarkup.endElement(os, "length");
     }
 
     /**
@@ -389,13 +389,14 @@ public class ClobObject extends AbstractColumnObject
     {
         try
         {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
         }
         catch (NullPointerException ex)
         {
-            os.write("<start>");
+            ChangeSetMarkup.startElement(os, "start");
             os.write("" + clobst.getStreamStart());
-            os.write("</start><length>-1</length>");
+            ChangeSetMarkup.endElement(os, "start");
+            ChangeSetMarkup.writeElement(os, "length", "-1");
         }
     }
 
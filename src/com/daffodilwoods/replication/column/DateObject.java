@@ -122,7 +122,7 @@ public class DateObject extends AbstractColumnObject
     {
         try
         {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
         }
         catch (NullPointerException ex)
         {
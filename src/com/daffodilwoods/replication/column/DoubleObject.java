@@ -86,8 +86,7 @@ public class DoubleObject extends AbstractColumnObject
               os.write(getObject(rs, index).toString());
 //            os.write("<![CDATA[" + getObject(rs, index).toString() + "]]>");
             } else {
-              os.write(EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
-                 toString(), true));
+              EncoderDecoder.escapeUnicode(os, getObject(rs, index).toString(), true);
 
 //              os.write("<![CDATA[" +
 //                       EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
@@ -111,7 +110,7 @@ public class DoubleObject extends AbstractColumnObject
 //             os.write("<![CDATA[" + rowValue.toString() + "]]>");
             os.write(rowValue.toString() );
            } else {
-             os.write(EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true));
+             EncoderDecoder.escapeUnicode(os, rowValue.toString(), true);
 
 //             os.write("<![CDATA[" +
 //                      EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
@@ -86,8 +86,7 @@ public class IntegerObject extends AbstractColumnObject
               os.write(getObject(rs, index).toString());
 //            os.write("<![CDATA[" + getObject(rs, index).toString() + "]]>");
             } else {
-              os.write(EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
-                  toString(), true));
+              EncoderDecoder.escapeUnicode(os, getObject(rs, index).toString(), true);
 //              os.write("<![CDATA[" +
 //                       EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
 //                  toString(), true) +
@@ -108,11 +107,9 @@ public class IntegerObject extends AbstractColumnObject
         try
         {
             if(!encodedCols.contains(col.toUpperCase())) {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
             } else {
-              os.write("<![CDATA[" +
-                       EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
-                       "]]>");
+              EncoderDecoder.writeEscapedCDATA(os, rowValue.toString());
             }
         }
         catch (NullPointerException ex)
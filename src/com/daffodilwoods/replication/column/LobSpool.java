@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.column;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+import com.daffodilwoods.replication.SpoolSession;
+
+/**
+ * This class keeps one lob spool file, blob.lob or clob.lob, open. Values are
+ * appended at the end of the file through one FileChannel and a buffer, and
+ * read back by RBlob and RClob as slices of a memory mapped window of the
+ * file, so a row with lob columns neither reopens the file nor skips to the
+ * offset of its value.
+ *
+ * A spool is opened once per spool session and closed with the session. If
+ * no session is open the spool is closed by release after every use. The end
+ * of the file is read for every value, so values appended by the other end
+ * of a local replication, or a file rewritten by an unzip, are seen.
+ */
+
+public class LobSpool
+{
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private String path;
+    private boolean owned;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private MappedByteBuffer window;
+    private long windowStart, windowEnd;
+
+    private LobSpool(String path0, boolean owned0) throws IOException
+    {
+        path = path0;
+        owned = owned0;
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+    }
+
+    /**
+     * Returns the spool of the file path, the one of the current spool
+     * session if a session is open. release has to be called after use.
+     * @param path path of the lob file
+     * @return LobSpool
+     * @throws IOException
+     */
+    public static LobSpool getInstance(String path) throws IOException
+    {
+        SpoolSession session = SpoolSession.getCurrent();
+        if (session == null)
+            return new LobSpool(path, false);
+        LobSpool spool = (LobSpool) session.getLobSpool(path);
+        if (spool == null)
+        {
+            spool = new LobSpool(path, true);
+            session.putLobSpool(path, spool);
+        }
+        return spool;
+    }
+
+    /**
+     * Returns the size of the file, the start of the next value appended.
+     * @return long
+     * @throws IOException
+     */
+    public synchronized long size() throws IOException
+    {
+        return channel.size();
+    }
+
+    /**
+     * Appends the bytes of input at the end of the file and returns their
+     * number.
+     * @param input value to be written
+     * @return int
+     * @throws IOException
+     */
+    public synchronized int append(InputStream input) throws IOException
+    {
+        if (buffer == null)
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        channel.position(channel.size());
+        byte[] bytes = buffer.array();
+        int count = 0, length = 0, len;
+        while ((len = input.read(bytes, count, bytes.length - count)) > 0)
+        {
+            count += len;
+            length += len;
+            if (count == bytes.length)
+            {
+                writeBuffer(count);
+                count = 0;
+            }
+        }
+        writeBuffer(count);
+        return length;
+    }
+
+    private void writeBuffer(int count) throws IOException
+    {
+        buffer.clear();
+        buffer.limit(count);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Returns the bytes start to start + length of the file as a read only
+     * buffer sharing the memory mapped window of the file.
+     * @param start offset of the value in the file
+     * @param length number of bytes of the value
+     * @return ByteBuffer
+     * @throws IOException if the file is shorter
+     */
+    public synchronized ByteBuffer slice(long start, int length) throws IOException
+    {
+        if (length <= 0)
+            return ByteBuffer.allocate(0);
+        long end = start + length;
+        long size = channel.size();
+        if (start < 0 || end > size)
+            throw new IOException("Lob of " + length + " bytes at " + start + " is beyond the end " + size + " of " + path);
+        // the window is mapped again if the file has been truncated under it
+        if (window == null || start < windowStart || end > windowEnd || windowEnd > size)
+        {
+            windowStart = start;
+            windowEnd = Math.min(size, start + Math.max(length, WINDOW_SIZE));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+        }
+        ByteBuffer value = window.duplicate();
+        value.position((int) (start - windowStart));
+        value.limit((int) (end - windowStart));
+        return value.slice();
+    }
+
+    /**
+     * Closes the spool if it does not belong to a spool session.
+     */
+    public void release()
+    {
+        if (!owned)
+            close();
+    }
+
+    /**
+     * Closes the file, slices taken before stay readable.
+     */
+    public synchronized void close()
+    {
+        window = null;
+        try
+        {
+            file.close();
+        }
+        catch (IOException ex)
+        {
+            // nothing is left to be written
+        }
+    }
+
+}
@@ -19,6 +19,7 @@
 package com.daffodilwoods.replication.column;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.sql.*;
 import com.daffodilwoods.replication.PathHandler;
 
@@ -28,7 +29,7 @@ import org.apache.log4j.Logger;
 public class RBlob implements Blob
 {
 
-    private InputStream is;
+    private ByteBuffer data;
     private long start;
     private int length;
     protected static Logger log =Logger.getLogger(RBlob.class.getName());
@@ -37,15 +38,21 @@ public class RBlob implements Blob
     {
         start = start0;
         length = length0;
+        LobSpool spool = null;
         try
         {
             String path = PathHandler.getBLobFilePathForClient();
-            is = new FileInputStream(path);
-         is.skip(start);
+            spool = LobSpool.getInstance(path);
+            data = spool.slice(start, length);
       } catch (Exception ex) {
 log.error(ex.getMessage(),ex);
             //Ignore Exception
         }
+        finally
+        {
+            if (spool != null)
+                spool.release();
+        }
     }
 
     public long length() throws SQLException
@@ -92,28 +99,30 @@ log.error(ex.getMessage(),ex);
       // because we write data into blob clob file from start address 0.
       }
 
-      long start1 = start + pos;
-      length0 = (start1 + length0) < (start + length) ?
-          length0 : (int) (length - pos);
-//      System.out.println("Inside RBlob start1 : " + start1 + " length0 : " + length0 + " pos " + pos + " length " + length + " start " + start);
-
-      byte[] buf = new byte[length0];
-      int lengthRead = 0;
-      try {
-        lengthRead = is.read(buf, 0, length0);
-        if (lengthRead <= 0) {
-          throw new SQLException("NODATA");
-        }
+      byte[] buf = new byte[(int) Math.min(length0, Math.max(length - pos, 0))];
+      int lengthRead = read(pos, buf, 0, buf.length);
+      if (lengthRead <= 0) {
+        throw new SQLException("NODATA");
       }
-        catch (IOException ex)
-        {
-          log.error(ex.getMessage(),ex);
-          throw new SQLException(ex.getMessage());
-        }
-        byte[] temp = new byte[lengthRead];
-        System.arraycopy(buf, 0, temp, 0, lengthRead);
-//    return buf;
-        return temp;
+      return buf;
+    }
+
+    /**
+     * Copies the bytes of the value from offset on into b, returns the
+     * number of bytes copied, -1 at the end of the value.
+     */
+    int read(long offset, byte[] b, int off, int len) throws SQLException {
+      if (data == null) {
+        throw new SQLException("Blob of " + length + " bytes at " + start + " could not be read");
+      }
+      if (offset >= length) {
+        return -1;
+      }
+      len = (int) Math.min(len, length - offset);
+      ByteBuffer value = data.duplicate();
+      value.position((int) offset);
+      value.get(b, off, len);
+      return len;
     }
 
    public InputStream getBinaryStream() throws SQLException {
@@ -45,52 +45,32 @@ public class RepAsciiStream extends InputStream {
     * @return int
     */
    public int read() throws IOException {
-      try {
-         byte b = clob.getSubString(currentPosition, 1).getBytes()[0];
-         currentPosition++;
-         return b;
-      } catch (SQLException ex) {
-         if (ex.getMessage().equalsIgnoreCase("NODATA")) {
-            return -1;
-         }
-         throw new IOException(ex.getMessage());
-      }
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
    }
 
    public int read(byte b[]) throws IOException {
-      try {
-         int uLength = b.length;
-         byte[] temp = clob.getSubString(currentPosition, uLength).getBytes();
-         currentPosition += temp.length;
-         System.arraycopy(temp, 0, b, 0, temp.length);
-         return temp.length;
-      } catch (SQLException ex) {
-         if (ex.getMessage().equalsIgnoreCase("NODATA")) {
-            return -1;
-         }
-         throw new IOException(ex.getMessage());
-      }
-
+      return read(b, 0, b.length);
    }
 
    public int read(byte b[], int off, int len) throws IOException {
+      if (len == 0) {
+         return 0;
+      }
       try {
-         String s = clob.getSubString(currentPosition, len);
-         byte[] temp = s.getBytes();
-         currentPosition += temp.length;
-         System.arraycopy(temp, 0, b, off, temp.length);
-         return temp.length;
-      } catch (SQLException ex) {
-         if (ex.getMessage().equalsIgnoreCase("NODATA")) {
-            return -1;
+         int lengthRead = clob.read(currentPosition, b, off, len);
+         if (lengthRead > 0) {
+            currentPosition += lengthRead;
          }
+         return lengthRead;
+      } catch (SQLException ex) {
          throw new IOException(ex.getMessage());
       }
    }
 
    public int available() throws IOException {
       try {
-         return (int) clob.length();
+         return (int) (clob.length() - currentPosition);
       } catch (SQLException ex) {
          throw new IOException(ex.getMessage());
       }
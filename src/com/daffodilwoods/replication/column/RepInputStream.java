@@ -24,7 +24,7 @@ import java.sql.*;
 
 public class RepInputStream extends InputStream {
    private long currentPosition;
-   private static RBlob blob;
+   private RBlob blob;
 
    public RepInputStream(RBlob blob0) {
       blob = blob0;
@@ -37,51 +37,32 @@ public class RepInputStream extends InputStream {
     * @return int
     */
    public int read() throws IOException {
-      try {
-         byte b = blob.getBytes(currentPosition, 1)[0];
-         currentPosition++;
-         return b;
-      } catch (SQLException ex) {
-         if (ex.getMessage().equalsIgnoreCase("NODATA")) {
-            return -1;
-         }
-         throw new IOException(ex.getMessage());
-      }
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
    }
 
    public int read(byte b[]) throws IOException {
-      try {
-         int uLength = b.length;
-         byte[] temp = blob.getBytes(currentPosition, uLength);
-         currentPosition += temp.length;
-         System.arraycopy(temp, 0, b, 0, temp.length);
-         return temp.length;
-      } catch (SQLException ex) {
-         if (ex.getMessage().equalsIgnoreCase("NODATA")) {
-            return -1;
-         }
-         throw new IOException(ex.getMessage());
-      }
+      return read(b, 0, b.length);
    }
 
    public int read(byte b[], int off, int len) throws IOException {
+      if (len == 0) {
+         return 0;
+      }
       try {
-         byte[] temp = blob.getBytes(currentPosition, len);
-         currentPosition += temp.length;
-         System.arraycopy(temp, 0, b, off, temp.length);
-         return temp.length;
-      } catch (SQLException ex) {
-         if (ex.getMessage().equalsIgnoreCase("NODATA")) {
-            return -1;
+         int lengthRead = blob.read(currentPosition, b, off, len);
+         if (lengthRead > 0) {
+            currentPosition += lengthRead;
          }
+         return lengthRead;
+      } catch (SQLException ex) {
          throw new IOException(ex.getMessage());
       }
    }
 
    public int available() throws IOException {
       try {
-         int len = (int) blob.length();
-         return len;
+         return (int) (blob.length() - currentPosition);
       } catch (SQLException ex) {
          throw new IOException(ex.getMessage());
       }
@@ -198,15 +198,11 @@ public class SQLServerVarCharObject extends AbstractColumnObject
         }
         String path = PathHandler.getCLobFilePathForClient();
         byte[] buf = new byte[length];
+        LobSpool spool = null;
         try
         {
-            FileInputStream is = new FileInputStream(path);
-            long skip = -1;
-            if (start != 0)
-            {
-                skip = is.skip(start);
-            }
-            int lengthRead = is.read(buf, 0, length);
+            spool = LobSpool.getInstance(path);
+            spool.slice(start, length).get(buf);
             String toReturn = new String(buf);
             if (toReturn.indexOf("start") != -1 && toReturn.indexOf("length") != -1)
             {
@@ -222,6 +218,11 @@ public class SQLServerVarCharObject extends AbstractColumnObject
           log.error(ex.getMessage(),ex);
             throw new SQLException(ex.getMessage());
         }
+        finally
+        {
+            if (spool != null)
+                spool.release();
+        }
 
 //        return new String(buf);
     }
@@ -261,18 +262,17 @@ public class SQLServerVarCharObject extends AbstractColumnObject
         {
 //           os.write(rowValue.toString());
            if(!encodedCols.contains(col.toUpperCase()))  {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
            } else {
-             os.write("<![CDATA[" +
-                      EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
-                      "]]>");
+             EncoderDecoder.writeEscapedCDATA(os, rowValue.toString());
            }
         }
         catch (NullPointerException ex)
         {
-            os.write("<start>");
+            ChangeSetMarkup.startElement(os, "start");
             os.write("" + clobst.getStreamStart());
-            os.write("</start><length>-1</length>");
+            ChangeSetMarkup.endElement(os, "start");
+            ChangeSetMarkup.writeElement(os, "length", "-1");
         }
     }
 
@@ -84,10 +84,9 @@ public class StringObject extends AbstractColumnObject
         try
         {
             if(!encodedCols.contains(col.toUpperCase())) {
-            os.write("<![CDATA[" + getObject(rs, index).toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, getObject(rs, index).toString());
             } else {
-              os.write("<![CDATA[" +
-                       EncoderDecoder.escapeUnicodeString1(getObject(rs, index).toString(), true) +"]]>");
+              EncoderDecoder.writeEscapedCDATA(os, getObject(rs, index).toString());
             }
 
         }
@@ -106,11 +105,9 @@ public class StringObject extends AbstractColumnObject
         try
         {
            if(!encodedCols.contains(col.toUpperCase())) {
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
            } else {
-             os.write("<![CDATA[" +
-                      EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
-                      "]]>");
+             EncoderDecoder.writeEscapedCDATA(os, rowValue.toString());
            }
         }
         catch (NullPointerException ex)
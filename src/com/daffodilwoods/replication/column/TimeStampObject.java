@@ -107,8 +107,7 @@ public class TimeStampObject extends AbstractColumnObject
 //                         os.write("<![CDATA[" + getObject(rs, index).toString() + "]]>");
             os.write(getObject(rs, index).toString());
            } else {
-             os.write(EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
-                 toString(), true));
+             EncoderDecoder.escapeUnicode(os, getObject(rs, index).toString(), true);
 
 //             os.write("<![CDATA[" +
 //                      EncoderDecoder.escapeUnicodeString1(getObject(rs, index).
@@ -130,11 +129,9 @@ public class TimeStampObject extends AbstractColumnObject
         {
             if(!encodedCols.contains(col.toUpperCase())) {
 
-            os.write("<![CDATA[" + rowValue.toString() + "]]>");
+            ChangeSetMarkup.writeCDATA(os, rowValue.toString());
             } else {
-              os.write("<![CDATA[" +
-                       EncoderDecoder.escapeUnicodeString1(rowValue.toString(), true) +
-                       "]]>");
+              EncoderDecoder.writeEscapedCDATA(os, rowValue.toString());
             }
         }
         catch (NullPointerException ex)
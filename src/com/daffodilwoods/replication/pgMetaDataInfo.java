@@ -849,7 +849,7 @@ public class pgMetaDataInfo
 //   return null;
 //  }
 
-  public ArrayList getChildTables(String parentTable)throws RepException {
+  protected ArrayList loadChildTables(String parentTable)throws RepException {
    String foreignTable =null;
    ArrayList childTableList =new ArrayList();
    try {
@@ -879,7 +879,7 @@ public class pgMetaDataInfo
 
 
 
- public Object[] getImportedColsOfChildTable(String parentTable,String childTable)throws RepException {
+ protected Object[] loadImportedColsOfChildTable(String parentTable,String childTable)throws RepException {
    ArrayList fkColsList=new ArrayList();
    ArrayList referColsList=new ArrayList();
    try {
@@ -1177,7 +1177,7 @@ public class pgMetaDataInfo
     return exportedColumns;
            }
 
-           public void setAllColumns(RepTable repTable, String schemaName,
+           protected void loadAllColumns(RepTable repTable, String schemaName,
                                  String tableName) throws RepException, SQLException {
 
          ResultSet rs = dbmd.getColumns(null, schemaName, tableName, "%");
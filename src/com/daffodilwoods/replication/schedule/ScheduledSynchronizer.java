@@ -22,6 +22,7 @@ import java.sql.*;
 import com.daffodilwoods.replication.*;
 import com.daffodilwoods.replication.DBHandler.AbstractDataBaseHandler;
 import org.apache.log4j.Logger;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -249,39 +250,39 @@ public class ScheduledSynchronizer implements Runnable {
     }
   }
 
+  /**
+   * Runs the replication operation whenever the shadow tables it reads from
+   * have changed. The highest sync id of the shadow tables is read before
+   * every run, so changes committed while an operation runs are found by the
+   * next look. The wait between two looks starts at the minimum poll time of
+   * RepConstants and is doubled up to the maximum while nothing changes.
+   */
   private void realTimeSchedule() {
+    long[] seenWatermark = null;
+    long pollTime = RepConstants.getRealTimeMinPoll();
     while (true) {
       try {
-        //performs the replication operation now
-        if (replicationType.equalsIgnoreCase(RepConstants.replication_snapshotType)) {
-          log.debug(" CALLING SNAPSHOT AT  "+new Timestamp(System.currentTimeMillis()));
-          sub.getSnapShot();
-          log.debug(" SNAPSHOT DONE SUCCESSFULYY AT  "+new Timestamp(System.currentTimeMillis()));
-        }
-        else if (replicationType.equalsIgnoreCase(RepConstants.replication_synchronizeType)) {
-         log.debug("CALLING SYNCHRONIZATION AT  "+new Timestamp(System.currentTimeMillis()));
-          sub.synchronize();
-        log.debug(" SYNCHRONIZATION DONE SUCCESSFULLY AT "+new Timestamp(System.currentTimeMillis()));
+        long[] watermark = getShadowWatermark();
+        if (seenWatermark != null && Arrays.equals(watermark, seenWatermark)) {
+          pollTime = Math.min(pollTime * 2, RepConstants.getRealTimeMaxPoll());
         }
-        else if (replicationType.equalsIgnoreCase(RepConstants.replication_pullType)) {
-          log.debug("CALLING PULL AT  "+new Timestamp(System.currentTimeMillis()));
-          sub.pull();
-          log.debug(" PULL DONE SUCCESSFULLY AT  "+new Timestamp(System.currentTimeMillis()));
-        }
-        else if (replicationType.equalsIgnoreCase(RepConstants.replication_pushType)) {
-          log.debug(" CALLING PUSH AT  "+new Timestamp(System.currentTimeMillis()));
-          sub.push();
-          log.debug(" PUSH DONE SUCCESSFULLY AT  "+new Timestamp(System.currentTimeMillis()));
+        else {
+          replicate();
+          seenWatermark = watermark;
+          pollTime = RepConstants.getRealTimeMinPoll();
         }
       }
       catch (Exception ex1) {
         log.error(ex1,ex1);
         RepConstants.writeERROR_FILE(ex1);
+        // try again after the longest wait, whatever the shadow tables say
+        seenWatermark = null;
+        pollTime = RepConstants.getRealTimeMaxPoll();
 //      throw new RuntimeException(ex1);
       }
       if(!stopSchedule){
       try {
-        Thread.sleep(10000);
+        Thread.sleep(pollTime);
       }
       catch (InterruptedException ex) {
         log.error(ex,ex);
@@ -292,6 +293,52 @@ public class ScheduledSynchronizer implements Runnable {
     }
     }
   }
+
+  private void replicate() throws RepException {
+    //performs the replication operation now
+    if (replicationType.equalsIgnoreCase(RepConstants.replication_snapshotType)) {
+      log.debug(" CALLING SNAPSHOT AT  "+new Timestamp(System.currentTimeMillis()));
+      sub.getSnapShot();
+      log.debug(" SNAPSHOT DONE SUCCESSFULYY AT  "+new Timestamp(System.currentTimeMillis()));
+    }
+    else if (replicationType.equalsIgnoreCase(RepConstants.replication_synchronizeType)) {
+     log.debug("CALLING SYNCHRONIZATION AT  "+new Timestamp(System.currentTimeMillis()));
+      sub.synchronize();
+    log.debug(" SYNCHRONIZATION DONE SUCCESSFULLY AT "+new Timestamp(System.currentTimeMillis()));
+    }
+    else if (replicationType.equalsIgnoreCase(RepConstants.replication_pullType)) {
+      log.debug("CALLING PULL AT  "+new Timestamp(System.currentTimeMillis()));
+      sub.pull();
+      log.debug(" PULL DONE SUCCESSFULLY AT  "+new Timestamp(System.currentTimeMillis()));
+    }
+    else if (replicationType.equalsIgnoreCase(RepConstants.replication_pushType)) {
+      log.debug(" CALLING PUSH AT  "+new Timestamp(System.currentTimeMillis()));
+      sub.push();
+      log.debug(" PUSH DONE SUCCESSFULLY AT  "+new Timestamp(System.currentTimeMillis()));
+    }
+  }
+
+  /**
+   * Returns the highest sync ids of the shadow tables the replication
+   * operation takes its changes from, those of the publisher for snapshot
+   * and pull, of the subscriber for push and of both for synchronize.
+   */
+  private long[] getShadowWatermark() throws RepException, SQLException {
+    long[] publisherWatermark = new long[0];
+    long[] subscriberWatermark = new long[0];
+    if (!replicationType.equalsIgnoreCase(RepConstants.replication_pushType)) {
+      publisherWatermark = sub.getPublisherShadowWatermark();
+    }
+    if (replicationType.equalsIgnoreCase(RepConstants.replication_pushType) ||
+        replicationType.equalsIgnoreCase(RepConstants.replication_synchronizeType)) {
+      subscriberWatermark = dbHandler.getShadowWatermark(connection, sub.getRepTables());
+    }
+    long[] watermark = new long[publisherWatermark.length + subscriberWatermark.length];
+    System.arraycopy(publisherWatermark, 0, watermark, 0, publisherWatermark.length);
+    System.arraycopy(subscriberWatermark, 0, watermark, publisherWatermark.length, subscriberWatermark.length);
+    return watermark;
+  }
+
   private void stopScheduledThread(){
     Thread scheduleThread = (Thread) threadMap.get(scheduleName);
       if(scheduleThread!=null){
@@ -19,7 +19,6 @@
 
 package com.daffodilwoods.replication.synchronize;
 
-import java.io.BufferedWriter;
 import com.daffodilwoods.replication.RepConstants;
 import com.daffodilwoods.replication.RepException;
 import java.io.*;
@@ -36,21 +35,27 @@ import com.daffodilwoods.replication.Utility;
 import java.util.TreeMap;
 import com.daffodilwoods.replication.MetaDataInfo;
 import com.daffodilwoods.replication.RepTable;
+import com.daffodilwoods.replication.TransactionLog;
 import com.daffodilwoods.replication.xml.XMLElement;
 import java.util.ArrayList;
 import java.sql.ResultSet;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSetMetaData;
+import java.sql.BatchUpdateException;
+import java.sql.Savepoint;
+import java.util.HashSet;
 
-public class AbstractSynchronize {
+public abstract class AbstractSynchronize {
   protected static Logger log = Logger.getLogger(AbstractSynchronize.class.getName());
 
   protected boolean setAutoCommitFlag = true;
   protected boolean isFirstPass = false, isCurrentTableCyclic = false;
+  // operations are applied in the transaction of the caller, see setTransactional
+  protected boolean transactional = false;
   protected TreeMap allColumnsMap;
   protected MetaDataInfo mdi;
-  protected BufferedWriter bw;
+  protected TransactionLog transactionLog;
   protected AbstractDataBaseHandler dbHandler;
   protected RepTable repTable;
   protected Connection connection;
@@ -63,6 +68,16 @@ public class AbstractSynchronize {
   protected AbstractColumnObject[] primaryKeyColumnsObject;
   protected PreparedStatement PSForLastRecordSameRecordUpdatedExceptPK,PSToGetSyncidForSameOldPKEqualsNewPks;
 
+  // operations waiting in the JDBC batch and the primary keys they touch
+  protected ArrayList batchRows = new ArrayList();
+  protected HashSet batchKeys = new HashSet();
+
+  // sync id reserved before the operations of the current apply window, the
+  // shadow records above it which belong to their primary keys are marked
+  // with the remote server name, see getSyncIdMark
+  private Long syncIdMark;
+  private int markedOperations;
+
   public AbstractSynchronize() {
   }
 
@@ -71,37 +86,13 @@ public class AbstractSynchronize {
    * write the insert operation in transaction
    * file.
    */
-  protected void writeInsertOperationInTransactionLogFile(BufferedWriter bw,
+  protected void writeInsertOperationInTransactionLogFile(TransactionLog transactionLog,
       String tableName, Object[] insertedRecrods, String replicationType,
       String transactionLogType) throws RepException {
-
-    if (Utility.createTransactionLogFile  &&  transactionLogType.equalsIgnoreCase("true")) {
-      try {
-//       Timestamp dt = new Timestamp(System.currentTimeMillis());
-//       bw.write("\n\n");
-//       bw.write( (dt + "\n"));
-
-        bw.write("\n");
-        bw.write("[" + replicationType + "]");
-        bw.write("[" + tableName + "]");
-        bw.write("[" + RepConstants.insert_operation + "]");
-        bw.write("[");
-        for (int i = 0; i < insertedRecrods.length; i++) {
-          if (i != 0) {
-            bw.write("," + insertedRecrods[i]);
-          }
-          bw.write("" + insertedRecrods[i]);
-        }
-        bw.write("]");
-        bw.flush();
-      }
-      catch (IOException ex1) {
-        RepConstants.writeERROR_FILE(ex1);
-        throw new RepException("REP351", new Object[] {ex1.getMessage()});
-      }
-      catch (Exception ex) {
-        RepConstants.writeERROR_FILE(ex);
-      }
+    if (isTransactionDetail(transactionLog, transactionLogType)) {
+      transactionLog.writeOperation(replicationType, tableName,
+                                    RepConstants.insert_operation, null,
+                                    insertedRecrods, null, null);
     }
   }
 
@@ -111,36 +102,13 @@ public class AbstractSynchronize {
    * file.
    */
 
-  protected void writeDeleteOperationInTransactionLogFile(BufferedWriter bw,
+  protected void writeDeleteOperationInTransactionLogFile(TransactionLog transactionLog,
       String tableName, String[] pkCols, Object[] deletedRecordPky,
       String replicationType, String transactionLogType) throws RepException {
-    if (Utility.createTransactionLogFile && transactionLogType.equalsIgnoreCase("true")) {
-      try {
-//      Timestamp dt = new Timestamp(System.currentTimeMillis());
-//      bw.write("\n\n");
-//      bw.write( (dt + "\n"));
-
-        bw.write("\n");
-        bw.write("[" + replicationType + "]");
-        bw.write("[" + tableName + "]");
-        bw.write("[" + RepConstants.delete_operation + "]");
-        bw.write("[PRIMARY KEY VALUES  ");
-        for (int i = 0; i < deletedRecordPky.length; i++) {
-          if (i != 0) {
-            bw.write("," + pkCols[i] + " = " + deletedRecordPky[i]);
-          }
-          bw.write(pkCols[i] + " = " + deletedRecordPky[i]);
-        }
-        bw.write("]");
-        bw.flush();
-      }
-      catch (IOException ex1) {
-        RepConstants.writeERROR_FILE(ex1);
-        throw new RepException("REP351", new Object[] {ex1.getMessage()});
-      }
-      catch (Exception ex) {
-        RepConstants.writeERROR_FILE(ex);
-      }
+    if (isTransactionDetail(transactionLog, transactionLogType)) {
+      transactionLog.writeOperation(replicationType, tableName,
+                                    RepConstants.delete_operation, pkCols,
+                                    deletedRecordPky, null, null);
     }
   }
 
@@ -149,90 +117,46 @@ public class AbstractSynchronize {
    * write the Update operation in transaction
    * file.
    */
-  protected void writeUpdateOperationInTransactionLogFile(BufferedWriter bw,
+  protected void writeUpdateOperationInTransactionLogFile(TransactionLog transactionLog,
       String tableName, String[] pkCols, Object[] oldPky,
       String updatedColsName[], String[] updatedValues, String replicationType,
       String transactionLogType) throws RepException {
-    if (Utility.createTransactionLogFile && transactionLogType.equalsIgnoreCase("true")) {
-      try {
-//        Timestamp dt = new Timestamp(System.currentTimeMillis());
-//        bw.write("\n\n");
-//        bw.write( (dt + "\n"));
-
-        bw.write("\n");
-        bw.write("[" + replicationType + "]");
-        bw.write("[" + tableName + "]");
-        bw.write("[" + RepConstants.update_operation + "]");
-        bw.write("[PRIMARY KEY VALUES  ");
-        for (int i = 0; i < oldPky.length; i++) {
-          if (i != 0) {
-            bw.write("," + pkCols[i] + " = " + oldPky[i]);
-          }
-          bw.write(pkCols[i] + " = " + oldPky[i]);
-        }
-        bw.write("]");
-
-        bw.write("[ CHANGED COLUMNS ");
-        for (int i = 0; i < updatedColsName.length; i++) {
-          if (i != 0) {
-            bw.write("," + updatedColsName[i] + " = " + updatedValues[i]);
-          }
-          bw.write("" + updatedColsName[i] + " = " + updatedValues[i]);
-        }
-        bw.write("]");
-        bw.flush();
-      }
-      catch (IOException ex1) {
-        RepConstants.writeERROR_FILE(ex1);
-        throw new RepException("REP351", new Object[] {ex1.getMessage()});
-      }
-
-      catch (Exception ex) {
-        RepConstants.writeERROR_FILE(ex);
-      }
-
+    if (isTransactionDetail(transactionLog, transactionLogType)) {
+      transactionLog.writeOperation(replicationType, tableName,
+                                    RepConstants.update_operation, pkCols,
+                                    oldPky, updatedColsName, updatedValues);
     }
   }
 
-  public static void writeOperationInTransactionLogFile(BufferedWriter bw,
+  private static boolean isTransactionDetail(TransactionLog transactionLog,
+                                             String transactionLogType) {
+    return transactionLog != null && Utility.createTransactionLogFile &&
+        transactionLogType.equalsIgnoreCase("true");
+  }
+
+  public static void writeOperationInTransactionLogFile(TransactionLog transactionLog,
       int insertOperation,
       int updateOperation,
       int deleteOperation,
       String replicationType) throws Exception {
-//System.out.println("insertOperation :  "+insertOperation+" updateOperation : "+updateOperation+" deleteOperation : "+deleteOperation);
-     bw.write("\n\n");
-     bw.write(" Synchronization Type [" + replicationType + "]");
-     bw.write("\n\n");
-     bw.write(" Inserts [" + insertOperation + "]");
-     bw.write("\n");
-     bw.write(" Updates [" + updateOperation + "]");
-     bw.write("\n");
-     bw.write(" Deletes [" + deleteOperation + "]");
-     bw.write("\n\n");
-     bw.write(" [" + replicationType + " COMPLETED SUCCESSFULLY]");
-     bw.write("\n");
-
-  }
-
-  public static void writeDateInTransactionLogFile(BufferedWriter bw) throws
+     transactionLog.write("\n\n Synchronization Type [" + replicationType + "]" +
+                          "\n\n Inserts [" + insertOperation + "]" +
+                          "\n Updates [" + updateOperation + "]" +
+                          "\n Deletes [" + deleteOperation + "]" +
+                          "\n\n [" + replicationType + " COMPLETED SUCCESSFULLY]\n");
+  }
+
+  public static void writeDateInTransactionLogFile(TransactionLog transactionLog) throws
       Exception {
     if(Utility.createTransactionLogFile){
       Timestamp dt = new Timestamp(System.currentTimeMillis());
-      bw.write("\n\n");
-      bw.write(" Operation Performed on Date: ");
-      bw.write( (dt + "\n"));
+      transactionLog.write("\n\n Operation Performed on Date: " + dt + "\n");
     }
   }
 
-  public static void writeUnsuccessfullOperationInTransaction(BufferedWriter bw) {
-    try {
-      if(Utility.createTransactionLogFile) {
-        bw.write("\n\n");
-        bw.write(" [ SYNCHRONIZE OPERATION NOT COMPLETED SUCCESSFULLY]");
-        bw.write("\n");
-      }
-    }
-    catch (Exception ex1) {
+  public static void writeUnsuccessfullOperationInTransaction(TransactionLog transactionLog) {
+    if (Utility.createTransactionLogFile && transactionLog != null) {
+      transactionLog.write("\n\n [ SYNCHRONIZE OPERATION NOT COMPLETED SUCCESSFULLY]\n");
     }
   }
 
@@ -302,6 +226,9 @@ public class AbstractSynchronize {
 
   public void setAutocomitTrueAndCommitRecord(Connection conn) throws
       SQLException {
+    if (transactional) {
+      return;
+    }
     conn.commit();
     conn.setAutoCommit(true);
   }
@@ -472,4 +399,268 @@ protected PreparedStatement makeQueryToGetViewId() throws SQLException, RepExcep
 }
 
 
+
+  /**
+   * Adds the operation to the JDBC batch of this table. Returns false if the
+   * operation can not be batched, in that case the caller has to apply the
+   * batch with executeBatch and then the operation itself with execute.
+   * @param currentElement operation element of the XML file
+   * @return boolean
+   */
+  public abstract boolean addToBatch(XMLElement currentElement) throws SQLException, RepException;
+
+  /**
+   * Applies one operation element of the XML file on the table.
+   * @param currentElement operation element of the XML file
+   */
+  public abstract void execute(XMLElement currentElement) throws SQLException, RepException;
+
+  /**
+   * Returns the statement to which the operations of the batch are added.
+   */
+  protected abstract PreparedStatement getBatchStatement() throws SQLException;
+
+  protected abstract void setBatchParameters(PreparedStatement pst, BatchRow row) throws SQLException, RepException;
+
+  /**
+   * Marks the shadow table records made by the applied rows with the remote
+   * server name, so that they are not sent back to the remote server.
+   */
+  protected abstract void updateServerNameForBatch(int start, int end, Object lastSyncId) throws SQLException, RepException;
+
+  /**
+   * Called for every row of a committed batch for logging and counting.
+   */
+  protected abstract void batchRowApplied(BatchRow row) throws RepException;
+
+  /**
+   * In a transactional apply the caller has switched off autocommit and
+   * commits the operations itself. Operations do not change autocommit or
+   * commit, a failed row of a batch is rolled back to a savepoint.
+   * @param transactional0
+   */
+  public void setTransactional(boolean transactional0) {
+    transactional = transactional0;
+    setAutoCommitFlag = !transactional;
+  }
+
+  public int getBatchCount() {
+    return batchRows.size();
+  }
+
+  /**
+   * Applies the operations collected by addToBatch. Every chunk is sent with
+   * one executeBatch and committed as one transaction. If a row of the chunk
+   * fails (primary key or foreign key conflict), the rows before it are applied
+   * again as a batch, the failed row is applied on its own by execute and
+   * batching continues from the next row.
+   * @throws SQLException
+   * @throws RepException
+   */
+  public void executeBatch() throws SQLException, RepException {
+    if (batchRows.size() == 0) {
+      batchKeys.clear();
+      return;
+    }
+    boolean autoCommit = connection.getAutoCommit();
+    try {
+      setBatchAutoCommit(false);
+      int start = 0, end = batchRows.size();
+      while (start < end) {
+        int failed = applyBatch(start, end);
+        if (failed < end) {
+          setBatchAutoCommit(true);
+          execute( ( (BatchRow) batchRows.get(failed)).element);
+          setBatchAutoCommit(false);
+        }
+        start = failed + 1;
+      }
+    }
+    catch (SQLException ex) {
+      rollbackBatch();
+      throw ex;
+    }
+    catch (RepException ex) {
+      rollbackBatch();
+      throw ex;
+    }
+    finally {
+      batchRows.clear();
+      batchKeys.clear();
+      setBatchAutoCommit(autoCommit);
+    }
+  }
+
+  /**
+   * Autocommit of a transactional apply belongs to the caller.
+   */
+  private void setBatchAutoCommit(boolean autoCommit) throws SQLException {
+    if (!transactional) {
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  /**
+   * Applies rows start to end - 1 of the batch in one transaction, or up to
+   * a savepoint in a transactional apply.
+   * @return index of the row which could not be applied, end if all rows were applied.
+   */
+  private int applyBatch(int start, int end) throws SQLException, RepException {
+    Object lastSyncId = reserveSyncIdMark();
+    PreparedStatement pst = getBatchStatement();
+    for (int i = start; i < end; i++) {
+      setBatchParameters(pst, (BatchRow) batchRows.get(i));
+      pst.addBatch();
+    }
+    Savepoint savepoint = transactional ? connection.setSavepoint() : null;
+    try {
+      pst.executeBatch();
+    }
+    catch (BatchUpdateException ex) {
+      log.debug("batch failed for " + tableName + " : " + ex.getMessage());
+      pst.clearBatch();
+      if (transactional) {
+        connection.rollback(savepoint);
+      }
+      else {
+        connection.rollback();
+      }
+      int failed = start + getFirstFailedRow(ex.getUpdateCounts());
+      if (failed >= end) {
+        failed = start;
+      }
+      return failed > start ? applyBatch(start, failed) : start;
+    }
+    updateServerNameForBatch(start, end, lastSyncId);
+    if (!transactional) {
+      connection.commit();
+    }
+    for (int i = start; i < end; i++) {
+      batchRowApplied( (BatchRow) batchRows.get(i));
+    }
+    return end;
+  }
+
+  /**
+   * Some drivers stop at the first failed row, others go on and mark the
+   * failed rows with EXECUTE_FAILED.
+   */
+  private int getFirstFailedRow(int[] updateCounts) {
+    if (updateCounts == null) {
+      return 0;
+    }
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+        return i;
+      }
+    }
+    return updateCounts.length;
+  }
+
+  private void rollbackBatch() {
+    try {
+      if (!transactional && !connection.getAutoCommit()) {
+        connection.rollback();
+      }
+    }
+    catch (SQLException ex) {
+      RepConstants.writeERROR_FILE(ex);
+    }
+  }
+
+  /**
+   * Returns false if an operation of the batch already works on one of the
+   * given primary keys, else reserves these keys for the batch.
+   */
+  protected boolean reserveBatchKeys(Object[] pkValues, Object[] newPkValues) {
+    String key = getBatchKey(pkValues);
+    String newKey = newPkValues == null ? key : getBatchKey(newPkValues);
+    if (batchKeys.contains(key) || batchKeys.contains(newKey)) {
+      return false;
+    }
+    batchKeys.add(key);
+    batchKeys.add(newKey);
+    return true;
+  }
+
+  private String getBatchKey(Object[] pkValues) {
+    StringBuffer key = new StringBuffer();
+    for (int i = 0; i < pkValues.length; i++) {
+      key.append(pkValues[i]).append('\u0000');
+    }
+    return key.toString();
+  }
+
+  protected boolean isLobColumn(AbstractColumnObject aco) {
+    return aco instanceof BlobObject || aco instanceof ClobObject;
+  }
+
+  /**
+   * Returns the sync id mark of the current apply window. The shadow records
+   * written after it for the primary key of an operation are marked with the
+   * remote server name. The mark is kept in memory for as many operations as
+   * an apply batch holds, then a new one is reserved, so that the marking
+   * stays a short range scan of the sync id index. Operations marking records
+   * without a conflict check have checked with getLastRecord that no local
+   * change of their primary key follows the considered id, operations
+   * resolving a conflict have to call reserveSyncIdMark instead.
+   * @return Long
+   * @throws SQLException
+   */
+  protected Long getSyncIdMark() throws SQLException {
+    if (syncIdMark == null || markedOperations >= RepConstants.getApplyBatchSize()) {
+      return reserveSyncIdMark();
+    }
+    markedOperations++;
+    return syncIdMark;
+  }
+
+  /**
+   * Reserves a new sync id mark for the current apply window. Shadow records
+   * written before, like those of a conflicting record which has just been
+   * deleted or rolled back, stay below the mark.
+   * @return Long
+   * @throws SQLException
+   */
+  protected Long reserveSyncIdMark() throws SQLException {
+    syncIdMark = reserveSyncId(shadowTable);
+    markedOperations = 1;
+    return syncIdMark;
+  }
+
+  /**
+   * Reserves the next sync id of the given shadow table from its sequence or
+   * generator. On databases with an identity sync id the highest sync id of
+   * the shadow table is read instead.
+   * @param shadowTableName
+   * @return Long
+   * @throws SQLException
+   */
+  protected Long reserveSyncId(String shadowTableName) throws SQLException {
+    String query = dbHandler.getReserveSyncIdQuery(shadowTableName);
+    if (query == null) {
+      query = "SELECT max(" + RepConstants.shadow_sync_id1 + ") FROM " + shadowTableName;
+    }
+    Statement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = connection.createStatement();
+      rs = stmt.executeQuery(query);
+      Object syncId = rs.next() ? rs.getObject(1) : null;
+      if (syncId == null) {
+        return new Long(0);
+      }
+      if (syncId instanceof Number) {
+        return new Long( ( (Number) syncId).longValue());
+      }
+      return new Long(Long.parseLong(syncId.toString().trim()));
+    }
+    finally {
+      if (rs != null)
+        rs.close();
+      if (stmt != null)
+        stmt.close();
+    }
+  }
+
 }
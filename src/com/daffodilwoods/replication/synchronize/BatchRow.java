@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication.synchronize;
+
+import com.daffodilwoods.replication.xml.XMLElement;
+
+/**
+ * This class keeps one operation of the XML file which is waiting in a JDBC
+ * batch. The operation element is kept so that the row can be applied again
+ * on its own if the batch fails for it.
+ */
+
+public class BatchRow {
+
+  public XMLElement element;
+  public Object[] values;
+  public Object[] primaryKeyValues;
+  public Object[] newPrimaryKeyValues;
+  public String[] changedColumnNames;
+  public String[] changedColumnValues;
+
+  public BatchRow(XMLElement element0) {
+    element = element0;
+  }
+
+}
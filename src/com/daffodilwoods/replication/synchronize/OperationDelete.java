@@ -24,7 +24,6 @@ import com.daffodilwoods.replication.*;
 import com.daffodilwoods.replication.DBHandler.*;
 import com.daffodilwoods.replication.column.*;
 import com.daffodilwoods.replication.xml.*;
-import java.io.BufferedWriter;
 import com.daffodilwoods.replication.MetaDataInfo;
 
 /**
@@ -53,7 +52,7 @@ public class OperationDelete
   public OperationDelete(RepTable repTable0, Connection connection0,
                          TreeMap columnObjectTreeMap0, Object conisderedId0,
                          String remoteServerName0,
-                         AbstractDataBaseHandler dbHandler0, BufferedWriter bw0,
+                         AbstractDataBaseHandler dbHandler0, TransactionLog transactionLog0,
                          String replicationType0, String transactionLogType0,
                          MetaDataInfo mdi0, boolean isFirstPass0,
                          boolean isCurrentTableCyclic0) throws SQLException {
@@ -71,7 +70,7 @@ public class OperationDelete
     commonPreparedStatement = makeCommonPreparedStatement();
     primaryPreparedStatement = makePrimaryPreperedStatement(primaryColumnNames);
     conisderedId = conisderedId0;
-    bw = bw0;
+    transactionLog = transactionLog0;
     replicationType = replicationType0;
     transactionLogType = transactionLogType0;
     isFirstPass = isFirstPass0;
@@ -114,7 +113,7 @@ public class OperationDelete
       Tracer tracer = new Tracer();
       getLastRecord(pkValuesForSearch, conisderedId, tracer);
       //kept outside as used in if and its else i.e both first pass conditions
-      Object lastSyncId = getLastSyncId(shadowTable);
+      Object lastSyncId = getSyncIdMark();
 
       try {
         //ResultSet anyRowFound = preparedStatement_ShadowTable.executeQuery();
@@ -132,7 +131,7 @@ public class OperationDelete
           updateRemoteServerNamePreparedStatement.setObject(primaryKeyElements.size() + 1, lastSyncId);
           updateRemoteServerNamePreparedStatement.executeUpdate();
           loggingDeleteOperation(tableName, primaryColumnNames,pkValuesForSearch, replicationType);
-          writeDeleteOperationInTransactionLogFile(bw, tableName,primaryColumnNames, pkValuesForSearch, replicationType,transactionLogType);
+          writeDeleteOperationInTransactionLogFile(transactionLog, tableName,primaryColumnNames, pkValuesForSearch, replicationType,transactionLogType);
           deleteCount++;
         }
         // if a record is found in shadow table corresponding to the call for delete in XML file i.e. record to be deleted on local server has been updated or allready deleted
@@ -168,7 +167,7 @@ public class OperationDelete
               }
               preparedStatement.execute();
               loggingDeleteOperation(tableName, primaryColumnNames,tablePrimaryKeys, replicationType);
-              writeDeleteOperationInTransactionLogFile(bw, tableName, primaryColumnNames, tablePrimaryKeys, replicationType, transactionLogType);
+              writeDeleteOperationInTransactionLogFile(transactionLog, tableName, primaryColumnNames, tablePrimaryKeys, replicationType, transactionLogType);
               count++;
             }
           }
@@ -187,10 +186,10 @@ public class OperationDelete
           }
 
           // update shadow table with Remote Server NAme
-          updateRemoteServerNamePreparedStatement.setObject(primaryKeyElements. size() + 1, getLastSyncId(shadowTable));
+          updateRemoteServerNamePreparedStatement.setObject(primaryKeyElements. size() + 1, reserveSyncIdMark());
           updateRemoteServerNamePreparedStatement.executeUpdate();
           loggingDeleteOperation(tableName, primaryColumnNames,pkValuesForSearch, replicationType);
-          writeDeleteOperationInTransactionLogFile(bw, tableName,primaryColumnNames, pkValuesForSearch, replicationType,transactionLogType);
+          writeDeleteOperationInTransactionLogFile(transactionLog, tableName,primaryColumnNames, pkValuesForSearch, replicationType,transactionLogType);
           deleteCount++;
         }
         else if (!dbHandler.isPrimaryKeyException(ex)) {
@@ -202,6 +201,76 @@ public class OperationDelete
 
   }
 
+  /**
+   * Adds the delete operation to the JDBC batch if the record has not been
+   * changed on the local server since the last synchronization. Conflicting
+   * records and cyclic tables are handled by execute.
+   * @param currentElement
+   * @return false if the operation has to be applied by execute
+   * @throws SQLException
+   * @throws RepException
+   */
+  public boolean addToBatch(XMLElement currentElement) throws SQLException, RepException {
+    if (!isFirstPass || isCurrentTableCyclic) {
+      return false;
+    }
+    ArrayList primaryKeyElements = ( (XMLElement) currentElement.getChildElements().get(0)).getChildElements();
+    Object[] pkValues = new Object[primaryKeyElements.size()];
+    for (int i = 0; i < pkValues.length; i++) {
+      XMLElement pkElement = (XMLElement) primaryKeyElements.get(i);
+      pkValues[i] = ( (AbstractColumnObject) columnObjectTreeMap.get(pkElement.getAttribute())).getObject(pkElement.elementValue);
+    }
+    if (!reserveBatchKeys(pkValues, null)) {
+      return false;
+    }
+    Tracer tracer = new Tracer();
+    getLastRecord(pkValues, conisderedId, tracer);
+    if (tracer.recordFound) {
+      if (tracer.rs != null) {
+        tracer.rs.close();
+      }
+      return false;
+    }
+    if (updateRemoteServerNamePreparedStatement == null) {
+      updateRemoteServerNamePreparedStatement = makeUpdate_remoteServerName_SHADOWTABLE_Statement();
+    }
+    BatchRow row = new BatchRow(currentElement);
+    row.primaryKeyValues = pkValues;
+    batchRows.add(row);
+    return true;
+  }
+
+  protected PreparedStatement getBatchStatement() {
+    return preparedStatement;
+  }
+
+  protected void setBatchParameters(PreparedStatement pst, BatchRow row) throws SQLException, RepException {
+    ArrayList primaryKeyElements = ( (XMLElement) row.element.getChildElements().get(0)).getChildElements();
+    for (int i = 0; i < primaryKeyElements.size(); i++) {
+      XMLElement pkElement = (XMLElement) primaryKeyElements.get(i);
+      ( (AbstractColumnObject) columnObjectTreeMap.get(pkElement.getAttribute())).setColumnObject(pst, pkElement, i + 1);
+    }
+  }
+
+  protected void updateServerNameForBatch(int start, int end, Object lastSyncId) throws SQLException, RepException {
+    for (int i = start; i < end; i++) {
+      ArrayList primaryKeyElements = ( (XMLElement) ( (BatchRow) batchRows.get(i)).element.getChildElements().get(0)).getChildElements();
+      for (int j = 0; j < primaryKeyElements.size(); j++) {
+        XMLElement pkElement = (XMLElement) primaryKeyElements.get(j);
+        ( (AbstractColumnObject) columnObjectTreeMap.get(pkElement.getAttribute())).setColumnObject(updateRemoteServerNamePreparedStatement, pkElement, j + 1);
+      }
+      updateRemoteServerNamePreparedStatement.setObject(primaryKeyElements.size() + 1, lastSyncId);
+      updateRemoteServerNamePreparedStatement.addBatch();
+    }
+    updateRemoteServerNamePreparedStatement.executeBatch();
+  }
+
+  protected void batchRowApplied(BatchRow row) throws RepException {
+    loggingDeleteOperation(tableName, primaryColumnNames, row.primaryKeyValues, replicationType);
+    writeDeleteOperationInTransactionLogFile(transactionLog, tableName, primaryColumnNames, row.primaryKeyValues, replicationType, transactionLogType);
+    deleteCount++;
+  }
+
   /**
    * Delete record from a table and also update remoteServerName column of shadow table
    * for the record inserted due to deletion.
@@ -216,13 +285,13 @@ public class OperationDelete
       preparedStatement.setObject(i + 1, tablePrimaryKeys[i]);
       updateRemoteServerNamePreparedStatement.setObject(i + 1,tablePrimaryKeys[i]);
     }
-    Object lastSyncId = getLastSyncId(shadowTable);
+    Object lastSyncId = reserveSyncIdMark();
     preparedStatement.execute();
     // update shadow table with Remote Server NAme
     updateRemoteServerNamePreparedStatement.setObject(primaryKeyElements.size() +1, lastSyncId);
     updateRemoteServerNamePreparedStatement.executeUpdate();
     loggingDeleteOperation(tableName, primaryColumnNames, tablePrimaryKeys,replicationType);
-    writeDeleteOperationInTransactionLogFile(bw, tableName, primaryColumnNames,tablePrimaryKeys, replicationType, transactionLogType);
+    writeDeleteOperationInTransactionLogFile(transactionLog, tableName, primaryColumnNames,tablePrimaryKeys, replicationType, transactionLogType);
     deleteCount++;
   }
 
@@ -341,31 +410,6 @@ public class OperationDelete
     return connection.prepareStatement(query.toString());
   }
 
-  private Object getLastSyncId(String shadowTableName) throws SQLException {
-    Statement statement = null;
-    ResultSet rs = null;
-    boolean flag = false;
-    Object lastId = null;
-    try {
-//        String[] primaryColumnNames = repTable.getPrimaryColumns();
-      StringBuffer query = new StringBuffer();
-      query.append("SELECT  max(").append(RepConstants.shadow_sync_id1)
-          .append(") FROM ").append(shadowTableName);
-      statement = connection.createStatement();
-      rs = statement.executeQuery(query.toString());
-      flag = rs.next();
-      lastId = rs.getObject(1);
-
-    }
-    finally {
-      if (rs != null)
-        rs.close();
-      if (statement != null)
-        statement.close();
-    }
-    return flag ? (lastId == null ? new Long(0) : lastId) : new Long(0);
-  }
-
   private PreparedStatement makeUpdate_remoteServerName_SHADOWTABLE_Statement() throws
       SQLException {
     String[] primaryColumnNames = repTable.getPrimaryColumns();
@@ -488,7 +532,7 @@ public class OperationDelete
       childFkColumns = (String[]) object[0];
       parentReferedCols = (String[]) object[1];
       updatePreparedStatementSetNull = makeupdateQueryToSetNull(childTableName,childFkColumns, parentReferedCols, parentPkCols, parentPkColValue);
-      Object lastSynId = getLastSyncId(dbHandler.getShadowTableName(childTableName));
+      Object lastSynId = reserveSyncId(dbHandler.getShadowTableName(childTableName));
       updatePreparedStatementSetNull.execute();
       String updateRemoteServerNameQuery =updateRemoteServerNameWhenSettingNullInChildTable(childTableName,childFkColumns, lastSynId, parentReferedCols, parentPkCols,parentPkColValue);
       stmt = connection.createStatement();
@@ -26,7 +26,6 @@ import com.daffodilwoods.replication.*;
 import com.daffodilwoods.replication.DBHandler.*;
 import com.daffodilwoods.replication.column.*;
 import com.daffodilwoods.replication.xml.*;
-import java.io.BufferedWriter;
 
 /**
  * This is the main class which handles the synchronization operations on main table
@@ -38,7 +37,8 @@ public class OperationInsert
  private PreparedStatement preparedStatement,preparedStatementForLastRecord,
       preparedStatementForCommonId,
       preparedStatementForDelete, updatePreparedStstement, updateShadowTablePST,
-      updateMainTableExceptPKCols, updatePreparedStatementSetNull;
+      updateMainTableExceptPKCols, updatePreparedStatementSetNull,
+      foreignKeyUpdateStatement, exportedColumnsUpdateStatement;
  private Object[] record;
 
   /**
@@ -54,7 +54,7 @@ public class OperationInsert
   public OperationInsert(RepTable repTable0, Connection connection0,
                          TreeMap columnObjectTreeMap0, Object conisderedId0,
                          String remoteServerName0,
-                         AbstractDataBaseHandler dbHandler0, BufferedWriter bw0,
+                         AbstractDataBaseHandler dbHandler0, TransactionLog transactionLog0,
                          String replicationType0, String transactionLogType0,
                          MetaDataInfo mdi0, boolean isFirstPass0,
                          boolean isCurrentTableCyclic0) throws SQLException {
@@ -68,7 +68,7 @@ public class OperationInsert
     isFirstPass = isFirstPass0;
     isCurrentTableCyclic = isCurrentTableCyclic0;
     tableName = repTable.getSchemaQualifiedName().toString();
-    bw = bw0;
+    transactionLog = transactionLog0;
     replicationType = replicationType0;
     transactionLogType = transactionLogType0;
     preparedStatement = connection.prepareStatement(repTable.createInsertQueryForSnapShot());
@@ -151,7 +151,7 @@ public class OperationInsert
     }
     Object[] conflictingPrimaryKeyValues = getObjectArray(primaryKeyValues);
     Object lastSyncId;
-    lastSyncId = getLastSyncId();
+    lastSyncId = getSyncIdMark();
     record = new Object[rowElements.size()];
     int columnIndex = 0;
     String columnName;
@@ -195,7 +195,7 @@ public class OperationInsert
         preparedStatement.execute();
         loggingInsertOperation(tableName, record, replicationType);
         updateServerName(primaryKeyElements, lastSyncId);
-        writeInsertOperationInTransactionLogFile(bw, tableName, record,replicationType,transactionLogType);
+        writeInsertOperationInTransactionLogFile(transactionLog, tableName, record,replicationType,transactionLogType);
         insertCount++;
       }
       catch (SQLException ex) {
@@ -207,7 +207,7 @@ public class OperationInsert
         try {
           if (!repTable.isLocalServerWinner()) {
             primaryVoilation(conflictingPrimaryKeyValues);
-            lastSyncId = getLastSyncId();
+            lastSyncId = reserveSyncIdMark();
             preparedStatement.execute();
             updateServerName(primaryKeyElements, lastSyncId);
           }
@@ -225,7 +225,7 @@ public class OperationInsert
            * we have updated all other columns values except primary column
            **/
           if (dbHandler.isForiegnKeyException(ex1)) {
-            lastSyncId = getLastSyncId();
+            lastSyncId = reserveSyncIdMark();
             /**@todo
              * when used lastSyncId,it updated subscriber operation also.So,increment by 1
              * done while testing
@@ -276,6 +276,215 @@ public class OperationInsert
     updateShadowTablePST.executeUpdate();
   }
 
+  /**
+   * Adds the insert operation to the JDBC batch. In the first pass only
+   * tables which are not cyclic are batched and rows with LOB columns are
+   * always inserted on their own. In the second pass of a cyclic table the
+   * assignment of the foreign key columns set to null in the first pass is
+   * batched.
+   * @param currentElement
+   * @return false if the operation has to be applied by execute
+   * @throws SQLException
+   * @throws RepException
+   */
+  public boolean addToBatch(XMLElement currentElement) throws SQLException, RepException {
+    if (!isFirstPass) {
+      return isCurrentTableCyclic && addForeignKeyAssignmentToBatch(currentElement);
+    }
+    if (isCurrentTableCyclic) {
+      return false;
+    }
+    ArrayList insertElements = currentElement.getChildElements();
+    ArrayList rowElements = ( (XMLElement) insertElements.get(0)).getChildElements();
+    ArrayList primaryKeyElements = ( (XMLElement) insertElements.get(1)).getChildElements();
+    ArrayList values = new ArrayList();
+    for (int i = 0; i < rowElements.size(); i++) {
+      XMLElement rowElement = (XMLElement) rowElements.get(i);
+      String columnName = (String) allColumnsMap.get(rowElement.getAttribute());
+      if (repTable.isIgnoredColumn(columnName)) {
+        continue;
+      }
+      if (isLobColumn( (AbstractColumnObject) columnObjectTreeMap.get(columnName))) {
+        return false;
+      }
+      values.add(rowElement.elementValue);
+    }
+    Object[] pkValues = new Object[primaryKeyElements.size()];
+    for (int i = 0; i < pkValues.length; i++) {
+      XMLElement pkElement = (XMLElement) primaryKeyElements.get(i);
+      pkValues[i] = ( (AbstractColumnObject) columnObjectTreeMap.get(pkElement.getAttribute())).getObject(pkElement.elementValue);
+    }
+    if (!reserveBatchKeys(pkValues, null)) {
+      return false;
+    }
+    BatchRow row = new BatchRow(currentElement);
+    row.values = values.toArray();
+    row.primaryKeyValues = pkValues;
+    batchRows.add(row);
+    return true;
+  }
+
+  /**
+   * Adds the assignment of the foreign key columns of a cyclic table to the
+   * JDBC batch. Rows whose foreign key or exported columns are not all in the
+   * XML file are left to execute.
+   */
+  private boolean addForeignKeyAssignmentToBatch(XMLElement currentElement) throws SQLException, RepException {
+    String[] foreignKeyCols = repTable.getForeignKeyCols();
+    if (foreignKeyCols == null || foreignKeyCols.length == 0) {
+      return false;
+    }
+    ArrayList insertElements = currentElement.getChildElements();
+    ArrayList rowElements = ( (XMLElement) insertElements.get(0)).getChildElements();
+    ArrayList primaryKeyElements = ( (XMLElement) insertElements.get(1)).getChildElements();
+    XMLElement[] foreignKeyElements = getColumnElements(rowElements, foreignKeyCols);
+    if (foreignKeyElements == null) {
+      return false;
+    }
+    if (!repTable.isLocalServerWinner() &&
+        getColumnElements(rowElements, getExportedColumns()) == null) {
+      return false;
+    }
+    Object[] pkValues = new Object[primaryKeyElements.size()];
+    for (int i = 0; i < pkValues.length; i++) {
+      XMLElement pkElement = (XMLElement) primaryKeyElements.get(i);
+      pkValues[i] = ( (AbstractColumnObject) columnObjectTreeMap.get(pkElement.getAttribute())).getObject(pkElement.elementValue);
+    }
+    if (!reserveBatchKeys(pkValues, null)) {
+      return false;
+    }
+    BatchRow row = new BatchRow(currentElement);
+    row.values = foreignKeyElements;
+    row.primaryKeyValues = pkValues;
+    batchRows.add(row);
+    return true;
+  }
+
+  /**
+   * Returns the row elements of the given columns in the order of columns,
+   * null if a column is ignored or not in the row.
+   */
+  private XMLElement[] getColumnElements(ArrayList rowElements, String[] columns) {
+    if (columns.length == 0) {
+      return null;
+    }
+    XMLElement[] elements = new XMLElement[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      if (repTable.isIgnoredColumn(columns[i])) {
+        return null;
+      }
+      for (int j = 0; j < rowElements.size() && elements[i] == null; j++) {
+        XMLElement rowElement = (XMLElement) rowElements.get(j);
+        if (columns[i].equalsIgnoreCase( (String) allColumnsMap.get(rowElement.getAttribute()))) {
+          elements[i] = rowElement;
+        }
+      }
+      if (elements[i] == null) {
+        return null;
+      }
+    }
+    return elements;
+  }
+
+  private String[] getExportedColumns() throws RepException {
+    ArrayList exportedColsList = mdi.getExportedTableColsList(repTable.getSchemaQualifiedName());
+    return (String[]) exportedColsList.toArray(new String[exportedColsList.size()]);
+  }
+
+  protected PreparedStatement getBatchStatement() throws SQLException {
+    if (isFirstPass) {
+      return preparedStatement;
+    }
+    if (foreignKeyUpdateStatement == null) {
+      foreignKeyUpdateStatement = connection.prepareStatement(repTable.createUpdateQueryForSynchronize());
+    }
+    return foreignKeyUpdateStatement;
+  }
+
+  protected void setBatchParameters(PreparedStatement pst, BatchRow row) throws SQLException, RepException {
+    if (!isFirstPass) {
+      setPrimaryKeyParameters(pst, row, setColumnParameters(pst, (XMLElement[]) row.values));
+      return;
+    }
+    ArrayList rowElements = ( (XMLElement) row.element.getChildElements().get(0)).getChildElements();
+    int columnIndex = 0;
+    for (int i = 0; i < rowElements.size(); i++) {
+      XMLElement rowElement = (XMLElement) rowElements.get(i);
+      String columnName = (String) allColumnsMap.get(rowElement.getAttribute());
+      if (repTable.isIgnoredColumn(columnName)) {
+        continue;
+      }
+      AbstractColumnObject aco = (AbstractColumnObject) columnObjectTreeMap.get(columnName);
+      aco.setColumnObject(pst, rowElement, columnIndex + 1);
+      columnIndex++;
+    }
+  }
+
+  /**
+   * Sets the values of the given row elements from parameter 1 on.
+   * @return index of the next parameter
+   */
+  private int setColumnParameters(PreparedStatement pst, XMLElement[] elements) throws SQLException, RepException {
+    for (int i = 0; i < elements.length; i++) {
+      String columnName = (String) allColumnsMap.get(elements[i].getAttribute());
+      ( (AbstractColumnObject) columnObjectTreeMap.get(columnName)).setColumnObject(pst, elements[i], i + 1);
+    }
+    return elements.length + 1;
+  }
+
+  private void setPrimaryKeyParameters(PreparedStatement pst, BatchRow row, int index) throws SQLException, RepException {
+    ArrayList primaryKeyElements = ( (XMLElement) row.element.getChildElements().get(1)).getChildElements();
+    for (int i = 0; i < primaryColumnNames.length; i++) {
+      AbstractColumnObject aco = (AbstractColumnObject) columnObjectTreeMap.get(primaryColumnNames[i]);
+      aco.setColumnObject(pst, (XMLElement) primaryKeyElements.get(i), index + i);
+    }
+  }
+
+  /**
+   * Second pass counterpart of updateRecordsInCaseOfParentChildTableSecondPass
+   * for the rows of the batch, the exported columns are set again so that the
+   * shadow table gets their values if the remote server wins.
+   */
+  private void updateExportedColumnsForBatch(int start, int end) throws SQLException, RepException {
+    String[] exportedColumns = getExportedColumns();
+    if (exportedColumnsUpdateStatement == null) {
+      exportedColumnsUpdateStatement = makeUpdatePreparedStmtForeignkey(exportedColumns);
+    }
+    for (int i = start; i < end; i++) {
+      BatchRow row = (BatchRow) batchRows.get(i);
+      ArrayList rowElements = ( (XMLElement) row.element.getChildElements().get(0)).getChildElements();
+      int index = setColumnParameters(exportedColumnsUpdateStatement, getColumnElements(rowElements, exportedColumns));
+      setPrimaryKeyParameters(exportedColumnsUpdateStatement, row, index);
+      exportedColumnsUpdateStatement.addBatch();
+    }
+    exportedColumnsUpdateStatement.executeBatch();
+  }
+
+  protected void updateServerNameForBatch(int start, int end, Object lastSyncId) throws SQLException, RepException {
+    if (!isFirstPass && !repTable.isLocalServerWinner()) {
+      updateExportedColumnsForBatch(start, end);
+    }
+    for (int i = start; i < end; i++) {
+      ArrayList primaryKeyElements = ( (XMLElement) ( (BatchRow) batchRows.get(i)).element.getChildElements().get(1)).getChildElements();
+      for (int j = 0; j < primaryKeyElements.size(); j++) {
+        XMLElement pkElement = (XMLElement) primaryKeyElements.get(j);
+        ( (AbstractColumnObject) columnObjectTreeMap.get(pkElement.getAttribute())).setColumnObject(updateShadowTablePST, pkElement, j + 1);
+      }
+      updateShadowTablePST.setObject(primaryKeyElements.size() + 1, lastSyncId);
+      updateShadowTablePST.addBatch();
+    }
+    updateShadowTablePST.executeBatch();
+  }
+
+  protected void batchRowApplied(BatchRow row) throws RepException {
+    if (!isFirstPass) {
+      return;
+    }
+    loggingInsertOperation(tableName, row.values, replicationType);
+    writeInsertOperationInTransactionLogFile(transactionLog, tableName, row.values, replicationType, transactionLogType);
+    insertCount++;
+  }
+
   /**
    * Handles the case when primary key voilation occurs due to synchronisation.
    * Records may be rollbacked to their original status as before synchronization
@@ -555,36 +764,6 @@ public class OperationInsert
     return connection.prepareStatement(query.toString());
   }
 
-  /**
-   * returns last synchronisation id from shadow Table
-   * @return
-   * @throws SQLException
-   */
-  public Object getLastSyncId() throws SQLException {
-    boolean flag = false;
-    Object lastId = null;
-    Statement stmt = null;
-    ResultSet rs = null;
-    try {
-      String[] primaryColumnNames = repTable.getPrimaryColumns();
-      StringBuffer query = new StringBuffer();
-      query.append("SELECT  max(").append(RepConstants.shadow_sync_id1).
-          append(") FROM ").append(shadowTable);
-      stmt = connection.createStatement();
-      rs = stmt.executeQuery(query.toString());
-      flag = rs.next();
-      lastId = rs.getObject(1);
-    }
-    finally {
-      /** @todo  close the rs and stmt sube */
-      if (rs != null)
-        rs.close();
-      if (stmt != null)
-        stmt.close();
-    }
-    return flag ? (lastId == null ? new Long(0) : lastId) : new Long(0);
-  }
-
   private PreparedStatement makeUpdate_remoteServerName_SHADOWTABLE_Statement() throws SQLException {
     String[] primaryColumnNames = repTable.getPrimaryColumns();
     StringBuffer query = new StringBuffer();
@@ -645,6 +824,20 @@ public class OperationInsert
       catch (SQLException ex4) {
       }
     }
+    if (foreignKeyUpdateStatement != null) {
+      try {
+        foreignKeyUpdateStatement.close();
+      }
+      catch (SQLException ex5) {
+      }
+    }
+    if (exportedColumnsUpdateStatement != null) {
+      try {
+        exportedColumnsUpdateStatement.close();
+      }
+      catch (SQLException ex6) {
+      }
+    }
   }
 
   /**
@@ -908,7 +1101,7 @@ public class OperationInsert
       parentReferedCols = (String[]) object[1];
       updatePreparedStatementSetNull = makeupdateQueryToSetNull(childTableName,
           childFkColumns, parentReferedCols, parentPkCols, parentPkColValue);
-      Object lastSynId = getLastSyncId(dbHandler.getShadowTableName(childTableName));
+      Object lastSynId = reserveSyncId(dbHandler.getShadowTableName(childTableName));
       updatePreparedStatementSetNull.execute();
       String updateRemoteServerNameQuery =
           updateRemoteServerNameWhenSettingNullInChildTable(childTableName,
@@ -1000,26 +1193,4 @@ public class OperationInsert
     return sb.toString();
   }
 
-  private Object getLastSyncId(String shadowTableName) throws SQLException {
-    Statement statement = null;
-    ResultSet rs = null;
-    boolean flag = false;
-    Object lastId = null;
-    try {
-      StringBuffer query = new StringBuffer();
-      query.append("SELECT  max(").append(RepConstants.shadow_sync_id1)
-          .append(") FROM ").append(shadowTableName);
-      statement = connection.createStatement();
-      rs = statement.executeQuery(query.toString());
-      flag = rs.next();
-      lastId = rs.getObject(1);
-    }
-    finally {
-      if (rs != null)
-        rs.close();
-      if (statement != null)
-        statement.close();
-    }
-    return flag ? (lastId == null ? new Long(0) : lastId) : new Long(0);
-  }
 }
@@ -26,7 +26,6 @@ import com.daffodilwoods.replication.*;
 import com.daffodilwoods.replication.DBHandler.*;
 import com.daffodilwoods.replication.column.*;
 import com.daffodilwoods.replication.xml.*;
-import java.io.BufferedWriter;
 
 /**
  * This is the main class which handles the synchronization operations on main table
@@ -39,8 +38,10 @@ public class OperationUpdate extends AbstractSynchronize {
       preparedStatementForLastRecord, preparedStatementForCommonId,
       preparedStatementForDelete, updatePreparedStatement, psForOtherCommonId,
       psForInsertIntoActualTable, psForUpdateInShadowTableForRemoteServer,
-      updatePreparedStatementSetNull;
+      updatePreparedStatementSetNull, batchUpdateStatement;
   private ArrayList voilationPkKeys;
+  // changed columns of the updates waiting in batchUpdateStatement
+  private String batchColumns;
   private boolean NO_OPERATION = false;
 
 
@@ -58,7 +59,7 @@ public class OperationUpdate extends AbstractSynchronize {
   public OperationUpdate(RepTable repTable0, Connection clientConnection0,
                          TreeMap columnObjectTreeMap0, Object conisderedId0,
                          String remoteServerName0,
-                         AbstractDataBaseHandler dbHandler0, BufferedWriter bw0,
+                         AbstractDataBaseHandler dbHandler0, TransactionLog transactionLog0,
                          String replicationType0, String transactionLogType0,
                          MetaDataInfo mdi0, boolean isFirstPass0,
                          boolean isCurrentTableCyclic0) throws SQLException {
@@ -72,24 +73,14 @@ public class OperationUpdate extends AbstractSynchronize {
     dbHandler = dbHandler0;
     mdi = mdi0;
     shadowTable = dbHandler.getShadowTableName(tableName);
-    bw = bw0;
+    transactionLog = transactionLog0;
     replicationType = replicationType0;
     transactionLogType = transactionLogType0;
 
 // so as to include the last record of the shadow table in the search.
 // when traceOriginalRecord is called, then we dont want the last record searched to be included in the search.
 // so we are increasing the Last UID by 1.
-    Object lastShadowUidObj = getLastUIDFromShadowTable();
-//     lastShadowUid = new Long( ( (Long) getLastUIDFromShadowTable()).longValue() + 1);
-    if ((lastShadowUidObj instanceof Integer)) { //for firebird
-      lastShadowUid = new Long( ( (Integer) lastShadowUidObj).longValue()+1);
-    }
-    else if ((lastShadowUidObj instanceof String)) { //for MySQL
-     lastShadowUid = new Long((Long.parseLong((String)lastShadowUidObj)+1));
-    }
-    else {
-      lastShadowUid = new Long(((Long)lastShadowUidObj).longValue()+1);
-    }
+    lastShadowUid = new Long(reserveSyncId(shadowTable).longValue() + 1);
     xmlElement_NULL = new XMLElement("NULL");
     xmlElement_NULL.elementValue = "NULL";
     isFirstPass = isFirstPass0;
@@ -240,7 +231,7 @@ public class OperationUpdate extends AbstractSynchronize {
         voilationPkKeys = new ArrayList();
         if (!tracer.recordFound) {
           // get max UID/syncId from Shadow Table
-          Object lastSyncId = getLastUIDFromShadowTable();
+          Object lastSyncId = getSyncIdMark();
 //System.out.println("246 $$$$$$$$$$$$$$  lastSyncId  : "+lastSyncId);
           // setting Object values for Update query for Shadow TABLW for REMOTE SERVER
           psForUpdateInShadowTableForRemoteServer.setObject(2, lastSyncId);
@@ -255,7 +246,7 @@ public class OperationUpdate extends AbstractSynchronize {
             }
             psForUpdateInShadowTableForRemoteServer.executeUpdate(); // Status- A Update in shadow table to remoteserverName
             loggingUpdateOperation(tableName, primaryColumnNames,primaryValueObjects, changedColumnNames,changedColumnValues, replicationType);
-            writeUpdateOperationInTransactionLogFile(bw, tableName,primaryColumnNames, primaryValueObjects, changedColumnNames,changedColumnValues, replicationType, transactionLogType);
+            writeUpdateOperationInTransactionLogFile(transactionLog, tableName,primaryColumnNames, primaryValueObjects, changedColumnNames,changedColumnValues, replicationType, transactionLogType);
             updateCount++;
           }
           catch (SQLException ex) {
@@ -277,7 +268,7 @@ public class OperationUpdate extends AbstractSynchronize {
              INVOLVING NO_OPERATION.
              =============================
                     primaryVoilation(newPrimaryColumnValues, new Tracer()); // no use of tracer over here
-                    lastSyncId = getLastUIDFromShadowTable();
+                    lastSyncId = reserveSyncIdMark();
                     // setting Object values for Update query for Shadow TABLW for REMOTE SERVER
              psForUpdateInShadowTableForRemoteServer.setObject(2, lastSyncId);
                     psForActualUpdateInTable.executeUpdate();
@@ -300,13 +291,13 @@ public class OperationUpdate extends AbstractSynchronize {
               setNullInColumnOfChildTableToUpdateRecord(primaryColumnNames,newPrimaryColumnValues);
             }
             preparedStatementForDelete.executeUpdate();
-            lastSyncId = getLastUIDFromShadowTable();
+            lastSyncId = reserveSyncIdMark();
 
             // setting Object values for Update query for Shadow TABLW for REMOTE SERVER
             psForUpdateInShadowTableForRemoteServer.setObject(2, lastSyncId);
             psForActualUpdateInTable.executeUpdate();
             loggingUpdateOperation(tableName, primaryColumnNames,primaryValueObjects, changedColumnNames,changedColumnValues, replicationType);
-            writeUpdateOperationInTransactionLogFile(bw, tableName, primaryColumnNames, primaryValueObjects, changedColumnNames,changedColumnValues, replicationType, transactionLogType);
+            writeUpdateOperationInTransactionLogFile(transactionLog, tableName, primaryColumnNames, primaryValueObjects, changedColumnNames,changedColumnValues, replicationType, transactionLogType);
             updateCount++;
             // remoteserver name is not updated so that operaion performed on subscriber is taken on the publisher node.
           }
@@ -354,7 +345,7 @@ public class OperationUpdate extends AbstractSynchronize {
             }
             Object lastSyncId;
             try {
-              lastSyncId = getLastUIDFromShadowTable();
+              lastSyncId = reserveSyncIdMark();
               psForInsertIntoActualTable.execute();
             }
             catch (SQLException ex) { // primary constrant voilation
@@ -362,7 +353,7 @@ public class OperationUpdate extends AbstractSynchronize {
                 throw ex;
               }
               primaryVoilation(newPrimaryColumnValues, new Tracer()); // no operation found for tracer till now
-              lastSyncId = getLastUIDFromShadowTable();
+              lastSyncId = reserveSyncIdMark();
               psForInsertIntoActualTable.execute();
             }
 
@@ -382,11 +373,11 @@ public class OperationUpdate extends AbstractSynchronize {
                 psForActualUpdateInTable.setObject(noOfChangedColumns + i + 1,primaryKeyObj[i]);
                 psForUpdateInShadowTableForRemoteServer.setObject(3 + i,primaryKeyObj[i]);
               }
-              Object lastSyncId = getLastUIDFromShadowTable();
+              Object lastSyncId = reserveSyncIdMark();
               try {
                 psForActualUpdateInTable.executeUpdate();
                 loggingUpdateOperation(tableName, primaryColumnNames,primaryValueObjects, changedColumnNames,changedColumnValues, replicationType);
-                writeUpdateOperationInTransactionLogFile(bw, tableName,primaryColumnNames, primaryValueObjects, changedColumnNames, changedColumnValues, replicationType, transactionLogType);
+                writeUpdateOperationInTransactionLogFile(transactionLog, tableName,primaryColumnNames, primaryValueObjects, changedColumnNames, changedColumnValues, replicationType, transactionLogType);
                 updateCount++;
               }
               catch (SQLException ex) { // primary key constrant voilation
@@ -403,7 +394,7 @@ public class OperationUpdate extends AbstractSynchronize {
                   psForActualUpdateInTable.setObject(noOfChangedColumns + i + 1,trPkValues[i]);
                   psForUpdateInShadowTableForRemoteServer.setObject(3 + i,trPkValues[i]);
                 }
-                lastSyncId = getLastUIDFromShadowTable();
+                lastSyncId = reserveSyncIdMark();
                 psForActualUpdateInTable.executeUpdate();
               }
 
@@ -451,7 +442,6 @@ public class OperationUpdate extends AbstractSynchronize {
                 }
               }
               if (actualListOFColumns.size() > 0) {
-                Object lastSyncId = getLastUIDFromShadowTable();
                 String query = repTable.getUpdatePreStmt(actualListOFColumns, primaryColumnNames);
                 PreparedStatement pst = connection.prepareStatement(query);
                 int index = actualListOFColumns.size();
@@ -560,7 +550,7 @@ public class OperationUpdate extends AbstractSynchronize {
           }
           // Update the records with actual values which are set to null in first pass
           if (isForiegnKeycolumn) {
-            Object lastSyncId = getLastUIDFromShadowTable();
+            Object lastSyncId = reserveSyncIdMark();
             psForActualUpdateInTable.execute();
             // update the old record in shadow table with remoteServer STATUIS -B
             // setting Object values for Update query for Shadow TABLW for REMOTE SERVER
@@ -601,6 +591,136 @@ public class OperationUpdate extends AbstractSynchronize {
     }
   }
 
+  /**
+   * Adds the update operation to the JDBC batch if the record has not been
+   * changed on the local server since the last synchronization. One batch
+   * holds updates of the same changed columns only, an update of other
+   * columns applies the waiting batch first.
+   * @param currentElement
+   * @return false if the operation has to be applied by execute
+   * @throws SQLException
+   * @throws RepException
+   */
+  public boolean addToBatch(XMLElement currentElement) throws SQLException, RepException {
+    if (!isFirstPass || isCurrentTableCyclic) {
+      return false;
+    }
+    ArrayList updateElements = currentElement.getChildElements();
+    ArrayList rowElements = ( (XMLElement) updateElements.get(0)).getChildElements();
+    ArrayList changedColumns = ( (XMLElement) updateElements.get(1)).getChildElements();
+    ArrayList primaryColumns = ( (XMLElement) updateElements.get(2)).getChildElements();
+    if (changedColumns.size() == 0) {
+      return false;
+    }
+    primaryColumnNames = repTable.getPrimaryColumns();
+    int noOfPrimaryCol = primaryColumnNames.length;
+    Object[] newPrimaryColumnValues = new Object[noOfPrimaryCol];
+    for (int i = 0; i < rowElements.size(); i++) {
+      XMLElement rowElement = (XMLElement) rowElements.get(i);
+      String columnName = (String) allColumnsMap.get(rowElement.getAttribute());
+      for (int j = 0; j < noOfPrimaryCol; j++) {
+        if (columnName.equalsIgnoreCase(primaryColumnNames[j])) {
+          newPrimaryColumnValues[j] = ( (AbstractColumnObject) columnObjectTreeMap.get(columnName)).getObject(rowElement.elementValue);
+          break;
+        }
+      }
+    }
+    String[] changedNames = new String[changedColumns.size()];
+    String[] changedValues = new String[changedColumns.size()];
+    StringBuffer columns = new StringBuffer();
+    for (int i = 0; i < changedNames.length; i++) {
+      XMLElement changedElement = (XMLElement) changedColumns.get(i);
+      changedNames[i] = changedElement.getAttribute();
+      changedValues[i] = changedElement.elementValue;
+      if (isLobColumn( (AbstractColumnObject) columnObjectTreeMap.get(changedNames[i]))) {
+        return false;
+      }
+      columns.append(changedNames[i]).append(',');
+    }
+    Object[] primaryValueObjects = new Object[noOfPrimaryCol];
+    for (int i = 0; i < noOfPrimaryCol; i++) {
+      primaryValueObjects[i] = ( (AbstractColumnObject) columnObjectTreeMap.get(primaryColumnNames[i])).getObject( ( (XMLElement) primaryColumns.get(i)).elementValue);
+    }
+    if (batchUpdateStatement != null && !columns.toString().equals(batchColumns)) {
+      executeBatch();
+      batchUpdateStatement.close();
+      batchUpdateStatement = null;
+    }
+    if (!reserveBatchKeys(primaryValueObjects, newPrimaryColumnValues)) {
+      return false;
+    }
+    if (psForInitialRecordInShadowTable == null) {
+      psForInitialRecordInShadowTable = makePSForInitialRecordInShadowTable();
+    }
+    Tracer tracer = new Tracer();
+    getLastRecord(primaryValueObjects, conisderedId, tracer);
+    if (tracer.recordFound) {
+      if (tracer.rs != null) {
+        tracer.rs.close();
+      }
+      return false;
+    }
+    if (psForUpdateInShadowTableForRemoteServer == null) {
+      psForUpdateInShadowTableForRemoteServer = makePSForUpdateInShadowTableForRemoteServer();
+    }
+    if (batchUpdateStatement == null) {
+      changedColumnNames = changedNames;
+      batchUpdateStatement = makePSForActualUpdateInTable();
+      batchColumns = columns.toString();
+    }
+    BatchRow row = new BatchRow(currentElement);
+    row.primaryKeyValues = primaryValueObjects;
+    row.newPrimaryKeyValues = newPrimaryColumnValues;
+    row.changedColumnNames = changedNames;
+    row.changedColumnValues = changedValues;
+    batchRows.add(row);
+    return true;
+  }
+
+  protected PreparedStatement getBatchStatement() {
+    return batchUpdateStatement;
+  }
+
+  protected void setBatchParameters(PreparedStatement pst, BatchRow row) throws SQLException, RepException {
+    ArrayList changedColumns = ( (XMLElement) row.element.getChildElements().get(1)).getChildElements();
+    int k = 0;
+    for (int i = 0; i < changedColumns.size(); i++) {
+      if (repTable.isIgnoredColumn(row.changedColumnNames[i])) {
+        continue;
+      }
+      AbstractColumnObject columnOject = (AbstractColumnObject) columnObjectTreeMap.get(row.changedColumnNames[i]);
+      columnOject.setColumnObject(pst, (XMLElement) changedColumns.get(i), k + 1);
+      k++;
+    }
+    for (int i = 0; i < row.primaryKeyValues.length; i++) {
+      pst.setObject(k + i + 1, row.primaryKeyValues[i]);
+    }
+  }
+
+  protected void updateServerNameForBatch(int start, int end, Object lastSyncId) throws SQLException, RepException {
+    psForUpdateInShadowTableForRemoteServer.setString(1, remoteServerName);
+    psForUpdateInShadowTableForRemoteServer.setObject(2, lastSyncId);
+    for (int i = start; i < end; i++) {
+      BatchRow row = (BatchRow) batchRows.get(i);
+      // Status- B record of the old primary key and Status- A record of the new one
+      for (int j = 0; j < row.primaryKeyValues.length; j++) {
+        psForUpdateInShadowTableForRemoteServer.setObject(j + 3, row.primaryKeyValues[j]);
+      }
+      psForUpdateInShadowTableForRemoteServer.addBatch();
+      for (int j = 0; j < row.newPrimaryKeyValues.length; j++) {
+        psForUpdateInShadowTableForRemoteServer.setObject(j + 3, row.newPrimaryKeyValues[j]);
+      }
+      psForUpdateInShadowTableForRemoteServer.addBatch();
+    }
+    psForUpdateInShadowTableForRemoteServer.executeBatch();
+  }
+
+  protected void batchRowApplied(BatchRow row) throws RepException {
+    loggingUpdateOperation(tableName, primaryColumnNames, row.primaryKeyValues, row.changedColumnNames, row.changedColumnValues, replicationType);
+    writeUpdateOperationInTransactionLogFile(transactionLog, tableName, primaryColumnNames, row.primaryKeyValues, row.changedColumnNames, row.changedColumnValues, replicationType, transactionLogType);
+    updateCount++;
+  }
+
   /**
    * @param rst
    * @return ResultSet containing only one record corresponding to commonId
@@ -633,16 +753,7 @@ public class OperationUpdate extends AbstractSynchronize {
    * @throws SQLException
    */
   private void primaryVoilation(Object[] conflictingPrimaryKeyValues, Tracer trForRollback) throws RepException, SQLException {
-    Object lastShadowUidObj = getLastUIDFromShadowTable();
-    if ((lastShadowUidObj instanceof Integer)) { //for firebird
-      lastShadowUid = new Long( ( (Integer) lastShadowUidObj).longValue() + 1);
-    }
-    else  if ((lastShadowUidObj instanceof String)) { //for MySQL
-      lastShadowUid = new Long( ( Long.parseLong((String)lastShadowUidObj) + 1));
-    }
-    else {
-      lastShadowUid = new Long( ( (Long) getLastUIDFromShadowTable()).longValue() +1);
-    }
+    lastShadowUid = new Long(reserveSyncId(shadowTable).longValue() + 1);
 
     Tracer tracer = new Tracer();
     // trace the orignal record inserted/updated in main table for which Primary voilation has occured
@@ -687,7 +798,6 @@ public class OperationUpdate extends AbstractSynchronize {
         }
         // possibility of deleting the record which is to be updated afterwards
         preparedStatementForDelete.executeUpdate();
-        Object lastIdForInsert = getLastUIDFromShadowTable();
         return;
       }
 
@@ -1139,45 +1249,6 @@ public class OperationUpdate extends AbstractSynchronize {
     return connection.prepareStatement(query.toString());
   }
 
-  /**
-   * returns last synchronization id from shadopw table.
-   * @return
-   * @throws SQLException
-   */
-  private Object getLastUIDFromShadowTable() throws SQLException {
-    StringBuffer query = new StringBuffer();
-    ResultSet rs = null;
-    try {
-      query.append(" SELECT max(").append(RepConstants.shadow_sync_id1).append(")").append(" FROM ").append(shadowTable);
-      rs = connection.createStatement().executeQuery(query.toString());
-      boolean flag = rs.next();
-      Object lastId = rs.getObject(1);
-//System.out.println("Operation update 1153 getLastUIDFromShadowTable  lastId  CLASS : "+lastId);
-      if (lastId instanceof BigDecimal) {
-        lastId = new Long( ( (BigDecimal) lastId).longValue());
-      }
-      else  if (lastId instanceof Double) {
-        lastId = new Long( ( (Double) lastId).longValue());
-      }
-      else  if (lastId instanceof Long) {
-        lastId = new Long( ( (Long) lastId).longValue());
-      }
-      else  if (lastId instanceof Integer) {
-       lastId = new Long( ( (Integer) lastId).longValue());
-     }
-     else  if (lastId instanceof String) {
-       lastId = new Long( ( Long.parseLong((String)lastId)));
-     }
-
-      return flag ? (lastId == null ? new Long(0) : lastId) : new Long(0);
-    }
-    finally {
-      Statement st = rs.getStatement();
-      rs.close();
-      st.close();
-    }
-  }
-
   private PreparedStatement makePSForUpdateInShadowTableForRemoteServer() throws SQLException {
     StringBuffer query = new StringBuffer();
     query.append(" UPDATE ").append(shadowTable).append(" SET  ").append(
@@ -1396,6 +1467,13 @@ public class OperationUpdate extends AbstractSynchronize {
       catch (SQLException ex8) {
       }
     }
+    if (batchUpdateStatement != null) {
+      try {
+        batchUpdateStatement.close();
+      }
+      catch (SQLException ex9) {
+      }
+    }
   }
 
   /**
@@ -1461,7 +1539,7 @@ public class OperationUpdate extends AbstractSynchronize {
       parentReferedCols = (String[]) object[1];
       updatePreparedStatementSetNull = makeupdateQueryToSetNull(childTableName,
           childFkColumns, parentReferedCols, parentPkCols, parentPkColValue);
-      Object lastSynId = getLastSyncId(dbHandler.getShadowTableName(childTableName));
+      Object lastSynId = reserveSyncId(dbHandler.getShadowTableName(childTableName));
       updatePreparedStatementSetNull.execute();
       String updateRemoteServerNameQuery =
           updateRemoteServerNameWhenSettingNullInChildTable(childTableName,
@@ -1550,35 +1628,6 @@ public class OperationUpdate extends AbstractSynchronize {
     return sb.toString();
   }
 
-  /**
-   * Get last Synchronization ID from shadow table.It
-   * is used to used to get the original record.
-   * @param shadowTableName String
-   * @throws SQLException
-   * @return Object
-   */
-  private Object getLastSyncId(String shadowTableName) throws SQLException {
-    Statement statement = null;
-    ResultSet rs = null;
-    boolean flag = false;
-    Object lastId = null;
-    try {
-      StringBuffer query = new StringBuffer();
-      query.append("SELECT  max(").append(RepConstants.shadow_sync_id1).append(") FROM ").append(shadowTableName);
-      statement = connection.createStatement();
-      rs = statement.executeQuery(query.toString());
-      flag = rs.next();
-      lastId = rs.getObject(1);
-    }
-    finally {
-      if (rs != null)
-        rs.close();
-      if (statement != null)
-        statement.close();
-    }
-    return flag ? (lastId == null ? new Long(0) : lastId) : new Long(0);
-  }
-
   /**
    * Delete record in case of cyclic table. First we try to rollback the record upto
    * original record.After that updated statement is executed.During execution of
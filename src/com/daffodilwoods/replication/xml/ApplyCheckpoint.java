@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.xml;
+
+import java.security.MessageDigest;
+import java.sql.*;
+
+import com.daffodilwoods.replication.RepConstants;
+import com.daffodilwoods.replication.DBHandler.AbstractDataBaseHandler;
+import org.apache.log4j.Logger;
+
+/**
+ * This class keeps the apply checkpoint of a change set in the apply
+ * checkpoint table. The checkpoint is the number of operations of the XML
+ * file applied so far, stored with the last sync ids of the remote server the
+ * change set was made up to. If the apply of a change set is broken off, the
+ * next apply of the same change set skips the operations before the
+ * checkpoint. A change set made up to other last sync ids starts from the
+ * first operation.
+ *
+ * In a transactional apply the operations between two checkpoints are
+ * committed together with the checkpoint, otherwise the operations commit on
+ * their own and the checkpoint is stored after them, so at most the
+ * operations of one interval are applied again.
+ */
+
+public class ApplyCheckpoint {
+
+  private Connection connection;
+  private String checkpointTable, localName, remoteName, changeSet;
+  private long lastSyncId;
+  private int interval;
+  private boolean transactional, autoCommit, stored;
+  private long resumeFrom, operationNo, savedOperationNo;
+  protected static Logger log = Logger.getLogger(ApplyCheckpoint.class.getName());
+
+  /**
+   * @param connection0 connection the change set is applied on
+   * @param dbHandler
+   * @param localName0 local publication or subscription name
+   * @param remoteName0 remote publication or subscription name
+   * @param lastSyncIds last sync ids of the remote server the change set was made up to
+   * @param interval0 operations between two checkpoints
+   */
+  public ApplyCheckpoint(Connection connection0, AbstractDataBaseHandler dbHandler,
+                         String localName0, String remoteName0,
+                         Object[] lastSyncIds, int interval0) {
+    connection = connection0;
+    checkpointTable = dbHandler.getApplyCheckpointTableName();
+    localName = localName0;
+    remoteName = remoteName0;
+    interval = interval0;
+    StringBuffer ids = new StringBuffer();
+    for (int i = 0; i < lastSyncIds.length; i++) {
+      ids.append(lastSyncIds[i]).append(',');
+      if (lastSyncIds[i] instanceof Number) {
+        lastSyncId = Math.max(lastSyncId, ( (Number) lastSyncIds[i]).longValue());
+      }
+    }
+    changeSet = digest(ids.toString());
+  }
+
+  /**
+   * Reads the checkpoint stored for the change set and starts the apply.
+   * @param transactional0 true to commit the operations with the checkpoints
+   * @throws SQLException
+   */
+  public void begin(boolean transactional0) throws SQLException {
+    Statement st = connection.createStatement();
+    ResultSet rs = null;
+    try {
+      rs = st.executeQuery("SELECT " + RepConstants.checkpoint_ChangeSet3 + ", " +
+                           RepConstants.checkpoint_OperationNo4 + " FROM " +
+                           checkpointTable + " WHERE " + getWhereClause());
+      if (rs.next()) {
+        stored = true;
+        if (changeSet.equals(rs.getString(1))) {
+          resumeFrom = rs.getLong(2);
+          log.info("resuming apply of " + remoteName + " on " + localName + " after operation " + resumeFrom);
+        }
+      }
+    }
+    finally {
+      if (rs != null)
+        rs.close();
+      st.close();
+    }
+    operationNo = 0;
+    savedOperationNo = resumeFrom;
+    transactional = transactional0;
+    if (transactional) {
+      autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+    }
+  }
+
+  /**
+   * Counts the next operation of the XML file.
+   * @return true if the operation was applied before the checkpoint
+   */
+  public boolean isApplied() {
+    operationNo++;
+    return operationNo <= resumeFrom;
+  }
+
+  /**
+   * Returns true if the interval since the last checkpoint is over.
+   */
+  public boolean isDue() {
+    return operationNo - savedOperationNo >= interval;
+  }
+
+  public boolean isTransactional() {
+    return transactional;
+  }
+
+  /**
+   * Stores the checkpoint and commits a transactional apply. All operations
+   * counted so far have to be applied to the connection.
+   * @throws SQLException
+   */
+  public void save() throws SQLException {
+    if (operationNo > savedOperationNo) {
+      PreparedStatement pst = null;
+      try {
+        if (stored) {
+          pst = connection.prepareStatement("UPDATE " + checkpointTable + " SET " +
+                                            RepConstants.checkpoint_ChangeSet3 + " = ?, " +
+                                            RepConstants.checkpoint_OperationNo4 + " = ?, " +
+                                            RepConstants.checkpoint_lastSyncId5 + " = ? WHERE " +
+                                            getWhereClause());
+        }
+        else {
+          pst = connection.prepareStatement("INSERT INTO " + checkpointTable + " (" +
+                                            RepConstants.checkpoint_ChangeSet3 + ", " +
+                                            RepConstants.checkpoint_OperationNo4 + ", " +
+                                            RepConstants.checkpoint_lastSyncId5 + ", " +
+                                            RepConstants.checkpoint_LocalName1 + ", " +
+                                            RepConstants.checkpoint_RemoteName2 +
+                                            ") VALUES (?, ?, ?, ?, ?)");
+          pst.setString(4, localName);
+          pst.setString(5, remoteName);
+        }
+        pst.setString(1, changeSet);
+        pst.setLong(2, operationNo);
+        pst.setLong(3, lastSyncId);
+        pst.executeUpdate();
+        stored = true;
+      }
+      finally {
+        if (pst != null)
+          pst.close();
+      }
+      savedOperationNo = operationNo;
+    }
+    if (transactional) {
+      connection.commit();
+    }
+  }
+
+  /**
+   * Stores the last checkpoint of the XML file and ends a transactional apply.
+   * @throws SQLException
+   */
+  public void finish() throws SQLException {
+    save();
+    if (transactional) {
+      transactional = false;
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  /**
+   * Rolls back the operations applied after the last checkpoint of a
+   * transactional apply.
+   */
+  public void rollback() {
+    if (!transactional) {
+      return;
+    }
+    transactional = false;
+    try {
+      connection.rollback();
+      connection.setAutoCommit(autoCommit);
+    }
+    catch (SQLException ex) {
+      RepConstants.writeERROR_FILE(ex);
+    }
+  }
+
+  /**
+   * Deletes the checkpoint of the remote server after its change set has
+   * been applied and acknowledged.
+   * @param connection
+   * @param dbHandler
+   * @param localName
+   * @param remoteName
+   * @throws SQLException
+   */
+  public static void clear(Connection connection, AbstractDataBaseHandler dbHandler,
+                           String localName, String remoteName) throws SQLException {
+    PreparedStatement pst = connection.prepareStatement("DELETE FROM " +
+        dbHandler.getApplyCheckpointTableName() + " WHERE " +
+        RepConstants.checkpoint_LocalName1 + " = ? AND " +
+        RepConstants.checkpoint_RemoteName2 + " = ?");
+    try {
+      pst.setString(1, localName);
+      pst.setString(2, remoteName);
+      pst.executeUpdate();
+    }
+    finally {
+      pst.close();
+    }
+  }
+
+  private String getWhereClause() {
+    return RepConstants.checkpoint_LocalName1 + " = '" + localName + "' AND " +
+        RepConstants.checkpoint_RemoteName2 + " = '" + remoteName + "'";
+  }
+
+  private static String digest(String value) {
+    try {
+      byte[] hash = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+      StringBuffer hex = new StringBuffer();
+      for (int i = 0; i < hash.length; i++) {
+        hex.append(Character.forDigit( (hash[i] >> 4) & 0xf, 16));
+        hex.append(Character.forDigit(hash[i] & 0xf, 16));
+      }
+      return hex.toString();
+    }
+    catch (Exception ex) {
+      return value.length() > 64 ? value.substring(0, 64) : value;
+    }
+  }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.xml;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class writes a change set in the binary format instead of XML. The
+ * elements are written by ChangeSetMarkup, which calls startElement and
+ * endElement of this class instead of writing their markup. Everything
+ * written through the Writer methods is the text of the current element,
+ * so the column objects write their values as they do for the XML file.
+ * The change set is written as length prefixed tokens:
+ *
+ *   START  element name, attribute names and values
+ *   END    end of the current element
+ *   TEXT   text of an element
+ *   LONG   text which is an integer, written as a variable length number
+ *   NULL   the text NULL written for null values
+ *
+ * Element names, attribute names and attribute values are written once and
+ * referred by their index after that. ChangeSetReader reads the tokens back
+ * and passes them to a ChangeSetHandler, or as SAX events to any other
+ * content handler.
+ */
+
+public class BinaryChangeSetWriter extends Writer {
+
+  public static final int MAGIC = 0x44524353;
+  public static final int VERSION = 1;
+
+  static final int END_DOCUMENT = 0;
+  static final int START = 1;
+  static final int END = 2;
+  static final int TEXT = 3;
+  static final int LONG = 4;
+  static final int NULL = 5;
+
+  private DataOutputStream out;
+  private StringBuffer text = new StringBuffer();
+
+  // name -> Integer index, for names and attribute values written so far
+  private HashMap dictionary = new HashMap();
+  private boolean closed;
+
+  public BinaryChangeSetWriter(OutputStream out0) throws IOException {
+    out = new DataOutputStream(out0);
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+  }
+
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    text.append(cbuf, off, len);
+  }
+
+  public void write(String str) throws IOException {
+    text.append(str);
+  }
+
+  public void write(String str, int off, int len) throws IOException {
+    text.append(str.substring(off, off + len));
+  }
+
+  public void write(int c) throws IOException {
+    text.append( (char) c);
+  }
+
+  /**
+   * Starts an element, the text written before belongs to the element
+   * around it.
+   * @param name
+   * @param attributes attribute names and values, null for none
+   * @throws IOException
+   */
+  public void startElement(String name, String[] attributes) throws IOException {
+    writeText();
+    out.writeByte(START);
+    writeName(name);
+    int length = attributes == null ? 0 : attributes.length;
+    writeVarInt(length / 2);
+    for (int i = 0; i < length; i++) {
+      writeName(attributes[i]);
+    }
+  }
+
+  /**
+   * Ends the current element.
+   * @throws IOException
+   */
+  public void endElement() throws IOException {
+    writeText();
+    out.writeByte(END);
+  }
+
+  /**
+   * Writes the text collected since the last element token with the line end
+   * normalization of an XML parser, \r\n and \r are read as \n.
+   */
+  private void writeText() throws IOException {
+    if (text.length() == 0) {
+      return;
+    }
+    String value = text.toString();
+    text.setLength(0);
+    if (value.indexOf('\r') != -1) {
+      value = normalizeLineEnds(value);
+    }
+    if (value.equals("NULL")) {
+      out.writeByte(NULL);
+    }
+    else if (isLong(value)) {
+      out.writeByte(LONG);
+      long l = Long.parseLong(value);
+      writeVarLong( (l << 1) ^ (l >> 63));
+    }
+    else {
+      out.writeByte(TEXT);
+      writeString(value);
+    }
+  }
+
+  private static String normalizeLineEnds(String value) {
+    StringBuffer sb = new StringBuffer(value.length());
+    for (int i = 0, length = value.length(); i < length; i++) {
+      char c = value.charAt(i);
+      if (c == '\r') {
+        sb.append('\n');
+        if (i + 1 < length && value.charAt(i + 1) == '\n') {
+          i++;
+        }
+      }
+      else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns true if value is the decimal string of a long, so that it reads
+   * back unchanged.
+   */
+  private static boolean isLong(String value) {
+    int length = value.length();
+    int start = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+    if (length == start || length - start > 18) {
+      return false;
+    }
+    if (value.charAt(start) == '0' && (length - start > 1 || start == 1)) {
+      return false;
+    }
+    for (int i = start; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeName(String name) throws IOException {
+    Integer index = (Integer) dictionary.get(name);
+    if (index != null) {
+      writeVarInt(index.intValue() + 1);
+      return;
+    }
+    dictionary.put(name, new Integer(dictionary.size()));
+    writeVarInt(0);
+    writeString(name);
+  }
+
+  private void writeString(String value) throws IOException {
+    byte[] bytes = value.getBytes("UTF-8");
+    writeVarInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private void writeVarInt(int value) throws IOException {
+    writeVarLong(value & 0xFFFFFFFFL);
+  }
+
+  private void writeVarLong(long value) throws IOException {
+    while ( (value & ~0x7FL) != 0) {
+      out.writeByte( (int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte( (int) value);
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    writeText();
+    out.writeByte(END_DOCUMENT);
+    out.close();
+  }
+
+}
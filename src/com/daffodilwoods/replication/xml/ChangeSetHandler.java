@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication.xml;
+
+import org.xml.sax.SAXException;
+
+/**
+ * This interface is implemented by the content handlers which take the
+ * tokens of a binary change set from ChangeSetReader directly, instead of
+ * the SAX events made from them. The change set elements have the
+ * attributes name and Encode only, which are passed as they are.
+ */
+
+public interface ChangeSetHandler
+{
+
+    public void startElement(String name, String nameAttribute, String encodeAttribute) throws SAXException;
+
+    public void endElement(String name) throws SAXException;
+
+    /**
+     * Passes the text of the current element, text and numbers as strings
+     * and the null value as NULL.
+     */
+    public void text(String value) throws SAXException;
+
+}
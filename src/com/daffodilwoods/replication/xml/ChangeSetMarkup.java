@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication.xml;
+
+import java.io.*;
+
+/**
+ * This class writes the elements of a change set on the writer of
+ * SyncXMLCreator, XMLWriter and the column objects. For a
+ * BinaryChangeSetWriter the elements are passed to it as tokens, for any
+ * other writer their XML markup is written. The text of an element is
+ * written on the writer itself in both cases.
+ */
+
+public class ChangeSetMarkup {
+
+  private ChangeSetMarkup() {
+  }
+
+  /**
+   * Writes the XML declaration, a binary change set has none.
+   * @param out
+   * @throws IOException
+   */
+  public static void startDocument(Writer out) throws IOException {
+    if (! (out instanceof BinaryChangeSetWriter)) {
+      out.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
+    }
+  }
+
+  public static void startElement(Writer out, String name) throws IOException {
+    startElement(out, name, null);
+  }
+
+  public static void startElement(Writer out, String name, String attributeName,
+                                  String attributeValue) throws IOException {
+    startElement(out, name, new String[] {attributeName, attributeValue});
+  }
+
+  /**
+   * Starts the element name.
+   * @param out
+   * @param name
+   * @param attributes attribute names and values, null for none
+   * @throws IOException
+   */
+  public static void startElement(Writer out, String name, String[] attributes) throws IOException {
+    if (out instanceof BinaryChangeSetWriter) {
+      ( (BinaryChangeSetWriter) out).startElement(name, attributes);
+      return;
+    }
+    out.write('<');
+    out.write(name);
+    if (attributes != null) {
+      for (int i = 0; i < attributes.length; i += 2) {
+        out.write(' ');
+        out.write(attributes[i]);
+        out.write("=\"");
+        out.write(attributes[i + 1]);
+        out.write('"');
+      }
+    }
+    out.write('>');
+  }
+
+  public static void endElement(Writer out, String name) throws IOException {
+    if (out instanceof BinaryChangeSetWriter) {
+      ( (BinaryChangeSetWriter) out).endElement();
+      return;
+    }
+    out.write("</");
+    out.write(name);
+    out.write('>');
+  }
+
+  /**
+   * Writes an element with the text value.
+   * @param out
+   * @param name
+   * @param value
+   * @throws IOException
+   */
+  public static void writeElement(Writer out, String name, String value) throws IOException {
+    startElement(out, name);
+    out.write(value);
+    endElement(out, name);
+  }
+
+  /**
+   * Starts a CDATA section, the text written till endCDATA is not parsed. A
+   * binary change set writes all text unparsed.
+   * @param out
+   * @throws IOException
+   */
+  public static void startCDATA(Writer out) throws IOException {
+    if (! (out instanceof BinaryChangeSetWriter)) {
+      out.write("<![CDATA[");
+    }
+  }
+
+  public static void endCDATA(Writer out) throws IOException {
+    if (! (out instanceof BinaryChangeSetWriter)) {
+      out.write("]]>");
+    }
+  }
+
+  /**
+   * Writes value as a CDATA section.
+   * @param out
+   * @param value
+   * @throws IOException
+   */
+  public static void writeCDATA(Writer out, String value) throws IOException {
+    startCDATA(out);
+    out.write(value);
+    endCDATA(out);
+  }
+
+  /**
+   * Ends the line after an element of the XML file, the readers ignore it.
+   * @param out
+   * @throws IOException
+   */
+  public static void newLine(Writer out) throws IOException {
+    if (! (out instanceof BinaryChangeSetWriter)) {
+      out.write("\r\n");
+    }
+  }
+
+}
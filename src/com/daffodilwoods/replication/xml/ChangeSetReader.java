@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.xml;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+
+import org.xml.sax.*;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * This class reads a change set written either as XML or in the binary
+ * format of BinaryChangeSetWriter. It looks at the first bytes of the input,
+ * binary change sets are read here, anything else is parsed by the XML
+ * reader it wraps. So the handlers work on both formats and the reader does
+ * not need to know which format has been negotiated.
+ *
+ * The tokens of a binary change set are passed as they are to a content
+ * handler implementing ChangeSetHandler. Other content handlers get the
+ * same SAX events the XML parser gives for the XML file.
+ */
+
+public class ChangeSetReader implements XMLReader {
+
+  private XMLReader xmlReader;
+  private ContentHandler contentHandler;
+
+  private DataInputStream in;
+  private ArrayList names = new ArrayList();
+  private ArrayList openElements = new ArrayList();
+  private AttributesImpl attributes = new AttributesImpl();
+  private byte[] bytes = new byte[256];
+
+  public ChangeSetReader(XMLReader xmlReader0) {
+    xmlReader = xmlReader0;
+  }
+
+  public void parse(String systemId) throws IOException, SAXException {
+    File file = new File(systemId);
+    InputStream is = file.exists() ? new FileInputStream(file) : new URL(systemId).openStream();
+    try {
+      InputSource input = new InputSource(is);
+      input.setSystemId(systemId);
+      parse(input);
+    }
+    finally {
+      is.close();
+    }
+  }
+
+  public void parse(InputSource input) throws IOException, SAXException {
+    InputStream is = input.getByteStream();
+    if (is == null) {
+      if (input.getCharacterStream() != null) {
+        xmlReader.parse(input);
+      }
+      else {
+        parse(input.getSystemId());
+      }
+      return;
+    }
+    is = new BufferedInputStream(is);
+    is.mark(5);
+    DataInputStream dis = new DataInputStream(is);
+    boolean binary;
+    try {
+      binary = dis.readInt() == BinaryChangeSetWriter.MAGIC;
+    }
+    catch (EOFException ex) {
+      binary = false;
+    }
+    if (!binary) {
+      is.reset();
+      InputSource xmlInput = new InputSource(is);
+      xmlInput.setSystemId(input.getSystemId());
+      xmlReader.parse(xmlInput);
+      return;
+    }
+    int version = dis.readUnsignedByte();
+    if (version != BinaryChangeSetWriter.VERSION) {
+      throw new SAXException("Unsupported change set version " + version);
+    }
+    in = dis;
+    try {
+      readTokens();
+    }
+    finally {
+      in = null;
+      names.clear();
+      openElements.clear();
+    }
+  }
+
+  private void readTokens() throws IOException, SAXException {
+    ChangeSetHandler handler = contentHandler instanceof ChangeSetHandler
+        ? (ChangeSetHandler) contentHandler : null;
+    contentHandler.startDocument();
+    while (true) {
+      int token = in.readUnsignedByte();
+      switch (token) {
+        case BinaryChangeSetWriter.START:
+          String name = readName();
+          openElements.add(name);
+          if (handler != null) {
+            startElement(handler, name);
+            break;
+          }
+          attributes.clear();
+          for (int i = readVarInt(); i > 0; i--) {
+            String attributeName = readName();
+            attributes.addAttribute("", attributeName, attributeName, "CDATA", readName());
+          }
+          contentHandler.startElement("", name, name, attributes);
+          break;
+        case BinaryChangeSetWriter.END:
+          name = (String) openElements.remove(openElements.size() - 1);
+          if (handler != null) {
+            handler.endElement(name);
+          }
+          else {
+            contentHandler.endElement("", name, name);
+          }
+          break;
+        case BinaryChangeSetWriter.TEXT:
+          text(handler, readString());
+          break;
+        case BinaryChangeSetWriter.LONG:
+          long l = readVarLong();
+          text(handler, Long.toString( (l >>> 1) ^ - (l & 1)));
+          break;
+        case BinaryChangeSetWriter.NULL:
+          text(handler, "NULL");
+          break;
+        case BinaryChangeSetWriter.END_DOCUMENT:
+          contentHandler.endDocument();
+          return;
+        default:
+          throw new SAXException("Corrupt change set, unknown token " + token);
+      }
+    }
+  }
+
+  private void startElement(ChangeSetHandler handler, String name) throws IOException, SAXException {
+    String nameAttribute = null;
+    String encodeAttribute = null;
+    for (int i = readVarInt(); i > 0; i--) {
+      String attributeName = readName();
+      String value = readName();
+      if (attributeName.equals("name")) {
+        nameAttribute = value;
+      }
+      else if (attributeName.equals("Encode")) {
+        encodeAttribute = value;
+      }
+    }
+    handler.startElement(name, nameAttribute, encodeAttribute);
+  }
+
+  private void text(ChangeSetHandler handler, String value) throws SAXException {
+    if (handler != null) {
+      handler.text(value);
+      return;
+    }
+    char[] chars = value.toCharArray();
+    contentHandler.characters(chars, 0, chars.length);
+  }
+
+  private String readName() throws IOException {
+    int index = readVarInt();
+    if (index > 0) {
+      return (String) names.get(index - 1);
+    }
+    String name = readString();
+    names.add(name);
+    return name;
+  }
+
+  private String readString() throws IOException {
+    int length = readVarInt();
+    if (bytes.length < length) {
+      bytes = new byte[Math.max(length, bytes.length * 2)];
+    }
+    in.readFully(bytes, 0, length);
+    return new String(bytes, 0, length, "UTF-8");
+  }
+
+  private int readVarInt() throws IOException {
+    return (int) readVarLong();
+  }
+
+  private long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ( (b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  public void setContentHandler(ContentHandler handler) {
+    contentHandler = handler;
+    xmlReader.setContentHandler(handler);
+  }
+
+  public ContentHandler getContentHandler() {
+    return contentHandler;
+  }
+
+  public boolean getFeature(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+    return xmlReader.getFeature(name);
+  }
+
+  public void setFeature(String name, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+    xmlReader.setFeature(name, value);
+  }
+
+  public Object getProperty(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+    return xmlReader.getProperty(name);
+  }
+
+  public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+    xmlReader.setProperty(name, value);
+  }
+
+  public void setEntityResolver(EntityResolver resolver) {
+    xmlReader.setEntityResolver(resolver);
+  }
+
+  public EntityResolver getEntityResolver() {
+    return xmlReader.getEntityResolver();
+  }
+
+  public void setDTDHandler(DTDHandler handler) {
+    xmlReader.setDTDHandler(handler);
+  }
+
+  public DTDHandler getDTDHandler() {
+    return xmlReader.getDTDHandler();
+  }
+
+  public void setErrorHandler(ErrorHandler handler) {
+    xmlReader.setErrorHandler(handler);
+  }
+
+  public ErrorHandler getErrorHandler() {
+    return xmlReader.getErrorHandler();
+  }
+
+}
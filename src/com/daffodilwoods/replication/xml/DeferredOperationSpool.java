@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.xml;
+
+import java.io.*;
+import java.util.*;
+
+import com.daffodilwoods.replication.SpoolSession;
+
+/**
+ * This class keeps the insert and update operations of cyclic tables read
+ * in the first pass of a merge, so that the foreign key columns set to null
+ * in the first pass can be assigned at the end without parsing the whole XML
+ * file again.
+ *
+ * Operations are written in a compact binary form, element names and table
+ * names are written once and referred by their index after that. The
+ * operations are kept in memory up to MEMORY_LIMIT bytes and spilled to a
+ * file of the current spool session beyond that.
+ */
+
+public class DeferredOperationSpool
+{
+
+    private static final int MEMORY_LIMIT = 1024 * 1024;
+
+    private ByteArrayOutputStream memory;
+    private File file;
+    private DataOutputStream out;
+    private DataInputStream in;
+
+    // name -> Integer index, for element and table names written so far
+    private HashMap writtenNames = new HashMap();
+    private ArrayList readNames;
+    private int count, remaining;
+    private String tableName;
+    private XMLElement operation;
+
+    public DeferredOperationSpool()
+    {
+        memory = new ByteArrayOutputStream();
+        out = new DataOutputStream(memory);
+    }
+
+    /**
+     * Adds the operation element of table tableName to the spool.
+     * @param tableName0
+     * @param operation0
+     * @throws IOException
+     */
+    public void add(String tableName0, XMLElement operation0) throws IOException
+    {
+        writeName(tableName0);
+        writeElement(operation0);
+        count++;
+        if (memory != null && memory.size() > MEMORY_LIMIT)
+            spill();
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Moves to the next operation of the spool in the order they were added.
+     * The first call starts reading, nothing can be added after that.
+     * @return false if there are no more operations
+     * @throws IOException
+     */
+    public boolean next() throws IOException
+    {
+        if (in == null)
+        {
+            out.flush();
+            if (file == null)
+            {
+                in = new DataInputStream(new ByteArrayInputStream(memory.toByteArray()));
+                memory = null;
+            }
+            else
+            {
+                out.close();
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            }
+            out = null;
+            readNames = new ArrayList();
+            remaining = count;
+        }
+        if (remaining == 0)
+            return false;
+        remaining--;
+        tableName = readName();
+        operation = readElement(null);
+        return true;
+    }
+
+    public String getTableName()
+    {
+        return tableName;
+    }
+
+    public XMLElement getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * Closes the spool and deletes its file.
+     */
+    public void close()
+    {
+        try
+        {
+            if (out != null)
+                out.close();
+            if (in != null)
+                in.close();
+        }
+        catch (IOException ex)
+        {
+        }
+        out = null;
+        in = null;
+        memory = null;
+        if (file != null)
+        {
+            file.delete();
+            file = null;
+        }
+    }
+
+    private void spill() throws IOException
+    {
+        SpoolSession session = SpoolSession.getCurrent();
+        File directory = session == null ? null : new File(session.getDirectory());
+        file = File.createTempFile("cyclic", ".ops", directory);
+        file.deleteOnExit();
+        out.flush();
+        DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        memory.writeTo(fileOut);
+        memory = null;
+        out = fileOut;
+    }
+
+    private void writeElement(XMLElement element) throws IOException
+    {
+        writeName(element.elementName);
+        writeString(element.getAttribute());
+        writeString(element.elementValue);
+        ArrayList children = element.getChildElements();
+        out.writeInt(children.size());
+        for (int i = 0; i < children.size(); i++)
+            writeElement( (XMLElement) children.get(i));
+    }
+
+    private XMLElement readElement(XMLElement parent) throws IOException
+    {
+        XMLElement element = new XMLElement(readName());
+        element.addAtt(readString());
+        element.elementValue = readString();
+        element.setParentElement(parent);
+        int children = in.readInt();
+        for (int i = 0; i < children; i++)
+            element.addChild(readElement(element));
+        return element;
+    }
+
+    private void writeName(String name) throws IOException
+    {
+        Integer index = (Integer) writtenNames.get(name);
+        if (index != null)
+        {
+            out.writeShort(index.intValue());
+            return;
+        }
+        out.writeShort(-1);
+        out.writeUTF(name);
+        writtenNames.put(name, new Integer(writtenNames.size()));
+    }
+
+    private String readName() throws IOException
+    {
+        int index = in.readShort();
+        if (index != -1)
+            return (String) readNames.get(index);
+        String name = in.readUTF();
+        readNames.add(name);
+        return name;
+    }
+
+    /**
+     * Values may be longer than the 64K limit of writeUTF, they are written as
+     * length and UTF-8 bytes, -1 for null.
+     */
+    private void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString() throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+}
@@ -26,7 +26,7 @@ import org.xml.sax.helpers.*;
 import com.daffodilwoods.replication.*;
 import com.daffodilwoods.replication.DBHandler.*;
 import com.daffodilwoods.replication.synchronize.*;
-import java.io.BufferedWriter;
+import java.io.IOException;
 import org.apache.log4j.Logger;
 
 /**
@@ -37,7 +37,7 @@ import org.apache.log4j.Logger;
  */
 
 public class MergeHandler
-    extends DefaultHandler {
+    extends DefaultHandler implements ChangeSetHandler {
   XMLElement currentElement;
   Connection connection;
   Statement statement;
@@ -51,11 +51,23 @@ public class MergeHandler
   OperationInsert operationInsert;
   OperationUpdate operationUpdate;
   String remoteServerName, replicationType, transactionLogType;
-  BufferedWriter bw;
+  TransactionLog transactionLog;
   public int insert, update, delete;
   private XMLElement tableElement;
   boolean isFirstPass;
   private boolean isCurrentTableCyclic;
+  // operations of the current table are applied in JDBC batches of this size
+  private int batchSize;
+  private AbstractSynchronize pendingBatch;
+  // inserts and updates of cyclic tables, their foreign key columns are
+  // assigned by applyDeferredOperations after the first pass
+  private DeferredOperationSpool deferredOperations;
+  private String currentTableName;
+  private ApplyCheckpoint checkpoint;
+  // sections of tables without cyclic foreign keys are applied by the
+  // threads of parallelApply, sectionOperations keeps the current one
+  private ParallelApply parallelApply;
+  private DeferredOperationSpool sectionOperations;
   protected static Logger log = Logger.getLogger(MergeHandler.class.getName());
 
   /**
@@ -68,7 +80,7 @@ public class MergeHandler
   public MergeHandler(boolean isFirstPass0, Connection connection0,
                       _Replicator replicator0,
                       String remoteServerName0,
-                      AbstractDataBaseHandler dbHandler0, BufferedWriter bw0,
+                      AbstractDataBaseHandler dbHandler0, TransactionLog transactionLog0,
                       String replicationType0, String transactionLogType0,
                       MetaDataInfo mdi0) throws RepException {
     try {
@@ -82,9 +94,10 @@ public class MergeHandler
 //    showResultSet(statement.executeQuery(" Select * from RepTable"));
       transactionLogType = transactionLogType0;
       remoteServerName = remoteServerName0;
-      bw = bw0;
+      transactionLog = transactionLog0;
       replicationType = replicationType0;
       isFirstPass = isFirstPass0;
+      batchSize = RepConstants.getApplyBatchSize();
     }
     catch (Exception ex) {
       log.error(ex.getMessage(), ex);
@@ -101,6 +114,10 @@ public class MergeHandler
    * @throws SAXException
    */
   public void startElement(String namespace, String localname, String qname, Attributes atts) throws SAXException {
+    startElement(qname, atts.getValue("name"), atts.getValue("Encode"));
+  }
+
+  public void startElement(String qname, String nameAttribute, String encodeAttribute) throws SAXException {
     XMLElement childElement = null;
     if ( (currentElement == null ||
           !currentElement.elementName.equals("operation")) &&
@@ -110,18 +127,17 @@ public class MergeHandler
     }
     else {
       if (tableElement != null) {
-        initializeOperations(tableElement.elementValue);
+        startSection(tableElement.elementValue);
       }
       childElement = new XMLElement(qname);
       tableElement = null;
     }
     currentElement.addChild(childElement);
     childElement.setParentElement(currentElement);
-    childElement.addAtt(atts.getValue("name"));
+    childElement.addAtt(nameAttribute);
 
     // encoded cols
-//System.out.println("atts.getValue(Encode) ="+atts.getValue("Encode"));
-    childElement.addEncodeAtt(atts.getValue("Encode"));
+    childElement.addEncodeAtt(encodeAttribute);
     currentElement = childElement;
   }
 
@@ -133,6 +149,10 @@ public class MergeHandler
    * @throws SAXException
    */
   public void endElement(String namespace, String localname, String qname) throws SAXException {
+    endElement(qname);
+  }
+
+  public void endElement(String qname) throws SAXException {
     try {
       currentElement.checkEncoding();
       XMLElement parentElement = currentElement.getParentElement();
@@ -140,16 +160,32 @@ public class MergeHandler
             parentElement.elementName.equals("tableName")) &&
           qname.equals("operation")) {
 //System.out.println("currentElement.elementValue="+currentElement.elementValue);
-        if (currentElement.elementValue.equals(RepConstants.insert_operation)) {
-          createInsertQuery();
+        // operations before the checkpoint of a resumed apply are skipped
+        boolean applied = checkpoint != null && checkpoint.isApplied();
+        if (sectionOperations != null) {
+          spoolOperation();
+        }
+        else if (currentElement.elementValue.equals(RepConstants.insert_operation)) {
+          if (!applied) {
+            createInsertQuery();
+          }
+          deferOperation();
 //         Utility.insertCount++;
 //System.out.println("Utility.insertCount = "+Utility.insertCount);
         }
         else if (currentElement.elementValue.equals(RepConstants.update_operation)) {
-          createUpdateQuery();
+          if (!applied) {
+            createUpdateQuery();
+          }
+          deferOperation();
         }
         else if (currentElement.elementValue.equals(RepConstants.delete_operation)) {
-          createDeleteQuery();
+          if (!applied) {
+            createDeleteQuery();
+          }
+        }
+        if (!applied && checkpoint != null && checkpoint.isDue()) {
+          saveCheckpoint();
         }
       }
       if ( (parentElement == null ||
@@ -161,27 +197,259 @@ public class MergeHandler
         catch (Exception ex) {
           RepConstants.writeERROR_FILE(ex);
         }
-        if (operationInsert != null) {
-          insert += operationInsert.insertCount;
-          operationInsert.closeAllStatments();
+        if (sectionOperations != null) {
+          DeferredOperationSpool operations = sectionOperations;
+          sectionOperations = null;
+          parallelApply.submit(currentTableName, operations);
         }
-        if (operationUpdate != null) {
-          update += operationUpdate.updateCount;
-          operationUpdate.closeAllStatments();
-        }
-        if (operationDelete != null) {
-          delete += operationDelete.deleteCount;
-          operationDelete.closeAllStatments();
+        else {
+          closeOperations();
         }
       }
       currentElement = parentElement;
     }
     catch (RepException ex1) {
 //          ex1.printStackTrace();
+      if (checkpoint != null) {
+        checkpoint.rollback();
+      }
+      abortParallelApply();
       throw new SAXException(ex1.getMessage(), ex1);
     }
   }
 
+  /**
+   * Starts the checkpoints of the apply, see enableCheckpoint.
+   * @throws SAXException
+   */
+  public void startDocument() throws SAXException {
+    if (checkpoint == null) {
+      return;
+    }
+    try {
+      // a failed statement aborts the whole transaction on PostgreSQL
+      boolean transactional = ! (dbHandler instanceof PostgreSQLHandler);
+      if (transactional && !connection.getMetaData().supportsSavepoints()) {
+        // a failed row of a batch could not be rolled back on its own
+        batchSize = 1;
+      }
+      checkpoint.begin(transactional);
+    }
+    catch (SQLException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new SAXException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Stores the last checkpoint of the apply.
+   * @throws SAXException
+   */
+  public void endDocument() throws SAXException {
+    finishParallelApply();
+    if (checkpoint == null) {
+      return;
+    }
+    try {
+      executePendingBatch();
+      checkpoint.finish();
+    }
+    catch (Exception ex) {
+      log.error(ex.getMessage(), ex);
+      checkpoint.rollback();
+      throw new SAXException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Applies the XML file with apply checkpoints if APPLYCHECKPOINTINTERVAL
+   * is set. The operations are committed in groups together with the number
+   * of operations applied so far, an apply of the same change set broken
+   * off before skips the operations already applied. Has to be called after
+   * setLocalName and setRemoteName.
+   * @param remoteLastSyncIds last sync ids of the remote server the change
+   * set was made up to, null if they are not known before the XML is parsed
+   * @return true if the apply has checkpoints
+   * @throws RepException
+   */
+  public boolean enableCheckpoint(Object[] remoteLastSyncIds) throws RepException {
+    int interval = RepConstants.getApplyCheckpointInterval();
+    if (interval == 0 || remoteLastSyncIds == null) {
+      return false;
+    }
+    dbHandler.checkApplyCheckpointTable(localName);
+    checkpoint = new ApplyCheckpoint(connection, dbHandler, localName, remoteName,
+                                     remoteLastSyncIds, interval);
+    return true;
+  }
+
+  /**
+   * Applies the tables of the XML file on APPLYTHREADS threads, each on its
+   * own connection leased from connectionPool, see ParallelApply. Tables with
+   * cyclic foreign keys are applied by this handler after the tables before
+   * them. Has to be called after enableCheckpoint, an apply with checkpoints
+   * stays on the connection of this handler.
+   * @param connectionPool
+   * @param pubsubName name the connections are leased for
+   * @param repTables replicated tables
+   * @return true if the tables are applied on more than one thread
+   * @throws RepException
+   */
+  public boolean enableParallelApply(ConnectionPool connectionPool, String pubsubName, List repTables) throws RepException {
+    int threads = RepConstants.getApplyThreads();
+    if (threads <= 1 || checkpoint != null || !isFirstPass) {
+      return false;
+    }
+    parallelApply = new ParallelApply(this, connectionPool, pubsubName, threads, repTables, mdi);
+    return true;
+  }
+
+  /**
+   * Starts the section of table tableName. Sections of a parallel apply are
+   * spooled for ParallelApply, the section of a cyclic table waits for the
+   * sections before it and is applied here.
+   * @param tableName
+   * @throws SAXException
+   */
+  private void startSection(String tableName) throws SAXException {
+    if (parallelApply != null) {
+      try {
+        if (!replicator.getRepTable(tableName).getCyclicDependency().equalsIgnoreCase(RepConstants.YES)) {
+          currentTableName = tableName;
+          sectionOperations = new DeferredOperationSpool();
+          return;
+        }
+        parallelApply.waitForAll();
+      }
+      catch (RepException ex) {
+        log.error(ex.getMessage(), ex);
+        abortParallelApply();
+        throw new SAXException(ex.getMessage(), ex);
+      }
+    }
+    initializeOperations(tableName);
+  }
+
+  private void spoolOperation() throws RepException {
+    try {
+      sectionOperations.add(currentTableName, currentElement);
+    }
+    catch (IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+  }
+
+  /**
+   * Waits for the sections of the parallel apply and adds their counts.
+   * @throws SAXException
+   */
+  private void finishParallelApply() throws SAXException {
+    if (parallelApply == null) {
+      return;
+    }
+    ParallelApply apply = parallelApply;
+    parallelApply = null;
+    try {
+      apply.finish();
+    }
+    catch (RepException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new SAXException(ex.getMessage(), ex);
+    }
+    finally {
+      insert += apply.insert;
+      update += apply.update;
+      delete += apply.delete;
+    }
+  }
+
+  private void abortParallelApply() {
+    if (sectionOperations != null) {
+      sectionOperations.close();
+      sectionOperations = null;
+    }
+    if (parallelApply != null) {
+      parallelApply.abort();
+      parallelApply = null;
+    }
+  }
+
+  /**
+   * Stops the parallel apply if the parser gives up on the XML file.
+   * @param ex
+   * @throws SAXException
+   */
+  public void fatalError(SAXParseException ex) throws SAXException {
+    abortParallelApply();
+    super.fatalError(ex);
+  }
+
+  /**
+   * Makes the handler applying the sections of a parallel apply on the
+   * connection of one thread.
+   * @param connection0
+   * @param mdi0
+   * @return MergeHandler
+   * @throws RepException
+   */
+  MergeHandler createSectionHandler(Connection connection0, MetaDataInfo mdi0) throws RepException {
+    MergeHandler sectionHandler = new MergeHandler(true, connection0, replicator,
+        remoteServerName, dbHandler, transactionLog, replicationType, transactionLogType, mdi0);
+    sectionHandler.setLocalName(localName);
+    sectionHandler.setRemoteName(remoteName);
+    return sectionHandler;
+  }
+
+  /**
+   * Applies the operations of a table section spooled by the parsing
+   * handler, in the order of the XML file. The operations are closed after.
+   * @param tableName
+   * @param operations
+   * @throws RepException
+   */
+  void applySection(String tableName, DeferredOperationSpool operations) throws RepException {
+    try {
+      initializeOperations(tableName);
+      while (operations.next()) {
+        currentElement = operations.getOperation();
+        if (currentElement.elementValue.equals(RepConstants.insert_operation)) {
+          createInsertQuery();
+        }
+        else if (currentElement.elementValue.equals(RepConstants.update_operation)) {
+          createUpdateQuery();
+        }
+        else if (currentElement.elementValue.equals(RepConstants.delete_operation)) {
+          createDeleteQuery();
+        }
+      }
+      closeOperations();
+    }
+    catch (IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+    catch (SAXException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+    finally {
+      currentElement = null;
+      operations.close();
+    }
+  }
+
+  private void saveCheckpoint() throws RepException {
+    executePendingBatch();
+    try {
+      checkpoint.save();
+    }
+    catch (SQLException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+  }
+
   /**
    * getting the value for XML element.
    * @param ch
@@ -190,7 +458,10 @@ public class MergeHandler
    * @throws SAXException
    */
   public void characters(char[] ch, int start, int len) throws SAXException {
-    String elementValue = new String(ch, start, len);
+    text(new String(ch, start, len));
+  }
+
+  public void text(String elementValue) throws SAXException {
     if (elementValue.equalsIgnoreCase("") || elementValue.equalsIgnoreCase("\n")) {
       return;
     }
@@ -203,6 +474,7 @@ public class MergeHandler
     try {
 //        Utility.insertCount=0;
       RepTable repTable = replicator.getRepTable(elementValue);
+      currentTableName = elementValue;
       isCurrentTableCyclic = repTable.getCyclicDependency().equalsIgnoreCase(RepConstants.YES);
       treeMap = repTable.getColumnTreeMap(connection,replicator.getDBDataTypeHandler());
       conflictResolver = repTable.getConflictResolver();
@@ -221,19 +493,24 @@ public class MergeHandler
       Object conisderedId = conisderedIdRS.getObject(1);
       operationDelete = new OperationDelete(repTable, connection, treeMap,
                                             conisderedId, remoteServerName,
-                                            dbHandler, bw, replicationType,
+                                            dbHandler, transactionLog, replicationType,
                                             transactionLogType, mdi,
                                             isFirstPass, isCurrentTableCyclic);
       operationUpdate = new OperationUpdate(repTable, connection, treeMap,
                                             conisderedId, remoteServerName,
-                                            dbHandler, bw, replicationType,
+                                            dbHandler, transactionLog, replicationType,
                                             transactionLogType, mdi,
                                             isFirstPass, isCurrentTableCyclic);
       operationInsert = new OperationInsert(repTable, connection, treeMap,
                                             conisderedId, remoteServerName,
-                                            dbHandler, bw, replicationType,
+                                            dbHandler, transactionLog, replicationType,
                                             transactionLogType, mdi,
                                             isFirstPass, isCurrentTableCyclic);
+      if (checkpoint != null && checkpoint.isTransactional()) {
+        operationDelete.setTransactional(true);
+        operationUpdate.setTransactional(true);
+        operationInsert.setTransactional(true);
+      }
 
     }
     catch (Exception ex) {
@@ -249,7 +526,7 @@ public class MergeHandler
   private void createInsertQuery() throws RepException {
     try {
       log.debug("Current Elemnent  =" + currentElement);
-      operationInsert.execute(currentElement);
+      execute(operationInsert);
     }
     catch (Exception ex) {
       log.error(ex, ex);
@@ -273,7 +550,7 @@ public class MergeHandler
    */
   private void createUpdateQuery() throws RepException {
     try {
-      operationUpdate.execute(currentElement);
+      execute(operationUpdate);
     }
     catch (Exception ex) {
       log.error(ex.getMessage(), ex);
@@ -297,7 +574,7 @@ public class MergeHandler
    */
   private void createDeleteQuery() throws RepException {
     try {
-      operationDelete.execute(currentElement);
+      execute(operationDelete);
     }
     catch (Exception ex) {
       log.error(ex.getMessage(), ex);
@@ -315,6 +592,146 @@ public class MergeHandler
     }
   }
 
+  /**
+   * Applies the current operation element through the JDBC batch of the given
+   * operation. Operations which can not be batched are applied on their own
+   * after the waiting batch, so the order of the XML file is kept.
+   * @param operation
+   * @throws SQLException
+   * @throws RepException
+   */
+  private void execute(AbstractSynchronize operation) throws SQLException, RepException {
+    if (pendingBatch != null && pendingBatch != operation) {
+      executePendingBatch();
+    }
+    if (batchSize > 1 && operation.addToBatch(currentElement)) {
+      pendingBatch = operation;
+      if (operation.getBatchCount() >= batchSize) {
+        executePendingBatch();
+      }
+      return;
+    }
+    executePendingBatch();
+    operation.execute(currentElement);
+  }
+
+  /**
+   * Applies the waiting batch of the current table, adds the counts of the
+   * first pass and closes the statements of the operations.
+   * @throws RepException
+   */
+  private void closeOperations() throws RepException {
+    executePendingBatch();
+    if (operationInsert != null) {
+      if (isFirstPass) {
+        insert += operationInsert.insertCount;
+      }
+      operationInsert.closeAllStatments();
+    }
+    if (operationUpdate != null) {
+      if (isFirstPass) {
+        update += operationUpdate.updateCount;
+      }
+      operationUpdate.closeAllStatments();
+    }
+    if (operationDelete != null) {
+      if (isFirstPass) {
+        delete += operationDelete.deleteCount;
+      }
+      operationDelete.closeAllStatments();
+    }
+    operationInsert = null;
+    operationUpdate = null;
+    operationDelete = null;
+  }
+
+  /**
+   * Keeps the current insert or update operation of a cyclic table for
+   * applyDeferredOperations. Deletes have nothing left to do after the first
+   * pass.
+   * @throws RepException
+   */
+  private void deferOperation() throws RepException {
+    if (!isFirstPass || !isCurrentTableCyclic) {
+      return;
+    }
+    try {
+      if (deferredOperations == null) {
+        deferredOperations = new DeferredOperationSpool();
+      }
+      deferredOperations.add(currentTableName, currentElement);
+    }
+    catch (IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+  }
+
+  /**
+   * Assigns the foreign key columns of cyclic tables which were set to null
+   * in the first pass. The operations kept while parsing are applied again in
+   * the order of the XML file as second pass operations, the foreign key
+   * assignments of inserts are sent in JDBC batches. Has to be called after
+   * the XML file has been parsed, does nothing if no cyclic table had
+   * inserts or updates.
+   * @throws RepException
+   */
+  public void applyDeferredOperations() throws RepException {
+    if (deferredOperations == null) {
+      return;
+    }
+    boolean firstPass = isFirstPass;
+    isFirstPass = false;
+    try {
+      log.debug("applying " + deferredOperations.size() + " deferred operations of cyclic tables");
+      String tableName = null;
+      while (deferredOperations.next()) {
+        if (!deferredOperations.getTableName().equals(tableName)) {
+          closeOperations();
+          tableName = deferredOperations.getTableName();
+          initializeOperations(tableName);
+        }
+        currentElement = deferredOperations.getOperation();
+        if (currentElement.elementValue.equals(RepConstants.insert_operation)) {
+          createInsertQuery();
+        }
+        else {
+          createUpdateQuery();
+        }
+      }
+      closeOperations();
+    }
+    catch (IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+    catch (SAXException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+    finally {
+      isFirstPass = firstPass;
+      currentElement = null;
+      deferredOperations.close();
+      deferredOperations = null;
+    }
+  }
+
+  private void executePendingBatch() throws RepException {
+    if (pendingBatch == null) {
+      return;
+    }
+    AbstractSynchronize operation = pendingBatch;
+    pendingBatch = null;
+    try {
+      operation.executeBatch();
+    }
+    catch (SQLException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RepException("REP057", new Object[] {ex.getMessage()});
+    }
+  }
+
   private PreparedStatement makeUpdateConisderedForBookMarksTable() throws SQLException {
     StringBuffer query = new StringBuffer();
     query.append(" UPDATE  ").append(dbHandler.getBookMarkTableName()).append(
@@ -335,6 +752,11 @@ public class MergeHandler
   }
 
   public void closeAllStatementAndResultset() {
+    abortParallelApply();
+    if (deferredOperations != null) {
+      deferredOperations.close();
+      deferredOperations = null;
+    }
     try {
       if (statement != null)
         statement.close();
@@ -0,0 +1,386 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication.xml;
+
+import java.sql.*;
+import java.util.*;
+
+import com.daffodilwoods.graph.DirectedGraph;
+import com.daffodilwoods.replication.*;
+import org.apache.log4j.Logger;
+
+/**
+ * This class applies the table sections of a change set on a number of
+ * threads, every thread on its own connection leased from the connection
+ * pool. A section is started after the sections before it in the change set
+ * of the same table and of the tables it has a foreign key to or which have a
+ * foreign key to it have been applied, so every operation finds the parent
+ * and child records the order of the change set gives it, while sections of
+ * tables which do not depend on each other are applied at the same time.
+ * A thread which gets no connection from the pool within a short wait stops
+ * and no further threads are started, the sections left are applied by the
+ * thread of the parsing handler on its own connection when it waits for them.
+ */
+
+public class ParallelApply {
+
+  /**
+   * The operations of one table section of the change set.
+   */
+  private static class Section {
+    String tableName;
+    DeferredOperationSpool operations;
+    ArrayList waitsFor = new ArrayList();
+    boolean done;
+
+    Section(String tableName0, DeferredOperationSpool operations0) {
+      tableName = tableName0;
+      operations = operations0;
+    }
+
+    boolean isReady() {
+      for (int i = 0; i < waitsFor.size(); i++) {
+        if (! ( (Section) waitsFor.get(i)).done) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private MergeHandler handler;
+  private ConnectionPool connectionPool;
+  private String pubsubName;
+  private int threads;
+  // SchemaQualifiedName -> HashSet of the SchemaQualifiedNames it is related to
+  private HashMap relatedTables = new HashMap();
+  // sections submitted and not applied yet in the order of the change set
+  private ArrayList unfinished = new ArrayList();
+  private LinkedList waiting = new LinkedList();
+  private ArrayList workers = new ArrayList();
+  private int active;
+  // a thread got no connection from the pool within LEASE_WAIT
+  private boolean poolExhausted;
+  // applies sections on the connection of handler, made on first use
+  private MergeHandler callerHandler;
+  private String threadName = Thread.currentThread().getName() + "-apply-";
+  private Exception error;
+  public int insert, update, delete;
+  protected static Logger log = Logger.getLogger(ParallelApply.class.getName());
+
+  // milliseconds a thread waits for a pooled connection
+  private static final long LEASE_WAIT = 1000;
+
+  /**
+   * @param handler0 handler parsing the change set, used for making the
+   * handlers of the threads
+   * @param connectionPool0
+   * @param pubsubName0 name the connections are leased for
+   * @param threads0 maximum number of threads
+   * @param repTables replicated tables of the subscription or publication
+   * @param mdi
+   * @throws RepException
+   */
+  public ParallelApply(MergeHandler handler0, ConnectionPool connectionPool0,
+                       String pubsubName0, int threads0, List repTables,
+                       MetaDataInfo mdi) throws RepException {
+    handler = handler0;
+    connectionPool = connectionPool0;
+    pubsubName = pubsubName0;
+    threads = threads0;
+    ArrayList snames = new ArrayList();
+    DirectedGraph graph = new DirectedGraph(repTables.size());
+    for (int i = 0; i < repTables.size(); i++) {
+      SchemaQualifiedName sname = ( (RepTable) repTables.get(i)).getSchemaQualifiedName();
+      snames.add(sname);
+      graph.addVertex(sname);
+    }
+    for (int i = 0; i < repTables.size(); i++) {
+      RepTable repTable = (RepTable) repTables.get(i);
+      if (!RepConstants.YES.equalsIgnoreCase(repTable.getCyclicDependency())) {
+        mdi.getImportedTables(repTable.getSchemaQualifiedName(), snames, graph, null);
+      }
+    }
+    for (int i = 0; i < snames.size(); i++) {
+      Object[] parents = graph.adjacentsOf(snames.get(i));
+      for (int j = 0; j < parents.length; j++) {
+        getRelatedTables(snames.get(i)).add(parents[j]);
+        getRelatedTables(parents[j]).add(snames.get(i));
+      }
+    }
+  }
+
+  private HashSet getRelatedTables(Object sname) {
+    HashSet related = (HashSet) relatedTables.get(sname);
+    if (related == null) {
+      related = new HashSet();
+      relatedTables.put(sname, related);
+    }
+    return related;
+  }
+
+  /**
+   * Hands the operations of a table section over to the threads. The
+   * operations are closed after they have been applied.
+   * @param tableName
+   * @param operations
+   * @throws RepException if an earlier section has failed
+   */
+  public synchronized void submit(String tableName, DeferredOperationSpool operations) throws RepException {
+    Section section = new Section(tableName, operations);
+    try {
+      throwError();
+    }
+    catch (RepException ex) {
+      operations.close();
+      throw ex;
+    }
+    SchemaQualifiedName sname = handler.replicator.getRepTable(tableName).getSchemaQualifiedName();
+    HashSet related = getRelatedTables(sname);
+    for (int i = 0; i < unfinished.size(); i++) {
+      Section earlier = (Section) unfinished.get(i);
+      SchemaQualifiedName earlierName = handler.replicator.getRepTable(earlier.tableName).getSchemaQualifiedName();
+      if (earlierName.equals(sname) || related.contains(earlierName)) {
+        section.waitsFor.add(earlier);
+      }
+    }
+    unfinished.add(section);
+    waiting.add(section);
+    startWorkers();
+  }
+
+  /**
+   * Waits till all the sections submitted so far have been applied. Sections
+   * left when no thread is running any more are applied by the current
+   * thread on the connection of the parsing handler.
+   * @throws RepException exception of the first section which failed
+   */
+  public void waitForAll() throws RepException {
+    Section section = null;
+    while (true) {
+      synchronized (this) {
+        if (section != null) {
+          section.done = true;
+          unfinished.remove(section);
+          section = null;
+        }
+        while (error == null && !unfinished.isEmpty() && active > 0) {
+          try {
+            wait();
+          }
+          catch (InterruptedException ex) {
+            setError(ex);
+          }
+        }
+        if (error != null || unfinished.isEmpty()) {
+          break;
+        }
+        // nothing is being applied, so the first section waiting is ready
+        section = (Section) waiting.removeFirst();
+      }
+      try {
+        if (callerHandler == null) {
+          callerHandler = handler.createSectionHandler(handler.connection, handler.mdi);
+        }
+        callerHandler.applySection(section.tableName, section.operations);
+      }
+      catch (RepException ex) {
+        log.error(ex.getMessage(), ex);
+        synchronized (this) {
+          setError(ex);
+        }
+      }
+    }
+    throwError();
+  }
+
+  /**
+   * Waits till all the sections have been applied and for the threads.
+   * @throws RepException exception of the first section which failed
+   */
+  public void finish() throws RepException {
+    try {
+      waitForAll();
+    }
+    finally {
+      close();
+    }
+  }
+
+  /**
+   * Drops the sections not started and waits for the sections being applied
+   * at present.
+   */
+  public void abort() {
+    synchronized (this) {
+      setError(new RepException("REP057", new Object[] {"apply aborted"}));
+    }
+    close();
+  }
+
+  private void close() {
+    Thread[] threads0;
+    synchronized (this) {
+      while (!waiting.isEmpty()) {
+        ( (Section) waiting.removeFirst()).operations.close();
+      }
+      threads0 = (Thread[]) workers.toArray(new Thread[workers.size()]);
+    }
+    for (int i = 0; i < threads0.length; i++) {
+      try {
+        threads0[i].join();
+      }
+      catch (InterruptedException ex) {
+        log.error(ex.getMessage(), ex);
+      }
+    }
+    if (callerHandler != null) {
+      callerHandler.closeAllStatementAndResultset();
+      insert += callerHandler.insert;
+      update += callerHandler.update;
+      delete += callerHandler.delete;
+      callerHandler = null;
+    }
+  }
+
+  /**
+   * Starts a thread for every section which is ready to be applied, as long
+   * as there are less than threads threads. A thread stops when no section is
+   * ready for it.
+   */
+  private void startWorkers() {
+    int ready = 0;
+    for (Iterator iter = waiting.iterator(); iter.hasNext(); ) {
+      if ( ( (Section) iter.next()).isReady()) {
+        ready++;
+      }
+    }
+    for (; error == null && !poolExhausted && ready > 0 && active < threads; ready--) {
+      Thread worker = new Thread(new Runnable() {
+        public void run() {
+          work();
+        }
+      }, threadName + workers.size());
+      workers.add(worker);
+      active++;
+      worker.start();
+    }
+  }
+
+  private void work() {
+    connectionPool.beginLease();
+    MergeHandler sectionHandler = null;
+    Section section = null;
+    try {
+      Connection connection = connectionPool.getConnection(pubsubName, LEASE_WAIT);
+      if (connection == null) {
+        noConnection();
+        return;
+      }
+      sectionHandler = handler.createSectionHandler(connection,
+          Utility.getDatabaseMataData(connectionPool, pubsubName));
+      section = nextSection(null);
+      while (section != null) {
+        sectionHandler.applySection(section.tableName, section.operations);
+        section = nextSection(section);
+      }
+    }
+    catch (Exception ex) {
+      log.error(ex.getMessage(), ex);
+      failed(ex);
+    }
+    finally {
+      if (sectionHandler != null) {
+        sectionHandler.closeAllStatementAndResultset();
+        synchronized (this) {
+          insert += sectionHandler.insert;
+          update += sectionHandler.update;
+          delete += sectionHandler.delete;
+        }
+      }
+      connectionPool.endLease();
+    }
+  }
+
+  /**
+   * Marks the section applied by the current thread as done and takes the
+   * next section which is ready, null if there is none and the thread has to
+   * stop.
+   * @param done section applied, null for the first call of a thread
+   * @return Section
+   */
+  private synchronized Section nextSection(Section done) {
+    if (done != null) {
+      done.done = true;
+      unfinished.remove(done);
+      notifyAll();
+    }
+    if (error == null) {
+      for (Iterator iter = waiting.iterator(); iter.hasNext(); ) {
+        Section section = (Section) iter.next();
+        if (section.isReady()) {
+          iter.remove();
+          startWorkers();
+          return section;
+        }
+      }
+    }
+    active--;
+    return null;
+  }
+
+  /**
+   * Stops the current thread, which got no connection from the pool. The
+   * sections it would have taken are left to the other threads or to
+   * waitForAll.
+   */
+  private synchronized void noConnection() {
+    if (!poolExhausted) {
+      log.debug("no pooled connection within " + LEASE_WAIT + " ms, " + active + " apply threads running");
+    }
+    poolExhausted = true;
+    active--;
+    notifyAll();
+  }
+
+  private synchronized void failed(Exception ex) {
+    setError(ex);
+    active--;
+    notifyAll();
+  }
+
+  private void setError(Exception ex) {
+    if (error == null) {
+      error = ex;
+    }
+  }
+
+  private void throwError() throws RepException {
+    if (error == null) {
+      return;
+    }
+    if (error instanceof RepException) {
+      throw (RepException) error;
+    }
+    RepException rex = new RepException("REP057", new Object[] {error.getMessage()});
+    rex.setStackTrace(error.getStackTrace());
+    throw rex;
+  }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication.xml;
+
+import com.daffodilwoods.replication.RepConstants;
+
+/**
+ * This class keeps the collapsed history of one record of the shadow table.
+ * The first operation found for the record after the last synchronization is
+ * the origin, the operations done on the record after it are folded into
+ * type, lastSyncId and primaryKeyValues in the same way getLastRecord of
+ * SyncXMLCreator traces them.
+ */
+
+public class ShadowChange
+{
+
+    // first operation of the record
+    public String operation;
+    public Object syncId;
+    public Object commonId;
+    public Object[] originalPrimaryKeyValues;
+
+    // after update record of the first operation if it is an update
+    public Object afterUpdateSyncId;
+    public Object[] afterUpdatePrimaryKeyValues;
+
+    // operations done on the record after the first one
+    public boolean recordFound;
+    public String type;
+    public Object lastSyncId;
+    public Object[] primaryKeyValues;
+
+    public ShadowChange(String operation0, Object syncId0, Object commonId0, Object[] primaryKeyValues0)
+    {
+        operation = operation0;
+        syncId = syncId0;
+        commonId = commonId0;
+        originalPrimaryKeyValues = primaryKeyValues0;
+        primaryKeyValues = primaryKeyValues0;
+    }
+
+    /**
+     * Called when the after update record of an update done on the record is
+     * read from the shadow table.
+     * @param syncId0
+     * @param primaryKeyValues0
+     */
+    public void setAfterUpdateRecord(Object syncId0, Object[] primaryKeyValues0)
+    {
+        if (afterUpdateSyncId == null && operation.equals(RepConstants.update_operation) && !recordFound)
+        {
+            afterUpdateSyncId = syncId0;
+            afterUpdatePrimaryKeyValues = primaryKeyValues0;
+        }
+        else
+        {
+            recordFound = true;
+            type = RepConstants.update_operation;
+            lastSyncId = syncId0;
+        }
+        primaryKeyValues = primaryKeyValues0;
+    }
+
+}
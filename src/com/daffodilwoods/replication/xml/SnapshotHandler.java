@@ -36,10 +36,12 @@ import org.apache.log4j.Logger;
  * These methods helps at the time of taking snapshot, as when some information is
  * found by the parser these methods stores the relative value and perform different
  * operations like inserting, updating and deleting records from respective tables.
+ * In the first pass the records of a table are handed to the BulkLoader of the
+ * database if BULKLOAD is set.
  */
 
 public class SnapshotHandler
-    extends DefaultHandler {
+    extends DefaultHandler implements BulkLoader.RowBinder {
   XMLElement currentElement;
   Connection subConnection;
   Statement statement;
@@ -54,6 +56,7 @@ public class SnapshotHandler
   private RepTable currentRepTable;
   private XMLElement tableElement;
   private TreeMap allColumnsMap;
+  private BulkLoader bulkLoader;
 
   /**
    * Default Handler for parsing and reading the contents from XML file
@@ -171,6 +174,11 @@ public class SnapshotHandler
             !qname.equals("primary")) &&
           qname.equals("tableName")) {
         try {
+          if (bulkLoader != null) {
+            BulkLoader loader = bulkLoader;
+            bulkLoader = null;
+            loader.close();
+          }
           String tableNaam = currentElement.elementValue;
 //        String shadowTableName = RepConstants.shadow_Table(tableNaam);
           String shadowTableName = dbHandler.getShadowTableName(tableNaam);
@@ -276,6 +284,9 @@ public class SnapshotHandler
           String preparedQuery = repTable.createInsertQueryForSnapShot();
           preparedStatement = subConnection.prepareStatement(preparedQuery);
           log.debug(preparedQuery);
+          if (RepConstants.isBulkLoad()) {
+            openBulkLoader(repTable);
+          }
         }
         else {
           if (isCurrentTableCyclic) {
@@ -309,7 +320,10 @@ public class SnapshotHandler
    * @throws SAXException
    */
   public void createQuery() throws SAXException, SQLException {
-
+    if (isFirstPass && bulkLoader != null) {
+      bulkLoader.addRow(currentElement.getChildElements().get(0));
+      return;
+    }
     try {
       ArrayList elements = currentElement.getChildElements();
 //     XMLElement  parentElement =currentElement.getParentElement();
@@ -319,43 +333,7 @@ public class SnapshotHandler
       log.debug(" Is First pass  :  " + isFirstPass);
 
       if (isFirstPass) {
-        int j = 0;
-        for (int i = 0; i < InsertElements.size(); i++) {
-          XMLElement element = (XMLElement) InsertElements.get(i);
-          String columnName = element.elementName;
-          columnName = (String) allColumnsMap.get(columnName);
-          log.debug(" allColumnsMap : "+allColumnsMap);
-          String value = element.elementValue;
-          log.debug(" XML Element : " + element);
-          log.debug(" columnName : " + columnName);
-          log.debug(" value :  " + value);
-          if (currentRepTable.isIgnoredColumn(columnName)) {
-            log.debug("isIgnoredColumn: " + columnName);
-            continue;
-          }
-          log.debug(" isCurrentTableCyclic : " + isCurrentTableCyclic);
-          log.debug(columnName + " isForiegnKeyColumn : " +currentRepTable.isForiegnKeyColumn(columnName));
-          if (isCurrentTableCyclic && currentRepTable.isForiegnKeyColumn(columnName)) {
-            log.debug(" Is isCurrentTableCyclic :  YES");
-            log.debug(" currentRepTable.isForiegnKeyColumn(columnName) : "+currentRepTable.isForiegnKeyColumn(columnName));
-            AbstractColumnObject columnObject = (AbstractColumnObject) treeMap.get(columnName);
-            //once setAutoCommitFlag is set to false,we shouldn't change it to true
-            // by checking for other columns for that 'if' check is used
-            checkAutocommit(columnObject);
-            columnObject.setColumnObject(preparedStatement, "NULL", j + 1);
-            log.debug("setting  null to " + columnName);
-          }
-          else {
-            AbstractColumnObject columnObject = (AbstractColumnObject) treeMap.get(columnName);
-            //once setAutoCommitFlag is set to false,we shouldn't change it to true
-            // by checking for other columns for that 'if' check is used
-            checkAutocommit(columnObject);
-            columnObject.setColumnObject(preparedStatement, element, j + 1);
-            log.debug("setting " + columnName + " to " + element.elementValue);
-          }
-          j++;
-        }
-
+        setInsertParameters(preparedStatement, InsertElements, 1);
         try {
           preparedStatement.execute();
         }
@@ -422,6 +400,78 @@ public class SnapshotHandler
     }
   }
 
+  /**
+   * Sets the values of the row elements of an operation on the insert
+   * statement of the table, starting at parameter firstIndex.
+   */
+  private void setInsertParameters(PreparedStatement pst, ArrayList InsertElements, int firstIndex) throws SQLException {
+    int j = 0;
+    boolean debug = log.isDebugEnabled();
+    for (int i = 0; i < InsertElements.size(); i++) {
+      XMLElement element = (XMLElement) InsertElements.get(i);
+      String columnName = element.elementName;
+      columnName = (String) allColumnsMap.get(columnName);
+      if (debug) {
+        log.debug(" allColumnsMap : "+allColumnsMap);
+        log.debug(" XML Element : " + element);
+        log.debug(" columnName : " + columnName);
+        log.debug(" value :  " + element.elementValue);
+      }
+      if (currentRepTable.isIgnoredColumn(columnName)) {
+        log.debug("isIgnoredColumn: " + columnName);
+        continue;
+      }
+      if (debug) {
+        log.debug(" isCurrentTableCyclic : " + isCurrentTableCyclic);
+        log.debug(columnName + " isForiegnKeyColumn : " +currentRepTable.isForiegnKeyColumn(columnName));
+      }
+      AbstractColumnObject columnObject = (AbstractColumnObject) treeMap.get(columnName);
+      //once setAutoCommitFlag is set to false,we shouldn't change it to true
+      // by checking for other columns for that 'if' check is used,
+      // a BulkLoader runs its own transactions
+      if (bulkLoader == null)
+        checkAutocommit(columnObject);
+      if (isCurrentTableCyclic && currentRepTable.isForiegnKeyColumn(columnName)) {
+        columnObject.setColumnObject(pst, "NULL", j + firstIndex);
+        if (debug)
+          log.debug("setting  null to " + columnName);
+      }
+      else {
+        columnObject.setColumnObject(pst, element, j + firstIndex);
+        if (debug)
+          log.debug("setting " + columnName + " to " + element.elementValue);
+      }
+      j++;
+    }
+  }
+
+  /**
+   * Binds a row element given to the BulkLoader.
+   */
+  public void bind(PreparedStatement pst, Object row, int firstIndex) throws SQLException {
+    setInsertParameters(pst, ( (XMLElement) row).getChildElements(), firstIndex);
+  }
+
+  private void openBulkLoader(RepTable repTable) {
+    boolean hasLobColumns = false;
+    for (Iterator iter = treeMap.values().iterator(); iter.hasNext(); ) {
+      Object columnObject = iter.next();
+      if (columnObject instanceof BlobObject || columnObject instanceof ClobObject) {
+        hasLobColumns = true;
+      }
+    }
+    bulkLoader = dbHandler.getBulkLoader(subConnection, repTable, treeMap.size(), hasLobColumns, this);
+    try {
+      bulkLoader.open();
+    }
+    catch (SQLException ex) {
+      // records of the table are inserted one by one
+      RepConstants.writeERROR_FILE(ex);
+      bulkLoader.abort();
+      bulkLoader = null;
+    }
+  }
+
   private PreparedStatement makeUpdateBookMarksTable() throws Exception {
     StringBuffer query = new StringBuffer();
     query.append(" UPDATE  ").append(dbHandler.getBookMarkTableName()).append(" set   ")
@@ -489,6 +539,10 @@ public class SnapshotHandler
   }
 
   public void closeAllStatementAndResultset() {
+    if (bulkLoader != null) {
+      bulkLoader.abort();
+      bulkLoader = null;
+    }
     try {
       if (statement != null)
         statement.close();
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.xml;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class keeps the manifest of a snapshot taken in segments. Every
+ * published table is written by the publisher in its own segment, a sub
+ * directory of the segments directory of the spool session holding the xml,
+ * blob.lob and clob.lob files of the table. The manifest lists the segments
+ * with the level of their table in the order of the foreign keys, tables of
+ * level 0 refer to no other table and the tables of one level only refer to
+ * tables of lower levels, so the subscriber can load the segments of one
+ * level at the same time.
+ */
+
+public class SnapshotSegments
+{
+
+    public static final String MANIFEST = "segments.lst";
+
+    /**
+     * One segment of the snapshot.
+     */
+    public static class Segment
+    {
+        public int level;
+        public String name;
+        public String tableName;
+
+        public Segment(int level0, String name0, String tableName0)
+        {
+            level = level0;
+            name = name0;
+            tableName = tableName0;
+        }
+    }
+
+    private String directory;
+
+    // ArrayList of segments for every level
+    private ArrayList levels = new ArrayList();
+
+    public SnapshotSegments(String directory0)
+    {
+        directory = directory0;
+    }
+
+    public void addSegment(int level, String name, String tableName)
+    {
+        while (levels.size() <= level)
+            levels.add(new ArrayList());
+        ( (ArrayList) levels.get(level)).add(new Segment(level, name, tableName));
+    }
+
+    public int getLevelCount()
+    {
+        return levels.size();
+    }
+
+    /**
+     * Returns the segments of the level.
+     * @param level
+     * @return list of Segment
+     */
+    public List getSegments(int level)
+    {
+        return (List) levels.get(level);
+    }
+
+    public String getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * writes the manifest in the segments directory, one line of level,
+     * segment name and table name for every segment.
+     * @throws IOException
+     */
+    public void writeManifest() throws IOException
+    {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(new File(directory, MANIFEST)));
+        try
+        {
+            for (int i = 0; i < levels.size(); i++)
+            {
+                List segments = getSegments(i);
+                for (int j = 0; j < segments.size(); j++)
+                {
+                    Segment segment = (Segment) segments.get(j);
+                    bw.write(segment.level + "\t" + segment.name + "\t" + segment.tableName + "\r\n");
+                }
+            }
+        }
+        finally
+        {
+            bw.close();
+        }
+    }
+
+    /**
+     * reads the manifest of the segments directory.
+     * @param directory
+     * @return SnapshotSegments, null if there is no manifest in the directory
+     * @throws IOException
+     */
+    public static SnapshotSegments readManifest(String directory) throws IOException
+    {
+        File file = new File(directory, MANIFEST);
+        if (!file.exists())
+            return null;
+        SnapshotSegments segments = new SnapshotSegments(directory);
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try
+        {
+            for (String line = br.readLine(); line != null; line = br.readLine())
+            {
+                if (line.trim().length() == 0)
+                    continue;
+                StringTokenizer st = new StringTokenizer(line, "\t");
+                int level = Integer.parseInt(st.nextToken());
+                String name = st.nextToken();
+                segments.addSegment(level, name, st.nextToken());
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            throw new IOException("Invalid snapshot manifest " + file + " -- " + ex.getMessage());
+        }
+        finally
+        {
+            br.close();
+        }
+        return segments;
+    }
+
+    /**
+     * deletes the segments directory with all the segments in it.
+     * @param directory
+     */
+    public static void delete(String directory)
+    {
+        deleteFile(new File(directory));
+    }
+
+    private static void deleteFile(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null)
+        {
+            for (int i = 0; i < files.length; i++)
+                deleteFile(files[i]);
+        }
+        file.delete();
+    }
+
+}
@@ -55,7 +55,13 @@ public class SyncXMLCreator {
   String tableName;
   SchemaQualifiedName sname;
   private String[] parameters;
+  // sync ids in filteredFrom < sync id <= filteredTo of the current table
+  // which pass its filter clause, null if the table is not filtered
+  private HashSet filteredSyncIds;
+  private long filteredFrom, filteredTo;
   private boolean USE_getLastRecord = true;
+  private boolean binaryChangeSet;
+  private CompressionCodec compressionCodec = CompressionCodec.getDefaultCodec();
   protected static Logger log = Logger.getLogger(SyncXMLCreator.class.getName());
   int countWriteDelementelement=0,countWriteupdateElement=0,countWriteInsertElement=0,commPreCount=0,primaryCount=0;
   /**
@@ -70,6 +76,32 @@ public class SyncXMLCreator {
     dbDataypeHandler = dbDataypeHandler0;
   }
 
+  /**
+   * Sets whether the changes are written in the binary format of
+   * BinaryChangeSetWriter instead of XML. The format is the one negotiated
+   * with the other end of the synchronization.
+   * @param binaryChangeSet0
+   */
+  public void setBinaryChangeSet(boolean binaryChangeSet0) {
+    binaryChangeSet = binaryChangeSet0;
+  }
+
+  /**
+   * Sets the codec the change set file is compressed with before it is
+   * uploaded.
+   * @param compressionCodec0
+   */
+  public void setCompressionCodec(CompressionCodec compressionCodec0) {
+    compressionCodec = compressionCodec0;
+  }
+
+  private Writer getChangeSetWriter(OutputStream out) throws IOException {
+    if (binaryChangeSet) {
+      return new BinaryChangeSetWriter(new BufferedOutputStream(out));
+    }
+    return new BufferedWriter(new OutputStreamWriter(out));
+  }
+
   /**
       if operation is I , insert the record
       if operation is U check for its last record and also make extra tag for primary key of the initial record
@@ -90,132 +122,24 @@ public class SyncXMLCreator {
                                  String clientServerName,
                                  int noOfTables, boolean DeleteXML,
                                  String local_pub_subName,boolean isSchemaSupported, _FileUpload fileUpload,String localMachineAddress,String remoteMachineAddress) throws RepException {
-    ResultSet rows = null;
+    connectionPool.beginLease();
     try {
-      ArrayList EnCodedcols;
       FileOutputStream fos = new FileOutputStream(xmlFileURL);
-      OutputStreamWriter os = new OutputStreamWriter(fos);
-      BufferedWriter bw = new BufferedWriter(os);
-      Connection pub_sub_Connection = connectionPool.getConnection(local_pub_sub_name);
-      XMLWriter xmlWriter = new XMLWriter(bw, dbDataypeHandler,pub_sub_Connection);
-      bw.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
-      bw.write("<root>");
+      Writer bw = getChangeSetWriter(fos);
       ArrayList usedActualTables = new ArrayList();
-      String[] primarycols;
-      remoteServerName = clientServerName;
-      Object[] lastIdArray = new Object[noOfTables];
-      for (int i = 0; i < noOfTables; i++) {
-        try {
-          repTable = ( (RepTable) pubRepTables.get(i));
-          if (repTable.getCreateShadowTable().equalsIgnoreCase(RepConstants.NO))
-            continue;
-          sname =repTable.getSchemaQualifiedName();
-          tableName =  isSchemaSupported ? sname.toString() : sname.getTableName();
-          EnCodedcols = PathHandler.getEncodedColumns(tableName);
-          shadowTable = RepConstants.shadow_Table(repTable.getSchemaQualifiedName().toString());
-          lastIdArray[i] = getLastUIDFromShadowTable(shadowTable);
-//          viewedIds = new ArrayList();
-            viewedIds = new HashMap();
-          long lastId = getLastSyncId(remote_Pub_Sub_Name, tableName);
-          primaryColNames = repTable.getPrimaryColumns();
-          xmlWriter.setNoOFPrimaryColumnNumber(primaryColNames.length);
-          primaryPreparedStatement = dbDataypeHandler.makePrimaryPreperedStatement(primaryColNames, shadowTable,local_pub_sub_name);
-          commonPreparedStatement = makeCommonPreparedStatement(shadowTable);
-          //statement whose resulset is set in tracer in getlastrecord in update case
-          commonStatement = pub_sub_Connection.createStatement();
-          // deleting records from shadow table with primaryColumns of Main Table as NULL
-         deleteRecordsFromShadowTableWithNullPk();
-
-          String query = "Select * from " + shadowTable + " where " +
-              RepConstants.shadow_sync_id1 +
-              " > " + lastId + " and " + RepConstants.shadow_serverName_n +
-              " != '" + remoteServerName + "' order by " +RepConstants.shadow_sync_id1;
-          filterClause = repTable.getFilterClause();
-          rows = getResultSet(query);
-          primaryColumnTypes = new int[primaryColNames.length];
-          ResultSetMetaData rsmt = rows.getMetaData();
-          int noOfColumns = rsmt.getColumnCount();
-          String operation;
-          if (rows.next()) {
-            bw.write("<tableName>");
-            bw.write(tableName);
-            if (usedActualTables.contains(tableName))
-              usedActualTables.add(tableName);
-            do {
-//            int icount =0;
-//            long time = System.currentTimeMillis();
-              operation = rows.getString(RepConstants.shadow_operation3);
-              if (operation.equalsIgnoreCase(RepConstants.insert_operation)) {
-                // Write the insert element in XML file.
-                makeInsertElement(bw, operation, noOfColumns, xmlWriter, rows,rsmt, remoteServerName,EnCodedcols);
-              }
-              else if (operation.equals(RepConstants.update_operation)) {
-                // Write the update element in XML file.
-                makeUpdateElement(bw, noOfColumns, rsmt, xmlWriter, rows,shadowTable, remoteServerName,EnCodedcols);
-              }
-              else if (operation.equals(RepConstants.delete_operation)) {
-                //  Write the delete element in XML file.
-                makeDeleteElement(bw, noOfColumns, xmlWriter, rows, EnCodedcols);
-              }
-
-//            System.out.println((i++)+"  time taken in insert  "+ (System.currentTimeMillis()-time));
-            }
-            while (rows.next());
-            bw.write("</tableName>\r\n");
-          }
-
-          // change last_sync id in bookmarks table
-//        updateBookMarkLastSyncId(shadowTable, tableName, remote_Pub_Sub_Name);
-        }
-        finally {
-          try {
-            if (rows != null) {
-              Statement st = rows.getStatement();
-              rows.close();
-              st.close();
-            }
-              if (primaryPreparedStatement != null) {
-                primaryPreparedStatement.close();
-              }
-              if (commonPreparedStatement != null) {
-                commonPreparedStatement.close();
-              }
-              if (commonStatement != null) {
-                commonStatement.close();
-              }
-              if(primaryPreparedStatementBackwardTraversing!=null){
-                 primaryPreparedStatementBackwardTraversing.close();
-              }if(commonPreparedStatementForBackwardTraversing!=null){
-                commonPreparedStatementForBackwardTraversing.close();
-             }
-          }
-          catch (SQLException ex1) {
-            //Ignore Exception
-          }
-        }
-
-      }
-//commented By Nancy on 29-03-2005
-//to avoid record skipping during realTime Scheduling
-      /* for (int i = 0; i < noOfTables; i++) {
-        repTable = ( (RepTable) pubRepTables.get(i));
-        tableName = repTable.getSchemaQualifiedName().toString();
-         shadowTable = RepConstants.shadow_Table(repTable.getSchemaQualifiedName().toString());
-         updateBookMarkLastSyncId(shadowTable, tableName, remote_Pub_Sub_Name,lastIdArray[i]);
-       }*/
-
-      bw.write("</root>");
+      Object[] lastIdArray = getLastSyncIds(pubRepTables, noOfTables);
+      writeXML(bw, remote_Pub_Sub_Name, pubRepTables, clientServerName, noOfTables, isSchemaSupported, usedActualTables, lastIdArray);
       bw.close();
-      os.close();
       fos.close();
      if(!localMachineAddress.equalsIgnoreCase(remoteMachineAddress))  {
        // making zip file from xml file
-       ZipHandler.makeZip(zipFileURL, xmlFileURL, xmlFileName);
+       ZipHandler.makeZip(zipFileURL, xmlFileURL, xmlFileName, compressionCodec);
        // writing zip file on socket
 //      writeZIPFileOnClientSocket(socket, zipFileURL);
        WriteOnSocket writeOnSocket = new WriteOnSocket(zipFileURL, xmlFileURL,DeleteXML, xmlFileName, fileUpload, true);
        writeOnSocket.start();
        writeOnSocket.join();
+       writeOnSocket.checkUpload();
      }
       return new Object[] {
           usedActualTables, lastIdArray};
@@ -226,6 +150,185 @@ public class SyncXMLCreator {
       rep.setStackTrace(ex.getStackTrace());
       throw rep;
     }
+    finally {
+      connectionPool.endLease();
+    }
+  }
+
+  /**
+   * Writes the same XML as createXMLFile on the output stream out instead of
+   * a file. Used by the streaming transport, out is a ChangeOutputStream over
+   * the socket of the subscriber, so no xml or zip file is written and the
+   * subscriber applies the operations while they are being generated. The
+   * last sync ids are sent before the XML, the subscriber needs them for its
+   * apply checkpoints before it starts parsing.
+   */
+  public Object[] createXMLStream(ChangeOutputStream out, String remote_Pub_Sub_Name,
+                                  ArrayList pubRepTables,
+                                  String clientServerName,
+                                  int noOfTables, boolean isSchemaSupported) throws RepException {
+    connectionPool.beginLease();
+    try {
+      Object[] lastIdArray = getLastSyncIds(pubRepTables, noOfTables);
+      out.writeLastSyncIds(lastIdArray);
+      Writer bw = getChangeSetWriter(out);
+      ArrayList usedActualTables = new ArrayList();
+      writeXML(bw, remote_Pub_Sub_Name, pubRepTables, clientServerName, noOfTables, isSchemaSupported, usedActualTables, lastIdArray);
+      bw.close();
+      return new Object[] {
+          usedActualTables, lastIdArray};
+    }
+    catch (Exception ex) {
+      log.error(ex.getMessage(), ex);
+      RepException rep = new RepException("REP057", new Object[] {ex.getMessage()});
+      rep.setStackTrace(ex.getStackTrace());
+      throw rep;
+    }
+    finally {
+      connectionPool.endLease();
+    }
+  }
+
+  /**
+   * Returns the last sync id of the shadow table of every published table,
+   * null for tables without shadow table. The change set is made of the
+   * records up to these sync ids.
+   */
+  private Object[] getLastSyncIds(ArrayList pubRepTables, int noOfTables) throws Exception {
+    Object[] lastIdArray = new Object[noOfTables];
+    for (int i = 0; i < noOfTables; i++) {
+      RepTable table = (RepTable) pubRepTables.get(i);
+      if (table.getCreateShadowTable().equalsIgnoreCase(RepConstants.NO))
+        continue;
+      lastIdArray[i] = getLastUIDFromShadowTable(RepConstants.shadow_Table(table.getSchemaQualifiedName().toString()));
+    }
+    return lastIdArray;
+  }
+
+  /**
+   * Writes the root element with the changes of all the tables up to the
+   * last sync ids in lastIdArray on bw.
+   */
+  private void writeXML(Writer bw, String remote_Pub_Sub_Name,
+                        ArrayList pubRepTables, String clientServerName,
+                        int noOfTables, boolean isSchemaSupported,
+                        ArrayList usedActualTables, Object[] lastIdArray) throws Exception {
+    ResultSet rows = null;
+    ArrayList EnCodedcols;
+    Connection pub_sub_Connection = connectionPool.getConnection(local_pub_sub_name);
+    XMLWriter xmlWriter = new XMLWriter(bw, dbDataypeHandler,pub_sub_Connection);
+    ChangeSetMarkup.startDocument(bw);
+    ChangeSetMarkup.startElement(bw, "root");
+    String[] primarycols;
+    remoteServerName = clientServerName;
+    for (int i = 0; i < noOfTables; i++) {
+      try {
+        repTable = ( (RepTable) pubRepTables.get(i));
+        if (repTable.getCreateShadowTable().equalsIgnoreCase(RepConstants.NO))
+          continue;
+        sname =repTable.getSchemaQualifiedName();
+        tableName =  isSchemaSupported ? sname.toString() : sname.getTableName();
+        EnCodedcols = PathHandler.getEncodedColumns(tableName);
+        shadowTable = RepConstants.shadow_Table(repTable.getSchemaQualifiedName().toString());
+//          viewedIds = new ArrayList();
+          viewedIds = new HashMap();
+        long lastId = getLastSyncId(remote_Pub_Sub_Name, tableName);
+        primaryColNames = repTable.getPrimaryColumns();
+        xmlWriter.setNoOFPrimaryColumnNumber(primaryColNames.length);
+        primaryPreparedStatement = dbDataypeHandler.makePrimaryPreperedStatement(primaryColNames, shadowTable,local_pub_sub_name);
+        commonPreparedStatement = makeCommonPreparedStatement(shadowTable);
+        //statement whose resulset is set in tracer in getlastrecord in update case
+        commonStatement = pub_sub_Connection.createStatement();
+        // deleting records from shadow table with primaryColumns of Main Table as NULL
+       deleteRecordsFromShadowTableWithNullPk();
+
+        String query = "Select * from " + shadowTable + " where " +
+            RepConstants.shadow_sync_id1 +
+            " > " + lastId + " and " + RepConstants.shadow_sync_id1 +
+            " <= " + toLong(lastIdArray[i]) + " and " + RepConstants.shadow_serverName_n +
+            " != '" + remoteServerName + "' order by " +RepConstants.shadow_sync_id1;
+        filterClause = repTable.getFilterClause();
+        loadFilteredSyncIds(lastId, lastIdArray[i]);
+        if (RepConstants.isCollapseShadowHistory()) {
+          rows = null;
+          writeCollapsedChanges(bw, xmlWriter, lastId, toLong(lastIdArray[i]), EnCodedcols);
+          continue;
+        }
+        rows = getResultSet(query);
+        primaryColumnTypes = new int[primaryColNames.length];
+        ResultSetMetaData rsmt = rows.getMetaData();
+        int noOfColumns = rsmt.getColumnCount();
+        String operation;
+        if (rows.next()) {
+          ChangeSetMarkup.startElement(bw, "tableName");
+          bw.write(tableName);
+          if (usedActualTables.contains(tableName))
+            usedActualTables.add(tableName);
+          do {
+//            int icount =0;
+//            long time = System.currentTimeMillis();
+            operation = rows.getString(RepConstants.shadow_operation3);
+            if (operation.equalsIgnoreCase(RepConstants.insert_operation)) {
+              // Write the insert element in XML file.
+              makeInsertElement(bw, operation, noOfColumns, xmlWriter, rows,rsmt, remoteServerName,EnCodedcols);
+            }
+            else if (operation.equals(RepConstants.update_operation)) {
+              // Write the update element in XML file.
+              makeUpdateElement(bw, noOfColumns, rsmt, xmlWriter, rows,shadowTable, remoteServerName,EnCodedcols);
+            }
+            else if (operation.equals(RepConstants.delete_operation)) {
+              //  Write the delete element in XML file.
+              makeDeleteElement(bw, noOfColumns, xmlWriter, rows, EnCodedcols);
+            }
+
+//            System.out.println((i++)+"  time taken in insert  "+ (System.currentTimeMillis()-time));
+          }
+          while (rows.next());
+          ChangeSetMarkup.endElement(bw, "tableName");
+          ChangeSetMarkup.newLine(bw);
+        }
+
+        // change last_sync id in bookmarks table
+//        updateBookMarkLastSyncId(shadowTable, tableName, remote_Pub_Sub_Name);
+      }
+      finally {
+        try {
+          if (rows != null) {
+            Statement st = rows.getStatement();
+            rows.close();
+            st.close();
+          }
+            if (primaryPreparedStatement != null) {
+              primaryPreparedStatement.close();
+            }
+            if (commonPreparedStatement != null) {
+              commonPreparedStatement.close();
+            }
+            if (commonStatement != null) {
+              commonStatement.close();
+            }
+            if(primaryPreparedStatementBackwardTraversing!=null){
+               primaryPreparedStatementBackwardTraversing.close();
+            }if(commonPreparedStatementForBackwardTraversing!=null){
+              commonPreparedStatementForBackwardTraversing.close();
+           }
+        }
+        catch (SQLException ex1) {
+          //Ignore Exception
+        }
+      }
+
+    }
+//commented By Nancy on 29-03-2005
+//to avoid record skipping during realTime Scheduling
+    /* for (int i = 0; i < noOfTables; i++) {
+      repTable = ( (RepTable) pubRepTables.get(i));
+      tableName = repTable.getSchemaQualifiedName().toString();
+       shadowTable = RepConstants.shadow_Table(repTable.getSchemaQualifiedName().toString());
+       updateBookMarkLastSyncId(shadowTable, tableName, remote_Pub_Sub_Name,lastIdArray[i]);
+     }*/
+
+    ChangeSetMarkup.endElement(bw, "root");
   }
 
   /**
@@ -471,11 +574,12 @@ public class SyncXMLCreator {
      */
 
       long startTime = System.currentTimeMillis();
-      bw.write("<operation>");
+      ChangeSetMarkup.startElement(bw, "operation");
       bw.write(operation);
       xmlWriter.writeRowElement(noOfColumns, rows_I, rsmt, primaryColNames,primaryColValues, tableName, encodedCols);
       xmlWriter.writePrimaryKeyElement(primaryColNames, primaryColValues,encodedCols);
-      bw.write("</operation>\r\n");
+      ChangeSetMarkup.endElement(bw, "operation");
+      ChangeSetMarkup.newLine(bw);
       if(countWriteInsertElement<=5) {
 //System.out.println(" Time taken in write the INSERT element : " +(System.currentTimeMillis() - startTime));
        countWriteInsertElement++;
@@ -689,7 +793,7 @@ public class SyncXMLCreator {
                                   , ArrayList encodedCols
                                   ) throws Exception {
       long startTime =System.currentTimeMillis();
-      bw.write("<operation>");
+      ChangeSetMarkup.startElement(bw, "operation");
       bw.write(RepConstants.update_operation);
       if (tracer.primaryKeyValues != null) {
         xmlWriter.writeRowElementForUpdate(noOfColumns, rs, rsmt,
@@ -705,7 +809,8 @@ public class SyncXMLCreator {
       }
 
       xmlWriter.writePrimaryKeyElement(primaryColNames, primaryKeyValues,encodedCols);
-      bw.write("</operation>\r\n");
+      ChangeSetMarkup.endElement(bw, "operation");
+      ChangeSetMarkup.newLine(bw);
 //      if(countWriteupdateElement<=5) {
 //        System.out.println(" TIME TAKEN TO WRITE THE UPDATE ELEMENT : " +(System.currentTimeMillis() - startTime));
 //        countWriteupdateElement++;
@@ -718,10 +823,11 @@ public class SyncXMLCreator {
                                    ArrayList encodedCols) throws
       Exception {
     long startTime = System.currentTimeMillis();
-      bw.write("<operation>");
+      ChangeSetMarkup.startElement(bw, "operation");
       bw.write(RepConstants.delete_operation);
       xmlWriter.writePrimaryKeyElement(primaryColNames, primaryKeyValues, encodedCols);
-      bw.write("</operation>\r\n");
+      ChangeSetMarkup.endElement(bw, "operation");
+      ChangeSetMarkup.newLine(bw);
 //    if(countWriteDelementelement<=5) {
 //      System.out.println(" TIME TAKEN TO WRITE THE DELETE ELEMENT  " +(System.currentTimeMillis() - startTime));
 //      countWriteDelementelement++;
@@ -892,6 +998,243 @@ public class SyncXMLCreator {
     }
   }
 
+  /**
+   * Writes the changes of the current table after lastId up to lastShadowId
+   * by collapsing the history of every primary key in one pass over the
+   * shadow table. Only the first and the last record of a collapsed history
+   * are read again, so a changed record costs a fixed number of queries
+   * however often it has been changed.
+   * @param bw
+   * @param xmlWriter
+   * @param lastId
+   * @param lastShadowId
+   * @param encodedCols
+   * @throws Exception
+   */
+  private void writeCollapsedChanges(Writer bw, XMLWriter xmlWriter, long lastId,
+                                     long lastShadowId, ArrayList encodedCols) throws Exception {
+    ArrayList changes = collapseShadowHistory(lastId, lastShadowId);
+    if (changes.size() == 0) {
+      return;
+    }
+    PreparedStatement firstRecordPS = null, lastRecordPS = null;
+    try {
+      Connection pub_sub_Connection = connectionPool.getConnection(local_pub_sub_name);
+      String recordQuery = "select * from " + shadowTable + " where " + RepConstants.shadow_sync_id1 + " = ?";
+      firstRecordPS = pub_sub_Connection.prepareStatement(recordQuery);
+      lastRecordPS = pub_sub_Connection.prepareStatement(recordQuery);
+      ChangeSetMarkup.startElement(bw, "tableName");
+      bw.write(tableName);
+      for (int i = 0, size = changes.size(); i < size; i++) {
+        writeCollapsedChange(bw, xmlWriter, (ShadowChange) changes.get(i),
+                             firstRecordPS, lastRecordPS, encodedCols);
+      }
+      ChangeSetMarkup.endElement(bw, "tableName");
+      ChangeSetMarkup.newLine(bw);
+    }
+    finally {
+      if (firstRecordPS != null)
+        firstRecordPS.close();
+      if (lastRecordPS != null)
+        lastRecordPS.close();
+    }
+  }
+
+  /**
+   * Reads the shadow table records after lastId up to lastShadowId in order
+   * of syncId and folds the records of every primary key into a
+   * ShadowChange. A record is added to the history of the primary key it
+   * belongs to, after update records are matched with their before update
+   * record through the common id. A record of the remote server only
+   * continues an existing history as it does in getLastRecord, it never
+   * starts one.
+   * @param lastId
+   * @param lastShadowId
+   * @return ShadowChange list in order of their first record
+   * @throws SQLException
+   * @throws RepException
+   */
+  private ArrayList collapseShadowHistory(long lastId, long lastShadowId) throws SQLException, RepException {
+    StringBuffer query = new StringBuffer();
+    query.append("select ").append(RepConstants.shadow_sync_id1).append(", ")
+        .append(RepConstants.shadow_common_id2).append(", ")
+        .append(RepConstants.shadow_operation3).append(", ")
+        .append(RepConstants.shadow_status4).append(", ")
+        .append(RepConstants.shadow_serverName_n);
+    for (int i = 0; i < primaryColNames.length; i++) {
+      query.append(", ").append(primaryColNames[i]);
+    }
+    query.append(" from ").append(shadowTable).append(" where ")
+        .append(RepConstants.shadow_sync_id1).append(" > ").append(lastId)
+        .append(" and ").append(RepConstants.shadow_sync_id1).append(" <= ").append(lastShadowId)
+        .append(" order by ").append(RepConstants.shadow_sync_id1);
+    ArrayList changes = new ArrayList();
+    HashMap changesByPrimaryKey = new HashMap();
+    HashMap changesByCommonId = new HashMap();
+    ResultSet rs = getResultSet(query.toString());
+    try {
+      while (rs.next()) {
+        Object syncId = rs.getObject(1);
+        Object commonId = rs.getObject(2);
+        String operation = rs.getString(3);
+        String status = rs.getString(4);
+        boolean isRemoteRecord = remoteServerName.equalsIgnoreCase(rs.getString(5));
+        Object[] primaryColValues = new Object[primaryColNames.length];
+        for (int i = 0; i < primaryColNames.length; i++) {
+          primaryColValues[i] = rs.getObject(6 + i);
+        }
+        if (operation.equals(RepConstants.update_operation) &&
+            RepConstants.afterUpdate.equalsIgnoreCase(status)) {
+          ShadowChange change = (ShadowChange) changesByCommonId.remove(commonId);
+          if (change != null) {
+            change.setAfterUpdateRecord(syncId, primaryColValues);
+            changesByPrimaryKey.put(getPrimaryKey(primaryColValues), change);
+          }
+          continue;
+        }
+        String primaryKey = getPrimaryKey(primaryColValues);
+        ShadowChange change = (ShadowChange) changesByPrimaryKey.remove(primaryKey);
+        if (change != null) {
+          if (operation.equals(RepConstants.delete_operation)) {
+            if (!isRemoteRecord) {
+              change.recordFound = true;
+              change.type = RepConstants.delete_operation;
+            }
+          }
+          else if (operation.equals(RepConstants.update_operation)) {
+            changesByCommonId.put(commonId, change);
+          }
+          else {
+            change.recordFound = true;
+            change.type = RepConstants.insert_operation;
+            change.lastSyncId = syncId;
+            change.primaryKeyValues = primaryColValues;
+            changesByPrimaryKey.put(primaryKey, change);
+          }
+          continue;
+        }
+        if (isRemoteRecord) {
+          continue;
+        }
+        change = new ShadowChange(operation, syncId, commonId, primaryColValues);
+        changes.add(change);
+        if (operation.equals(RepConstants.insert_operation)) {
+          changesByPrimaryKey.put(primaryKey, change);
+        }
+        else if (operation.equals(RepConstants.update_operation)) {
+          changesByCommonId.put(commonId, change);
+        }
+      }
+    }
+    finally {
+      Statement st = rs.getStatement();
+      rs.close();
+      if (st != null)
+        st.close();
+    }
+    return changes;
+  }
+
+  /**
+   * Writes the XML element for one collapsed history. The elements written
+   * are the same as makeInsertElement, makeUpdateElement and makeDeleteElement
+   * write for the first record of the history.
+   */
+  private void writeCollapsedChange(Writer bw, XMLWriter xmlWriter,
+                                    ShadowChange change,
+                                    PreparedStatement firstRecordPS,
+                                    PreparedStatement lastRecordPS,
+                                    ArrayList encodedCols) throws Exception {
+    if (change.operation.equals(RepConstants.delete_operation)) {
+      if (filterSyncId(change.syncId)) {
+        writeDeleteElement(bw, xmlWriter, null, change.originalPrimaryKeyValues, encodedCols);
+      }
+      return;
+    }
+    if (change.operation.equals(RepConstants.insert_operation)) {
+      Object recordSyncId;
+      if (!change.recordFound) {
+        recordSyncId = change.syncId;
+      }
+      else if (change.type.equals(RepConstants.update_operation)) {
+        recordSyncId = change.lastSyncId;
+      }
+      else {
+        // inserted and deleted again
+        return;
+      }
+      if (filterSyncId(recordSyncId)) {
+        ResultSet record = getShadowRecord(firstRecordPS, recordSyncId);
+        try {
+          writeInsertElement(bw, RepConstants.insert_operation,
+                             record.getMetaData().getColumnCount(), xmlWriter,
+                             record, record.getMetaData(),
+                             change.primaryKeyValues, encodedCols);
+        }
+        finally {
+          record.close();
+        }
+      }
+      return;
+    }
+    if (change.afterUpdateSyncId == null) {
+      throw new RepException("REP051", new Object[] {change.commonId, shadowTable});
+    }
+    if (change.recordFound && change.type.equals(RepConstants.delete_operation)) {
+      if (filterSyncId(change.syncId)) {
+        writeDeleteElement(bw, xmlWriter, null, change.originalPrimaryKeyValues, encodedCols);
+      }
+      return;
+    }
+    if (change.recordFound && change.type.equals(RepConstants.insert_operation)) {
+      if (filterSyncId(change.afterUpdateSyncId)) {
+        ResultSet record = getShadowRecord(firstRecordPS, change.afterUpdateSyncId);
+        try {
+          writeInsertElement(bw, RepConstants.insert_operation,
+                             record.getMetaData().getColumnCount(), xmlWriter,
+                             record, record.getMetaData(),
+                             change.afterUpdatePrimaryKeyValues, encodedCols);
+        }
+        finally {
+          record.close();
+        }
+      }
+      return;
+    }
+    ResultSet beforeRecord = getShadowRecord(firstRecordPS, change.syncId);
+    ResultSet afterRecord = null;
+    try {
+      afterRecord = getShadowRecord(lastRecordPS, change.recordFound ? change.lastSyncId : change.afterUpdateSyncId);
+      makeUpdateEment_ForFilter(bw, beforeRecord.getMetaData().getColumnCount(),
+                                xmlWriter, beforeRecord,
+                                change.originalPrimaryKeyValues, afterRecord,
+                                change.primaryKeyValues, new Tracer(), encodedCols);
+    }
+    finally {
+      beforeRecord.close();
+      if (afterRecord != null)
+        afterRecord.close();
+    }
+  }
+
+  private ResultSet getShadowRecord(PreparedStatement recordPS, Object syncId) throws SQLException, RepException {
+    recordPS.setObject(1, syncId);
+    ResultSet record = recordPS.executeQuery();
+    if (!record.next()) {
+      record.close();
+      throw new RepException("REP057", new Object[] {"record " + syncId + " not found in " + shadowTable});
+    }
+    return record;
+  }
+
+  private String getPrimaryKey(Object[] primaryColValues) {
+    StringBuffer key = new StringBuffer();
+    for (int i = 0; i < primaryColValues.length; i++) {
+      key.append(primaryColValues[i]).append('\u0000');
+    }
+    return key.toString();
+  }
+
   /**
    * filters the result set with the filter clause given.
    * @param rs
@@ -900,15 +1243,81 @@ public class SyncXMLCreator {
    * @throws SQLException
    */
   private boolean filterResultSet(ResultSet rs) throws SQLException, SQLException, RepException {
+    if ( (filterClause != null) && (!filterClause.trim().equals(""))) {
+      return filterSyncId(rs.getObject(RepConstants.shadow_sync_id1));
+    }
+    return true;
+  }
+
+  /**
+   * Reads the sync ids of the current table after lastId up to the last sync
+   * id of the shadow table which pass the filter clause, with one query for
+   * the table instead of one query per record in filterSyncId.
+   * @param lastId
+   * @param lastShadowUid highest sync id of the shadow table
+   * @throws SQLException
+   * @throws RepException
+   */
+  private void loadFilteredSyncIds(long lastId, Object lastShadowUid) throws SQLException, RepException {
+    filteredSyncIds = null;
+    if ( (filterClause == null) || (filterClause.trim().equals("")) || lastShadowUid == null) {
+      return;
+    }
+    filteredFrom = lastId;
+    filteredTo = toLong(lastShadowUid);
+    StringBuffer query = new StringBuffer();
+    query.append("Select ").append(RepConstants.shadow_sync_id1).append(" from ")
+        .append(shadowTable).append(" where ")
+        .append(RepConstants.shadow_sync_id1).append(" > ").append(filteredFrom)
+        .append(" and ").append(RepConstants.shadow_sync_id1).append(" <= ").append(filteredTo)
+        .append(" and ").append(RepConstants.shadow_serverName_n)
+        .append(" != '").append(remoteServerName).append("' and (")
+        .append(filterClause).append(")");
+    HashSet syncIds = new HashSet();
+    ResultSet rs = getResultSet(query.toString());
+    try {
+      while (rs.next()) {
+        syncIds.add(new Long(toLong(rs.getObject(1))));
+      }
+    }
+    finally {
+      Statement st = rs.getStatement();
+      rs.close();
+      st.close();
+    }
+    filteredSyncIds = syncIds;
+  }
+
+  private long toLong(Object syncId) {
+    if (syncId instanceof Number) {
+      return ( (Number) syncId).longValue();
+    }
+    return Long.parseLong(syncId.toString().trim());
+  }
+
+  /**
+   * filters the shadow table record of the given syncId with the filter clause given.
+   * Records read by loadFilteredSyncIds are looked up, others are queried.
+   * @param Uid
+   * @return
+   * @throws SQLException
+   * @throws RepException
+   */
+  private boolean filterSyncId(Object Uid) throws SQLException, RepException {
     StringBuffer query = new StringBuffer();
     if ( (filterClause != null) && (!filterClause.trim().equals(""))) {
-      Object Uid = rs.getObject(RepConstants.shadow_sync_id1);
+      if (filteredSyncIds != null && Uid != null) {
+        long syncId = toLong(Uid);
+        if (syncId > filteredFrom && syncId <= filteredTo) {
+          return filteredSyncIds.contains(new Long(syncId));
+        }
+      }
       query.append("Select * from ").append(shadowTable).append(" where ")
           .append(RepConstants.shadow_sync_id1)
           .append(" = ").append(Uid)
           .append(" and ").append(RepConstants.shadow_serverName_n)
           .append(" != '")
-          .append(remoteServerName).append("' and ").append(filterClause);
+          .append(remoteServerName).append("' and (").append(filterClause).append(")");
       PreparedStatement pstmt = null;
       ResultSet filteredSet = null;
       try {
@@ -916,7 +1325,7 @@ public class SyncXMLCreator {
         pstmt = pub_sub_Connection.prepareStatement(query.toString());
         if (parameters != null) {
           for (int i = 0, size = parameters.length; i < size; i++) {
-            pstmt.setString(i + 1, parameters[0]);
+            pstmt.setString(i + 1, parameters[i]);
           }
         }
         filteredSet = pstmt.executeQuery();
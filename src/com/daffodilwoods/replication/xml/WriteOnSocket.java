@@ -19,13 +19,31 @@
 package com.daffodilwoods.replication.xml;
 
 import java.io.*;
+import java.rmi.RemoteException;
+import java.rmi.dgc.VMID;
+import java.util.zip.CRC32;
 import com.daffodilwoods.replication.*;
 
+/**
+ * Uploads the zip file to the other end through _FileUpload. The file is
+ * sent in chunks of the size negotiated with getChunkSize, the configured
+ * number of chunks are sent at the same time by ChunkWriter threads. Every
+ * chunk carries its CRC32 and is sent again if the other end finds it
+ * corrupt. If the connection breaks the upload is started again and resumes
+ * from the offset returned by fileStart, which only resumes uploads started
+ * with the same transfer id.
+ */
 public class WriteOnSocket extends Thread {
   private String xmlFilePath,zipFilePath,fileName;
   private _FileUpload fileUpload;
   boolean deleteXML =false, isFileForSynchronization =false;
 
+  // state shared by the ChunkWriter threads of one attempt
+  private long nextOffset, fileLength;
+  private int chunkSize;
+  private Exception chunkError;
+  private Exception error;
+
   public WriteOnSocket( String zipFilePath0,String xmlFilePath0,boolean deleteXML0, String fileName0,_FileUpload fileUpload0,boolean isFileForSynchronization0 ) {
     zipFilePath = zipFilePath0;
     xmlFilePath =xmlFilePath0;
@@ -38,23 +56,11 @@ public class WriteOnSocket extends Thread {
  // To write the zip file on client side.
   public void run() {
     try {
-      FileInputStream fis = new FileInputStream(zipFilePath);
-      byte[] buf = new byte[1024];
-      int len = 0;
-      fileUpload.fileStart(fileName,isFileForSynchronization);
-      while ( (len = fis.read(buf)) > 0) {
-        fileUpload.writeFileContent(buf,0,len);
-      }
-      fis.close();
-      fileUpload.closeFile();
+      uploadFile();
     }
-    catch (IOException ex) {
+    catch (Exception ex) {
       RepConstants.writeERROR_FILE(ex);
-      new RuntimeException(ex);
-    }
-    catch (RepException ex) {
-     RepConstants.writeERROR_FILE(ex);
-     new RuntimeException(ex);
+      error = ex;
     }
 
     if (deleteXML) {
@@ -66,6 +72,134 @@ public class WriteOnSocket extends Thread {
 
   }
 
+  /**
+   * Throws the exception the upload failed with, to be called after join.
+   * @throws RepException
+   */
+  public void checkUpload() throws RepException {
+    if (error == null) {
+      return;
+    }
+    if (error instanceof RepException) {
+      throw (RepException) error;
+    }
+    RepException rex = new RepException("REP089", new Object[] {fileName, new Long(nextOffset), error.getMessage()});
+    rex.setStackTrace(error.getStackTrace());
+    throw rex;
+  }
+
+  private void uploadFile() throws Exception {
+    fileLength = new File(zipFilePath).length();
+    chunkSize = fileUpload.getChunkSize(RepConstants.getTransferChunkSize());
+    String transferId = new VMID().toString();
+    int attempt = 0;
+    while (true) {
+      try {
+        nextOffset = fileUpload.fileStart(fileName, isFileForSynchronization, fileLength, transferId);
+        writeChunks();
+        fileUpload.closeFile();
+        return;
+      }
+      catch (RemoteException ex) {
+        if (++attempt > RepConstants.getTransferRetries()) {
+          throw ex;
+        }
+        RepConstants.writeERROR_FILE(ex);
+        // give the network some time before resuming
+        Thread.sleep(1000L * attempt);
+      }
+    }
+  }
+
+  /**
+   * Sends the chunks from nextOffset till the end of the file with
+   * TRANSFERWINDOW threads and waits for them.
+   */
+  private void writeChunks() throws Exception {
+    chunkError = null;
+    int window = (int) Math.min(RepConstants.getTransferWindow(),
+                                (fileLength - nextOffset + chunkSize - 1) / chunkSize);
+    ChunkWriter[] writers = new ChunkWriter[window];
+    for (int i = 0; i < window; i++) {
+      writers[i] = new ChunkWriter();
+      writers[i].start();
+    }
+    for (int i = 0; i < window; i++) {
+      writers[i].join();
+    }
+    if (chunkError != null) {
+      throw chunkError;
+    }
+  }
+
+  /**
+   * Returns the offset of the next chunk to be sent, -1 if all have been
+   * taken or a chunk has failed.
+   */
+  private synchronized long nextChunk() {
+    if (chunkError != null || nextOffset >= fileLength) {
+      return -1;
+    }
+    long offset = nextOffset;
+    nextOffset += chunkSize;
+    return offset;
+  }
+
+  private synchronized void chunkFailed(Exception ex) {
+    if (chunkError == null) {
+      chunkError = ex;
+    }
+  }
+
+  private class ChunkWriter extends Thread {
+    public void run() {
+      RandomAccessFile raf = null;
+      try {
+        raf = new RandomAccessFile(zipFilePath, "r");
+        byte[] buf = new byte[chunkSize];
+        CRC32 crc = new CRC32();
+        long offset;
+        while ( (offset = nextChunk()) != -1) {
+          int len = (int) Math.min(chunkSize, fileLength - offset);
+          raf.seek(offset);
+          raf.readFully(buf, 0, len);
+          crc.reset();
+          crc.update(buf, 0, len);
+          writeChunk(offset, buf, len, crc.getValue());
+        }
+      }
+      catch (Exception ex) {
+        chunkFailed(ex);
+      }
+      finally {
+        try {
+          if (raf != null) {
+            raf.close();
+          }
+        }
+        catch (IOException ex) {
+          //Ignore Exception
+        }
+      }
+    }
+
+    private void writeChunk(long offset, byte[] buf, int len, long checksum) throws RepException, RemoteException {
+      int attempt = 0;
+      while (true) {
+        try {
+          fileUpload.writeChunk(offset, buf, len, checksum);
+          return;
+        }
+        catch (RepException ex) {
+          if (!"REP088".equals(ex.getRepCode()) || ++attempt > RepConstants.getTransferRetries()) {
+            throw ex;
+          }
+          RepConstants.writeERROR_FILE(ex);
+        }
+      }
+    }
+  }
+
    private void deleteFile(String fileName)
      {
          File f = new File(fileName);
@@ -45,7 +45,12 @@ public class XMLWriter implements _XMLWriter {
   ClobOutPutStream cops;
   int noOfPrimaryCols;
   Connection pub_sub_connection = null;
-  public XMLWriter(BufferedWriter bw0, AbstractDataBaseHandler dbDatatypeHandler0, Connection pub_sub_connection0) {
+  // column types and column objects of the columns of columnsResultSet, so
+  // the metadata of a result set is read once instead of for every cell
+  private ResultSet columnsResultSet;
+  private int[] columnTypes;
+  private AbstractColumnObject[] resultSetColumnObjects;
+  public XMLWriter(Writer bw0, AbstractDataBaseHandler dbDatatypeHandler0, Connection pub_sub_connection0) {
     bw = bw0;
     dbDatatypeHandler = dbDatatypeHandler0;
     pub_sub_connection = pub_sub_connection0;
@@ -55,18 +60,53 @@ public class XMLWriter implements _XMLWriter {
 
   public void write(ResultSet rows, int index, ArrayList encodedCols,
                     String col) throws SQLException, IOException, RepException {
+    AbstractColumnObject columnObject = getColumnObject(rows, index);
+    columnObject.write(bw, rows, index, encodedCols, col);
+
+  }
+
+  /**
+   * Returns the column object for the column index of rows, made from the
+   * metadata of rows the first time a column of rows is written.
+   * @param rows
+   * @param index
+   * @return AbstractColumnObject
+   * @throws SQLException
+   * @throws RepException
+   */
+  private AbstractColumnObject getColumnObject(ResultSet rows, int index) throws SQLException, RepException {
+    setColumnsResultSet(rows);
+    AbstractColumnObject columnObject = resultSetColumnObjects[index];
+    if (columnObject == null) {
+      columnObject = makeColumnObject(rows, index);
+      resultSetColumnObjects[index] = columnObject;
+    }
+    return columnObject;
+  }
+
+  private AbstractColumnObject makeColumnObject(ResultSet rows, int index) throws SQLException, RepException {
     ResultSetMetaData rsmt = rows.getMetaData();
-    int columnType = rsmt.getColumnType(index);
-//  int columnPrecision=rsmt.getPrecision(index);
-    TypeInfo typeInfo = new TypeInfo(rsmt.getColumnTypeName(index), columnType);
-//  typeInfo.setColumnSize(columnPrecision);
+    TypeInfo typeInfo = new TypeInfo(rsmt.getColumnTypeName(index), rsmt.getColumnType(index));
     dbDatatypeHandler.setColumnPrecisionInTypeInfo(typeInfo, rsmt, index);
     dbDatatypeHandler.setTypeInfo(typeInfo, rows);
     AbstractColumnObject columnObject = getColumnObject(typeInfo);
     columnObject.setBlobHandlerObject(bops);
     columnObject.setClobHandlerObject(cops);
-    columnObject.write(bw, rows, index, encodedCols, col);
+    return columnObject;
+  }
 
+  private void setColumnsResultSet(ResultSet rows) throws SQLException {
+    if (rows == columnsResultSet) {
+      return;
+    }
+    ResultSetMetaData rsmt = rows.getMetaData();
+    int columnCount = rsmt.getColumnCount();
+    columnTypes = new int[columnCount + 1];
+    for (int i = 1; i <= columnCount; i++) {
+      columnTypes[i] = rsmt.getColumnType(i);
+    }
+    resultSetColumnObjects = new AbstractColumnObject[columnCount + 1];
+    columnsResultSet = rows;
   }
 
   private AbstractColumnObject getColumnObject(TypeInfo typeInfo) throws RepException {
@@ -80,7 +120,7 @@ public class XMLWriter implements _XMLWriter {
   }
 
   private void write(Writer os, Object value) throws IOException {
-    os.write("<![CDATA[" + value.toString() + "]]>");
+    ChangeSetMarkup.writeCDATA(os, value.toString());
   }
 
   /*  public void writeRowElement(int noOfColumns, ResultSet rows_I,
@@ -103,40 +143,44 @@ public class XMLWriter implements _XMLWriter {
                               ArrayList encodedCols) throws SQLException,
       IOException, RepException {
     int columnIndex=1;
-    bw.write("<row>");
+    ChangeSetMarkup.startElement(bw, "row");
     for (int c = 5; c <= noOfColumns - 2 - noOfPrimaryCols; c++) { // -1 for serverName and -noOfPrimaryCols for excluding old_Primary columns form shadow table
       String columnName = rsmt.getColumnName(c);
 //System.out.println("columnName::" + columnName);
       if (!encodedCols.contains(columnName.toUpperCase())) {
-        bw.write("<col name=\"" + "c"+columnIndex+ "\">");
+        ChangeSetMarkup.startElement(bw, "col", "name", "c" + columnIndex);
       }
       else {
-        bw.write("<col name=\"" + "c"+columnIndex+ "\"   Encode=\"Y\">");
+        ChangeSetMarkup.startElement(bw, "col", new String[] {"name", "c" + columnIndex, "Encode", "Y"});
       }
       columnIndex++;
       if (checkClobBLOB(rows_I, c)) {
         ResultSet rsClobBlob = getResultSetClobBlob(rows_I, primaryColumnNames,primaryColValues, tableName, c);
-        write(rsClobBlob, 1, encodedCols, columnName);
+        // the lob is read by a query of its own for every row, its column
+        // object is not kept
+        makeColumnObject(rsClobBlob, 1).write(bw, rsClobBlob, 1, encodedCols, columnName);
         rsClobBlob.close();
       }
       else {
         write(rows_I, c, encodedCols, columnName);
       }
-      bw.write("</col>\r\n");
+      ChangeSetMarkup.endElement(bw, "col");
+      ChangeSetMarkup.newLine(bw);
     }
-    bw.write("</row>");
+    ChangeSetMarkup.endElement(bw, "row");
   }
 
   public void writePrimaryKeyElement(String[] primaryColumnNames,
                                      Object[] primaryColValues,
                                      ArrayList encodedCols) throws IOException {
-    bw.write("<primary>");
+    ChangeSetMarkup.startElement(bw, "primary");
     for (int c = 0; c < primaryColumnNames.length; c++) {
-      bw.write("<pk name=\"" + primaryColumnNames[c] + "\">");
+      ChangeSetMarkup.startElement(bw, "pk", "name", primaryColumnNames[c]);
       write(bw, primaryColValues[c]);
-      bw.write("</pk>\r\n");
+      ChangeSetMarkup.endElement(bw, "pk");
+      ChangeSetMarkup.newLine(bw);
     }
-    bw.write("</primary>");
+    ChangeSetMarkup.endElement(bw, "primary");
   }
 
   public void writeRowElementForUpdate(int noOfColumns, ResultSet rows,
@@ -148,32 +192,24 @@ public class XMLWriter implements _XMLWriter {
       RepException, SQLException, IOException {
     HashMap updatedColumns = new HashMap();
 
-    bw.write("<row>");
+    ChangeSetMarkup.startElement(bw, "row");
 
     AbstractColumnObject columnObject;
-    int columnType, colPrecision = -1,columnIndex=1;
+    int columnIndex=1;
     String columnName;
 
     for (int c = 5; c <= noOfColumns - 2 - noOfPrimaryCols; c++) { // -1 for serverName and -noOfPrimaryCols for excluding old_Primary columns form shadow table
       columnName = rsmt.getColumnName(c);
       if (!encodedCols.contains(columnName.toUpperCase())) {
-        bw.write("<col name=\"" +"c"+columnIndex+ "\">");
+        ChangeSetMarkup.startElement(bw, "col", "name", "c" + columnIndex);
       }
       else {
-        bw.write("<col name=\"" + "c"+columnIndex+ "\"   Encode=\"Y\">");
+        ChangeSetMarkup.startElement(bw, "col", new String[] {"name", "c" + columnIndex, "Encode", "Y"});
       }
       columnIndex++;
 //    bw.write("<columnName name=\"" + columnName + "\">");
 
-      columnType = rsmt.getColumnType(c);
-//    colPrecision=rsmt.getPrecision(c);
-      TypeInfo typeInfo = new TypeInfo(rsmt.getColumnTypeName(c), columnType);
-      dbDatatypeHandler.setTypeInfo(typeInfo, rows);
-      dbDatatypeHandler.setColumnPrecisionInTypeInfo(typeInfo, rsmt, c);
-//    typeInfo.setColumnSize(colPrecision);
-      columnObject = getColumnObject(typeInfo);
-      columnObject.setBlobHandlerObject(bops);
-      columnObject.setClobHandlerObject(cops);
+      columnObject = getColumnObject(rows, c);
       if (checkClobBLOB(rows, c)) {
         ResultSet rsClobBlob = getResultSetClobBlob(rows, primaryColumnNames,primaryColValues, tableName, c);
         columnObject.writeUpdate(bw, rsClobBlob, oldResultSet, 1,updatedColumns, columnName, encodedCols);
@@ -182,21 +218,22 @@ public class XMLWriter implements _XMLWriter {
       else {
         columnObject.writeUpdate(bw, rows, oldResultSet, c, updatedColumns,columnName, encodedCols);
       }
-      bw.write("</col>\r\n");
+      ChangeSetMarkup.endElement(bw, "col");
+      ChangeSetMarkup.newLine(bw);
     }
-    bw.write("</row>");
+    ChangeSetMarkup.endElement(bw, "row");
 
     Iterator iterator = updatedColumns.keySet().iterator();
-    bw.write("<ChangedCol>");
+    ChangeSetMarkup.startElement(bw, "ChangedCol");
     if (!iterator.hasNext()) {
       bw.write("NO_OPERATION");
-      bw.write("</ChangedCol>");
+      ChangeSetMarkup.endElement(bw, "ChangedCol");
       return;
     }
     do {
       Object changesColumnName = iterator.next();
-      bw.write("<changesCol name=\"" + changesColumnName.toString() +"\">");
-      bw.write("<![CDATA[");
+      ChangeSetMarkup.startElement(bw, "changesCol", "name", changesColumnName.toString());
+      ChangeSetMarkup.startCDATA(bw);
       Object ob = updatedColumns.get(changesColumnName);
       if (ob instanceof byte[]) {
         bw.write(new String( (byte[]) ob));
@@ -204,10 +241,11 @@ public class XMLWriter implements _XMLWriter {
       else {
         bw.write(ob.toString());
       }
-      bw.write("]]></changesCol>");
+      ChangeSetMarkup.endCDATA(bw);
+      ChangeSetMarkup.endElement(bw, "changesCol");
     }
     while (iterator.hasNext());
-    bw.write("</ChangedCol>");
+    ChangeSetMarkup.endElement(bw, "ChangedCol");
 
   }
 
@@ -247,8 +285,8 @@ public class XMLWriter implements _XMLWriter {
   }
 
   private boolean checkClobBLOB(ResultSet rs, int index) throws SQLException {
-    ResultSetMetaData rsmd = rs.getMetaData();
-    int columnType = rsmd.getColumnType(index);
+    setColumnsResultSet(rs);
+    int columnType = columnTypes[index];
     boolean flag = false;
     if (columnType == 2004 || columnType == 2005 || columnType == -4 ||
         columnType == -1 || columnType == -2 || columnType == -3 ||
@@ -278,13 +316,14 @@ public class XMLWriter implements _XMLWriter {
   public void writePrimaryKeyElement(String[] primaryColumnNames,
                                      ResultSet rs, ArrayList encodedCols) throws
       IOException, SQLException {
-    bw.write("<primary>");
+    ChangeSetMarkup.startElement(bw, "primary");
     for (int c = 0; c < primaryColumnNames.length; c++) {
-      bw.write("<pk name=\"" + primaryColumnNames[c] + "\">");
+      ChangeSetMarkup.startElement(bw, "pk", "name", primaryColumnNames[c]);
       write(bw, rs.getObject(primaryColumnNames[c]));
-      bw.write("</pk>\r\n");
+      ChangeSetMarkup.endElement(bw, "pk");
+      ChangeSetMarkup.newLine(bw);
     }
-    bw.write("</primary>");
+    ChangeSetMarkup.endElement(bw, "primary");
   }
 
 }
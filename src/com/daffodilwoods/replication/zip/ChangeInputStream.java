@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication.zip;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * This class reads the frames sent by ChangeOutputStream. The XML frames are
+ * returned to the reader, normally the SAX parser of MergeHandler, so the
+ * operations are applied while the rest of the XML is still being generated
+ * at the other end. The lob frames are written to blob.lob and clob.lob as
+ * they arrive, the same files ZipHandler.unZip extracts to.
+ *
+ * The stream is read with the codec named in its header, or inflated if it
+ * has none as it is written by older versions.
+ *
+ * The last sync ids sent before the XML are returned by getLastSyncIds.
+ *
+ * If an xml copy stream is given, the XML is also written to it for the
+ * second pass over cyclic tables. The socket stream is closed by its owner.
+ */
+
+public class ChangeInputStream extends InputStream
+{
+
+    private InputStream socketIn;
+    private DataInputStream in;
+    private OutputStream blobOut, clobOut, xmlCopy;
+    private int remaining;
+    private boolean ended;
+    private Object[] lastSyncIds;
+
+    /**
+     * @param is input stream of the socket
+     * @param blobPath path of the blob.lob file to be written
+     * @param clobPath path of the clob.lob file to be written
+     * @param xmlCopy0 stream receiving a copy of the XML, may be null
+     */
+    public ChangeInputStream(InputStream is, String blobPath, String clobPath, OutputStream xmlCopy0) throws IOException
+    {
+        socketIn = new BufferedInputStream(is, 8192);
+        blobOut = new FileOutputStream(blobPath);
+        clobOut = new FileOutputStream(clobPath);
+        xmlCopy = xmlCopy0;
+    }
+
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        int len = read(b, 0, 1);
+        return len == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        while (remaining == 0)
+        {
+            if (ended || !nextXMLFrame())
+                return -1;
+        }
+        len = in.read(b, off, Math.min(len, remaining));
+        if (len == -1)
+            throw new EOFException();
+        remaining -= len;
+        if (xmlCopy != null)
+            xmlCopy.write(b, off, len);
+        return len;
+    }
+
+    /**
+     * Reads frames till the next XML frame, lob frames are written to their
+     * files. Returns false on the end frame.
+     */
+    private boolean nextXMLFrame() throws IOException
+    {
+        if (in == null)
+            openCodec();
+        while (true)
+        {
+            int frameType = in.readByte();
+            if (frameType == ChangeOutputStream.END_FRAME)
+            {
+                ended = true;
+                blobOut.flush();
+                clobOut.flush();
+                return false;
+            }
+            int len = in.readInt();
+            if (frameType == ChangeOutputStream.SYNC_ID_FRAME)
+                readLastSyncIds(len);
+            else if (frameType == ChangeOutputStream.XML_FRAME)
+            {
+                remaining = len;
+                return true;
+            }
+            else if (frameType == ChangeOutputStream.BLOB_FRAME)
+                copy(blobOut, len);
+            else if (frameType == ChangeOutputStream.CLOB_FRAME)
+                copy(clobOut, len);
+            else
+                throw new IOException("Invalid frame " + frameType + " in change stream");
+        }
+    }
+
+    /**
+     * Returns the last sync ids the XML is made of, a Long or null for every
+     * published table. Waits for the frames before the first XML frame, returns
+     * null if the other end did not send them.
+     */
+    public Object[] getLastSyncIds() throws IOException
+    {
+        if (remaining == 0 && !ended)
+            nextXMLFrame();
+        return lastSyncIds;
+    }
+
+    private void readLastSyncIds(int count) throws IOException
+    {
+        lastSyncIds = new Object[count];
+        for (int i = 0; i < count; i++)
+        {
+            if (in.readBoolean())
+                lastSyncIds[i] = new Long(in.readLong());
+        }
+    }
+
+    /**
+     * Reads the codec header if there is one. Done on the first read, as the
+     * constructor must not wait for the other end.
+     */
+    private void openCodec() throws IOException
+    {
+        socketIn.mark(1);
+        if (socketIn.read() == ChangeOutputStream.CODEC_HEADER)
+        {
+            String codecName = new DataInputStream(socketIn).readUTF();
+            CompressionCodec codec = CompressionCodec.getCodec(codecName);
+            if (codec == null)
+                throw new IOException("Unknown compression codec " + codecName);
+            in = new DataInputStream(codec.getInputStream(socketIn));
+        }
+        else
+        {
+            socketIn.reset();
+            in = new DataInputStream(new InflaterInputStream(socketIn, new Inflater(), 8192));
+        }
+    }
+
+    private void copy(OutputStream os, int len) throws IOException
+    {
+        byte[] buf = new byte[Math.min(len, 8192)];
+        while (len > 0)
+        {
+            int read = in.read(buf, 0, Math.min(len, buf.length));
+            if (read == -1)
+                throw new EOFException();
+            os.write(buf, 0, read);
+            len -= read;
+        }
+        // lob data has to be readable before the operation using it is applied
+        os.flush();
+    }
+
+    /**
+     * Reads the rest of the stream so that the other end can finish writing,
+     * the parser stops reading at the end of the root element. The lob files
+     * are closed.
+     */
+    public void close() throws IOException
+    {
+        if (blobOut == null)
+            return;
+        try
+        {
+            byte[] buf = new byte[1024];
+            while (read(buf, 0, buf.length) != -1)
+            {
+            }
+        }
+        catch (IOException ex)
+        {
+            // socket has been closed after a failure
+        }
+        finally
+        {
+            blobOut.close();
+            clobOut.close();
+            blobOut = clobOut = null;
+            if (xmlCopy != null)
+                xmlCopy.close();
+        }
+    }
+
+}
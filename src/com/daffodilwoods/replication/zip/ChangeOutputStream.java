@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package com.daffodilwoods.replication.zip;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * This class sends the XML of a synchronization over a socket while it is
+ * being written, instead of writing the XML file, zipping it and uploading
+ * the zip file. The output is compressed with a DeflaterOutputStream.
+ *
+ * The bytes of the XML are sent in frames. Before every frame of XML the bytes
+ * appended to blob.lob and clob.lob since the last frame are sent, so the
+ * receiver always has the lob data of an operation before it reads the end of
+ * the operation element. ChangeInputStream reads the frames at the other end.
+ *
+ * With a codec other than the default deflate the stream starts with
+ * CODEC_HEADER and the codec name, written uncompressed, so that the other
+ * end knows how to read it.
+ *
+ * The last sync ids of the shadow tables the XML is made of are sent in a
+ * SYNC_ID_FRAME before the first frame of XML, the receiver needs them
+ * before it starts applying the operations.
+ */
+
+public class ChangeOutputStream extends OutputStream
+{
+
+    static final int XML_FRAME = 'X';
+    static final int BLOB_FRAME = 'B';
+    static final int CLOB_FRAME = 'C';
+    static final int END_FRAME = 'E';
+    static final int SYNC_ID_FRAME = 'S';
+    // not a valid first byte of a deflate stream
+    static final int CODEC_HEADER = 'R';
+
+    private DataOutputStream out;
+    private String blobPath, clobPath;
+    private long blobSent, clobSent;
+    private byte[] lobBuffer;
+    private boolean closed;
+
+    /**
+     * @param os output stream of the socket
+     * @param blobPath0 path of the blob.lob file XMLWriter writes to
+     * @param clobPath0 path of the clob.lob file XMLWriter writes to
+     */
+    public ChangeOutputStream(OutputStream os, String blobPath0, String clobPath0) throws IOException
+    {
+        this(os, blobPath0, clobPath0, CompressionCodec.getDefaultCodec());
+    }
+
+    /**
+     * @param codec codec the frames are compressed with
+     */
+    public ChangeOutputStream(OutputStream os, String blobPath0, String clobPath0,
+                              CompressionCodec codec) throws IOException
+    {
+        OutputStream bos = new BufferedOutputStream(os, 8192);
+        if (codec.isLegacyFormat())
+            out = new DataOutputStream(new DeflaterOutputStream(bos, new Deflater(), 8192));
+        else
+        {
+            DataOutputStream header = new DataOutputStream(bos);
+            header.writeByte(CODEC_HEADER);
+            header.writeUTF(codec.getName());
+            out = new DataOutputStream(codec.getOutputStream(bos));
+        }
+        blobPath = blobPath0;
+        clobPath = clobPath0;
+    }
+
+    /**
+     * Sends the last sync ids of the shadow tables, null for tables without
+     * shadow table. Has to be called before the XML is written.
+     */
+    public void writeLastSyncIds(Object[] lastSyncIds) throws IOException
+    {
+        out.writeByte(SYNC_ID_FRAME);
+        out.writeInt(lastSyncIds.length);
+        for (int i = 0; i < lastSyncIds.length; i++)
+        {
+            Object id = lastSyncIds[i];
+            out.writeBoolean(id != null);
+            if (id != null)
+                out.writeLong(id instanceof Number ? ((Number) id).longValue()
+                              : Long.parseLong(id.toString().trim()));
+        }
+    }
+
+    public void write(int b) throws IOException
+    {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return;
+        writeLobs();
+        out.writeByte(XML_FRAME);
+        out.writeInt(len);
+        out.write(b, off, len);
+    }
+
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Sends the remaining lob data and the end frame and closes the socket
+     * stream.
+     */
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        writeLobs();
+        out.writeByte(END_FRAME);
+        out.close();
+    }
+
+    private void writeLobs() throws IOException
+    {
+        blobSent = writeLob(BLOB_FRAME, blobPath, blobSent);
+        clobSent = writeLob(CLOB_FRAME, clobPath, clobSent);
+    }
+
+    /**
+     * Sends the bytes of file path from position sent till its current end.
+     * Returns the new position.
+     */
+    private long writeLob(int frameType, String path, long sent) throws IOException
+    {
+        File file = new File(path);
+        long size = file.length();
+        if (size <= sent)
+            return sent;
+        if (lobBuffer == null)
+            lobBuffer = new byte[8192];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            raf.seek(sent);
+            while (sent < size)
+            {
+                int len = raf.read(lobBuffer, 0, (int) Math.min(lobBuffer.length, size - sent));
+                if (len < 0)
+                    break;
+                out.writeByte(frameType);
+                out.writeInt(len);
+                out.write(lobBuffer, 0, len);
+                sent += len;
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+        return sent;
+    }
+
+}
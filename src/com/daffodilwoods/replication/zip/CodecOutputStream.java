@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.zip;
+
+import java.io.*;
+
+/**
+ * This class is the stream returned by CompressionCodec.getOutputStream. It
+ * counts the bytes written to it and the bytes the codec writes for them, and
+ * records them with the time taken in the codec when it is closed.
+ */
+
+public class CodecOutputStream extends FilterOutputStream
+{
+
+    private CompressionCodec codec;
+    private CountingStream counter;
+    private long rawBytes, startTime;
+    private boolean closed;
+
+    public CodecOutputStream(CompressionCodec codec0, OutputStream out0) throws IOException
+    {
+        super(null);
+        codec = codec0;
+        counter = new CountingStream(out0);
+        out = codec.compress(counter);
+    }
+
+    public void write(int b) throws IOException
+    {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (startTime == 0)
+            startTime = System.currentTimeMillis();
+        out.write(b, off, len);
+        rawBytes += len;
+    }
+
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        out.close();
+        if (rawBytes > 0)
+            codec.record(rawBytes, counter.count, System.currentTimeMillis() - startTime);
+    }
+
+    private static class CountingStream extends FilterOutputStream
+    {
+
+        long count;
+
+        CountingStream(OutputStream out0)
+        {
+            super(out0);
+        }
+
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+}
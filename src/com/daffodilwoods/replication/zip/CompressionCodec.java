@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.zip;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class is the abstract class of the compression codecs change sets are
+ * compressed with before they are transferred. A codec is found by its name
+ * with getCodec, the available codecs are
+ *
+ *   STORE         no compression, for fast links
+ *   DEFLATE_FAST  deflate at the fastest level
+ *   DEFLATE       deflate at the default level, the zip format of older
+ *                 versions
+ *   DEFLATE_BEST  deflate at the best level, for slow links
+ *   LZ4           LZ4 style block compression, much faster than deflate
+ *                 with a lower ratio
+ *
+ * Every codec keeps the number of bytes it has compressed, the number of
+ * bytes they were compressed to and the time it took, and logs its ratio and
+ * throughput after every stream.
+ */
+
+public abstract class CompressionCodec
+{
+
+    public static final String STORE = "STORE";
+    public static final String DEFLATE_FAST = "DEFLATE_FAST";
+    public static final String DEFLATE = "DEFLATE";
+    public static final String DEFLATE_BEST = "DEFLATE_BEST";
+    public static final String LZ4 = "LZ4";
+
+    private static HashMap codecs = new HashMap();
+
+    static
+    {
+        addCodec(new StoreCodec());
+        addCodec(new DeflateCodec(DEFLATE_FAST, 1));
+        addCodec(new DeflateCodec(DEFLATE, -1));
+        addCodec(new DeflateCodec(DEFLATE_BEST, 9));
+        addCodec(new LZ4Codec());
+    }
+
+    protected static Logger log = Logger.getLogger(CompressionCodec.class.getName());
+
+    private String name;
+    private long rawBytes, compressedBytes, millis;
+
+    protected CompressionCodec(String name0)
+    {
+        name = name0;
+    }
+
+    private static void addCodec(CompressionCodec codec)
+    {
+        codecs.put(codec.getName(), codec);
+    }
+
+    /**
+     * Returns the codec named name, null if there is no such codec.
+     * @param name
+     * @return CompressionCodec
+     */
+    public static CompressionCodec getCodec(String name)
+    {
+        return name == null ? null : (CompressionCodec) codecs.get(name.trim().toUpperCase());
+    }
+
+    /**
+     * Returns the deflate codec of the zip format of older versions.
+     * @return CompressionCodec
+     */
+    public static CompressionCodec getDefaultCodec()
+    {
+        return getCodec(DEFLATE);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns true if the data of this codec is written in the format of
+     * older versions, a zip file or a plain deflate stream.
+     */
+    public boolean isLegacyFormat()
+    {
+        return name.equals(DEFLATE);
+    }
+
+    /**
+     * Returns a stream compressing the bytes written to it on out. The
+     * returned stream records the statistics of the codec when it is closed.
+     * @param out
+     * @return OutputStream
+     * @throws IOException
+     */
+    public OutputStream getOutputStream(OutputStream out) throws IOException
+    {
+        return new CodecOutputStream(this, out);
+    }
+
+    /**
+     * Returns a stream reading the bytes compressed by this codec from in.
+     * @param in
+     * @return InputStream
+     * @throws IOException
+     */
+    public abstract InputStream getInputStream(InputStream in) throws IOException;
+
+    /**
+     * Returns a stream compressing the bytes written to it on out, closing it
+     * closes out.
+     */
+    protected abstract OutputStream compress(OutputStream out) throws IOException;
+
+    synchronized void record(long raw, long compressed, long time)
+    {
+        rawBytes += raw;
+        compressedBytes += compressed;
+        millis += time;
+        log.info(name + " compressed " + raw + " bytes to " + compressed + " bytes in " + time + " ms, total ratio " +
+                 getCompressionRatio() + ", " + getThroughput() / 1024 + " KB/s");
+    }
+
+    /**
+     * Returns the number of bytes compressed for every byte written, over all
+     * streams compressed so far.
+     * @return double
+     */
+    public synchronized double getCompressionRatio()
+    {
+        return compressedBytes == 0 ? 0 : (double) rawBytes / compressedBytes;
+    }
+
+    /**
+     * Returns the number of bytes compressed per second, over all streams
+     * compressed so far. The time of a stream is taken from its first write
+     * till it is closed.
+     * @return long
+     */
+    public synchronized long getThroughput()
+    {
+        return millis == 0 ? rawBytes * 1000 : rawBytes * 1000 / millis;
+    }
+
+    public String toString()
+    {
+        return name;
+    }
+
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (c) 2003 Daffodil Software Ltd all rights reserved.
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of version 2 of the GNU General Public License as
+ * published by the Free Software Foundation.
+ * There are special exceptions to the terms and conditions of the GPL
+ * as it is applied to this software. See the GNU General Public License for more details.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package com.daffodilwoods.replication.zip;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This codec compresses in blocks of 64 KB with the sequence format of LZ4.
+ * Matches are found through a hash table of the last position of every 4 byte
+ * sequence, so a block is compressed in one pass without searching. Every
+ * sequence is a token byte holding the literal length and the match length,
+ * the literals, the 2 byte offset of the match and the rest of the match
+ * length. Lengths of 15 and more go on in bytes of 255. The last sequence of
+ * a block has literals only.
+ *
+ * A block is written as its length, its compressed length and the compressed
+ * bytes, a compressed length of -1 means the block did not compress and is
+ * written as it is. A block length of 0 ends the stream.
+ */
+
+public class LZ4Codec extends CompressionCodec
+{
+
+    private static final int BLOCK_SIZE = 65536;
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_LIMIT = 12;
+    private static final int HASH_BITS = 14;
+    private static final int MAX_OFFSET = 65535;
+
+    public LZ4Codec()
+    {
+        super(LZ4);
+    }
+
+    protected OutputStream compress(OutputStream out) throws IOException
+    {
+        return new BlockOutputStream(out);
+    }
+
+    public InputStream getInputStream(InputStream in) throws IOException
+    {
+        return new BlockInputStream(in);
+    }
+
+    /**
+     * Compresses srcLen bytes of src to dst and returns the compressed length.
+     * dst must hold srcLen + srcLen / 255 + 16 bytes.
+     * @param table hash table of the block, cleared here
+     */
+    static int compress(byte[] src, int srcLen, byte[] dst, int[] table)
+    {
+        Arrays.fill(table, -1);
+        int ip = 0, op = 0, anchor = 0;
+        int limit = srcLen - MATCH_LIMIT;
+        int matchEnd = srcLen - LAST_LITERALS;
+        while (ip < limit)
+        {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[hash];
+            table[hash] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence)
+            {
+                ip++;
+                continue;
+            }
+            int length = MIN_MATCH;
+            while (ip + length < matchEnd && src[ref + length] == src[ip + length])
+                length++;
+            int literalLength = ip - anchor;
+            int tokenPos = op++;
+            op = writeLength(dst, op, literalLength);
+            System.arraycopy(src, anchor, dst, op, literalLength);
+            op += literalLength;
+            int offset = ip - ref;
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            int matchLength = length - MIN_MATCH;
+            op = writeLength(dst, op, matchLength);
+            dst[tokenPos] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(matchLength, 15));
+            ip += length;
+            anchor = ip;
+        }
+        int literalLength = srcLen - anchor;
+        int tokenPos = op++;
+        op = writeLength(dst, op, literalLength);
+        System.arraycopy(src, anchor, dst, op, literalLength);
+        op += literalLength;
+        dst[tokenPos] = (byte) (Math.min(literalLength, 15) << 4);
+        return op;
+    }
+
+    /**
+     * Decompresses srcLen bytes of src to dst and returns the decompressed
+     * length.
+     */
+    static int decompress(byte[] src, int srcLen, byte[] dst)
+    {
+        int ip = 0, op = 0;
+        while (true)
+        {
+            int token = src[ip++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == 15)
+            {
+                int b;
+                do
+                {
+                    b = src[ip++] & 0xff;
+                    literalLength += b;
+                }
+                while (b == 255);
+            }
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip >= srcLen)
+                return op;
+            int ref = op - ( (src[ip++] & 0xff) | ( (src[ip++] & 0xff) << 8));
+            int matchLength = token & 15;
+            if (matchLength == 15)
+            {
+                int b;
+                do
+                {
+                    b = src[ip++] & 0xff;
+                    matchLength += b;
+                }
+                while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            // the match may overlap the bytes it produces
+            for (int end = op + matchLength; op < end; )
+                dst[op++] = dst[ref++];
+        }
+    }
+
+    private static int writeLength(byte[] dst, int op, int length)
+    {
+        if (length < 15)
+            return op;
+        length -= 15;
+        while (length >= 255)
+        {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] b, int i)
+    {
+        return (b[i] & 0xff) | ( (b[i + 1] & 0xff) << 8) | ( (b[i + 2] & 0xff) << 16) | (b[i + 3] << 24);
+    }
+
+    private static class BlockOutputStream extends OutputStream
+    {
+
+        private DataOutputStream out;
+        private byte[] block = new byte[BLOCK_SIZE];
+        private byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 255 + 16];
+        private int[] table = new int[1 << HASH_BITS];
+        private int count;
+        private boolean closed;
+
+        BlockOutputStream(OutputStream out0)
+        {
+            out = new DataOutputStream(new BufferedOutputStream(out0, 8192));
+        }
+
+        public void write(int b) throws IOException
+        {
+            if (count == BLOCK_SIZE)
+                writeBlock();
+            block[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0)
+            {
+                if (count == BLOCK_SIZE)
+                    writeBlock();
+                int n = Math.min(len, BLOCK_SIZE - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeBlock() throws IOException
+        {
+            if (count == 0)
+                return;
+            int compressedLength = LZ4Codec.compress(block, count, compressed, table);
+            out.writeInt(count);
+            if (compressedLength >= count)
+            {
+                out.writeInt( -1);
+                out.write(block, 0, count);
+            }
+            else
+            {
+                out.writeInt(compressedLength);
+                out.write(compressed, 0, compressedLength);
+            }
+            count = 0;
+        }
+
+        public void flush() throws IOException
+        {
+            writeBlock();
+            out.flush();
+        }
+
+        public void close() throws IOException
+        {
+            if (closed)
+                return;
+            closed = true;
+            writeBlock();
+            out.writeInt(0);
+            out.close();
+        }
+
+    }
+
+    private static class BlockInputStream extends InputStream
+    {
+
+        private DataInputStream in;
+        private byte[] block = new byte[BLOCK_SIZE];
+        private byte[] compressed;
+        private int pos, limit;
+        private boolean ended;
+
+        BlockInputStream(InputStream in0)
+        {
+            in = new DataInputStream(in0);
+        }
+
+        public int read() throws IOException
+        {
+            if (pos == limit && !nextBlock())
+                return -1;
+            return block[pos++] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+            if (pos == limit && !nextBlock())
+                return -1;
+            len = Math.min(len, limit - pos);
+            System.arraycopy(block, pos, b, off, len);
+            pos += len;
+            return len;
+        }
+
+        public int available()
+        {
+            return limit - pos;
+        }
+
+        private boolean nextBlock() throws IOException
+        {
+            while (pos == limit)
+            {
+                if (ended)
+                    return false;
+                int length = in.readInt();
+                if (length == 0)
+                {
+                    ended = true;
+                    return false;
+                }
+                int compressedLength = in.readInt();
+                if (length < 0 || length > BLOCK_SIZE || compressedLength < -1 || compressedLength > length)
+                    throw new IOException("Corrupt LZ4 block");
+                if (compressedLength == -1)
+                    in.readFully(block, 0, length);
+                else
+                {
+                    if (compressed == null)
+                        compressed = new byte[BLOCK_SIZE];
+                    in.readFully(compressed, 0, compressedLength);
+                    int decompressed;
+                    try
+                    {
+                        decompressed = LZ4Codec.decompress(compressed, compressedLength, block);
+                    }
+                    catch (ArrayIndexOutOfBoundsException ex)
+                    {
+                        decompressed = -1;
+                    }
+                    if (decompressed != length)
+                        throw new IOException("Corrupt LZ4 block");
+                }
+                pos = 0;
+                limit = length;
+            }
+            return true;
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+
+    }
+
+}
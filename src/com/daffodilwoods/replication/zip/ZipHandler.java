@@ -27,11 +27,17 @@ import com.daffodilwoods.replication.*;
  * This class is used to make zip file of the XML file,BLOB.lob and CLOB.lob
  * so that compacted files can be transferred over the network. Besides it, this
  * class contains method for unzipping it.
+ *
+ * With a codec other than the default deflate the files are not written as a
+ * zip file but as the codec name followed by the entries compressed with the
+ * codec. unZip reads both forms.
  */
 
 public class ZipHandler
 {
 
+    private static final int CODEC_MAGIC = 0x4452435A;
+
     /**
      * makes a zip file named <xmlFileName> from <xmlURL> at path <zipURL>
      * @param zipURL
@@ -43,6 +49,27 @@ public class ZipHandler
     public static void makeZip(String zipURL, String xmlURL, String xmlFileName) throws
        IOException
    {
+       makeZip(zipURL, xmlURL, xmlFileName, CompressionCodec.getDefaultCodec());
+   }
+
+    /**
+     * makes a compressed file named <xmlFileName> from <xmlURL> at path
+     * <zipURL> with codec
+     * @param zipURL
+     * @param xmlURL
+     * @param xmlFileName
+     * @param codec
+     */
+    public static void makeZip(String zipURL, String xmlURL, String xmlFileName,
+                               CompressionCodec codec) throws IOException
+   {
+       if (!codec.isLegacyFormat())
+       {
+           makeCodecFile(zipURL, new String[] {xmlFileName + ".xml", "blob.lob", "clob.lob"},
+                         new String[] {xmlURL, PathHandler.getBLobFilePathForClient(),
+                         PathHandler.getCLobFilePathForClient()}, codec);
+           return;
+       }
        FileOutputStream fos = new FileOutputStream(new File(zipURL));
        ZipOutputStream zos = new ZipOutputStream(fos);
 //         zos.setLevel();
@@ -76,6 +103,11 @@ public class ZipHandler
      */
     public static void unZip(String zipURL, String xmlURL) throws IOException
     {
+        if (isCodecFile(zipURL))
+        {
+            unZipCodecFile(zipURL, xmlURL);
+            return;
+        }
         FileOutputStream fosBLOB = new FileOutputStream(PathHandler.getBLobFilePathForClient());
         FileOutputStream fosCLOB = new FileOutputStream(PathHandler.getCLobFilePathForClient());
         FileInputStream fis = new FileInputStream(new File(zipURL));
@@ -95,6 +127,96 @@ public class ZipHandler
         zis.close();
         }
 
+    private static void makeCodecFile(String zipURL, String[] entryNames,
+                                      String[] paths, CompressionCodec codec) throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(new File(zipURL));
+        try
+        {
+            DataOutputStream header = new DataOutputStream(fos);
+            header.writeInt(CODEC_MAGIC);
+            header.writeUTF(codec.getName());
+            DataOutputStream dos = new DataOutputStream(codec.getOutputStream(fos));
+            for (int i = 0; i < entryNames.length; i++)
+            {
+                FileInputStream fis = createInputStream(paths[i]);
+                try
+                {
+                    dos.writeUTF(entryNames[i]);
+                    dos.writeLong(new File(paths[i]).length());
+                    writeInOutputStream(fis, dos);
+                }
+                finally
+                {
+                    fis.close();
+                }
+            }
+            dos.writeUTF("");
+            dos.close();
+        }
+        finally
+        {
+            fos.close();
+        }
+    }
+
+    private static boolean isCodecFile(String zipURL) throws IOException
+    {
+        DataInputStream dis = new DataInputStream(new FileInputStream(zipURL));
+        try
+        {
+            return dis.readInt() == CODEC_MAGIC;
+        }
+        catch (EOFException ex)
+        {
+            return false;
+        }
+        finally
+        {
+            dis.close();
+        }
+    }
+
+    private static void unZipCodecFile(String zipURL, String xmlURL) throws IOException
+    {
+        FileInputStream fis = new FileInputStream(new File(zipURL));
+        try
+        {
+            DataInputStream header = new DataInputStream(fis);
+            header.readInt();
+            String codecName = header.readUTF();
+            CompressionCodec codec = CompressionCodec.getCodec(codecName);
+            if (codec == null)
+                throw new IOException("Unknown compression codec " + codecName);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(codec.getInputStream(fis), 65536));
+            byte[] buf = new byte[65536];
+            for (String name = dis.readUTF(); name.length() > 0; name = dis.readUTF())
+            {
+                String path = name.equalsIgnoreCase("blob.lob") ? PathHandler.getBLobFilePathForClient()
+                    : name.equalsIgnoreCase("clob.lob") ? PathHandler.getCLobFilePathForClient() : xmlURL;
+                FileOutputStream fos = new FileOutputStream(path);
+                try
+                {
+                    for (long length = dis.readLong(); length > 0; )
+                    {
+                        int len = (int) Math.min(buf.length, length);
+                        dis.readFully(buf, 0, len);
+                        fos.write(buf, 0, len);
+                        length -= len;
+                    }
+                }
+                finally
+                {
+                    fos.close();
+                }
+            }
+        }
+        finally
+        {
+            fis.close();
+        }
+    }
+
     private static void ExtractZip(ZipInputStream zis, FileOutputStream fos,
                                    FileOutputStream fosBLOB,
                                    FileOutputStream fosCLOB, ZipEntry ze) throws
@@ -110,7 +232,7 @@ public class ZipHandler
     private static void writeInOutputStream(InputStream is,
                                             OutputStream os) throws
         IOException {
-            byte[] buf = new byte[1024];
+            byte[] buf = new byte[65536];
             int len = 0;
       while ( (len = is.read(buf)) > 0)
             {
@@ -157,6 +279,99 @@ public class ZipHandler
         zis.close();
     }
 
+    /**
+     * makes a zip file at path <zipURL> of all the files lying under the
+     * directory <directoryURL>, entry names are the paths relative to it.
+     * @param zipURL
+     * @param directoryURL
+     */
+    public static void makeDirectoryZip(String zipURL, String directoryURL) throws
+        IOException
+    {
+        FileOutputStream fos = new FileOutputStream(new File(zipURL));
+        ZipOutputStream zos = new ZipOutputStream(fos);
+        try
+        {
+            addDirectoryEntries(zos, new File(directoryURL), "");
+        }
+        finally
+        {
+            zos.close();
+            fos.close();
+        }
+    }
+
+    private static void addDirectoryEntries(ZipOutputStream zos, File directory,
+                                            String prefix) throws IOException
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        for (int i = 0; i < files.length; i++)
+        {
+            if (files[i].isDirectory())
+            {
+                addDirectoryEntries(zos, files[i], prefix + files[i].getName() + "/");
+                continue;
+            }
+            FileInputStream fis = new FileInputStream(files[i]);
+            try
+            {
+                zos.putNextEntry(new ZipEntry(prefix + files[i].getName()));
+                writeInOutputStream(fis, zos);
+                zos.closeEntry();
+            }
+            finally
+            {
+                fis.close();
+            }
+        }
+    }
+
+    /**
+     * unzipps a zip file made by makeDirectoryZip placed at <zipURL> under
+     * the directory <directoryURL>
+     * @param zipURL
+     * @param directoryURL
+     */
+    public static void unZipDirectory(String zipURL, String directoryURL) throws
+        IOException
+    {
+        File directory = new File(directoryURL);
+        String directoryPath = directory.getCanonicalPath() + File.separator;
+        FileInputStream fis = new FileInputStream(new File(zipURL));
+        ZipInputStream zis = new ZipInputStream(fis);
+        try
+        {
+            for (ZipEntry ze = zis.getNextEntry(); ze != null; ze = zis.getNextEntry())
+            {
+                File file = new File(directory, ze.getName());
+                if (!file.getCanonicalPath().startsWith(directoryPath))
+                    throw new IOException("Invalid zip entry " + ze.getName());
+                if (ze.isDirectory())
+                {
+                    file.mkdirs();
+                    continue;
+                }
+                file.getParentFile().mkdirs();
+                FileOutputStream fos = new FileOutputStream(file);
+                try
+                {
+                    writeInOutputStream(zis, fos);
+                }
+                finally
+                {
+                    fos.close();
+                }
+            }
+        }
+        finally
+        {
+            zis.close();
+            fis.close();
+        }
+    }
+
     private static FileInputStream createInputStream(String bpath) throws IOException{
       FileInputStream fis = null;
       try